@@ -0,0 +1,97 @@
+package com.github.dkharrat.nexusdata.core;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import android.test.AndroidTestCase;
+import com.github.dkharrat.nexusdata.metamodel.Entity;
+import com.github.dkharrat.nexusdata.metamodel.ObjectModel;
+import com.github.dkharrat.nexusdata.predicate.PredicateBuilder;
+
+public class FetchPlannerTest extends AndroidTestCase {
+
+    private Entity<?> entity;
+    private FetchPlanner planner;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        ObjectModel model = new ObjectModel(getClass().getResourceAsStream("/assets/company.model.json"), "/assets");
+        entity = model.getEntity("Employee");
+
+        // 20 employees with the IDs 0 to 19, where the even ones are named John and the odd ones Mike
+        AttributeIndex idIndex = new AttributeIndex(entity.getAttribute("id"), true);
+        AttributeIndex firstNameIndex = new AttributeIndex(entity.getAttribute("firstName"), false);
+        for (int i = 0; i < 20; i++) {
+            idIndex = idIndex.add(objectID(i), i);
+            firstNameIndex = firstNameIndex.add(objectID(i), i % 2 == 0 ? "John" : "Mike");
+        }
+
+        Map<String,AttributeIndex> indexes = new HashMap<String,AttributeIndex>();
+        indexes.put("id", idIndex);
+        indexes.put("firstName", firstNameIndex);
+        planner = new FetchPlanner(indexes);
+    }
+
+    private ObjectID objectID(int id) {
+        return new ObjectID(null, entity, (long) id);
+    }
+
+    private Set<ObjectID> objectIDs(Integer... ids) {
+        Set<ObjectID> objectIDs = new HashSet<ObjectID>();
+        for (int id : ids) {
+            objectIDs.add(objectID(id));
+        }
+        return objectIDs;
+    }
+
+    private Set<ObjectID> getCandidates(String predicate) {
+        return planner.getCandidates(PredicateBuilder.parse(predicate));
+    }
+
+    public void testRangeOnSortedIndexNarrowsCandidates() throws Throwable {
+        assertEquals(objectIDs(15, 16, 17, 18, 19), getCandidates("id >= 15"));
+        assertEquals(objectIDs(16, 17, 18, 19), getCandidates("id > 15"));
+        assertEquals(objectIDs(0, 1, 2), getCandidates("id < 3"));
+        assertEquals(objectIDs(0, 1, 2, 3), getCandidates("id <= 3"));
+        assertEquals(objectIDs(5, 6, 7, 8), getCandidates("id BETWEEN 5 AND 8"));
+
+        // a constant on the left is looked up with the reversed operator
+        assertEquals(objectIDs(18, 19), getCandidates("17 < id"));
+
+        // fractional bounds select the whole numbers within them
+        assertEquals(objectIDs(3, 4), getCandidates("id > 2.5 && id < 4.5"));
+        assertTrue(getCandidates("id > 30").isEmpty());
+    }
+
+    public void testEqualityAndInAreLookedUp() throws Throwable {
+        assertEquals(objectIDs(7), getCandidates("id == 7"));
+        assertEquals(objectIDs(0, 2, 4), getCandidates("id IN (0, 2, 4, 40)"));
+        assertEquals(10, getCandidates("firstName == \"Mike\"").size());
+        assertTrue(getCandidates("firstName == \"Jane\"").isEmpty());
+    }
+
+    public void testCompoundPredicatesCombineCandidates() throws Throwable {
+        assertEquals(objectIDs(15, 17, 19), getCandidates("firstName == \"Mike\" && id >= 15"));
+        assertEquals(objectIDs(0, 1, 18, 19), getCandidates("id < 2 || id > 17"));
+
+        // an AND is narrowed down by any of its indexed operands, but an OR only if all of them are indexed
+        assertEquals(objectIDs(0, 1), getCandidates("id < 2 && lastName == \"Smith\""));
+        assertNull(getCandidates("id < 2 || lastName == \"Smith\""));
+    }
+
+    public void testPredicatesThatCannotBeNarrowedDown() throws Throwable {
+        // an attribute without an index
+        assertNull(getCandidates("lastName == \"Smith\""));
+        // a range on a hash index
+        assertNull(getCandidates("firstName > \"J\""));
+        // a constant that isn't comparable with the attribute
+        assertNull(getCandidates("id == \"7\""));
+        // operators that aren't looked up
+        assertNull(getCandidates("id != 7"));
+        assertNull(planner.getCandidates(null));
+    }
+}
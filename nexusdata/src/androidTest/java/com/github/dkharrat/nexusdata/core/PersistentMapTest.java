@@ -0,0 +1,254 @@
+package com.github.dkharrat.nexusdata.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import android.test.AndroidTestCase;
+
+public class PersistentMapTest extends AndroidTestCase {
+
+    private static final Comparator<Integer> NATURAL_ORDER = new Comparator<Integer>() {
+        @Override
+        public int compare(Integer lhs, Integer rhs) {
+            return lhs.compareTo(rhs);
+        }
+    };
+
+    /**
+     * A key whose hash code is set explicitly, so keys can be made to collide.
+     */
+    private static final class Key {
+        final String name;
+        final int hash;
+
+        Key(String name, int hash) {
+            this.name = name;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    public void testHashMapPlusAndMinus() throws Throwable {
+        PersistentHashMap<String,Integer> empty = PersistentHashMap.empty();
+        PersistentHashMap<String,Integer> map = empty.plus("a", 1).plus("b", 2).plus("c", 3);
+
+        assertEquals(3, map.size());
+        assertEquals(Integer.valueOf(2), map.get("b"));
+        assertTrue(map.containsKey("c"));
+        assertFalse(map.containsKey("d"));
+        assertNull(map.get("d"));
+
+        // replacing a value keeps the size, and older versions are not changed
+        PersistentHashMap<String,Integer> replaced = map.plus("b", 20);
+        assertEquals(3, replaced.size());
+        assertEquals(Integer.valueOf(20), replaced.get("b"));
+        assertEquals(Integer.valueOf(2), map.get("b"));
+        assertTrue(empty.isEmpty());
+
+        // unchanged versions are returned as they are
+        Integer value = map.get("a");
+        assertSame(map, map.plus("a", value));
+        assertSame(map, map.minus("d"));
+
+        PersistentHashMap<String,Integer> removed = map.minus("b");
+        assertEquals(2, removed.size());
+        assertFalse(removed.containsKey("b"));
+        assertEquals(3, map.size());
+    }
+
+    public void testHashMapCollisions() throws Throwable {
+        Key a = new Key("a", 42);
+        Key b = new Key("b", 42);
+        Key c = new Key("c", 42);
+        Key d = new Key("d", 42 | (1 << 20));
+
+        PersistentHashMap<Key,String> map = PersistentHashMap.<Key,String>empty().plus(a, "a").plus(b, "b").plus(c, "c").plus(d, "d");
+        assertEquals(4, map.size());
+        assertEquals("a", map.get(a));
+        assertEquals("b", map.get(b));
+        assertEquals("c", map.get(c));
+        assertEquals("d", map.get(d));
+        assertNull(map.get(new Key("e", 42)));
+
+        map = map.plus(b, "B");
+        assertEquals(4, map.size());
+        assertEquals("B", map.get(b));
+
+        map = map.minus(b);
+        assertEquals(3, map.size());
+        assertNull(map.get(b));
+        assertEquals("a", map.get(a));
+        assertEquals("c", map.get(c));
+
+        // removing a key that only shares the hash of the collision node has no effect
+        assertSame(map, map.minus(new Key("e", 42)));
+
+        map = map.minus(a).minus(c);
+        assertEquals(1, map.size());
+        assertEquals("d", map.get(d));
+        assertEquals(Collections.singletonMap(d, "d"), map);
+    }
+
+    public void testHashMapRemovesDownToEmptyMap() throws Throwable {
+        PersistentHashMap<Integer,Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 2000; i++) {
+            map = map.plus(i, i);
+        }
+        assertEquals(2000, map.size());
+
+        for (int i = 0; i < 2000; i++) {
+            map = map.minus(i);
+            assertEquals(2000 - i - 1, map.size());
+        }
+        assertTrue(map.isEmpty());
+        assertSame(PersistentHashMap.empty(), map);
+        assertFalse(map.entrySet().iterator().hasNext());
+        assertSame(map, map.minus(1));
+    }
+
+    public void testHashMapMatchesHashMap() throws Throwable {
+        Random random = new Random(1);
+        Map<Integer,Integer> expected = new HashMap<Integer,Integer>();
+        PersistentHashMap<Integer,Integer> map = PersistentHashMap.empty();
+
+        for (int i = 0; i < 20000; i++) {
+            // a small key range makes keys collide in the lower levels of the trie and get removed often
+            int key = random.nextInt(3000) * (random.nextBoolean() ? 1 : 1 << 16);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        assertEquals(expected, map);
+        assertEquals(expected, new HashMap<Integer,Integer>(map));
+    }
+
+    public void testSortedMapKeepsKeysSorted() throws Throwable {
+        PersistentSortedMap<Integer,String> empty = PersistentSortedMap.empty(NATURAL_ORDER);
+        PersistentSortedMap<Integer,String> map = empty.plus(3, "c").plus(1, "a").plus(2, "b");
+
+        assertEquals(Arrays.asList(1, 2, 3), new ArrayList<Integer>(map.keySet()));
+        assertEquals("b", map.get(2));
+        assertNull(map.get(4));
+        assertTrue(empty.isEmpty());
+
+        PersistentSortedMap<Integer,String> replaced = map.plus(2, "B");
+        assertEquals(3, replaced.size());
+        assertEquals("B", replaced.get(2));
+        assertEquals("b", map.get(2));
+
+        assertSame(map, map.minus(4));
+        PersistentSortedMap<Integer,String> removed = map.minus(2).minus(1).minus(3);
+        assertTrue(removed.isEmpty());
+        assertEquals(0, removed.height());
+        assertEquals(3, map.size());
+    }
+
+    private static void assertBalanced(PersistentSortedMap<?,?> map) {
+        // an AVL tree with n nodes is less than 1.45 log2(n + 2) high
+        double maxHeight = 1.45 * Math.log(map.size() + 2) / Math.log(2);
+        assertTrue("Height " + map.height() + " of " + map.size() + " nodes", map.height() <= maxHeight);
+    }
+
+    public void testSortedMapRebalancesOnInsertAndDelete() throws Throwable {
+        PersistentSortedMap<Integer,Integer> map = PersistentSortedMap.empty(NATURAL_ORDER);
+
+        // ascending inserts would degenerate into a list without rotations
+        for (int i = 0; i < 1024; i++) {
+            map = map.plus(i, i);
+        }
+        assertEquals(1024, map.size());
+        assertBalanced(map);
+
+        // deleting all keys of one side of the tree requires rotations to keep it balanced
+        for (int i = 0; i < 900; i++) {
+            map = map.minus(i);
+            assertBalanced(map);
+        }
+        assertEquals(124, map.size());
+        assertEquals(Integer.valueOf(900), map.keySet().iterator().next());
+
+        // deleting inner nodes replaces them with their successors
+        for (int i = 901; i < 1024; i += 2) {
+            map = map.minus(i);
+            assertBalanced(map);
+        }
+        List<Integer> keys = new ArrayList<Integer>(map.keySet());
+        assertEquals(62, keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(900 + 2 * i, keys.get(i).intValue());
+        }
+    }
+
+    public void testSortedMapMatchesTreeMap() throws Throwable {
+        Random random = new Random(2);
+        TreeMap<Integer,Integer> expected = new TreeMap<Integer,Integer>();
+        PersistentSortedMap<Integer,Integer> map = PersistentSortedMap.empty(NATURAL_ORDER);
+
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        assertBalanced(map);
+        assertEquals(new ArrayList<Integer>(expected.keySet()), new ArrayList<Integer>(map.keySet()));
+        assertEquals(new ArrayList<Integer>(expected.values()), new ArrayList<Integer>(map.values()));
+    }
+
+    public void testSortedMapGetRange() throws Throwable {
+        PersistentSortedMap<Integer,Integer> map = PersistentSortedMap.empty(NATURAL_ORDER);
+        for (int i = 0; i <= 20; i += 2) {
+            map = map.plus(i, i);
+        }
+
+        assertEquals(Arrays.asList(4, 6, 8), map.getRange(4, true, 8, true));
+        assertEquals(Arrays.asList(6), map.getRange(4, false, 8, false));
+        assertEquals(Arrays.asList(4, 6), map.getRange(4, true, 8, false));
+        assertEquals(Arrays.asList(6, 8), map.getRange(4, false, 8, true));
+
+        // bounds that aren't keys
+        assertEquals(Arrays.asList(4, 6, 8), map.getRange(3, false, 9, false));
+        assertEquals(Arrays.asList(4, 6, 8), map.getRange(3, true, 9, true));
+
+        // open bounds
+        assertEquals(Arrays.asList(0, 2, 4), map.getRange(null, false, 4, true));
+        assertEquals(Arrays.asList(16, 18, 20), map.getRange(15, true, null, false));
+        assertEquals(11, map.getRange(null, false, null, false).size());
+
+        // empty ranges
+        assertEquals(Collections.emptyList(), map.getRange(5, true, 5, true));
+        assertEquals(Collections.emptyList(), map.getRange(6, false, 6, true));
+        assertEquals(Collections.emptyList(), map.getRange(8, true, 4, true));
+        assertEquals(Collections.emptyList(), map.getRange(21, true, null, false));
+        assertEquals(Collections.emptyList(), map.getRange(null, false, 0, false));
+        assertEquals(Arrays.asList(6), map.getRange(6, true, 6, true));
+    }
+}
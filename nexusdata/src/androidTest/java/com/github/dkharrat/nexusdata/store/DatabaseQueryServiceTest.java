@@ -0,0 +1,28 @@
+package com.github.dkharrat.nexusdata.store;
+
+import android.test.AndroidTestCase;
+
+public class DatabaseQueryServiceTest extends AndroidTestCase {
+
+    public void testPrefixUpperBoundIncrementsLastChar() throws Throwable {
+        assertEquals("ab", DatabaseQueryService.getPrefixUpperBound("aa"));
+        assertEquals("Jp", DatabaseQueryService.getPrefixUpperBound("Jo"));
+        assertEquals("a", DatabaseQueryService.getPrefixUpperBound("a"));
+        assertEquals("a￿", DatabaseQueryService.getPrefixUpperBound("a￾"));
+    }
+
+    public void testPrefixUpperBoundIsNullWithoutValidSuccessor() throws Throwable {
+        assertNull(DatabaseQueryService.getPrefixUpperBound(""));
+        assertNull(DatabaseQueryService.getPrefixUpperBound("a￿"));
+        // the successor of U+D7FF would be a lone surrogate
+        assertNull(DatabaseQueryService.getPrefixUpperBound("a퟿"));
+        // a prefix ending in the high or low surrogate of a supplementary character
+        assertNull(DatabaseQueryService.getPrefixUpperBound("a\uD83D"));
+        assertNull(DatabaseQueryService.getPrefixUpperBound("a😀"));
+    }
+
+    public void testGlobCharactersAreEscaped() throws Throwable {
+        assertEquals("a[*]b[?]c[[]d]", DatabaseQueryService.escapeGlob("a*b?c[d]"));
+        assertEquals("plain", DatabaseQueryService.escapeGlob("plain"));
+    }
+}
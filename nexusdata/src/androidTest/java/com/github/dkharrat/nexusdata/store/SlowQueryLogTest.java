@@ -0,0 +1,132 @@
+package com.github.dkharrat.nexusdata.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+public class SlowQueryLogTest extends AndroidTestCase {
+
+    /**
+     * Keeps the entries it logs, so they can be checked.
+     */
+    private static class RecordingSlowQueryLog extends SlowQueryLog {
+        final List<String> entries = new ArrayList<String>();
+
+        @Override
+        void write(String entry) {
+            entries.add(entry);
+        }
+    }
+
+    private SQLiteDatabase db;
+    private RecordingSlowQueryLog slowQueryLog;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE Person (id INTEGER PRIMARY KEY, name TEXT, age INTEGER)");
+        db.execSQL("CREATE INDEX Person_name ON Person (name)");
+        for (int i = 0; i < 10; i++) {
+            db.execSQL("INSERT INTO Person (id, name, age) VALUES (?, ?, ?)", new Object[] {i, "Name " + i, 20 + i});
+        }
+        slowQueryLog = new RecordingSlowQueryLog();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        db.close();
+        super.tearDown();
+    }
+
+    private void query(String sql, Object... args) {
+        Cursor cursor = slowQueryLog.query(db, sql, args);
+        cursor.close();
+    }
+
+    public void testSlowQueryIsLoggedWithItsPlan() throws Throwable {
+        // every query is slow with a threshold of 0
+        slowQueryLog.setThreshold(0);
+        query("SELECT * FROM Person WHERE age > ?", 25);
+
+        assertEquals(1, slowQueryLog.entries.size());
+        String entry = slowQueryLog.entries.get(0);
+        assertTrue(entry, entry.contains("4 rows"));
+        assertTrue(entry, entry.contains(": SELECT * FROM Person WHERE age > ?"));
+        assertTrue(entry, entry.contains("args: [25]"));
+        assertTrue(entry, entry.contains("[FULL SCAN]"));
+        assertTrue(entry, entry.contains("\n  plan: SCAN"));
+        assertTrue(entry, entry.contains("<-- full scan"));
+
+        query("SELECT * FROM Person WHERE name = ?", "Name 3");
+        assertEquals(2, slowQueryLog.entries.size());
+        entry = slowQueryLog.entries.get(1);
+        assertTrue(entry, entry.contains("USING INDEX Person_name"));
+        assertFalse(entry, entry.contains("FULL SCAN"));
+    }
+
+    public void testStreamedQueryIsLoggedWithoutRowCount() throws Throwable {
+        slowQueryLog.setThreshold(0);
+        Cursor cursor = slowQueryLog.queryStream(db, "SELECT * FROM Person WHERE age > ? ORDER BY id", new Object[] {25});
+        try {
+            // the cursor is still read from its first row
+            assertTrue(cursor.moveToNext());
+            assertEquals(6, cursor.getInt(cursor.getColumnIndex("id")));
+        } finally {
+            cursor.close();
+        }
+
+        assertEquals(1, slowQueryLog.entries.size());
+        String entry = slowQueryLog.entries.get(0);
+        assertTrue(entry, entry.contains(" ms): SELECT * FROM Person WHERE age > ?"));
+        assertFalse(entry, entry.contains("rows"));
+    }
+
+    public void testFastQueriesAreNotLogged() throws Throwable {
+        query("SELECT * FROM Person WHERE age > ?", 25);
+        assertTrue(slowQueryLog.entries.isEmpty());
+
+        slowQueryLog.setThreshold(60000);
+        query("SELECT * FROM Person WHERE age > ?", 25);
+        assertTrue(slowQueryLog.entries.isEmpty());
+
+        slowQueryLog.setThreshold(-5);
+        assertFalse(slowQueryLog.isEnabled());
+        assertEquals(SlowQueryLog.DISABLED, slowQueryLog.getThreshold());
+    }
+
+    public void testFullScansAreRecognized() throws Throwable {
+        assertTrue(SlowQueryLog.isFullScan("SCAN TABLE Person"));
+        assertTrue(SlowQueryLog.isFullScan("SCAN Person"));
+
+        assertFalse(SlowQueryLog.isFullScan("SEARCH TABLE Person USING INDEX Person_name (name=?)"));
+        assertFalse(SlowQueryLog.isFullScan("SEARCH Person USING INTEGER PRIMARY KEY (rowid=?)"));
+        assertFalse(SlowQueryLog.isFullScan("SCAN TABLE Person USING COVERING INDEX Person_name"));
+        assertFalse(SlowQueryLog.isFullScan("SCAN SUBQUERY 1"));
+        assertFalse(SlowQueryLog.isFullScan("SCAN CONSTANT ROW"));
+        assertFalse(SlowQueryLog.isFullScan("USE TEMP B-TREE FOR ORDER BY"));
+        assertFalse(SlowQueryLog.isFullScan(null));
+    }
+
+    public void testEntryFlagsFullScans() throws Throwable {
+        String entry = SlowQueryLog.formatEntry("SELECT * FROM Person WHERE age > ?", new Object[] {25}, 4, 120,
+                Arrays.asList("SCAN TABLE Person", "USE TEMP B-TREE FOR ORDER BY"));
+        assertEquals("Slow SQL (120 ms, 4 rows) [FULL SCAN]: SELECT * FROM Person WHERE age > ?"
+                + "\n  args: [25]"
+                + "\n  plan: SCAN TABLE Person  <-- full scan"
+                + "\n  plan: USE TEMP B-TREE FOR ORDER BY", entry);
+
+        entry = SlowQueryLog.formatEntry("SELECT * FROM Person", null, 10, 5, Collections.<String>emptyList());
+        assertEquals("Slow SQL (5 ms, 10 rows): SELECT * FROM Person", entry);
+
+        entry = SlowQueryLog.formatEntry("SELECT * FROM Person", null, SlowQueryLog.UNKNOWN_ROW_COUNT, 5,
+                Collections.<String>emptyList());
+        assertEquals("Slow SQL (5 ms): SELECT * FROM Person", entry);
+    }
+}
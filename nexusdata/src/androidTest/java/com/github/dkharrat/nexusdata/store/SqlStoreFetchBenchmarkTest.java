@@ -0,0 +1,203 @@
+package com.github.dkharrat.nexusdata.store;
+
+import java.io.File;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.dkharrat.nexusdata.core.ManagedObject;
+import com.github.dkharrat.nexusdata.core.ObjectContext;
+import com.github.dkharrat.nexusdata.core.ObjectID;
+import com.github.dkharrat.nexusdata.core.PersistentStoreCoordinator;
+import com.github.dkharrat.nexusdata.core.StoreCacheNode;
+import com.github.dkharrat.nexusdata.metamodel.Entity;
+import com.github.dkharrat.nexusdata.metamodel.ObjectModel;
+import com.github.dkharrat.nexusdata.metamodel.Property;
+import com.github.dkharrat.nexusdata.metamodel.Relationship;
+import com.github.dkharrat.nexusdata.test.Company;
+import com.github.dkharrat.nexusdata.test.Employee;
+import com.github.dkharrat.nexusdata.utils.DateUtil;
+import com.github.dkharrat.nexusdata.utils.android.CursorUtil;
+
+/**
+ * Measures how many rows per second the SQLite store decodes into cache nodes, with {@link RowDecoder} and with the
+ * per-row decoding that preceded it, which looked up each column by name and inspected each property type for every
+ * row. Both decode the same rows of a table of employees, so the two numbers can be compared directly. The store uses
+ * the text encoding, which is the only one the previous decoding supported.
+ */
+public class SqlStoreFetchBenchmarkTest extends AndroidTestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SqlStoreFetchBenchmarkTest.class);
+
+    private static final int NUM_ROWS = 5000;
+
+    private File file;
+    private AndroidSqlPersistentStore persistentStore;
+    private SQLiteDatabase db;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        ObjectModel model = new ObjectModel(getClass().getResourceAsStream("/assets/company.model.json"), "/assets");
+        PersistentStoreCoordinator coordinator = new PersistentStoreCoordinator(model);
+        file = getContext().getDatabasePath("benchmark.db");
+        file.delete();
+        persistentStore = new AndroidSqlPersistentStore(getContext(), file);
+        persistentStore.setValueEncoding(ValueEncoding.TEXT);
+        coordinator.addStore(persistentStore);
+
+        ObjectContext context = new ObjectContext(coordinator);
+        Company company = context.newObject(Company.class);
+        company.setName("Google");
+        for (int i = 0; i < NUM_ROWS; i++) {
+            Employee employee = context.newObject(Employee.class);
+            employee.setFirstName("First" + i);
+            employee.setLastName("Last" + i);
+            employee.setId(i);
+            employee.setActive(i % 2 == 0);
+            employee.setDateOfBirth(new Date(i * 1000L));
+            employee.setCompany(company);
+        }
+        context.save();
+
+        db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        db.close();
+        file.delete();
+        persistentStore = null;
+
+        super.tearDown();
+    }
+
+    private interface Decoder {
+        StoreCacheNode decode(ObjectID objectID, Cursor cursor);
+    }
+
+    /**
+     * Decodes all the employee rows, and returns the decoded nodes.
+     */
+    private List<StoreCacheNode> decodeAll(Entity<?> entity, boolean useRowDecoder) {
+        Cursor cursor = db.rawQuery("SELECT * FROM " + DatabaseHelper.getTableName(entity), null);
+        try {
+            final RowDecoder rowDecoder = RowDecoder.create(persistentStore, entity, cursor);
+            Decoder decoder = useRowDecoder ? new Decoder() {
+                @Override
+                public StoreCacheNode decode(ObjectID objectID, Cursor cursor) {
+                    return rowDecoder.decode(objectID, cursor);
+                }
+            } : new Decoder() {
+                @Override
+                public StoreCacheNode decode(ObjectID objectID, Cursor cursor) {
+                    return decodeByColumnName(objectID, cursor);
+                }
+            };
+
+            int idColumn = cursor.getColumnIndexOrThrow(AndroidSqlPersistentStore.ID_COLUMN_NAME);
+            List<StoreCacheNode> nodes = new ArrayList<StoreCacheNode>(NUM_ROWS);
+            while (cursor.moveToNext()) {
+                ObjectID objectID = persistentStore.newObjectID(entity, cursor.getLong(idColumn));
+                nodes.add(decoder.decode(objectID, cursor));
+            }
+            return nodes;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Decodes a row the way the store did before {@link RowDecoder}.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private StoreCacheNode decodeByColumnName(ObjectID objectID, Cursor cursor) {
+        StoreCacheNode node = new StoreCacheNode(objectID);
+
+        try {
+            for (Property property : objectID.getEntity().getProperties()) {
+                Object value;
+                Class<?> propType = property.getType();
+
+                String columnName = persistentStore.getColumnName(property);
+
+                if (property.isRelationship()) {
+                    Relationship relationship = (Relationship)property;
+                    if (relationship.isToOne()) {
+                        Entity<?> assocEntity = persistentStore.getCoordinator().getModel().getEntity((Class<ManagedObject>)relationship.getType());
+                        long relatedID = CursorUtil.getLong(cursor, columnName);
+                        if (relatedID != 0) {
+                            value = persistentStore.newObjectID(assocEntity, relatedID);
+                        } else {
+                            continue;
+                        }
+                    } else {
+                        continue;
+                    }
+                } else if (CursorUtil.isNull(cursor, columnName)) {
+                    value = null;
+                } else if (propType.isAssignableFrom(Integer.class) || propType.isAssignableFrom(int.class)) {
+                    value = CursorUtil.getInt(cursor, columnName);
+                } else if (propType.isAssignableFrom(Long.class) || propType.isAssignableFrom(long.class)) {
+                    value = CursorUtil.getLong(cursor, columnName);
+                } else if (propType.isAssignableFrom(String.class)) {
+                    value = CursorUtil.getString(cursor, columnName);
+                } else if (propType.isAssignableFrom(Boolean.class) || propType.isAssignableFrom(boolean.class)) {
+                    value = CursorUtil.getBoolean(cursor, columnName);
+                } else if (propType.isAssignableFrom(Float.class) || propType.isAssignableFrom(float.class)) {
+                    value = CursorUtil.getFloat(cursor, columnName);
+                } else if (propType.isAssignableFrom(Double.class) || propType.isAssignableFrom(double.class)) {
+                    value = CursorUtil.getDouble(cursor, columnName);
+                } else if (Enum.class.isAssignableFrom(propType)) {
+                    value = Enum.valueOf((Class<? extends Enum>)propType, CursorUtil.getString(cursor, columnName));
+                } else if (propType.isAssignableFrom(Date.class)) {
+                    value = DateUtil.parse(DateUtil.ISO8601_NO_TIMEZONE, CursorUtil.getString(cursor, columnName));
+                } else {
+                    throw new UnsupportedOperationException("Unsupported property type " + property.getType());
+                }
+
+                node.setProperty(property.getName(), value);
+            }
+        } catch (ParseException e) {
+            throw new RuntimeException(e);
+        }
+
+        return node;
+    }
+
+    private double measureRowsPerSec(Entity<?> entity, boolean useRowDecoder, int iterations) {
+        decodeAll(entity, useRowDecoder);    // warm-up
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            assertEquals(NUM_ROWS, decodeAll(entity, useRowDecoder).size());
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        return (double) NUM_ROWS * iterations / (elapsedNanos / 1e9);
+    }
+
+    public void testRowDecodingThroughput() throws Throwable {
+        Entity<?> entity = persistentStore.getCoordinator().getModel().getEntity(Employee.class);
+
+        // both decode the rows into the same values
+        List<StoreCacheNode> expected = decodeAll(entity, false);
+        List<StoreCacheNode> actual = decodeAll(entity, true);
+        assertEquals(NUM_ROWS, actual.size());
+        for (int i = 0; i < NUM_ROWS; i++) {
+            assertEquals(expected.get(i).getProperties(), actual.get(i).getProperties());
+        }
+
+        int iterations = 10;
+        double baselineRowsPerSec = measureRowsPerSec(entity, false, iterations);
+        double rowsPerSec = measureRowsPerSec(entity, true, iterations);
+        LOG.info(String.format("Decoded %d rows x %d: %.0f rows/sec by column name, %.0f rows/sec with RowDecoder (%.1fx)",
+                NUM_ROWS, iterations, baselineRowsPerSec, rowsPerSec, rowsPerSec / baselineRowsPerSec));
+    }
+}
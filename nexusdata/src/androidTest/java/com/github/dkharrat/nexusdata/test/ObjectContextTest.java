@@ -4,18 +4,29 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 import android.test.AndroidTestCase;
 
 import com.github.dkharrat.nexusdata.core.ChangedObjectsSet;
+import com.github.dkharrat.nexusdata.core.ExecutorNotificationScheduler;
 import com.github.dkharrat.nexusdata.core.FetchRequest;
+import com.github.dkharrat.nexusdata.core.ImmediateNotificationScheduler;
+import com.github.dkharrat.nexusdata.core.ManagedObject;
+import com.github.dkharrat.nexusdata.core.NotificationScheduler;
 import com.github.dkharrat.nexusdata.core.ObjectContext;
 import com.github.dkharrat.nexusdata.core.ObjectContextNotifier;
 import com.github.dkharrat.nexusdata.core.ObjectContextNotifier.DefaultObjectContextListener;
 import com.github.dkharrat.nexusdata.core.ObjectContextNotifier.ObjectContextListener;
+import com.github.dkharrat.nexusdata.core.ObjectStream;
+import com.github.dkharrat.nexusdata.core.ObjectsChangedNotification;
 import com.github.dkharrat.nexusdata.core.PersistentStore;
 import com.github.dkharrat.nexusdata.core.PersistentStoreCoordinator;
 import com.github.dkharrat.nexusdata.metamodel.Entity;
@@ -249,6 +260,42 @@ public abstract class ObjectContextTest extends AndroidTestCase {
         assertEquals("Mike Dale", employees.get(3).getFullName());
     }
 
+    private static void assertEmployeeIds(List<Employee> employees, int... ids) {
+        assertEquals(ids.length, employees.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], employees.get(i).getId());
+        }
+    }
+
+    public void testFetchWithSortDescriptorOffsetAndLimit() throws Throwable {
+
+        ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
+        createEmployee(context, "John", "B", 1);
+        createEmployee(context, "John", null, 2);
+        createEmployee(context, "John", "A", 3);
+        createEmployee(context, "John", "C", 4);
+        createEmployee(context, "John", null, 5);
+        createEmployee(context, "John", "B", 6);
+        context.save();
+
+        // nulls are ordered before any other value
+        FetchRequest<Employee> fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .sortBy("lastName", true).sortBy("id", true).offset(1).limit(3).build();
+        assertEmployeeIds(mainContext.executeFetchOperation(fetchRequest), 5, 3, 1);
+
+        fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .sortBy("lastName", false).sortBy("id", true).offset(2).limit(3).build();
+        assertEmployeeIds(mainContext.executeFetchOperation(fetchRequest), 6, 3, 2);
+
+        fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .sortBy("lastName", false).sortBy("id", false).limit(2).build();
+        assertEmployeeIds(mainContext.executeFetchOperation(fetchRequest), 4, 6);
+
+        fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .sortBy("id", true).offset(6).limit(3).build();
+        assertEmployeeIds(mainContext.executeFetchOperation(fetchRequest));
+    }
+
     public void testFetchUsingPredicateOfInsertedObjects() throws Throwable {
 
         ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
@@ -263,6 +310,97 @@ public abstract class ObjectContextTest extends AndroidTestCase {
         assertEquals(2, employees.size());
     }
 
+    public void testStreamRefaultsObjectsItMovesPast() throws Throwable {
+
+        ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
+        for (int i = 1; i <= 6; i++) {
+            createEmployee(context, "John", "Smith" + i, i);
+        }
+        context.save();
+
+        FetchRequest<Employee> fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .sortBy("id", true).offset(1).limit(4).build();
+        ObjectStream<Employee> stream = mainContext.stream(fetchRequest, ObjectStream.Retention.REFAULT);
+        List<Integer> ids = new ArrayList<Integer>();
+        List<Employee> employees = new ArrayList<Employee>();
+        try {
+            for (Employee employee : stream) {
+                for (Employee previousEmployee : employees) {
+                    assertTrue(previousEmployee.isFault());
+                }
+                assertFalse(employee.isFault());
+                ids.add(employee.getId());
+                employees.add(employee);
+            }
+        } finally {
+            stream.close();
+        }
+
+        assertEquals(Arrays.asList(2, 3, 4, 5), ids);
+        assertTrue(employees.get(3).isFault());
+        assertEquals("Smith3", employees.get(1).getLastName());
+        assertSame(employees.get(1), mainContext.getExistingObject(employees.get(1).getID()));
+
+        try {
+            stream.iterator();
+            fail("Expected an IllegalStateException for iterating a stream twice");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testStreamUnregistersUnchangedObjects() throws Throwable {
+
+        ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
+        for (int i = 1; i <= 4; i++) {
+            createEmployee(context, "John", "Smith", i);
+        }
+        context.save();
+
+        FetchRequest<Employee> fetchRequest = mainContext.newFetchRequestBuilder(Employee.class).sortBy("id", true).build();
+        ObjectStream<Employee> stream = mainContext.stream(fetchRequest, ObjectStream.Retention.UNREGISTER);
+        Employee changedEmployee = null;
+        int count = 0;
+        while (stream.hasNext()) {
+            Employee employee = stream.next();
+            assertSame(mainContext, employee.getObjectContext());
+            if (employee.getId() == 2) {
+                employee.setFirstName("Mike");
+                changedEmployee = employee;
+            }
+            count++;
+        }
+        stream.close();
+
+        assertEquals(4, count);
+        assertEquals(Collections.<ManagedObject>singleton(changedEmployee), mainContext.getRegisteredObjects());
+    }
+
+    public void testStreamIncludesPendingChanges() throws Throwable {
+
+        ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
+        createEmployee(context, "John", "Smith", 1);
+        Employee deletedEmployee = createEmployee(context, "John", "Smith", 2);
+        createEmployee(context, "John", "Smith", 3);
+        context.save();
+
+        mainContext.delete(mainContext.objectWithID(deletedEmployee.getID()));
+        createEmployee(mainContext, "John", "Smith", 4);
+        createEmployee(mainContext, "John", "Jones", 5);
+
+        FetchRequest<Employee> fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate("lastName == \"Smith\"").sortBy("id", true).build();
+        ObjectStream<Employee> stream = mainContext.stream(fetchRequest);
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Employee employee : stream) {
+            ids.add(employee.getId());
+        }
+        stream.close();
+
+        assertEquals(Arrays.asList(1, 3, 4), ids);
+        assertFalse(stream.hasNext());
+    }
+
     public void testFetchUsingPredicateHavingNullComparison() throws Throwable {
 
         ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
@@ -276,6 +414,208 @@ public abstract class ObjectContextTest extends AndroidTestCase {
         assertEquals(1, employees.size());
     }
 
+    public void testFetchUsingPredicateHavingDateAndStringOrdering() throws Throwable {
+
+        ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
+        createEmployee(context, "John", "Smith", 1000, true, new Date(1000000));
+        createEmployee(context, "Mike", "Jones", 1001, true, new Date(5000000));
+        createEmployee(context, "Adam", "Dale", 1002, true, new Date(9000000));
+        context.save();
+
+        createEmployee(mainContext, "Mark", "Kent", 1003, true, new Date(7000000));
+
+        FetchRequest<Employee> fetchRequest = mainContext.newFetchRequestBuilder(Employee.class).build();
+        fetchRequest.setPredicate(ExpressionBuilder.field("dateOfBirth").gt(new Date(2000000))
+                .and(ExpressionBuilder.field("lastName").gt("Dale")).getPredicate());
+        List<Employee> employees = mainContext.executeFetchOperation(fetchRequest);
+
+        assertEquals(2, employees.size());
+        Set<String> names = new HashSet<String>();
+        for (Employee employee : employees) {
+            names.add(employee.getFullName());
+        }
+        assertTrue(names.contains("Mike Jones"));
+        assertTrue(names.contains("Mark Kent"));
+    }
+
+    public void testFetchUsingInBetweenAndStringMatchingPredicates() throws Throwable {
+
+        ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
+        createEmployee(context, "John", "Smith", 1000);
+        createEmployee(context, "Mike", "Jones", 1001);
+        createEmployee(context, "Adam", "Johnson", 1002);
+        context.save();
+
+        FetchRequest<Employee> fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate("id IN (1000, 1002, 2000)").sortBy("id", true).build();
+        List<Employee> employees = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(2, employees.size());
+        assertEquals("John Smith", employees.get(0).getFullName());
+        assertEquals("Adam Johnson", employees.get(1).getFullName());
+
+        fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate("id BETWEEN 1001 AND 1002").sortBy("id", true).build();
+        employees = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(2, employees.size());
+        assertEquals("Mike Jones", employees.get(0).getFullName());
+
+        fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate("firstName BEGINSWITH \"Jo\" || lastName ENDSWITH \"son\"").sortBy("id", true).build();
+        employees = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(2, employees.size());
+        assertEquals("John Smith", employees.get(0).getFullName());
+        assertEquals("Adam Johnson", employees.get(1).getFullName());
+
+        fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate("lastName LIKE \"j%\" && lastName CONTAINS \"on\"").sortBy("id", true).build();
+        employees = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(2, employees.size());
+        assertEquals("Mike Jones", employees.get(0).getFullName());
+        assertEquals("Adam Johnson", employees.get(1).getFullName());
+    }
+
+    public void testFetchUsingKeyPathThroughToOneRelationship() throws Throwable {
+
+        ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
+        Company google = createCompany(context, "Google");
+        Company microsoft = createCompany(context, "Microsoft");
+        Employee john = createEmployee(context, "John", "Smith", 1000);
+        john.setCompany(google);
+        Employee mike = createEmployee(context, "Mike", "Jones", 1001);
+        mike.setCompany(microsoft);
+        mike.setManager(john);
+        createEmployee(context, "Adam", "Johnson", 1002);
+        context.save();
+
+        FetchRequest<Employee> fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate("company.name == \"Google\"").build();
+        List<Employee> employees = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(1, employees.size());
+        assertEquals("John Smith", employees.get(0).getFullName());
+
+        fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate("company.name == null").build();
+        employees = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(1, employees.size());
+        assertEquals("Adam Johnson", employees.get(0).getFullName());
+
+        fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate("manager.company.name == \"Google\" && company.name BEGINSWITH \"Micro\"").build();
+        employees = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(1, employees.size());
+        assertEquals("Mike Jones", employees.get(0).getFullName());
+    }
+
+    public void testFetchUsingCollectionOperatorsOnToManyRelationship() throws Throwable {
+
+        ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
+        Company google = createCompany(context, "Google");
+        Company microsoft = createCompany(context, "Microsoft");
+        createCompany(context, "Apple");
+        createEmployee(context, "John", "Smith", 1000).setCompany(google);
+        createEmployee(context, "Mike", "Jones", 1001).setCompany(google);
+        createEmployee(context, "Adam", "Johnson", 1002).setCompany(microsoft);
+        context.save();
+
+        FetchRequest<Company> fetchRequest = mainContext.newFetchRequestBuilder(Company.class)
+                .predicate("ANY employees.firstName == \"Mike\"").build();
+        List<Company> companies = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(1, companies.size());
+        assertEquals("Google", companies.get(0).getName());
+
+        fetchRequest = mainContext.newFetchRequestBuilder(Company.class)
+                .predicate("employees.@count > 1").build();
+        companies = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(1, companies.size());
+        assertEquals("Google", companies.get(0).getName());
+
+        fetchRequest = mainContext.newFetchRequestBuilder(Company.class)
+                .predicate("NONE employees.lastName ENDSWITH \"son\"").sortBy("name", true).build();
+        companies = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(2, companies.size());
+        assertEquals("Apple", companies.get(0).getName());
+        assertEquals("Google", companies.get(1).getName());
+
+        fetchRequest = mainContext.newFetchRequestBuilder(Company.class)
+                .predicate("ALL employees.id < 1002 && employees.@count != 0").build();
+        companies = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(1, companies.size());
+        assertEquals("Google", companies.get(0).getName());
+    }
+
+    public void testFetchReusingPredicateTemplateWithDifferentValues() throws Throwable {
+
+        ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
+        Company google = createCompany(context, "Google");
+        createEmployee(context, "John", "Smith", 1000).setCompany(google);
+        createEmployee(context, "Mike", "Jones", 1001).setCompany(google);
+        createEmployee(context, "Adam", "Johnson", 1002);
+        context.save();
+
+        String predicate = "lastName BEGINSWITH $prefix && id IN $ids";
+        Map<String,Object> variables = new HashMap<String,Object>();
+        variables.put("prefix", "J");
+        variables.put("ids", Arrays.asList(1001, 1002));
+        FetchRequest<Employee> fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate(predicate, variables).sortBy("id", true).build();
+        List<Employee> employees = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(2, employees.size());
+        assertEquals("Mike Jones", employees.get(0).getFullName());
+        assertEquals("Adam Johnson", employees.get(1).getFullName());
+
+        // same template, with different values (and a different number of elements in the list)
+        variables.put("prefix", "Sm");
+        variables.put("ids", Arrays.asList(1000, 1001, 1002));
+        fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate(predicate, variables).sortBy("id", true).build();
+        employees = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(1, employees.size());
+        assertEquals("John Smith", employees.get(0).getFullName());
+
+        // re-executing the same request with a different limit
+        fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate("company == $company", Collections.singletonMap("company", mainContext.objectWithID(google.getID())))
+                .sortBy("id", true).limit(1).build();
+        employees = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(1, employees.size());
+        assertEquals("John Smith", employees.get(0).getFullName());
+        fetchRequest.setLimit(2);
+        employees = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(2, employees.size());
+        assertEquals("Mike Jones", employees.get(1).getFullName());
+
+        fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate("company == $company", Collections.singletonMap("company", null)).build();
+        employees = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(1, employees.size());
+        assertEquals("Adam Johnson", employees.get(0).getFullName());
+    }
+
+    public void testFetchComparingValuesOfDifferentTypes() throws Throwable {
+
+        ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
+        createEmployee(context, "John", "Smith", 1000, true, new Date(999000));
+        createEmployee(context, "Mike", "Jones", 1001, false, new Date(2000000));
+        createEmployee(context, "Adam", "Johnson", 1002, true, null);
+        context.save();
+
+        FetchRequest<Employee> fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate("id > 1000.5 && active == true").build();
+        List<Employee> employees = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(1, employees.size());
+        assertEquals("Adam Johnson", employees.get(0).getFullName());
+
+        Map<String,Object> variables = new HashMap<String,Object>();
+        variables.put("from", new Date(999000));
+        variables.put("to", 2000000L);
+        fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate("dateOfBirth BETWEEN $from AND $to", variables).sortBy("dateOfBirth", false).build();
+        employees = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(2, employees.size());
+        assertEquals("Mike Jones", employees.get(0).getFullName());
+        assertEquals("John Smith", employees.get(1).getFullName());
+    }
+
     public void testUpdateExistingObject() throws Throwable {
 
         ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
@@ -612,6 +952,116 @@ public abstract class ObjectContextTest extends AndroidTestCase {
         ObjectContextNotifier.unregisterListener(listener);
     }
 
+    public void testObjectsChangedNotificationIsDeliveredImmediately() throws Throwable {
+        ObjectContext context = new ObjectContext(persistentStore.getCoordinator(), ImmediateNotificationScheduler.INSTANCE);
+        final List<Integer> insertedCounts = new ArrayList<Integer>();
+        ObjectContextListener listener = new DefaultObjectContextListener() {
+            @Override
+            public void onObjectsChanged(ObjectContext context, ObjectsChangedNotification changedObjects) {
+                insertedCounts.add(changedObjects.getInsertedObjects().size());
+            }
+        };
+
+        ObjectContextNotifier.registerListener(context, listener);
+        try {
+            createEmployee(context, "John", "Smith", 1000);
+            assertEquals(Arrays.asList(1), insertedCounts);
+
+            createEmployee(context, "Jane", "Smith", 1001);
+            assertEquals(Arrays.asList(1, 1), insertedCounts);
+        } finally {
+            ObjectContextNotifier.unregisterListener(listener);
+        }
+    }
+
+    public void testObjectsChangedNotificationsAreCoalescedUntilDelivered() throws Throwable {
+        final List<Runnable> pendingDeliveries = new ArrayList<Runnable>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pendingDeliveries.add(command);
+            }
+        };
+        ObjectContext context = new ObjectContext(persistentStore.getCoordinator(), new ExecutorNotificationScheduler(executor));
+        final List<Integer> insertedCounts = new ArrayList<Integer>();
+        ObjectContextListener listener = new DefaultObjectContextListener() {
+            @Override
+            public void onObjectsChanged(ObjectContext context, ObjectsChangedNotification changedObjects) {
+                insertedCounts.add(changedObjects.getInsertedObjects().size());
+            }
+        };
+
+        ObjectContextNotifier.registerListener(context, listener);
+        try {
+            createEmployee(context, "John", "Smith", 1000);
+            createEmployee(context, "Jane", "Smith", 1001);
+            createEmployee(context, "Jim", "Smith", 1002);
+            assertEquals(1, pendingDeliveries.size());
+            assertTrue(insertedCounts.isEmpty());
+
+            pendingDeliveries.remove(0).run();
+            assertEquals(Arrays.asList(3), insertedCounts);
+
+            // changes made after a delivery ran are delivered separately
+            createEmployee(context, "Joe", "Smith", 1003);
+            assertEquals(1, pendingDeliveries.size());
+            pendingDeliveries.remove(0).run();
+            assertEquals(Arrays.asList(3, 1), insertedCounts);
+        } finally {
+            ObjectContextNotifier.unregisterListener(listener);
+        }
+    }
+
+    public void testObjectsChangedDuringDeliveryAreDeliveredNext() throws Throwable {
+        final List<Runnable> pendingDeliveries = new ArrayList<Runnable>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pendingDeliveries.add(command);
+            }
+        };
+        final ObjectContext context = new ObjectContext(persistentStore.getCoordinator(), new ExecutorNotificationScheduler(executor));
+        final List<Integer> insertedCounts = new ArrayList<Integer>();
+        ObjectContextListener listener = new DefaultObjectContextListener() {
+            @Override
+            public void onObjectsChanged(ObjectContext changedContext, ObjectsChangedNotification changedObjects) {
+                insertedCounts.add(changedObjects.getInsertedObjects().size());
+                if (insertedCounts.size() == 1) {
+                    // a change made while the notification is being delivered, as another thread could
+                    createEmployee(context, "Joe", "Smith", 1001);
+                }
+            }
+        };
+
+        ObjectContextNotifier.registerListener(context, listener);
+        try {
+            createEmployee(context, "John", "Smith", 1000);
+            pendingDeliveries.remove(0).run();
+            assertEquals(Arrays.asList(1), insertedCounts);
+
+            assertEquals(1, pendingDeliveries.size());
+            pendingDeliveries.remove(0).run();
+            assertEquals(Arrays.asList(1, 1), insertedCounts);
+        } finally {
+            ObjectContextNotifier.unregisterListener(listener);
+        }
+    }
+
+    public void testDefaultSchedulerWithoutEventLoopUsesSharedThread() throws Throwable {
+        // a new thread has no event loop, and the stubs of android.jar in a local JVM don't provide one either
+        final AtomicReference<NotificationScheduler> scheduler = new AtomicReference<NotificationScheduler>();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                scheduler.set(new ObjectContext(persistentStore.getCoordinator()).getNotificationScheduler());
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertSame(ExecutorNotificationScheduler.getShared(), scheduler.get());
+    }
+
     static private void assertEmployeesEqual(Employee expected, Employee actual) {
         assertEquals(expected.getFirstName(), actual.getFirstName());
         assertEquals(expected.getLastName(), actual.getLastName());
@@ -624,7 +1074,7 @@ public abstract class ObjectContextTest extends AndroidTestCase {
         }
     }
 
-    private Employee createEmployee(ObjectContext context, String firstName, String lastName, int id, boolean active, Date dateOfBirth) {
+    Employee createEmployee(ObjectContext context, String firstName, String lastName, int id, boolean active, Date dateOfBirth) {
         Employee employee = context.newObject(Employee.class);
         employee.setFirstName(firstName);
         employee.setLastName(lastName);
@@ -635,11 +1085,11 @@ public abstract class ObjectContextTest extends AndroidTestCase {
         return employee;
     }
 
-    private Employee createEmployee(ObjectContext context, String firstName, String lastName, int id) {
+    Employee createEmployee(ObjectContext context, String firstName, String lastName, int id) {
         return createEmployee(context, firstName, lastName, id, true, null);
     }
 
-    private Contractor createContractor(ObjectContext context, String firstName, String lastName, int id) {
+    Contractor createContractor(ObjectContext context, String firstName, String lastName, int id) {
         Contractor employee = context.newObject(Contractor.class);
         employee.setFirstName(firstName);
         employee.setLastName(lastName);
@@ -650,7 +1100,7 @@ public abstract class ObjectContextTest extends AndroidTestCase {
         return employee;
     }
 
-    private Company createCompany(ObjectContext context, String name) {
+    Company createCompany(ObjectContext context, String name) {
         Company company = context.newObject(Company.class);
         company.setName(name);
 
@@ -0,0 +1,126 @@
+package com.github.dkharrat.nexusdata.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.dkharrat.nexusdata.core.ObjectContext;
+import com.github.dkharrat.nexusdata.core.PersistentStore;
+import com.github.dkharrat.nexusdata.store.BinaryFilePersistentStore;
+
+public class ObjectContextWithBinaryFileStoreTest extends ObjectContextWithFileStoreTest {
+
+    @Override
+    protected File getStoreLocation() {
+        return getContext().getDatabasePath("binary-test");
+    }
+
+    @Override
+    protected PersistentStore openStore(File location) {
+        return new BinaryFilePersistentStore(location);
+    }
+
+    @Override
+    protected void closeStore() {
+        ((BinaryFilePersistentStore) persistentStore).close();
+    }
+
+    @Override
+    protected void deleteStoreFiles(File file) {
+        file.delete();
+        getDeltaFile(file).delete();
+    }
+
+    private static File getDeltaFile(File file) {
+        return new File(file.getPath() + "-delta");
+    }
+
+    @Override
+    protected void saveAndCrash(ObjectContext context) throws Exception {
+        context.save();
+
+        // cut off the save's commit record
+        RandomAccessFile file = new RandomAccessFile(getDeltaFile(getStoreLocation()), "rw");
+        try {
+            file.setLength(file.length() - 1);
+        } finally {
+            file.close();
+        }
+    }
+
+    public void testCheckpointFoldsDeltaLogIntoSnapshot() throws Throwable {
+        File deltaFile = getDeltaFile(getStoreLocation());
+        long emptyDeltaSize = deltaFile.length();
+        Company google = createCompany(mainContext, "Google");
+        Employee john = createEmployee(mainContext, "John", "Smith", 1000);
+        john.setCompany(google);
+        mainContext.save();
+
+        // grow the delta log until the store checkpoints by itself
+        long previousDeltaSize = deltaFile.length();
+        boolean didCheckpoint = false;
+        for (int i = 0; i < 2000 && !didCheckpoint; i++) {
+            john.setLastName("Smith " + i);
+            mainContext.save();
+            didCheckpoint = deltaFile.length() < previousDeltaSize;
+            previousDeltaSize = deltaFile.length();
+        }
+        assertTrue(didCheckpoint);
+
+        john.setLastName("Doe");
+        mainContext.save();
+        ((BinaryFilePersistentStore) persistentStore).save();
+        assertEquals(emptyDeltaSize, deltaFile.length());
+
+        ObjectContext context = reopenStore();
+        List<Employee> employees = context.findAll(Employee.class);
+        assertEquals(1, employees.size());
+        assertEquals("Doe", employees.get(0).getLastName());
+        assertEquals("Google", employees.get(0).getCompany().getName());
+    }
+
+    public void testContextSavesAndStoreSavesDoNotDeadlock() throws Throwable {
+        final BinaryFilePersistentStore store = (BinaryFilePersistentStore) persistentStore;
+        final Employee john = createEmployee(mainContext, "John", "Smith", 1000);
+        mainContext.save();
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread contextSaves = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 300; i++) {
+                        john.setLastName("Smith " + i);
+                        mainContext.save();
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        Thread storeSaves = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 300; i++) {
+                        store.save();
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        contextSaves.setDaemon(true);
+        storeSaves.setDaemon(true);
+        contextSaves.start();
+        storeSaves.start();
+
+        contextSaves.join(30000);
+        storeSaves.join(30000);
+        assertFalse("Saves deadlocked", contextSaves.isAlive() || storeSaves.isAlive());
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+}
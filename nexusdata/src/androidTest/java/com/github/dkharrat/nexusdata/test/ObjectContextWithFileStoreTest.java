@@ -0,0 +1,133 @@
+package com.github.dkharrat.nexusdata.test;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+
+import com.github.dkharrat.nexusdata.core.ObjectContext;
+import com.github.dkharrat.nexusdata.core.PersistentStore;
+import com.github.dkharrat.nexusdata.core.PersistentStoreCoordinator;
+
+/**
+ * Tests of the stores that keep their objects in files, which are reloaded by opening a new store at the same location.
+ */
+public abstract class ObjectContextWithFileStoreTest extends ObjectContextTest {
+
+    /**
+     * Returns the file or directory of the store used by each test.
+     */
+    protected abstract File getStoreLocation();
+
+    /**
+     * Creates a store that loads the files at the specified location.
+     */
+    protected abstract PersistentStore openStore(File location);
+
+    /**
+     * Deletes the files of the store at the specified location.
+     */
+    protected abstract void deleteStoreFiles(File location);
+
+    /**
+     * Saves the changes of a context, and then leaves the files of the store as if the process crashed while the save
+     * was being written.
+     */
+    protected abstract void saveAndCrash(ObjectContext context) throws Exception;
+
+    /**
+     * Closes the current store, if it keeps any files open. Closing a closed store has no effect.
+     */
+    protected void closeStore() {
+    }
+
+    @Override
+    protected PersistentStore newPersistentStore() {
+        File location = getStoreLocation();
+        deleteStoreFiles(location);
+        return openStore(location);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        closeStore();
+        deleteStoreFiles(getStoreLocation());
+        super.tearDown();
+    }
+
+    protected ObjectContext reopenStore() {
+        closeStore();
+        persistentStore = openStore(getStoreLocation());
+        PersistentStoreCoordinator coordinator = new PersistentStoreCoordinator(model);
+        coordinator.addStore(persistentStore);
+        return new ObjectContext(coordinator);
+    }
+
+    public void testSavedChangesAreLoadedWhenReopened() throws Throwable {
+        Company google = createCompany(mainContext, "Google");
+        Employee john = createEmployee(mainContext, "John", "Smith", 1000);
+        Employee mike = createEmployee(mainContext, "Mike", "Jones", 1001);
+        john.setCompany(google);
+        mike.setCompany(google);
+        mainContext.save();
+
+        john.setLastName("Doe");
+        mainContext.delete(mike);
+        mainContext.save();
+
+        UUID uuid = persistentStore.getUuid();
+        ObjectContext context = reopenStore();
+        assertEquals(uuid, persistentStore.getUuid());
+        List<Employee> employees = context.findAll(Employee.class);
+        assertEquals(1, employees.size());
+        assertEquals("Doe", employees.get(0).getLastName());
+        assertEquals(1000, employees.get(0).getId());
+        assertEquals("Google", employees.get(0).getCompany().getName());
+        assertEquals(1, employees.get(0).getCompany().getEmployees().size());
+
+        // IDs of the reopened store continue after the ones used before
+        Employee jane = createEmployee(context, "Jane", "Smith", 1002);
+        context.save();
+        assertFalse(jane.getID().equals(john.getID()));
+        assertFalse(jane.getID().equals(mike.getID()));
+    }
+
+    public void testIncompleteSaveIsDiscardedWhenReopened() throws Throwable {
+        createEmployee(mainContext, "John", "Smith", 1000);
+        mainContext.save();
+        createEmployee(mainContext, "Mike", "Jones", 1001);
+        saveAndCrash(mainContext);
+
+        ObjectContext context = reopenStore();
+        List<Employee> employees = context.findAll(Employee.class);
+        assertEquals(1, employees.size());
+        assertEquals("John", employees.get(0).getFirstName());
+
+        // the store can be saved to after discarding the incomplete save
+        createEmployee(context, "Jane", "Doe", 1002);
+        context.save();
+        context = reopenStore();
+        assertEquals(2, context.findAll(Employee.class).size());
+    }
+
+    public void testObjectDeletedFromTwoContextsIsSaved() throws Throwable {
+        createCompany(mainContext, "Google");
+        createCompany(mainContext, "Microsoft");
+        mainContext.save();
+
+        ObjectContext context2 = new ObjectContext(persistentStore.getCoordinator());
+        Company google = mainContext.findAll(Company.class).get(0);
+        String name = google.getName();
+        Company google2 = (Company) context2.getExistingObject(google.getID());
+        mainContext.delete(google);
+        mainContext.save();
+
+        // the object was already deleted by the other context
+        context2.delete(google2);
+        context2.save();
+
+        ObjectContext context = reopenStore();
+        List<Company> companies = context.findAll(Company.class);
+        assertEquals(1, companies.size());
+        assertFalse(name.equals(companies.get(0).getName()));
+    }
+}
@@ -1,10 +1,20 @@
 package com.github.dkharrat.nexusdata.test;
 
+import com.github.dkharrat.nexusdata.core.AtomicStore;
+import com.github.dkharrat.nexusdata.core.FetchRequest;
+import com.github.dkharrat.nexusdata.core.ManagedObject;
+import com.github.dkharrat.nexusdata.core.ObjectContext;
 import com.github.dkharrat.nexusdata.core.PersistentStore;
+import com.github.dkharrat.nexusdata.metamodel.Entity;
 import com.github.dkharrat.nexusdata.store.InMemoryPersistentStore;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ObjectContextWithInMemoryStoreTest extends ObjectContextTest {
 
@@ -12,4 +22,150 @@ public class ObjectContextWithInMemoryStoreTest extends ObjectContextTest {
     protected PersistentStore newPersistentStore() {
         return new InMemoryPersistentStore();
     }
+
+    private List<Employee> fetchEmployees(String predicate) {
+        FetchRequest<Employee> fetchRequest = mainContext.newFetchRequestBuilder(Employee.class)
+                .predicate(predicate).sortBy("id", true).build();
+        return mainContext.executeFetchOperation(fetchRequest);
+    }
+
+    private static void assertIds(List<Employee> employees, int... ids) {
+        assertEquals(ids.length, employees.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], employees.get(i).getId());
+        }
+    }
+
+    public void testFetchWithAttributeIndexes() throws Throwable {
+        Entity<Employee> entity = model.getEntity(Employee.class);
+        AtomicStore store = (AtomicStore) persistentStore;
+        store.addIndex(entity.getAttribute("id"), AtomicStore.IndexType.HASH);
+
+        createEmployee(mainContext, "John", "Smith", 1000, true, new Date(1000));
+        createEmployee(mainContext, "Mike", "Jones", 1001, true, new Date(2000));
+        createEmployee(mainContext, "Jane", "Smith", 1002, false, new Date(3000));
+        createContractor(mainContext, "Bob", "Brown", 1003);
+        mainContext.save();
+
+        // indexes added after objects are saved are built from the objects in the store
+        store.addIndex(entity.getAttribute("dateOfBirth"), AtomicStore.IndexType.SORTED);
+
+        assertIds(fetchEmployees("id == 1001"), 1001);
+        assertIds(fetchEmployees("1003 == id"), 1003);
+        assertIds(fetchEmployees("id == 1001.0"), 1001);
+        assertIds(fetchEmployees("id == 1001.5"));
+        assertIds(fetchEmployees("id IN (1000, 1003, 2000)"), 1000, 1003);
+        assertIds(fetchEmployees("id > 1000"), 1001, 1002, 1003);
+        assertIds(fetchEmployees("lastName == \"Smith\""), 1000, 1002);
+        assertIds(fetchEmployees("lastName > \"Jones\""), 1000, 1002);
+        assertIds(fetchEmployees("\"Jones\" >= lastName"), 1001, 1003);
+        assertIds(fetchEmployees("lastName BETWEEN \"C\" AND \"K\""), 1001);
+        assertIds(fetchEmployees("lastName == \"Smith\" && active == true"), 1000);
+        assertIds(fetchEmployees("lastName == \"Smith\" && id < 1002"), 1000);
+        assertIds(fetchEmployees("lastName == \"Jones\" || id == 1002"), 1001, 1002);
+        assertIds(fetchEmployees("dateOfBirth < 3000"), 1000, 1001);
+        assertIds(fetchEmployees("dateOfBirth >= 2000 && id < 1003"), 1001, 1002);
+
+        // indexes are kept up to date as objects are updated and deleted
+        List<Employee> smiths = fetchEmployees("lastName == \"Smith\"");
+        smiths.get(0).setLastName("Doe");
+        mainContext.delete(smiths.get(1));
+        mainContext.save();
+        assertIds(fetchEmployees("lastName == \"Smith\""));
+        assertIds(fetchEmployees("lastName == \"Doe\""), 1000);
+        assertIds(fetchEmployees("id >= 1002"), 1003);
+    }
+
+    public void testFetchOnlyRegistersMatchingObjects() throws Throwable {
+        Company google = createCompany(mainContext, "Google");
+        Company microsoft = createCompany(mainContext, "Microsoft");
+        for (int i = 0; i < 20; i++) {
+            Employee employee = createEmployee(mainContext, "John", "Smith " + i, i);
+            employee.setCompany(i % 2 == 0 ? google : microsoft);
+        }
+        mainContext.save();
+
+        ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
+        FetchRequest<Employee> fetchRequest = context.newFetchRequestBuilder(Employee.class)
+                .predicate("company.name == \"Google\" && id >= 10").sortBy("lastName", false).limit(2).build();
+        List<Employee> employees = context.executeFetchOperation(fetchRequest);
+
+        assertEquals(2, employees.size());
+        assertEquals("Smith 18", employees.get(0).getLastName());
+        assertEquals("Smith 16", employees.get(1).getLastName());
+
+        // the employees that didn't match were not registered (the company is registered as a fault of the matches)
+        int registeredEmployees = 0;
+        for (ManagedObject object : context.getRegisteredObjects()) {
+            if (object instanceof Employee) {
+                registeredEmployees++;
+            }
+        }
+        assertEquals(2, registeredEmployees);
+
+        FetchRequest<Company> companyRequest = context.newFetchRequestBuilder(Company.class)
+                .predicate("ANY employees.lastName == \"Smith 3\"").build();
+        List<Company> companies = context.executeFetchOperation(companyRequest);
+        assertEquals(1, companies.size());
+        assertEquals("Microsoft", companies.get(0).getName());
+    }
+
+    public void testFetchesDuringSavesSeeCompleteSaves() throws Throwable {
+        List<Employee> employees = new ArrayList<Employee>();
+        for (int i = 0; i < 50; i++) {
+            employees.add(createEmployee(mainContext, "John", "Smith", i));
+        }
+        mainContext.save();
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!done.get()) {
+                        ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
+                        List<Employee> fetched = context.findAll(Employee.class);
+
+                        // each save renames all employees, and either inserts or deletes 10 of them
+                        Set<String> lastNames = new HashSet<String>();
+                        for (Employee employee : fetched) {
+                            lastNames.add(employee.getLastName());
+                        }
+                        if ((fetched.size() != 50 && fetched.size() != 60) || lastNames.size() != 1) {
+                            throw new AssertionError("Fetched a partially saved store: " + fetched.size() + " employees named " + lastNames);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        reader.start();
+
+        List<Employee> extraEmployees = new ArrayList<Employee>();
+        for (int i = 0; i < 200 && failure.get() == null; i++) {
+            String lastName = "Smith " + i;
+            for (Employee employee : employees) {
+                employee.setLastName(lastName);
+            }
+            if (extraEmployees.isEmpty()) {
+                for (int j = 0; j < 10; j++) {
+                    extraEmployees.add(createEmployee(mainContext, "Jane", lastName, 100 + j));
+                }
+            } else {
+                for (Employee employee : extraEmployees) {
+                    mainContext.delete(employee);
+                }
+                extraEmployees.clear();
+            }
+            mainContext.save();
+        }
+
+        done.set(true);
+        reader.join();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
 }
@@ -0,0 +1,98 @@
+package com.github.dkharrat.nexusdata.test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Date;
+
+import com.github.dkharrat.nexusdata.core.ObjectContext;
+import com.github.dkharrat.nexusdata.core.PersistentStore;
+import com.github.dkharrat.nexusdata.core.PersistentStoreCoordinator;
+import com.github.dkharrat.nexusdata.store.JdbcSqlPersistentStore;
+import com.github.dkharrat.nexusdata.store.ValueEncoding;
+
+public class ObjectContextWithJdbcStoreTest extends ObjectContextTest {
+
+    @Override
+    protected PersistentStore newPersistentStore() {
+        return new JdbcSqlPersistentStore(getContext().getDatabasePath("jdbc-test.db"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ((JdbcSqlPersistentStore) persistentStore).close();
+        super.tearDown();
+    }
+
+    public void testMigrateValueEncodingKeepsUnconvertibleValues() throws Throwable {
+        File dbFile = getContext().getDatabasePath("jdbc-encoding.db");
+        String url = "jdbc:sqlite:" + dbFile.getPath();
+        try {
+            JdbcSqlPersistentStore textStore = new JdbcSqlPersistentStore(dbFile);
+            textStore.setValueEncoding(ValueEncoding.TEXT);
+            PersistentStoreCoordinator coordinator = new PersistentStoreCoordinator(model);
+            coordinator.addStore(textStore);
+            ObjectContext context = new ObjectContext(coordinator);
+            createEmployee(context, "John", "Smith", 1000, true, new Date(999000));
+            context.save();
+            textStore.close();
+
+            // a hand-edited value that the migration can't convert
+            Connection connection = DriverManager.getConnection(url);
+            String column;
+            try {
+                column = getColumnName(connection, "Person", "dateOfBirth_");
+                Statement statement = connection.createStatement();
+                statement.executeUpdate("UPDATE Person SET " + column + " = 'unknown'");
+                statement.close();
+            } finally {
+                connection.close();
+            }
+
+            JdbcSqlPersistentStore nativeStore = new JdbcSqlPersistentStore(dbFile);
+            coordinator = new PersistentStoreCoordinator(model);
+            coordinator.addStore(nativeStore);
+            context = new ObjectContext(coordinator);
+            try {
+                // reading the value fails rather than returning null or a wrong date
+                context.findAll(Employee.class);
+                fail("Expected the unconverted value to fail decoding");
+            } catch (RuntimeException e) {
+                // expected
+            } finally {
+                nativeStore.close();
+            }
+
+            connection = DriverManager.getConnection(url);
+            try {
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("SELECT " + column + " FROM Person");
+                assertTrue(resultSet.next());
+                assertEquals("unknown", resultSet.getString(1));
+                statement.close();
+            } finally {
+                connection.close();
+            }
+        } finally {
+            dbFile.delete();
+        }
+    }
+
+    private static String getColumnName(Connection connection, String table, String prefix) throws Exception {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery("PRAGMA table_info(" + table + ")");
+            while (resultSet.next()) {
+                String name = resultSet.getString("name");
+                if (name.startsWith(prefix)) {
+                    return name;
+                }
+            }
+        } finally {
+            statement.close();
+        }
+        throw new AssertionError("No column starting with " + prefix);
+    }
+}
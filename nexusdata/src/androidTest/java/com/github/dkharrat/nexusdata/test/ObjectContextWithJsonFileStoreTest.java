@@ -0,0 +1,135 @@
+package com.github.dkharrat.nexusdata.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import com.github.dkharrat.nexusdata.core.FetchRequest;
+import com.github.dkharrat.nexusdata.core.ObjectContext;
+import com.github.dkharrat.nexusdata.core.PersistentStore;
+import com.github.dkharrat.nexusdata.store.JsonFilePersistentStore;
+
+public class ObjectContextWithJsonFileStoreTest extends ObjectContextWithFileStoreTest {
+
+    @Override
+    protected File getStoreLocation() {
+        return getContext().getDatabasePath("json-test");
+    }
+
+    @Override
+    protected PersistentStore openStore(File location) {
+        return new JsonFilePersistentStore(location);
+    }
+
+    @Override
+    protected void deleteStoreFiles(File file) {
+        file.delete();
+        getTempFile(file).delete();
+    }
+
+    private static File getTempFile(File file) {
+        return new File(file.getPath() + "-tmp");
+    }
+
+    @Override
+    protected void saveAndCrash(ObjectContext context) throws Exception {
+        // a save replaces the file only once it's completely written, so a crash leaves the previous file and part of
+        // the new one in the temporary file
+        File file = getStoreLocation();
+        byte[] previousContents = readFile(file);
+        context.save();
+        byte[] contents = readFile(file);
+        writeFile(getTempFile(file), Arrays.copyOf(contents, contents.length / 2));
+        writeFile(file, previousContents);
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            byte[] contents = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(contents);
+            return contents;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static void writeFile(File file, byte[] contents) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeStoreFile(String contents) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(getStoreLocation()), "UTF-8");
+        try {
+            writer.write(contents);
+        } finally {
+            writer.close();
+        }
+    }
+
+    public void testLoadsHandWrittenFile() throws Throwable {
+        writeStoreFile("{\"entities\": {"
+                + "\"Company\": [{\"@id\": 1, \"name\": \"Google\", \"employees\": [2, 3]}],"
+                + "\"Employee\": ["
+                + "  {\"@id\": 2, \"firstName\": \"John\", \"lastName\": \"Smith\", \"id\": 1000, \"company\": 1},"
+                + "  {\"@id\": 3, \"firstName\": \"Mike\", \"id\": 1001, \"company\": 1, \"nickname\": \"unknown\"}"
+                + "],"
+                + "\"Spaceship\": [{\"@id\": 4}]"
+                + "}}");
+
+        ObjectContext context = reopenStore();
+        FetchRequest<Employee> fetchRequest = context.newFetchRequestBuilder(Employee.class).sortBy("id", true).build();
+        List<Employee> employees = context.executeFetchOperation(fetchRequest);
+        assertEquals(2, employees.size());
+        assertEquals("Smith", employees.get(0).getLastName());
+        assertNull(employees.get(1).getLastName());
+        assertEquals("Google", employees.get(1).getCompany().getName());
+        assertEquals(2, employees.get(0).getCompany().getEmployees().size());
+
+        // new objects don't reuse the IDs in the file
+        Employee jane = createEmployee(context, "Jane", "Doe", 1002);
+        context.save();
+        for (Employee employee : employees) {
+            assertFalse(jane.getID().equals(employee.getID()));
+        }
+    }
+
+    public void testFloatsAreWrittenWithoutWidening() throws Throwable {
+        Employee john = createEmployee(mainContext, "John", "Smith", 1000);
+        john.setHeightInCm(0.1f);
+        mainContext.save();
+
+        String contents = new String(readFile(getStoreLocation()), "UTF-8");
+        assertTrue(contents, contents.contains("\"heightInCm\":0.1,"));
+
+        ObjectContext context = reopenStore();
+        assertEquals(0.1f, context.findAll(Employee.class).get(0).getHeightInCm());
+    }
+
+    public void testFileOfAnotherModelVersionIsDiscarded() throws Throwable {
+        UUID uuid = UUID.randomUUID();
+        writeStoreFile("{\"modelVersion\": " + (model.getVersion() + 1) + ", \"uuid\": \"" + uuid + "\", \"entities\": {"
+                + "\"Employee\": [{\"@id\": 1, \"firstName\": \"John\", \"id\": 1000}]"
+                + "}}");
+
+        ObjectContext context = reopenStore();
+        assertTrue(context.findAll(Employee.class).isEmpty());
+        UUID newUuid = persistentStore.getUuid();
+        assertFalse(uuid.equals(newUuid));
+
+        // the file is replaced right away, so the store keeps its new UUID when reopened
+        reopenStore();
+        assertEquals(newUuid, persistentStore.getUuid());
+    }
+}
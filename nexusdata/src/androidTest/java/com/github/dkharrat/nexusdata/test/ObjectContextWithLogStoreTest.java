@@ -0,0 +1,148 @@
+package com.github.dkharrat.nexusdata.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.dkharrat.nexusdata.core.FetchRequest;
+import com.github.dkharrat.nexusdata.core.ManagedObject;
+import com.github.dkharrat.nexusdata.core.ObjectContext;
+import com.github.dkharrat.nexusdata.core.PersistentStore;
+import com.github.dkharrat.nexusdata.store.LogStructuredPersistentStore;
+
+public class ObjectContextWithLogStoreTest extends ObjectContextWithFileStoreTest {
+
+    private int segmentSize = LogStructuredPersistentStore.DEFAULT_SEGMENT_SIZE;
+
+    @Override
+    protected File getStoreLocation() {
+        return getContext().getDatabasePath("log-test");
+    }
+
+    @Override
+    protected PersistentStore openStore(File location) {
+        LogStructuredPersistentStore store = new LogStructuredPersistentStore(location);
+        store.setSegmentSize(segmentSize);
+        return store;
+    }
+
+    @Override
+    protected void closeStore() {
+        ((LogStructuredPersistentStore) persistentStore).close();
+    }
+
+    @Override
+    protected void deleteStoreFiles(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Override
+    protected void saveAndCrash(ObjectContext context) throws Exception {
+        context.save();
+
+        // corrupt the last byte of the save's commit record
+        File segmentFile = getStoreLocation().listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(segmentFile, "rw");
+        try {
+            long position = 0;
+            for (long i = file.length() - 1; i >= 0; i--) {
+                file.seek(i);
+                if (file.read() != 0) {
+                    position = i;
+                    break;
+                }
+            }
+            file.seek(position);
+            file.write(0);
+        } finally {
+            file.close();
+        }
+    }
+
+    public void testFetchOnlyRegistersReturnedObjects() throws Throwable {
+        Company google = createCompany(mainContext, "Google");
+        Company microsoft = createCompany(mainContext, "Microsoft");
+        for (int i = 0; i < 20; i++) {
+            Employee employee = createEmployee(mainContext, "John", "Smith " + i, i);
+            employee.setCompany(i % 2 == 0 ? google : microsoft);
+        }
+        mainContext.save();
+
+        ObjectContext context = reopenStore();
+        FetchRequest<Employee> fetchRequest = context.newFetchRequestBuilder(Employee.class)
+                .predicate("company.name == \"Google\" && id >= 10").sortBy("lastName", false).limit(2).build();
+        List<Employee> employees = context.executeFetchOperation(fetchRequest);
+
+        assertEquals(2, employees.size());
+        assertEquals("Smith 18", employees.get(0).getLastName());
+        assertEquals("Smith 16", employees.get(1).getLastName());
+
+        // the predicate was evaluated against the stored records, so the employees that didn't match were not registered
+        int registeredEmployees = 0;
+        for (ManagedObject object : context.getRegisteredObjects()) {
+            if (object instanceof Employee) {
+                registeredEmployees++;
+            }
+        }
+        assertEquals(2, registeredEmployees);
+
+        // to-many relationships are read from the index of their inverse
+        FetchRequest<Company> companyRequest = context.newFetchRequestBuilder(Company.class)
+                .predicate("ANY employees.lastName == \"Smith 3\"").build();
+        List<Company> companies = context.executeFetchOperation(companyRequest);
+        assertEquals(1, companies.size());
+        assertEquals("Microsoft", companies.get(0).getName());
+    }
+
+    public void testCompactionKeepsCurrentRecords() throws Throwable {
+        // use small segments, so that the log spans several segments
+        closeStore();
+        deleteStoreFiles(getStoreLocation());
+        segmentSize = 1024;
+        ObjectContext context = reopenStore();
+        LogStructuredPersistentStore store = (LogStructuredPersistentStore) persistentStore;
+
+        Company google = createCompany(context, "Google");
+        List<Employee> employees = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Employee employee = createEmployee(context, "John", "Smith", i);
+            employee.setCompany(google);
+            employees.add(employee);
+        }
+        context.save();
+
+        // fill a few segments with updates and deletes, leaving mostly dead records behind
+        for (int round = 0; round < 10; round++) {
+            for (Employee employee : employees) {
+                employee.setLastName("Smith " + round);
+            }
+            context.save();
+        }
+        for (int i = 10; i < 20; i++) {
+            context.delete(employees.get(i));
+        }
+        context.save();
+
+        store.compact();
+        context = reopenStore();
+
+        // only the segments written by the compaction are left
+        assertTrue(getStoreLocation().listFiles().length <= 3);
+
+        FetchRequest<Employee> fetchRequest = context.newFetchRequestBuilder(Employee.class).sortBy("id", true).build();
+        List<Employee> reloadedEmployees = context.executeFetchOperation(fetchRequest);
+        assertEquals(10, reloadedEmployees.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, reloadedEmployees.get(i).getId());
+            assertEquals("Smith 9", reloadedEmployees.get(i).getLastName());
+        }
+        assertEquals(10, reloadedEmployees.get(0).getCompany().getEmployees().size());
+    }
+}
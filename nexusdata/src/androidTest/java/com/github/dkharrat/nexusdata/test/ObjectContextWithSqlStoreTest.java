@@ -1,7 +1,20 @@
 package com.github.dkharrat.nexusdata.test;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.github.dkharrat.nexusdata.core.FetchRequest;
+import com.github.dkharrat.nexusdata.core.ObjectContext;
+import com.github.dkharrat.nexusdata.core.ObjectID;
 import com.github.dkharrat.nexusdata.core.PersistentStore;
+import com.github.dkharrat.nexusdata.core.PersistentStoreCoordinator;
 import com.github.dkharrat.nexusdata.store.AndroidSqlPersistentStore;
+import com.github.dkharrat.nexusdata.store.ValueEncoding;
 
 public class ObjectContextWithSqlStoreTest extends ObjectContextTest {
 
@@ -10,4 +23,126 @@ public class ObjectContextWithSqlStoreTest extends ObjectContextTest {
         return new AndroidSqlPersistentStore(getContext(), getContext().getDatabasePath("test.db"));
     }
 
+    public void testSlowQueryLogging() throws Throwable {
+        AndroidSqlPersistentStore store = (AndroidSqlPersistentStore) persistentStore;
+        assertTrue(store.getSlowQueryThreshold() < 0);
+
+        // log every statement, to check that each kind of statement still works while it's logged (the logged entries
+        // are checked by SlowQueryLogTest)
+        store.setSlowQueryThreshold(0);
+        assertEquals(0, store.getSlowQueryThreshold());
+
+        ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
+        Company google = createCompany(context, "Google");
+        Employee employee = createEmployee(context, "John", "Smith", 1000);
+        employee.setCompany(google);
+        context.save();
+
+        employee.setLastName("Jones");
+        context.save();
+
+        FetchRequest<Company> fetchRequest = mainContext.newFetchRequestBuilder(Company.class)
+                .predicate("ANY employees.lastName == \"Jones\"").build();
+        List<Company> companies = mainContext.executeFetchOperation(fetchRequest);
+        assertEquals(1, companies.size());
+        assertEquals(1, companies.get(0).getEmployees().size());
+
+        context.delete(employee);
+        context.save();
+
+        store.setSlowQueryThreshold(-1);
+        assertTrue(store.getSlowQueryThreshold() < 0);
+    }
+
+    public void testMigrateValueEncoding() throws Throwable {
+        File dbFile = getContext().getDatabasePath("encoding.db");
+        try {
+            // create a database with the text encoding of earlier versions
+            AndroidSqlPersistentStore textStore = new AndroidSqlPersistentStore(getContext(), dbFile);
+            textStore.setValueEncoding(ValueEncoding.TEXT);
+            PersistentStoreCoordinator coordinator = new PersistentStoreCoordinator(model);
+            coordinator.addStore(textStore);
+            ObjectContext context = new ObjectContext(coordinator);
+            createEmployee(context, "John", "Smith", 1000, true, new Date(999000));
+            createEmployee(context, "Mike", "Jones", 1001, false, new Date(2000000));
+            context.save();
+
+            // re-opening it with the native encoding migrates the stored values
+            AndroidSqlPersistentStore nativeStore = new AndroidSqlPersistentStore(getContext(), dbFile);
+            assertEquals(ValueEncoding.NATIVE, nativeStore.getValueEncoding());
+            coordinator = new PersistentStoreCoordinator(model);
+            coordinator.addStore(nativeStore);
+            context = new ObjectContext(coordinator);
+
+            FetchRequest<Employee> fetchRequest = context.newFetchRequestBuilder(Employee.class)
+                    .predicate("dateOfBirth > $date", Collections.singletonMap("date", new Date(1000000)))
+                    .sortBy("dateOfBirth", true).build();
+            List<Employee> employees = context.executeFetchOperation(fetchRequest);
+            assertEquals(1, employees.size());
+            assertEquals("Mike Jones", employees.get(0).getFullName());
+            assertEquals(new Date(2000000), employees.get(0).getDateOfBirth());
+            assertFalse(employees.get(0).isActive());
+
+            fetchRequest = context.newFetchRequestBuilder(Employee.class).sortBy("dateOfBirth", false).build();
+            employees = context.executeFetchOperation(fetchRequest);
+            assertEquals(2, employees.size());
+            assertEquals("John Smith", employees.get(1).getFullName());
+            assertEquals(new Date(999000), employees.get(1).getDateOfBirth());
+        } finally {
+            dbFile.delete();
+        }
+    }
+
+    public void testPermanentIDsAreUniqueAcrossThreads() throws Throwable {
+        AndroidSqlPersistentStore store = (AndroidSqlPersistentStore) persistentStore;
+        // a small block size, so that blocks are reserved concurrently
+        store.setIDBlockSize(16);
+        assertEquals(16, store.getIDBlockSize());
+
+        final int numThreads = 4;
+        final int numObjects = 250;
+        final Set<ObjectID> objectIDs = Collections.synchronizedSet(new HashSet<ObjectID>());
+        final List<ObjectContext> contexts = Collections.synchronizedList(new ArrayList<ObjectContext>());
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < numThreads; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        ObjectContext context = new ObjectContext(persistentStore.getCoordinator());
+                        List<Employee> employees = new ArrayList<Employee>();
+                        for (int i = 0; i < numObjects; i++) {
+                            // obtain IDs one at a time and in bulk
+                            Employee employee = createEmployee(context, "John", "Smith", i);
+                            if (i % 2 == 0) {
+                                context.obtainPermanentIDsForObjects(Collections.singletonList(employee));
+                            }
+                            employees.add(employee);
+                        }
+                        context.obtainPermanentIDsForObjects(employees);
+                        for (Employee employee : employees) {
+                            objectIDs.add(employee.getID());
+                        }
+                        contexts.add(context);
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(numThreads * numObjects, objectIDs.size());
+
+        for (ObjectContext context : contexts) {
+            context.save();
+        }
+        assertEquals(numThreads * numObjects, mainContext.findAll(Employee.class).size());
+    }
 }
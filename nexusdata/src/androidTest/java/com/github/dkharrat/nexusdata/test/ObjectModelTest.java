@@ -3,6 +3,7 @@ package com.github.dkharrat.nexusdata.test;
 import java.util.ArrayList;
 
 import junit.framework.TestCase;
+import com.github.dkharrat.nexusdata.metamodel.Index;
 import com.github.dkharrat.nexusdata.metamodel.ObjectModel;
 import com.github.dkharrat.nexusdata.metamodel.Entity;
 
@@ -43,4 +44,21 @@ public class ObjectModelTest extends TestCase {
     public void testGetEntity() throws Throwable {
         assertEquals(Company.class.getSimpleName(),  model.getEntity(Company.class).getName());
     }
+
+    public void testIndexes() throws Throwable {
+        Entity<Person> person = model.getEntity(Person.class);
+        assertTrue(person.getAttribute("lastName").isIndexed());
+        assertFalse(person.getAttribute("firstName").isIndexed());
+
+        assertEquals(1, person.getIndexes().size());
+        Index index = person.getIndexes().get(0);
+        assertEquals("lastName_firstName", index.getName());
+        assertEquals(2, index.getProperties().size());
+        assertEquals("lastName", index.getProperties().get(0).getName());
+        assertEquals("firstName", index.getProperties().get(1).getName());
+
+        // indexes are not inherited, since sub-entities share the storage of their super-entity
+        assertTrue(model.getEntity(Employee.class).getAttribute("lastName").isIndexed());
+        assertTrue(model.getEntity(Employee.class).getIndexes().isEmpty());
+    }
 }
@@ -0,0 +1,267 @@
+package com.github.dkharrat.nexusdata.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.test.AndroidTestCase;
+
+import com.github.dkharrat.nexusdata.core.FetchRequest;
+import com.github.dkharrat.nexusdata.core.ObjectContext;
+import com.github.dkharrat.nexusdata.core.ObjectStream;
+import com.github.dkharrat.nexusdata.core.PersistentStore;
+import com.github.dkharrat.nexusdata.core.PersistentStoreCoordinator;
+import com.github.dkharrat.nexusdata.metamodel.Entity;
+import com.github.dkharrat.nexusdata.metamodel.ObjectModel;
+import com.github.dkharrat.nexusdata.store.InMemoryPersistentStore;
+import com.github.dkharrat.nexusdata.store.JdbcSqlPersistentStore;
+
+public class PersistentStoreRoutingTest extends AndroidTestCase {
+
+    ObjectModel model;
+    PersistentStoreCoordinator coordinator;
+    JdbcSqlPersistentStore sqlStore;
+    PersistentStore memoryStore;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        model = new ObjectModel(getClass().getResourceAsStream("/assets/company.model.json"), "/assets");
+        coordinator = new PersistentStoreCoordinator(model);
+        sqlStore = new JdbcSqlPersistentStore(getContext().getDatabasePath("routing-test.db"));
+        memoryStore = new InMemoryPersistentStore();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        sqlStore.close();
+        new File(sqlStore.getLocation().toURI()).delete();
+        coordinator = null;
+
+        super.tearDown();
+    }
+
+    private static Employee createEmployee(ObjectContext context, String lastName, int id) {
+        Employee employee = context.newObject(Employee.class);
+        employee.setFirstName("John");
+        employee.setLastName(lastName);
+        employee.setId(id);
+        return employee;
+    }
+
+    private static Contractor createContractor(ObjectContext context, String lastName, int id) {
+        Contractor contractor = context.newObject(Contractor.class);
+        contractor.setFirstName("Bob");
+        contractor.setLastName(lastName);
+        contractor.setId(id);
+        return contractor;
+    }
+
+    private static void assertIds(List<? extends Employee> employees, int... ids) {
+        assertEquals(ids.length, employees.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], employees.get(i).getId());
+        }
+    }
+
+    private List<Employee> fetchEmployees(ObjectContext context, int offset, int limit) {
+        FetchRequest<Employee> fetchRequest = context.newFetchRequestBuilder(Employee.class)
+                .sortBy("lastName", true).sortBy("id", true).offset(offset).limit(limit).build();
+        return context.executeFetchOperation(fetchRequest);
+    }
+
+    public void testObjectsAreSavedToTheStoresOfTheirEntity() throws Throwable {
+        coordinator.addStore(sqlStore);
+        coordinator.addStore(memoryStore, Collections.singleton(model.getEntity(Company.class)));
+
+        assertEquals(Collections.singletonList(memoryStore), coordinator.getPersistentStores(model.getEntity(Company.class)));
+        assertEquals(Collections.<PersistentStore>singletonList(sqlStore), coordinator.getPersistentStores(model.getEntity(Employee.class)));
+
+        ObjectContext context = new ObjectContext(coordinator);
+        Company company = context.newObject(Company.class);
+        company.setName("Google");
+        Employee employee = createEmployee(context, "Smith", 1);
+        context.save();
+
+        assertSame(memoryStore, company.getID().getPersistentStore());
+        assertSame(sqlStore, employee.getID().getPersistentStore());
+
+        // a save that changes objects in both stores is split between them
+        company.setName("Alphabet");
+        context.delete(employee);
+        createEmployee(context, "Jones", 2);
+        context.save();
+
+        ObjectContext otherContext = new ObjectContext(coordinator);
+        List<Company> companies = otherContext.findAll(Company.class);
+        assertEquals(1, companies.size());
+        assertEquals("Alphabet", companies.get(0).getName());
+        List<Employee> employees = otherContext.findAll(Employee.class);
+        assertIds(employees, 2);
+        assertEquals("Jones", employees.get(0).getLastName());
+    }
+
+    public void testFetchesCombineSubEntitiesInOtherStores() throws Throwable {
+        coordinator.addStore(sqlStore);
+        coordinator.addStore(memoryStore, Collections.singleton(model.getEntity(Contractor.class)));
+
+        ObjectContext context = new ObjectContext(coordinator);
+        createEmployee(context, "B", 1);
+        Contractor contractor = createContractor(context, "A", 2);
+        createEmployee(context, "C", 3);
+        createContractor(context, "B", 4);
+        createContractor(context, null, 5);
+        context.save();
+        assertSame(memoryStore, contractor.getID().getPersistentStore());
+
+        ObjectContext otherContext = new ObjectContext(coordinator);
+        assertIds(fetchEmployees(otherContext, 0, Integer.MAX_VALUE), 5, 2, 1, 4, 3);
+        assertIds(fetchEmployees(otherContext, 1, 3), 2, 1, 4);
+        assertIds(fetchEmployees(otherContext, 4, 3), 3);
+        FetchRequest<Contractor> contractorRequest = otherContext.newFetchRequestBuilder(Contractor.class).sortBy("id", true).build();
+        assertIds(otherContext.executeFetchOperation(contractorRequest), 2, 4, 5);
+    }
+
+    public void testObjectsCanBeAssignedToStores() throws Throwable {
+        Entity<Employee> entity = model.getEntity(Employee.class);
+        coordinator.addStore(sqlStore, Collections.singleton(entity));
+        coordinator.addStore(memoryStore, Collections.singleton(entity));
+        assertEquals(Arrays.asList(sqlStore, memoryStore), coordinator.getPersistentStores(entity));
+        assertEquals(Collections.emptyList(), coordinator.getPersistentStores(model.getEntity(Company.class)));
+
+        ObjectContext context = new ObjectContext(coordinator);
+        Employee employee1 = createEmployee(context, "B", 1);
+        Employee employee2 = createEmployee(context, "A", 2);
+        context.assignObjectToStore(employee2, memoryStore);
+        createEmployee(context, "C", 3);
+        context.save();
+
+        assertSame(sqlStore, employee1.getID().getPersistentStore());
+        assertSame(memoryStore, employee2.getID().getPersistentStore());
+        assertIds(fetchEmployees(new ObjectContext(coordinator), 0, 2), 2, 1);
+
+        try {
+            context.assignObjectToStore(employee1, memoryStore);
+            fail("Expected an IllegalArgumentException for an object that was saved");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        Company company = context.newObject(Company.class);
+        try {
+            context.assignObjectToStore(company, memoryStore);
+            fail("Expected an IllegalArgumentException for a store that doesn't hold the entity");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            context.save();
+            fail("Expected an IllegalStateException for an entity without a store");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void testFetchesFromSeveralStoresInParallel() throws Throwable {
+        Entity<Employee> entity = model.getEntity(Employee.class);
+        PersistentStore otherMemoryStore = new InMemoryPersistentStore();
+        coordinator.addStore(sqlStore, Collections.singleton(entity));
+        coordinator.addStore(memoryStore, Collections.singleton(entity));
+        coordinator.addStore(otherMemoryStore, Collections.singleton(entity));
+
+        final AtomicInteger executedFetches = new AtomicInteger();
+        coordinator.setFetchExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                executedFetches.incrementAndGet();
+                new Thread(command).start();
+            }
+        });
+
+        ObjectContext context = new ObjectContext(coordinator);
+        PersistentStore[] stores = {sqlStore, memoryStore, otherMemoryStore};
+        String[] lastNames = {"C", "A", null, "B", "A", "C", "B", null, "A"};
+        for (int i = 0; i < lastNames.length; i++) {
+            context.assignObjectToStore(createEmployee(context, lastNames[i], i + 1), stores[i % stores.length]);
+        }
+        context.save();
+
+        ObjectContext otherContext = new ObjectContext(coordinator);
+        assertIds(fetchEmployees(otherContext, 0, Integer.MAX_VALUE), 3, 8, 2, 5, 9, 4, 7, 1, 6);
+        assertIds(fetchEmployees(otherContext, 2, 4), 2, 5, 9, 4);
+        assertIds(fetchEmployees(otherContext, 8, 4), 6);
+        assertIds(fetchEmployees(otherContext, 9, 4));
+        assertEquals(8, executedFetches.get());
+
+        FetchRequest<Employee> fetchRequest = otherContext.newFetchRequestBuilder(Employee.class)
+                .predicate("lastName == \"A\" || lastName == \"B\"").offset(1).limit(3).build();
+        assertEquals(3, otherContext.executeFetchOperation(fetchRequest).size());
+    }
+
+    public void testFetchesRejectedByExecutorRunOnCallingThread() throws Throwable {
+        Entity<Employee> entity = model.getEntity(Employee.class);
+        PersistentStore otherMemoryStore = new InMemoryPersistentStore();
+        coordinator.addStore(sqlStore, Collections.singleton(entity));
+        coordinator.addStore(memoryStore, Collections.singleton(entity));
+        coordinator.addStore(otherMemoryStore, Collections.singleton(entity));
+
+        // accepts the first fetch and rejects the rest, like a saturated pool
+        final AtomicInteger executedFetches = new AtomicInteger();
+        coordinator.setFetchExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (executedFetches.incrementAndGet() % 2 == 0) {
+                    throw new RejectedExecutionException();
+                }
+                new Thread(command).start();
+            }
+        });
+
+        ObjectContext context = new ObjectContext(coordinator);
+        PersistentStore[] stores = {sqlStore, memoryStore, otherMemoryStore};
+        String[] lastNames = {"C", "A", null, "B", "A", "C"};
+        for (int i = 0; i < lastNames.length; i++) {
+            context.assignObjectToStore(createEmployee(context, lastNames[i], i + 1), stores[i % stores.length]);
+        }
+        context.save();
+
+        ObjectContext otherContext = new ObjectContext(coordinator);
+        assertIds(fetchEmployees(otherContext, 0, Integer.MAX_VALUE), 3, 2, 5, 4, 1, 6);
+        assertEquals(2, executedFetches.get());
+    }
+
+    public void testStreamsMergeStoresInSortOrder() throws Throwable {
+        Entity<Employee> entity = model.getEntity(Employee.class);
+        coordinator.addStore(sqlStore, Collections.singleton(entity));
+        coordinator.addStore(memoryStore, Collections.singleton(entity));
+
+        ObjectContext context = new ObjectContext(coordinator);
+        String[] lastNames = {"C", "A", null, "B", "A", "C"};
+        for (int i = 0; i < lastNames.length; i++) {
+            context.assignObjectToStore(createEmployee(context, lastNames[i], i + 1), i % 2 == 0 ? sqlStore : memoryStore);
+        }
+        context.save();
+
+        ObjectContext otherContext = new ObjectContext(coordinator);
+        FetchRequest<Employee> fetchRequest = otherContext.newFetchRequestBuilder(Employee.class)
+                .sortBy("lastName", true).sortBy("id", true).offset(1).limit(4).build();
+        ObjectStream<Employee> stream = otherContext.stream(fetchRequest, ObjectStream.Retention.UNREGISTER);
+        List<Integer> ids = new ArrayList<Integer>();
+        try {
+            for (Employee employee : stream) {
+                ids.add(employee.getId());
+            }
+        } finally {
+            stream.close();
+        }
+
+        assertEquals(Arrays.asList(2, 5, 4, 1), ids);
+        assertTrue(otherContext.getRegisteredObjects().isEmpty());
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.dkharrat.nexusdata.test;
+
+import junit.framework.TestCase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.dkharrat.nexusdata.predicate.CompoundPredicate;
+import com.github.dkharrat.nexusdata.predicate.Predicate;
+import com.github.dkharrat.nexusdata.predicate.parser.PredicateParser;
+
+/**
+ * Measures parse throughput of long generated predicates, and checks that parsing scales linearly with the predicate
+ * length.
+ */
+public class PredicateParserBenchmarkTest extends TestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PredicateParserBenchmarkTest.class);
+
+    private static String generateOrChain(int numTerms) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < numTerms; i++) {
+            if (i > 0) {
+                builder.append(" || ");
+            }
+            builder.append("(id == ").append(i).append(" && name != \"name").append(i).append("\")");
+        }
+        return builder.toString();
+    }
+
+    private static long timeParse(String text, int iterations) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            new PredicateParser(text).parse();
+        }
+        return System.nanoTime() - start;
+    }
+
+    public void testLongOrChainParseThroughput() throws Throwable {
+        int[] sizes = {100, 1000, 5000};
+        double[] nanosPerChar = new double[sizes.length];
+        for (int s = 0; s < sizes.length; s++) {
+            int numTerms = sizes[s];
+            String text = generateOrChain(numTerms);
+            int iterations = Math.max(1, 20000 / numTerms);
+
+            timeParse(text, 1);     // warm-up
+            long elapsedNanos = timeParse(text, iterations);
+
+            nanosPerChar[s] = (double) elapsedNanos / iterations / text.length();
+            double charsPerSec = (double) text.length() * iterations / (elapsedNanos / 1e9);
+            double msPerParse = elapsedNanos / 1e6 / iterations;
+            LOG.info(String.format("OR chain of %d terms (%d chars): %.3f ms/parse, %.0f chars/sec",
+                    numTerms, text.length(), msPerParse, charsPerSec));
+        }
+
+        // a chain 50 times longer takes about as long per character to parse, while quadratic parsing would take 50
+        // times as long. The margin allows for timing noise.
+        double slowdown = nanosPerChar[sizes.length - 1] / nanosPerChar[0];
+        assertTrue("Parsing slowed down " + slowdown + " times per character", slowdown < 10);
+
+        Predicate predicate = new PredicateParser(generateOrChain(1000)).parse();
+        int numOrs = 0;
+        while (predicate instanceof CompoundPredicate && ((CompoundPredicate) predicate).getOperator() == CompoundPredicate.Operator.OR) {
+            predicate = ((CompoundPredicate) predicate).getLhs();
+            numOrs++;
+        }
+        assertEquals(999, numOrs);
+    }
+}
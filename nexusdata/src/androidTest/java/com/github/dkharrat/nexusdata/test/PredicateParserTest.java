@@ -1,9 +1,14 @@
 package com.github.dkharrat.nexusdata.test;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import junit.framework.TestCase;
 import com.github.dkharrat.nexusdata.predicate.ExpressionBuilder;
 import com.github.dkharrat.nexusdata.predicate.Predicate;
 import com.github.dkharrat.nexusdata.predicate.PredicateBuilder;
+import com.github.dkharrat.nexusdata.predicate.PredicateTemplate;
+import com.github.dkharrat.nexusdata.predicate.parser.ParseException;
 
 public class PredicateParserTest extends TestCase {
 
@@ -42,7 +47,6 @@ public class PredicateParserTest extends TestCase {
     }
 
     public void testWithString() throws Throwable {
-        //TODO: this test hangs; fix
         Predicate actual = PredicateBuilder.parse("1 == \"2\"");
         Predicate expected = ExpressionBuilder.constant(1).eq("2").getPredicate();
         assertEquals(expected, actual);
@@ -73,4 +77,150 @@ public class PredicateParserTest extends TestCase {
         Predicate expected = (ExpressionBuilder.constant(10).gt(5).or(ExpressionBuilder.constant(8).eq(8)).and(ExpressionBuilder.constant(8).lt(6))).getPredicate();
         assertEquals(expected, actual);
     }
+
+    public void testVariable() throws Throwable {
+        Predicate actual = PredicateBuilder.parse("pages > $minPages");
+        Predicate expected = ExpressionBuilder.field("pages").gt(ExpressionBuilder.variable("minPages")).getPredicate();
+        assertEquals(expected, actual);
+    }
+
+    public void testSubstitutionVariables() throws Throwable {
+        Map<String,Object> variables = new HashMap<String,Object>();
+        variables.put("minPages", 100);
+        variables.put("title", "foo");
+
+        Predicate actual = PredicateBuilder.parse("pages > $minPages && title == $title", variables);
+        Predicate expected = ExpressionBuilder.field("pages").gt(100).and(ExpressionBuilder.field("title").eq("foo")).getPredicate();
+        assertEquals(expected, actual);
+    }
+
+    public void testSubstitutionWithMissingVariable() throws Throwable {
+        try {
+            PredicateBuilder.parse("pages > $minPages", new HashMap<String,Object>());
+            fail("Expected missing variable to fail");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testTemplatesAreCached() throws Throwable {
+        PredicateTemplate template = PredicateTemplate.parse("pages > $minPages");
+        assertSame(template, PredicateTemplate.parse("pages > $minPages"));
+        assertNotSame(template, PredicateTemplate.parse("pages < $minPages"));
+    }
+
+    public void testLongOrChainIsLeftAssociative() throws Throwable {
+        Predicate actual = PredicateBuilder.parse("a == 1 || b == 2 || c == 3");
+        Predicate expected = ExpressionBuilder.field("a").eq(1)
+                .or(ExpressionBuilder.field("b").eq(2))
+                .or(ExpressionBuilder.field("c").eq(3)).getPredicate();
+        assertEquals(expected, actual);
+    }
+
+    public void testStringWithEscapedQuote() throws Throwable {
+        Predicate actual = PredicateBuilder.parse("title == \"say \\\"hi\\\"\"");
+        Predicate expected = ExpressionBuilder.field("title").eq("say \"hi\"").getPredicate();
+        assertEquals(expected, actual);
+    }
+
+    public void testDecimalAndLongNumbers() throws Throwable {
+        assertEquals(ExpressionBuilder.field("wage").gt(12.5).getPredicate(), PredicateBuilder.parse("wage > 12.5"));
+        assertEquals(ExpressionBuilder.field("id").eq(9876543210L).getPredicate(), PredicateBuilder.parse("id == 9876543210"));
+    }
+
+    public void testKeywordPrefixIsFieldName() throws Throwable {
+        Predicate actual = PredicateBuilder.parse("nullable == true");
+        Predicate expected = ExpressionBuilder.field("nullable").eq(true).getPredicate();
+        assertEquals(expected, actual);
+    }
+
+    public void testErrorPosition() throws Throwable {
+        assertParseErrorAt("pages == 1 & title == \"a\"", 11);
+        assertParseErrorAt("pages == \"abc", 9);
+        assertParseErrorAt("(pages == 1", 11);
+        assertParseErrorAt("pages == 1 pages", 11);
+        assertParseErrorAt("pages # 1", 6);
+    }
+
+    private static void assertParseErrorAt(String predicate, int position) {
+        try {
+            PredicateBuilder.parse(predicate);
+            fail("Expected parse error for: " + predicate);
+        } catch (ParseException e) {
+            assertEquals(position, e.getPosition());
+        }
+    }
+
+    public void testIn() throws Throwable {
+        Predicate actual = PredicateBuilder.parse("pages IN (1, 2, 3)");
+        Predicate expected = ExpressionBuilder.field("pages").in(1, 2, 3).getPredicate();
+        assertEquals(expected, actual);
+
+        actual = PredicateBuilder.parse("pages IN $allowedPages");
+        expected = ExpressionBuilder.field("pages").in(ExpressionBuilder.variable("allowedPages")).getPredicate();
+        assertEquals(expected, actual);
+    }
+
+    public void testBetween() throws Throwable {
+        Predicate actual = PredicateBuilder.parse("pages BETWEEN 100 AND 200 && title != null");
+        Predicate expected = ExpressionBuilder.field("pages").between(100, 200)
+                .and(ExpressionBuilder.field("title").isNotNull()).getPredicate();
+        assertEquals(expected, actual);
+    }
+
+    public void testStringMatching() throws Throwable {
+        assertEquals(ExpressionBuilder.field("title").like("Book%").getPredicate(), PredicateBuilder.parse("title LIKE \"Book%\""));
+        assertEquals(ExpressionBuilder.field("title").beginsWith("Bo").getPredicate(), PredicateBuilder.parse("title BEGINSWITH \"Bo\""));
+        assertEquals(ExpressionBuilder.field("title").endsWith("ok").getPredicate(), PredicateBuilder.parse("title ENDSWITH \"ok\""));
+        assertEquals(ExpressionBuilder.field("title").contains("oo").getPredicate(), PredicateBuilder.parse("title CONTAINS \"oo\""));
+    }
+
+    public void testKeyPath() throws Throwable {
+        Predicate actual = PredicateBuilder.parse("company.name == \"Google\" && manager.company.name != null");
+        Predicate expected = ExpressionBuilder.field("company.name").eq("Google")
+                .and(ExpressionBuilder.field("manager.company.name").isNotNull()).getPredicate();
+        assertEquals(expected, actual);
+    }
+
+    public void testCollectionOperators() throws Throwable {
+        Predicate actual = PredicateBuilder.parse("ANY employees.firstName == \"John\" && employees.@count > 10");
+        Predicate expected = ExpressionBuilder.field("employees").any(ExpressionBuilder.field("firstName").eq("John"))
+                .and(ExpressionBuilder.field("employees").count().gt(10)).getPredicate();
+        assertEquals(expected, actual);
+
+        actual = PredicateBuilder.parse("ALL employees.manager.id BETWEEN 1 AND 5 || NONE employees.active == false");
+        expected = ExpressionBuilder.field("employees").all(ExpressionBuilder.field("manager.id").between(1, 5))
+                .or(ExpressionBuilder.field("employees").none(ExpressionBuilder.field("active").eq(false))).getPredicate();
+        assertEquals(expected, actual);
+    }
+
+    public void testKeywordsAreCaseSensitive() throws Throwable {
+        // fields can be named like keywords in another case
+        Predicate actual = PredicateBuilder.parse("in == 1 && contains CONTAINS \"a\" || any != null");
+        Predicate expected = ExpressionBuilder.field("in").eq(1)
+                .and(ExpressionBuilder.field("contains").contains("a"))
+                .or(ExpressionBuilder.field("any").isNotNull()).getPredicate();
+        assertEquals(expected, actual);
+
+        actual = PredicateBuilder.parse("all.count BETWEEN 1 AND 5 && between > 0");
+        expected = ExpressionBuilder.field("all.count").between(1, 5)
+                .and(ExpressionBuilder.field("between").gt(0)).getPredicate();
+        assertEquals(expected, actual);
+    }
+
+    public void testInvalidCollectionOperators() throws Throwable {
+        try {
+            PredicateBuilder.parse("ANY employees == null");
+            fail("Expected ParseException");
+        } catch (ParseException e) {
+            assertEquals(0, e.getPosition());
+        }
+
+        try {
+            PredicateBuilder.parse("employees.@avg > 1");
+            fail("Expected ParseException");
+        } catch (ParseException e) {
+            assertEquals(10, e.getPosition());
+        }
+    }
 }
@@ -1,9 +1,14 @@
 package com.github.dkharrat.nexusdata.test;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
 import junit.framework.TestCase;
 
 import com.github.dkharrat.nexusdata.predicate.ExpressionBuilder;
 import com.github.dkharrat.nexusdata.predicate.Predicate;
+import com.github.dkharrat.nexusdata.predicate.PredicateBuilder;
 
 public class PredicatesTest extends TestCase {
 
@@ -11,6 +16,8 @@ public class PredicatesTest extends TestCase {
         String title;
         String authorName;
         int pages;
+        Book sequel;
+        List<Book> references = new ArrayList<Book>();
 
         Book(String title, int pages) {
             this.title = title;
@@ -97,4 +104,81 @@ public class PredicatesTest extends TestCase {
         Predicate p = (ExpressionBuilder.constant(10).gt(5).or(ExpressionBuilder.constant(8).notEq(9)).and(ExpressionBuilder.constant(8).lt(6))).getPredicate();
         assertFalse(p.evaluate(null));
     }
+
+    public void testComparisonPredicateOfNonNumbers() throws Throwable {
+        Predicate p = ExpressionBuilder.constant("apple").lt("banana").getPredicate();
+        assertTrue(p.evaluate(null));
+
+        p = ExpressionBuilder.constant(new Date(2000)).gt(new Date(1000)).getPredicate();
+        assertTrue(p.evaluate(null));
+
+        p = ExpressionBuilder.constant(10L).eq(10).getPredicate();
+        assertTrue(p.evaluate(null));
+    }
+
+    public void testOrderingComparisonWithNullIsFalse() throws Throwable {
+        Book book = new Book("Book one", 362);
+
+        assertFalse(ExpressionBuilder.field("authorName").gt("A").getPredicate().evaluate(book));
+        assertFalse(ExpressionBuilder.field("authorName").lt("A").getPredicate().evaluate(book));
+    }
+
+    public void testInPredicate() throws Throwable {
+        Book book = new Book("Book one", 362);
+
+        assertTrue(ExpressionBuilder.field("pages").in(100, 362L, 500).getPredicate().evaluate(book));
+        assertFalse(ExpressionBuilder.field("pages").in(100, 500).getPredicate().evaluate(book));
+        assertFalse(ExpressionBuilder.field("pages").in().getPredicate().evaluate(book));
+        assertFalse(ExpressionBuilder.field("authorName").in("a", null).getPredicate().evaluate(book));
+    }
+
+    public void testBetweenPredicate() throws Throwable {
+        Book book = new Book("Book one", 362);
+
+        assertTrue(ExpressionBuilder.field("pages").between(362, 400).getPredicate().evaluate(book));
+        assertTrue(ExpressionBuilder.field("pages").between(300, 362).getPredicate().evaluate(book));
+        assertFalse(ExpressionBuilder.field("pages").between(363, 400).getPredicate().evaluate(book));
+        assertFalse(ExpressionBuilder.field("authorName").between("a", "z").getPredicate().evaluate(book));
+    }
+
+    public void testStringMatchingPredicates() throws Throwable {
+        Book book = new Book("Book one", 362);
+
+        assertTrue(ExpressionBuilder.field("title").like("book%").getPredicate().evaluate(book));
+        assertTrue(ExpressionBuilder.field("title").like("B_ok o_e").getPredicate().evaluate(book));
+        assertFalse(ExpressionBuilder.field("title").like("Book").getPredicate().evaluate(book));
+        assertTrue(ExpressionBuilder.field("title").beginsWith("Book").getPredicate().evaluate(book));
+        assertFalse(ExpressionBuilder.field("title").beginsWith("book").getPredicate().evaluate(book));
+        assertTrue(ExpressionBuilder.field("title").endsWith("one").getPredicate().evaluate(book));
+        assertTrue(ExpressionBuilder.field("title").contains("k o").getPredicate().evaluate(book));
+        assertFalse(ExpressionBuilder.field("authorName").contains("a").getPredicate().evaluate(book));
+    }
+
+    public void testKeyPathPredicate() throws Throwable {
+        Book book = new Book("Book one", 362);
+        Predicate p = ExpressionBuilder.field("sequel.title").eq("Book two").getPredicate();
+        assertFalse(p.evaluate(book));
+
+        book.sequel = new Book("Book two", 400);
+        assertTrue(p.evaluate(book));
+        assertTrue(ExpressionBuilder.field("sequel.pages").gt(book.pages).getPredicate().evaluate(book));
+        assertTrue(ExpressionBuilder.field("sequel.sequel.title").isNull().getPredicate().evaluate(book));
+    }
+
+    public void testCollectionPredicates() throws Throwable {
+        Book book = new Book("Book one", 362);
+        PredicateBuilder references = ExpressionBuilder.field("references");
+
+        assertFalse(references.any(ExpressionBuilder.field("pages").gt(100)).getPredicate().evaluate(book));
+        assertTrue(references.all(ExpressionBuilder.field("pages").gt(100)).getPredicate().evaluate(book));
+        assertTrue(references.none(ExpressionBuilder.field("pages").gt(100)).getPredicate().evaluate(book));
+        assertTrue(references.count().eq(0).getPredicate().evaluate(book));
+
+        book.references.add(new Book("Book two", 50));
+        book.references.add(new Book("Book three", 200));
+        assertTrue(references.any(ExpressionBuilder.field("pages").gt(100)).getPredicate().evaluate(book));
+        assertFalse(references.all(ExpressionBuilder.field("pages").gt(100)).getPredicate().evaluate(book));
+        assertFalse(references.none(ExpressionBuilder.field("pages").gt(100)).getPredicate().evaluate(book));
+        assertTrue(references.count().gt(1).getPredicate().evaluate(book));
+    }
 }
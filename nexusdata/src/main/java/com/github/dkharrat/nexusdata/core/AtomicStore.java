@@ -4,17 +4,139 @@ import java.io.File;
 import java.net.URL;
 import java.util.*;
 
+import com.github.dkharrat.nexusdata.metamodel.Attribute;
+import com.github.dkharrat.nexusdata.metamodel.Entity;
 import com.github.dkharrat.nexusdata.metamodel.Property;
 import com.github.dkharrat.nexusdata.metamodel.Relationship;
-import com.github.dkharrat.nexusdata.utils.ObjectUtil;
+import com.github.dkharrat.nexusdata.predicate.CompiledPredicate;
 
 /**
  * An AtomicStore is a persistence store in which data is loaded and saved all at once. It is useful when the data set
  * is small enough to fit in memory and good performance is needed.
+ * <p>
+ * The cache nodes are kept per entity. Fetches only look at the nodes of the requested entity (and its sub-entities),
+ * and comparisons of an attribute with a constant are looked up in the attribute's index, if it has one (see
+ * {@link #addIndex(Attribute, IndexType)}). Attributes that are marked as indexed in the model get a sorted index.
+ * <p>
+ * The cache nodes and indexes are kept in immutable versions, which are built from persistent maps (see
+ * {@link PersistentMap}). A fetch uses the latest version when it starts, for its entire duration, while a save
+ * creates the next version from the current one, sharing everything it doesn't change, and publishes it once the
+ * changes are saved. Therefore, fetches never block and never see a partially applied save, so any number of threads
+ * can fetch from the store while another thread saves to it. Saves are applied one at a time.
  */
 public abstract class AtomicStore extends PersistentStore {
 
-    private final Map<ObjectID, StoreCacheNode> idsToCacheNodes = new HashMap<ObjectID, StoreCacheNode>();
+    /**
+     * The kinds of attribute indexes.
+     */
+    public enum IndexType {
+        /** supports lookups by value */
+        HASH,
+        /** supports lookups by value and by ranges of values */
+        SORTED,
+    }
+
+    /**
+     * An immutable version of the cache nodes and indexes of the store. The cache nodes in a version must not be
+     * modified, so an updated object gets a new node.
+     */
+    private static class Version implements CacheNodeValues.CacheNodeResolver {
+        static final Version EMPTY = new Version(
+                PersistentHashMap.<Entity<?>, PersistentHashMap<ObjectID, StoreCacheNode>>empty(),
+                PersistentHashMap.<Entity<?>, PersistentHashMap<String, AttributeIndex>>empty());
+
+        final PersistentHashMap<Entity<?>, PersistentHashMap<ObjectID, StoreCacheNode>> cacheNodesByEntity;
+        final PersistentHashMap<Entity<?>, PersistentHashMap<String, AttributeIndex>> indexesByEntity;
+
+        Version(PersistentHashMap<Entity<?>, PersistentHashMap<ObjectID, StoreCacheNode>> cacheNodesByEntity,
+                PersistentHashMap<Entity<?>, PersistentHashMap<String, AttributeIndex>> indexesByEntity) {
+            this.cacheNodesByEntity = cacheNodesByEntity;
+            this.indexesByEntity = indexesByEntity;
+        }
+
+        PersistentHashMap<ObjectID, StoreCacheNode> getCacheNodes(Entity<?> entity) {
+            PersistentHashMap<ObjectID, StoreCacheNode> cacheNodes = cacheNodesByEntity.get(entity);
+            return cacheNodes == null ? PersistentHashMap.<ObjectID, StoreCacheNode>empty() : cacheNodes;
+        }
+
+        PersistentHashMap<String, AttributeIndex> getIndexes(Entity<?> entity) {
+            PersistentHashMap<String, AttributeIndex> indexes = indexesByEntity.get(entity);
+            return indexes == null ? PersistentHashMap.<String, AttributeIndex>empty() : indexes;
+        }
+
+        @Override
+        public StoreCacheNode getCacheNode(ObjectID objectID) {
+            return getCacheNodes(objectID.getEntity()).get(objectID);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Collection<ObjectID> getRelatedObjectIDs(ObjectID objectID, Relationship relationship) {
+            StoreCacheNode cacheNode = getCacheNode(objectID);
+            return cacheNode == null ? null : (Collection<ObjectID>) cacheNode.getProperty(relationship.getName());
+        }
+
+        /**
+         * Returns a version with the specified node, replacing any node with the same ID.
+         */
+        Version plus(StoreCacheNode cacheNode) {
+            Entity<?> entity = cacheNode.getID().getEntity();
+            PersistentHashMap<ObjectID, StoreCacheNode> cacheNodes = getCacheNodes(entity);
+            StoreCacheNode previousCacheNode = cacheNodes.get(cacheNode.getID());
+
+            PersistentHashMap<String, AttributeIndex> indexes = getIndexes(entity);
+            for (AttributeIndex index : indexes.values()) {
+                String name = index.getAttribute().getName();
+                if (previousCacheNode != null) {
+                    index = index.remove(previousCacheNode.getID(), previousCacheNode.getProperty(name));
+                }
+                indexes = indexes.plus(name, index.add(cacheNode.getID(), cacheNode.getProperty(name)));
+            }
+
+            return new Version(
+                    cacheNodesByEntity.plus(entity, cacheNodes.plus(cacheNode.getID(), cacheNode)),
+                    indexes.isEmpty() ? indexesByEntity : indexesByEntity.plus(entity, indexes));
+        }
+
+        /**
+         * Returns a version without the node of the specified object.
+         */
+        Version minus(ObjectID objectID) {
+            Entity<?> entity = objectID.getEntity();
+            PersistentHashMap<ObjectID, StoreCacheNode> cacheNodes = getCacheNodes(entity);
+            StoreCacheNode cacheNode = cacheNodes.get(objectID);
+            if (cacheNode == null) {
+                return this;
+            }
+
+            PersistentHashMap<String, AttributeIndex> indexes = getIndexes(entity);
+            for (AttributeIndex index : indexes.values()) {
+                String name = index.getAttribute().getName();
+                indexes = indexes.plus(name, index.remove(objectID, cacheNode.getProperty(name)));
+            }
+
+            return new Version(
+                    cacheNodesByEntity.plus(entity, cacheNodes.minus(objectID)),
+                    indexes.isEmpty() ? indexesByEntity : indexesByEntity.plus(entity, indexes));
+        }
+
+        /**
+         * Returns a version with the specified index of an entity, replacing any index of the same attribute.
+         */
+        Version plus(Entity<?> entity, AttributeIndex index) {
+            return new Version(cacheNodesByEntity,
+                    indexesByEntity.plus(entity, getIndexes(entity).plus(index.getAttribute().getName(), index)));
+        }
+    }
+
+    // writes to the store, which create new versions, are guarded by the store's monitor, so subclasses that
+    // synchronize their own methods (e.g. save()) take the same lock and can't deadlock with a save request
+
+    // the latest version, including the changes of a save that is in progress. Only accessed with the monitor held.
+    private Version head = Version.EMPTY;
+
+    // the latest saved version, which is used by fetches
+    private volatile Version published = Version.EMPTY;
 
     /**
      * Constructs a new Atomic store
@@ -29,25 +151,124 @@ public abstract class AtomicStore extends PersistentStore {
         super(location);
     }
 
+    /**
+     * Loads the data of the store into cache nodes, using {@link #addCacheNode(StoreCacheNode)}. It's called when the
+     * store is added to a coordinator. A store that persists its UUID should set it here.
+     */
     public abstract void load();
+
+    /**
+     * Saves all the cache nodes of the store.
+     */
     public abstract void save();
+
     public abstract Object createReferenceObjectForManagedObject(ManagedObject object);
 
     @Override
     protected void loadMetadata() {
         setUuid(UUID.randomUUID());
+
+        Set<Attribute> indexedAttributes = new HashSet<Attribute>();
+        for (Entity<?> entity : getCoordinator().getModel().getEntities()) {
+            for (Attribute attribute : entity.getAttributes()) {
+                if (attribute.isIndexed() && indexedAttributes.add(attribute)) {
+                    addIndex(attribute, IndexType.SORTED);
+                }
+            }
+        }
+
+        load();
+    }
+
+    /**
+     * Adds an index of the specified attribute, which speeds up fetches that compare the attribute with a constant.
+     * The index covers the objects of the attribute's entity and its sub-entities, and replaces any existing index of
+     * the attribute. It's built from the objects already in the store, and kept up to date as objects are saved.
+     *
+     * @param attribute the attribute to index
+     * @param type      the type of the index. Only a sorted index speeds up comparisons other than equality.
+     * @throws IllegalArgumentException if the type of the attribute can't be indexed
+     */
+    public void addIndex(Attribute attribute, IndexType type) {
+        synchronized (this) {
+            publish(addIndex(head, attribute.getEntity(), attribute, type));
+        }
+    }
+
+    private Version addIndex(Version version, Entity<?> entity, Attribute attribute, IndexType type) {
+        AttributeIndex index = new AttributeIndex(attribute, type == IndexType.SORTED);
+        for (StoreCacheNode cacheNode : version.getCacheNodes(entity).values()) {
+            index = index.add(cacheNode.getID(), cacheNode.getProperty(attribute.getName()));
+        }
+        version = version.plus(entity, index);
+
+        for (Entity<?> subEntity : entity.getSubEntities()) {
+            version = addIndex(version, subEntity, attribute, type);
+        }
+        return version;
+    }
+
+    /**
+     * Makes the specified version the latest version of the store, and publishes it to fetches.
+     */
+    private void publish(Version version) {
+        head = version;
+        published = version;
+    }
+
+    /**
+     * Saves the changes of a save request, after they have been applied to the cache nodes. The default implementation
+     * saves all the cache nodes by calling {@link #save()}. A store that can save incrementally should override this
+     * method to only write the specified nodes.
+     *
+     * @param changedNodes  the nodes of the inserted and updated objects
+     * @param deletedNodes  the nodes of the deleted objects, which are no longer in the store
+     */
+    protected void saveChanges(Collection<StoreCacheNode> changedNodes, Collection<StoreCacheNode> deletedNodes) {
+        save();
+    }
+
+    /**
+     * Returns a copy of the cache nodes of the store. When it's called while saving, it includes the changes being
+     * saved. The returned nodes must not be modified.
+     *
+     * @return the cache nodes of the store
+     */
+    protected Set<StoreCacheNode> getCacheNodes() {
+        Set<StoreCacheNode> cacheNodes = new HashSet<StoreCacheNode>();
+        synchronized (this) {
+            for (Map<ObjectID, StoreCacheNode> entityCacheNodes : head.cacheNodesByEntity.values()) {
+                cacheNodes.addAll(entityCacheNodes.values());
+            }
+        }
+        return cacheNodes;
     }
 
-    Set<StoreCacheNode> getCacheNodes() {
-        return new HashSet<StoreCacheNode>(idsToCacheNodes.values());
+    @Override
+    protected ObjectID createObjectID(Entity<?> entity, Object referenceObject) {
+        return super.createObjectID(entity, referenceObject);
     }
 
+    /**
+     * Adds a cache node to the store, replacing any node with the same ID. The node must not be modified afterwards.
+     *
+     * @param cacheNode the node to add
+     */
     protected void addCacheNode(StoreCacheNode cacheNode) {
-        idsToCacheNodes.put(cacheNode.getID(), cacheNode);
+        synchronized (this) {
+            publish(head.plus(cacheNode));
+        }
     }
 
+    /**
+     * Removes the cache node with the ID of the specified node from the store.
+     *
+     * @param cacheNode the node to remove
+     */
     protected void removeCacheNode(StoreCacheNode cacheNode) {
-        idsToCacheNodes.remove(cacheNode.getID());
+        synchronized (this) {
+            publish(head.minus(cacheNode.getID()));
+        }
     }
 
     protected void updateCacheNode(StoreCacheNode cacheNode, ManagedObject object) {
@@ -57,9 +278,7 @@ public abstract class AtomicStore extends PersistentStore {
                 Relationship relationship = (Relationship) property;
                 if (relationship.isToOne()) {
                     ManagedObject relatedObject = (ManagedObject) value;
-                    if (relatedObject != null) {
-                        cacheNode.setProperty(relationship.getName(), relatedObject.getID());
-                    }
+                    cacheNode.setProperty(relationship.getName(), relatedObject == null ? null : relatedObject.getID());
                 } else {
                     FaultingSet<?> relatedObjects = (FaultingSet<?>) value;
                     cacheNode.setProperty(relationship.getName(), relatedObjects.getObjectIDs());
@@ -79,19 +298,21 @@ public abstract class AtomicStore extends PersistentStore {
     }
 
     private StoreCacheNode getCacheNode(ObjectID objectID) {
-        return idsToCacheNodes.get(objectID);
+        return published.getCacheNode(objectID);
     }
 
     @Override
     List<ObjectID> getPermanentIDsForObjects(List<ManagedObject> objects) {
         List<ObjectID> objectIDs = new ArrayList<ObjectID>();
-        for (ManagedObject object : objects) {
-            ObjectID id;
+        synchronized (this) {
+            for (ManagedObject object : objects) {
+                ObjectID id;
 
-            Object refObject = createReferenceObjectForManagedObject(object);
-            id = createObjectID(object.getEntity(), refObject);
+                Object refObject = createReferenceObjectForManagedObject(object);
+                id = createObjectID(object.getEntity(), refObject);
 
-            objectIDs.add(id);
+                objectIDs.add(id);
+            }
         }
 
         return objectIDs;
@@ -126,86 +347,148 @@ public abstract class AtomicStore extends PersistentStore {
         return relatedObjectIDs;
     }
 
-    private <T extends ManagedObject> void sort(final List<T> list, final List<SortDescriptor> sortDescriptors) {
-        Collections.sort(list, new Comparator<T>() {
+    /**
+     * Fetches the objects that match the request. The predicate is evaluated against the values of the cache nodes,
+     * and the matches are sorted and paged by them too (see {@link FetchResultCollector}), so only the objects that
+     * are returned are registered in the context.
+     * Predicates that use the objects themselves (see {@link CacheNodeValues#canEvaluate}) are evaluated against the
+     * objects instead.
+     * <p>
+     * The fetch uses the version of the store that is published when it starts, and the returned objects are faulted
+     * in from the nodes of that version. Relationships that are faulted in later read the version published then.
+     */
+    @Override
+    <T extends ManagedObject> List<T> executeFetchRequest(FetchRequest<T> request, ObjectContext context) {
+        List<StoreCacheNode> page = getMatchingCacheNodes(request, context);
+        List<T> results = new ArrayList<T>(page.size());
+        for (StoreCacheNode cacheNode : page) {
             @SuppressWarnings("unchecked")
-            @Override
-            public int compare(T lhs, T rhs) {
-                int result = 0;
-                for (SortDescriptor sortDesc : sortDescriptors) {
-                    Object lhsValue = lhs.getValue(sortDesc.getAttributeName());
-                    Object rhsValue = rhs.getValue(sortDesc.getAttributeName());
-
-                    if (lhsValue == null && rhsValue == null) {
-                        return 0;
-                    } else if (lhsValue == null || rhsValue == null) {
-                        return -1;
-                    } else {
-                        @SuppressWarnings("rawtypes")
-                        Comparable lhsComparable = ObjectUtil.toComparable(lhsValue);
-                        @SuppressWarnings("rawtypes")
-                        Comparable rhsComparable = ObjectUtil.toComparable(rhsValue);
-                        result = lhsComparable.compareTo(rhsComparable);
-
-                        if (result == 0) {
-                            continue;
-                        }
-
-                        result = sortDesc.isAscending() ? result : -result;
-                    }
-                }
-                return result;
-            }
-        });
+            T obj = (T)context.getExistingObject(cacheNode.getID(), cacheNode);
+            results.add(obj);
+        }
+
+        return results;
     }
 
+    /**
+     * Opens a cursor over the cache nodes that match the request, which registers and faults in each object only when
+     * the cursor reaches it. The nodes of the whole page are held in memory, like the rest of the store.
+     */
     @Override
-    <T extends ManagedObject> List<T> executeFetchRequest(final FetchRequest<T> request, final ObjectContext context) {
-        List<T> results = new ArrayList<T>();
+    <T extends ManagedObject> FetchCursor<T> openFetchCursor(FetchRequest<T> request, final ObjectContext context) {
+        final Iterator<StoreCacheNode> cacheNodes = getMatchingCacheNodes(request, context).iterator();
+        return new FetchCursor<T>() {
+            @Override
+            public boolean hasNext() {
+                return cacheNodes.hasNext();
+            }
 
-        for (StoreCacheNode cacheNode : getCacheNodes()) {
-            ObjectID objID = cacheNode.getID();
-            if (request.getEntity().getType().isAssignableFrom(objID.getType())) {
+            @Override
+            public T next() {
+                StoreCacheNode cacheNode = cacheNodes.next();
                 @SuppressWarnings("unchecked")
-                T obj = (T)context.getExistingObject(objID);
+                T obj = (T)context.getExistingObject(cacheNode.getID(), cacheNode);
+                return obj;
+            }
 
-                if (request.getPredicate() == null || request.getPredicate().evaluate(obj)) {
-                    results.add(obj);
-                }
+            @Override
+            public void close() {
             }
-        }
+        };
+    }
 
-        if (request.hasSortDescriptors()) {
-            sort(results, request.getSortDescriptors());
-        }
+    private List<StoreCacheNode> getMatchingCacheNodes(FetchRequest<?> request, ObjectContext context) {
+        CompiledPredicate predicate = request.getCompiledPredicate();
+        boolean evaluatesCacheNodes = predicate == null || CacheNodeValues.canEvaluate(request.getPredicate(), request.getEntity());
+        FetchResultCollector matches = new FetchResultCollector(request.getSortDescriptors(), request.getOffset(), request.getLimit());
+        Version version = published;
+
+        for (Map.Entry<Entity<?>, PersistentHashMap<ObjectID, StoreCacheNode>> entry : version.cacheNodesByEntity.entrySet()) {
+            if (!request.getEntity().getType().isAssignableFrom(entry.getKey().getType())) {
+                continue;
+            }
+
+            Map<ObjectID, StoreCacheNode> cacheNodes = entry.getValue();
+            FetchPlanner planner = new FetchPlanner(version.getIndexes(entry.getKey()));
+            Collection<ObjectID> objectIDs = planner.getCandidates(request.getPredicate());
+            if (objectIDs == null) {
+                objectIDs = cacheNodes.keySet();
+            }
+
+            for (ObjectID objID : objectIDs) {
+                if (matches.isFull()) {
+                    break;
+                }
 
-        if (request.getLimit() < Integer.MAX_VALUE && request.getLimit() < results.size()) {
-            results = results.subList(0, request.getLimit());
+                StoreCacheNode cacheNode = cacheNodes.get(objID);
+                if (predicate == null) {
+                    matches.add(cacheNode);
+                } else if (evaluatesCacheNodes) {
+                    if (predicate.evaluate(new CacheNodeValues(version, cacheNode))) {
+                        matches.add(cacheNode);
+                    }
+                } else if (predicate.evaluate(context.getExistingObject(objID, cacheNode))) {
+                    matches.add(cacheNode);
+                }
+            }
         }
 
-        return results;
+        return matches.getResults();
     }
 
+    /**
+     * Applies the changes of a save request to a new version of the store, saves them using
+     * {@link #saveChanges(Collection, Collection)}, and then publishes the new version. If saving fails, the store
+     * remains at the previous version.
+     */
     @Override
     void executeSaveRequest(SaveChangesRequest request, ObjectContext context) {
-        for (ManagedObject object : request.getChanges().getInsertedObjects()) {
-            StoreCacheNode cacheNode = createCacheNode(object);
-            addCacheNode(cacheNode);
-        }
+        List<StoreCacheNode> changedNodes = new ArrayList<StoreCacheNode>();
+        List<StoreCacheNode> deletedNodes = new ArrayList<StoreCacheNode>();
+        List<ManagedObject> deletedObjects = new ArrayList<ManagedObject>();
+
+        synchronized (this) {
+            Version previous = head;
+            Version version = previous;
+
+            for (ManagedObject object : request.getChanges().getInsertedObjects()) {
+                StoreCacheNode cacheNode = createCacheNode(object);
+                version = version.plus(cacheNode);
+                changedNodes.add(cacheNode);
+            }
 
-        for (ManagedObject object : request.getChanges().getDeletedObjects()) {
-            if (!object.isInserted()) {
-                StoreCacheNode cacheNode = getObjectValues(object.getID(), context);
-                removeCacheNode(cacheNode);
-                object.setManagedObjectContext(null);
+            for (ManagedObject object : request.getChanges().getDeletedObjects()) {
+                if (!object.isInserted()) {
+                    StoreCacheNode cacheNode = version.getCacheNode(object.getID());
+                    if (cacheNode == null) {
+                        // already deleted by another context
+                        continue;
+                    }
+                    version = version.minus(object.getID());
+                    deletedNodes.add(cacheNode);
+                    deletedObjects.add(object);
+                }
+            }
+
+            for (ManagedObject object : request.getChanges().getUpdatedObjects()) {
+                // the node of the previous version may be in use by fetches, so the object gets a new node
+                StoreCacheNode cacheNode = createCacheNode(object);
+                version = version.plus(cacheNode);
+                changedNodes.add(cacheNode);
             }
-        }
 
-        for (ManagedObject object : request.getChanges().getUpdatedObjects()) {
-            StoreCacheNode cacheNode = getObjectValues(object.getID(), context);
-            updateCacheNode(cacheNode, object);
+            head = version;
+            try {
+                saveChanges(changedNodes, deletedNodes);
+            } catch (RuntimeException e) {
+                head = previous;
+                throw e;
+            }
+            published = version;
         }
 
-        save();
+        for (ManagedObject object : deletedObjects) {
+            object.setManagedObjectContext(null);
+        }
     }
 }
@@ -0,0 +1,188 @@
+package com.github.dkharrat.nexusdata.core;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.dkharrat.nexusdata.metamodel.Attribute;
+
+/**
+ * An in-memory index of the values of an attribute of the cache nodes of one entity in an {@link AtomicStore}. A hash
+ * index only supports lookups by value, while a sorted index supports range lookups too.
+ * <p>
+ * Values are normalized into keys that compare the same way predicates compare them: integral numbers and dates are
+ * indexed as longs and floating-point numbers as doubles, so a lookup of an {@code Integer} attribute by a
+ * {@code Long} constant (or a date by its time) finds the same objects a predicate would match.
+ * <p>
+ * An index is immutable. Adding or removing an object returns a new version of the index, which shares the unchanged
+ * parts of the previous version, so a fetch can keep using the version it started with while a save creates the next.
+ */
+class AttributeIndex {
+
+    /**
+     * Returned by {@link #toKey(Object)} for values that can't be compared with the values of the attribute through
+     * the index.
+     */
+    static final Object NO_KEY = new Object();
+
+    private static final Comparator<Object> KEY_COMPARATOR = new Comparator<Object>() {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        @Override
+        public int compare(Object lhs, Object rhs) {
+            if (lhs instanceof Long && rhs instanceof Long) {
+                return ((Long) lhs).compareTo((Long) rhs);
+            } else if (lhs instanceof Number && rhs instanceof Number) {
+                return Double.compare(((Number) lhs).doubleValue(), ((Number) rhs).doubleValue());
+            }
+            return ((Comparable) lhs).compareTo(rhs);
+        }
+    };
+
+    private final Attribute attribute;
+    private final boolean isSorted;
+    // each set of objects is the key set of a persistent map, in which every object is mapped to itself
+    private final PersistentMap<Object,PersistentHashMap<ObjectID,ObjectID>> entries;
+    private final PersistentHashMap<ObjectID,ObjectID> nullEntries;
+
+    AttributeIndex(Attribute attribute, boolean isSorted) {
+        if (!isSupportedType(attribute.getType())) {
+            throw new IllegalArgumentException("Cannot index attribute " + attribute.getName() + " of type " + attribute.getType());
+        }
+        this.attribute = attribute;
+        this.isSorted = isSorted;
+        this.entries = isSorted
+                ? PersistentSortedMap.<Object,PersistentHashMap<ObjectID,ObjectID>>empty(KEY_COMPARATOR)
+                : PersistentHashMap.<Object,PersistentHashMap<ObjectID,ObjectID>>empty();
+        this.nullEntries = PersistentHashMap.empty();
+    }
+
+    private AttributeIndex(AttributeIndex index, PersistentMap<Object,PersistentHashMap<ObjectID,ObjectID>> entries, PersistentHashMap<ObjectID,ObjectID> nullEntries) {
+        this.attribute = index.attribute;
+        this.isSorted = index.isSorted;
+        this.entries = entries;
+        this.nullEntries = nullEntries;
+    }
+
+    private static boolean isSupportedType(Class<?> type) {
+        return isIntegral(type) || Float.class.equals(type) || Double.class.equals(type) || String.class.equals(type)
+                || Boolean.class.equals(type) || Date.class.equals(type) || type.isEnum();
+    }
+
+    private static boolean isIntegral(Class<?> type) {
+        return Long.class.equals(type) || Integer.class.equals(type) || Short.class.equals(type) || Byte.class.equals(type);
+    }
+
+    Attribute getAttribute() {
+        return attribute;
+    }
+
+    boolean isSorted() {
+        return isSorted;
+    }
+
+    /**
+     * Returns the key of the specified value in this index, {@code null} for a null value, or {@link #NO_KEY} if the
+     * value is not comparable with the values of the attribute.
+     */
+    Object toKey(Object value) {
+        if (value == null) {
+            return null;
+        }
+
+        Class<?> type = attribute.getType();
+        if (Date.class.equals(type)) {
+            if (value instanceof Date) {
+                return ((Date) value).getTime();
+            } else if (isIntegral(value.getClass())) {
+                return ((Number) value).longValue();
+            }
+        } else if (isIntegral(type)) {
+            if (isIntegral(value.getClass())) {
+                return ((Number) value).longValue();
+            } else if (value instanceof Double || value instanceof Float) {
+                double number = ((Number) value).doubleValue();
+                // a whole number equals the integer of the same value, while any other number can only bound ranges
+                return number == Math.rint(number) && Math.abs(number) < 0x1p63 ? (Object) (long) number : (Object) number;
+            }
+        } else if (Float.class.equals(type) || Double.class.equals(type)) {
+            if (value instanceof Number && (isIntegral(value.getClass()) || value instanceof Double || value instanceof Float)) {
+                return ((Number) value).doubleValue();
+            }
+        } else if (type.isInstance(value)) {
+            return value;
+        }
+        return NO_KEY;
+    }
+
+    /**
+     * Returns a version of this index that has the specified object with the specified value.
+     */
+    AttributeIndex add(ObjectID objectID, Object value) {
+        Object key = toKey(value);
+        if (key == null) {
+            return new AttributeIndex(this, entries, nullEntries.plus(objectID, objectID));
+        }
+
+        PersistentHashMap<ObjectID,ObjectID> objectIDs = entries.get(key);
+        if (objectIDs == null) {
+            objectIDs = PersistentHashMap.empty();
+        }
+        return new AttributeIndex(this, entries.plus(key, objectIDs.plus(objectID, objectID)), nullEntries);
+    }
+
+    /**
+     * Returns a version of this index that doesn't have the specified object, which had the specified value.
+     */
+    AttributeIndex remove(ObjectID objectID, Object value) {
+        Object key = toKey(value);
+        if (key == null) {
+            return new AttributeIndex(this, entries, nullEntries.minus(objectID));
+        }
+
+        PersistentHashMap<ObjectID,ObjectID> objectIDs = entries.get(key);
+        if (objectIDs == null) {
+            return this;
+        }
+        objectIDs = objectIDs.minus(objectID);
+        return new AttributeIndex(this, objectIDs.isEmpty() ? entries.minus(key) : entries.plus(key, objectIDs), nullEntries);
+    }
+
+    /**
+     * Returns the objects whose value has the specified key, which may be null.
+     */
+    Set<ObjectID> get(Object key) {
+        Map<ObjectID,ObjectID> objectIDs = key == null ? nullEntries : entries.get(key);
+        return objectIDs == null ? Collections.<ObjectID>emptySet() : objectIDs.keySet();
+    }
+
+    /**
+     * Returns the objects whose value is within the specified range of keys. Objects with null values are never in a
+     * range. Only supported by sorted indexes.
+     *
+     * @param lowerKey          the lower bound of the range, or null if the range has no lower bound
+     * @param lowerInclusive    true if the lower bound is part of the range
+     * @param upperKey          the upper bound of the range, or null if the range has no upper bound
+     * @param upperInclusive    true if the upper bound is part of the range
+     * @return a new set of the objects in the range
+     */
+    Set<ObjectID> getRange(Object lowerKey, boolean lowerInclusive, Object upperKey, boolean upperInclusive) {
+        if (!isSorted) {
+            throw new UnsupportedOperationException("Range lookups are not supported by a hash index");
+        }
+
+        PersistentSortedMap<Object,PersistentHashMap<ObjectID,ObjectID>> sortedEntries =
+                (PersistentSortedMap<Object,PersistentHashMap<ObjectID,ObjectID>>) entries;
+        if (lowerKey != null && upperKey != null && KEY_COMPARATOR.compare(lowerKey, upperKey) > 0) {
+            return new HashSet<ObjectID>();
+        }
+
+        Set<ObjectID> result = new HashSet<ObjectID>();
+        for (PersistentHashMap<ObjectID,ObjectID> objectIDs : sortedEntries.getRange(lowerKey, lowerInclusive, upperKey, upperInclusive)) {
+            result.addAll(objectIDs.keySet());
+        }
+        return result;
+    }
+}
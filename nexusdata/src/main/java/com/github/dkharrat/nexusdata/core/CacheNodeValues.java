@@ -0,0 +1,192 @@
+package com.github.dkharrat.nexusdata.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.github.dkharrat.nexusdata.metamodel.Entity;
+import com.github.dkharrat.nexusdata.metamodel.Property;
+import com.github.dkharrat.nexusdata.metamodel.Relationship;
+import com.github.dkharrat.nexusdata.predicate.BetweenPredicate;
+import com.github.dkharrat.nexusdata.predicate.ComparisonPredicate;
+import com.github.dkharrat.nexusdata.predicate.CompoundPredicate;
+import com.github.dkharrat.nexusdata.predicate.ConstantExpression;
+import com.github.dkharrat.nexusdata.predicate.CountExpression;
+import com.github.dkharrat.nexusdata.predicate.ExpressionVisitor;
+import com.github.dkharrat.nexusdata.predicate.FieldPathExpression;
+import com.github.dkharrat.nexusdata.predicate.NotPredicate;
+import com.github.dkharrat.nexusdata.predicate.Predicate;
+import com.github.dkharrat.nexusdata.predicate.PropertyValueSource;
+import com.github.dkharrat.nexusdata.predicate.QuantifiedPredicate;
+import com.github.dkharrat.nexusdata.predicate.ThisExpression;
+import com.github.dkharrat.nexusdata.predicate.VariableExpression;
+
+/**
+ * The values of a cache node of an {@link AtomicStore}, as read by compiled predicates. It lets a store evaluate a
+ * predicate against its stored data, without creating a {@link ManagedObject} for each object it evaluates. Related
+ * objects are resolved to the values of their cache nodes.
+ */
+class CacheNodeValues implements PropertyValueSource {
+
+    /**
+     * Resolves the cache nodes of related objects.
+     */
+    interface CacheNodeResolver {
+        /**
+         * Returns the cache node of the specified object, or null if the store doesn't have it.
+         */
+        StoreCacheNode getCacheNode(ObjectID objectID);
+
+        /**
+         * Returns the IDs of the objects related to the specified object through a to-many relationship, for stores
+         * whose cache nodes don't have the values of to-many relationships.
+         */
+        Collection<ObjectID> getRelatedObjectIDs(ObjectID objectID, Relationship relationship);
+    }
+
+    private final CacheNodeResolver resolver;
+    private final StoreCacheNode cacheNode;
+
+    CacheNodeValues(CacheNodeResolver resolver, StoreCacheNode cacheNode) {
+        this.resolver = resolver;
+        this.cacheNode = cacheNode;
+    }
+
+    StoreCacheNode getCacheNode() {
+        return cacheNode;
+    }
+
+    @Override
+    public Object getValue(Property property) {
+        Object value = cacheNode.getProperty(property.getName());
+        if (value == null && property.isRelationship() && ((Relationship) property).isToMany()
+                && !cacheNode.hasProperty(property.getName())) {
+            value = resolver.getRelatedObjectIDs(cacheNode.getID(), (Relationship) property);
+        }
+        if (value == null || !property.isRelationship()) {
+            return value;
+        }
+
+        if (((Relationship) property).isToOne()) {
+            return getValues((ObjectID) value);
+        } else {
+            Collection<?> objectIDs = (Collection<?>) value;
+            List<CacheNodeValues> relatedValues = new ArrayList<CacheNodeValues>(objectIDs.size());
+            for (Object objectID : objectIDs) {
+                CacheNodeValues values = getValues((ObjectID) objectID);
+                if (values != null) {
+                    relatedValues.add(values);
+                }
+            }
+            return relatedValues;
+        }
+    }
+
+    private CacheNodeValues getValues(ObjectID objectID) {
+        StoreCacheNode relatedCacheNode = resolver.getCacheNode(objectID);
+        return relatedCacheNode == null ? null : new CacheNodeValues(resolver, relatedCacheNode);
+    }
+
+    /**
+     * Indicates whether the specified predicate evaluates the same against the values of cache nodes as against
+     * managed objects. That's not the case if the predicate uses the objects themselves, such as by comparing a
+     * relationship with a managed object, or reads fields that are not properties of the entity.
+     *
+     * @param predicate the predicate to check
+     * @param entity    the entity the predicate is evaluated against
+     * @return true if the predicate can be evaluated against the values of cache nodes, or false otherwise
+     */
+    static boolean canEvaluate(Predicate predicate, Entity<?> entity) {
+        return predicate.accept(new EvaluabilityChecker(entity));
+    }
+
+    private static class EvaluabilityChecker implements ExpressionVisitor<Boolean> {
+        private final Entity<?> entity;
+
+        EvaluabilityChecker(Entity<?> entity) {
+            this.entity = entity;
+        }
+
+        @Override
+        public Boolean visit(ConstantExpression<?> expression) {
+            Object value = expression.getValue();
+            if (value instanceof Collection) {
+                for (Object element : (Collection<?>) value) {
+                    if (element instanceof ManagedObject || element instanceof ObjectID) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return !(value instanceof ManagedObject || value instanceof ObjectID);
+        }
+
+        @Override
+        public Boolean visit(FieldPathExpression expression) {
+            return resolve(expression) != null;
+        }
+
+        /**
+         * Returns the property at the end of a field path, or null if it isn't a property path of the entity.
+         */
+        private Property resolve(FieldPathExpression expression) {
+            Entity<?> curEntity = entity;
+            Property property = null;
+            for (String component : expression.getPathComponents()) {
+                if (curEntity == null || !curEntity.hasProperty(component)) {
+                    return null;
+                }
+                property = curEntity.getProperty(component);
+                curEntity = property.isRelationship() ? ((Relationship) property).getDestinationEntity() : null;
+            }
+            return property;
+        }
+
+        @Override
+        public Boolean visit(ThisExpression expression) {
+            return false;
+        }
+
+        @Override
+        public Boolean visit(VariableExpression expression) {
+            return false;
+        }
+
+        @Override
+        public Boolean visit(CompoundPredicate predicate) {
+            return predicate.getLhs().accept(this) && predicate.getRhs().accept(this);
+        }
+
+        @Override
+        public Boolean visit(ComparisonPredicate predicate) {
+            return predicate.getLhs().accept(this) && predicate.getRhs().accept(this);
+        }
+
+        @Override
+        public Boolean visit(NotPredicate predicate) {
+            return predicate.getPredicate().accept(this);
+        }
+
+        @Override
+        public Boolean visit(BetweenPredicate predicate) {
+            return predicate.getExpression().accept(this)
+                    && predicate.getLowerBound().accept(this)
+                    && predicate.getUpperBound().accept(this);
+        }
+
+        @Override
+        public Boolean visit(QuantifiedPredicate predicate) {
+            Property collection = resolve(predicate.getCollection());
+            if (collection == null || !collection.isRelationship()) {
+                return false;
+            }
+            Entity<?> elementEntity = ((Relationship) collection).getDestinationEntity();
+            return predicate.getPredicate().accept(new EvaluabilityChecker(elementEntity));
+        }
+
+        @Override
+        public Boolean visit(CountExpression expression) {
+            return expression.getCollection().accept(this);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.dkharrat.nexusdata.core;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A {@link NotificationScheduler} that delivers notifications through an {@link Executor}, such as a single-threaded
+ * executor that owns the context. Listeners are called on the thread that the executor runs the delivery on.
+ */
+public class ExecutorNotificationScheduler implements NotificationScheduler {
+
+    private static volatile ExecutorNotificationScheduler sharedInstance;
+
+    private final Executor executor;
+
+    /**
+     * Creates a new scheduler that delivers notifications through the specified executor.
+     *
+     * @param executor  the executor that runs the deliveries
+     */
+    public ExecutorNotificationScheduler(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor must not be null");
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Returns a scheduler that delivers notifications on a single background thread shared by all the contexts using
+     * it. This is used by contexts that are created outside of Android and without a scheduler.
+     *
+     * @return the shared scheduler
+     */
+    public static ExecutorNotificationScheduler getShared() {
+        if (sharedInstance == null) {
+            synchronized (ExecutorNotificationScheduler.class) {
+                if (sharedInstance == null) {
+                    ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "nexusdata-notifications");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                    sharedInstance = new ExecutorNotificationScheduler(executor);
+                }
+            }
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * @return the executor that runs the deliveries
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public void schedule(Runnable delivery) {
+        executor.execute(delivery);
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.dkharrat.nexusdata.core;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A FetchCursor returns the results of a fetch request from a persistent store one at a time, in the order of the
+ * request's sort descriptors and after applying its offset and limit. A store that reads its records incrementally
+ * (e.g. from a database cursor) only materializes an object when {@link #next()} is called, so the cursor does not hold
+ * the whole result in memory. A cursor must be closed once it's no longer needed, which releases the resources it
+ * holds in the store.
+ *
+ * @param <T> the type of the objects returned by the cursor
+ */
+public abstract class FetchCursor<T extends ManagedObject> implements Iterator<T>, Closeable {
+
+    // the stream that reads this cursor, if any
+    private ObjectStream<T> stream;
+
+    /**
+     * Returns the next object of the fetch result.
+     *
+     * @return the next object
+     * @throws NoSuchElementException if the cursor has no more objects
+     */
+    @Override
+    public abstract T next();
+
+    /**
+     * Releases the resources held by this cursor. Calling this method more than once has no effect.
+     */
+    @Override
+    public abstract void close();
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Objects can't be removed from a fetch cursor");
+    }
+
+    void setStream(ObjectStream<T> stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * Called with each object that the cursor reads from a store but doesn't return (e.g. the objects before the
+     * offset of a merged fetch), so the stream that reads the cursor can release it like the objects it returns.
+     */
+    void skip(T object) {
+        if (stream != null) {
+            stream.release(object);
+        }
+    }
+
+    /**
+     * Returns a cursor over a fetch result that is already in memory.
+     */
+    static <T extends ManagedObject> FetchCursor<T> fromList(List<T> objects) {
+        final Iterator<T> iterator = objects.iterator();
+        return new FetchCursor<T>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.dkharrat.nexusdata.core;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.dkharrat.nexusdata.predicate.BetweenPredicate;
+import com.github.dkharrat.nexusdata.predicate.ComparisonPredicate;
+import com.github.dkharrat.nexusdata.predicate.CompoundPredicate;
+import com.github.dkharrat.nexusdata.predicate.ConstantExpression;
+import com.github.dkharrat.nexusdata.predicate.Expression;
+import com.github.dkharrat.nexusdata.predicate.FieldPathExpression;
+import com.github.dkharrat.nexusdata.predicate.Predicate;
+
+/**
+ * Narrows down the objects of an entity that may match a predicate, using the {@link AttributeIndex}es of the entity.
+ * Comparisons of an indexed attribute with a constant are looked up in its index: equality and IN through any index,
+ * and ranges (including BETWEEN) through a sorted index. The candidates of an AND are intersected, and those of an OR
+ * are combined. Any other predicate can't be narrowed down.
+ * <p>
+ * The candidates are a superset of the matching objects, so the predicate must still be evaluated against them.
+ */
+class FetchPlanner {
+
+    private final Map<String,AttributeIndex> indexes;
+
+    /**
+     * Creates a planner that uses the specified indexes of an entity.
+     *
+     * @param indexes   the indexes of the entity, keyed by attribute name
+     */
+    FetchPlanner(Map<String,AttributeIndex> indexes) {
+        this.indexes = indexes;
+    }
+
+    /**
+     * Returns the objects that may match the specified predicate, or null if the predicate can't be narrowed down
+     * through the indexes, in which case all objects of the entity must be evaluated. The returned set must not be
+     * modified.
+     */
+    Set<ObjectID> getCandidates(Predicate predicate) {
+        if (indexes.isEmpty() || predicate == null) {
+            return null;
+        } else if (predicate instanceof CompoundPredicate) {
+            return getCandidates((CompoundPredicate) predicate);
+        } else if (predicate instanceof ComparisonPredicate) {
+            return getCandidates((ComparisonPredicate) predicate);
+        } else if (predicate instanceof BetweenPredicate) {
+            return getCandidates((BetweenPredicate) predicate);
+        }
+        return null;
+    }
+
+    private Set<ObjectID> getCandidates(CompoundPredicate predicate) {
+        Set<ObjectID> lhs = getCandidates(predicate.getLhs());
+        Set<ObjectID> rhs = getCandidates(predicate.getRhs());
+
+        switch (predicate.getOperator()) {
+            case AND: {
+                if (lhs == null || rhs == null) {
+                    return lhs == null ? rhs : lhs;
+                }
+                Set<ObjectID> smaller = lhs.size() <= rhs.size() ? lhs : rhs;
+                Set<ObjectID> larger = smaller == lhs ? rhs : lhs;
+                Set<ObjectID> result = new HashSet<ObjectID>();
+                for (ObjectID objectID : smaller) {
+                    if (larger.contains(objectID)) {
+                        result.add(objectID);
+                    }
+                }
+                return result;
+            }
+            case OR: {
+                if (lhs == null || rhs == null) {
+                    return null;
+                }
+                Set<ObjectID> result = new HashSet<ObjectID>(lhs);
+                result.addAll(rhs);
+                return result;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private Set<ObjectID> getCandidates(ComparisonPredicate predicate) {
+        ComparisonPredicate.Operator op = predicate.getOperator();
+        AttributeIndex index = getIndex(predicate.getLhs());
+        Expression<?> constant = predicate.getRhs();
+        if (index == null) {
+            // a comparison with the constant on the left, e.g. (5 < age), is looked up as (age > 5)
+            index = getIndex(predicate.getRhs());
+            constant = predicate.getLhs();
+            op = reverse(op);
+        }
+        if (index == null || !(constant instanceof ConstantExpression) || op == null) {
+            return null;
+        }
+
+        Object value = ((ConstantExpression<?>) constant).getValue();
+        switch (op) {
+            case EQUAL: {
+                Object key = index.toKey(value);
+                return key == AttributeIndex.NO_KEY ? null : index.get(key);
+            }
+            case IN: {
+                if (!(value instanceof Collection)) {
+                    return null;
+                }
+                Set<ObjectID> result = new HashSet<ObjectID>();
+                for (Object element : (Collection<?>) value) {
+                    Object key = index.toKey(element);
+                    if (key == AttributeIndex.NO_KEY) {
+                        return null;
+                    } else if (key != null) {
+                        result.addAll(index.get(key));
+                    }
+                }
+                return result;
+            }
+            case GREATER_THAN:
+                return getRange(index, value, false, null, false);
+            case GREATER_THAN_OR_EQUAL:
+                return getRange(index, value, true, null, false);
+            case LESS_THAN:
+                return getRange(index, null, false, value, false);
+            case LESS_THAN_OR_EQUAL:
+                return getRange(index, null, false, value, true);
+            default:
+                return null;
+        }
+    }
+
+    private Set<ObjectID> getCandidates(BetweenPredicate predicate) {
+        AttributeIndex index = getIndex(predicate.getExpression());
+        if (index == null
+                || !(predicate.getLowerBound() instanceof ConstantExpression)
+                || !(predicate.getUpperBound() instanceof ConstantExpression)) {
+            return null;
+        }
+
+        Object lowerBound = ((ConstantExpression<?>) predicate.getLowerBound()).getValue();
+        Object upperBound = ((ConstantExpression<?>) predicate.getUpperBound()).getValue();
+        return getRange(index, lowerBound, true, upperBound, true);
+    }
+
+    /**
+     * Returns the objects within a range of values, where a null bound means the range is unbounded on that side.
+     */
+    private static Set<ObjectID> getRange(AttributeIndex index, Object lowerBound, boolean lowerInclusive, Object upperBound, boolean upperInclusive) {
+        if (!index.isSorted()) {
+            return null;
+        }
+
+        Object lowerKey = index.toKey(lowerBound);
+        Object upperKey = index.toKey(upperBound);
+        if (lowerKey == AttributeIndex.NO_KEY || upperKey == AttributeIndex.NO_KEY) {
+            return null;
+        }
+        return index.getRange(lowerKey, lowerInclusive, upperKey, upperInclusive);
+    }
+
+    private AttributeIndex getIndex(Expression<?> expression) {
+        if (expression instanceof FieldPathExpression && !((FieldPathExpression) expression).isKeyPath()) {
+            return indexes.get(((FieldPathExpression) expression).getFieldPath());
+        }
+        return null;
+    }
+
+    private static ComparisonPredicate.Operator reverse(ComparisonPredicate.Operator op) {
+        switch (op) {
+            case EQUAL:
+                return ComparisonPredicate.Operator.EQUAL;
+            case GREATER_THAN:
+                return ComparisonPredicate.Operator.LESS_THAN;
+            case GREATER_THAN_OR_EQUAL:
+                return ComparisonPredicate.Operator.LESS_THAN_OR_EQUAL;
+            case LESS_THAN:
+                return ComparisonPredicate.Operator.GREATER_THAN;
+            case LESS_THAN_OR_EQUAL:
+                return ComparisonPredicate.Operator.GREATER_THAN_OR_EQUAL;
+            default:
+                return null;
+        }
+    }
+}
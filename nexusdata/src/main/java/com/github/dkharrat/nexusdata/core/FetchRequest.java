@@ -1,11 +1,15 @@
 package com.github.dkharrat.nexusdata.core;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.github.dkharrat.nexusdata.metamodel.Entity;
+import com.github.dkharrat.nexusdata.predicate.CompiledPredicate;
 import com.github.dkharrat.nexusdata.predicate.Predicate;
-import com.github.dkharrat.nexusdata.predicate.PredicateBuilder;
+import com.github.dkharrat.nexusdata.predicate.PredicateTemplate;
 
 /**
  * Describes query to the persistence store to retrieve all the objects that match the specified criteria.
@@ -16,6 +20,9 @@ public class FetchRequest<T extends ManagedObject> implements PersistentStoreReq
 
     private final Entity<T> entity;
     private Predicate predicate;
+    private PredicateTemplate predicateTemplate;
+    private Map<String,?> substitutionVariables = Collections.emptyMap();
+    private CompiledPredicate compiledPredicate;
     private final List<SortDescriptor> sortDescriptors = new ArrayList<SortDescriptor>();
     private int limit = Integer.MAX_VALUE;
     private int offset = 0;
@@ -32,6 +39,24 @@ public class FetchRequest<T extends ManagedObject> implements PersistentStoreReq
         this.entity = entity;
     }
 
+    /**
+     * Creates a copy of the specified FetchRequest, which can be changed without affecting the original.
+     *
+     * @param other the fetch request to copy
+     */
+    FetchRequest(FetchRequest<T> other) {
+        this.entity = other.entity;
+        this.predicate = other.predicate;
+        this.predicateTemplate = other.predicateTemplate;
+        this.substitutionVariables = other.substitutionVariables;
+        this.compiledPredicate = other.compiledPredicate;
+        this.sortDescriptors.addAll(other.sortDescriptors);
+        this.limit = other.limit;
+        this.offset = other.offset;
+        this.includesPendingChanges = other.includesPendingChanges;
+        this.returnsObjectsAsFaults = other.returnsObjectsAsFaults;
+    }
+
     /**
      * Returns the entity of this FetchRequest
      *
@@ -57,6 +82,58 @@ public class FetchRequest<T extends ManagedObject> implements PersistentStoreReq
      */
     public void setPredicate(Predicate predicate) {
         this.predicate = predicate;
+        this.predicateTemplate = null;
+        this.substitutionVariables = Collections.emptyMap();
+        this.compiledPredicate = null;
+    }
+
+    /**
+     * Sets the predicate to use for this FetchRequest by substituting the variables of the specified template.
+     *
+     * @param template  the predicate template
+     * @param variables the values of the variables in the template, keyed by the variable name
+     * @see PredicateTemplate#predicateWithSubstitutionVariables(Map)
+     */
+    public void setPredicate(PredicateTemplate template, Map<String,?> variables) {
+        setPredicate(template.predicateWithSubstitutionVariables(variables));
+        this.predicateTemplate = template;
+        if (variables != null) {
+            this.substitutionVariables = Collections.unmodifiableMap(new HashMap<String,Object>(variables));
+        }
+    }
+
+    /**
+     * Returns the template the predicate of this FetchRequest was created from, or null if the predicate was not
+     * created from a template. Requests sharing the same template have predicates of the same structure, differing
+     * only in their constant values.
+     *
+     * @return the template of the predicate used for this FetchRequest
+     */
+    public PredicateTemplate getPredicateTemplate() {
+        return predicateTemplate;
+    }
+
+    /**
+     * Returns the values of the variables substituted into the template of the predicate, or an empty map if the
+     * predicate was not created from a template.
+     *
+     * @return the values of the variables of the predicate template, keyed by the variable name
+     */
+    public Map<String,?> getSubstitutionVariables() {
+        return substitutionVariables;
+    }
+
+    /**
+     * Returns the predicate of this FetchRequest compiled against its entity, or null if there is no predicate. The
+     * compiled predicate is created on first use and reused until the predicate is changed.
+     *
+     * @return the compiled predicate used for this FetchRequest
+     */
+    public CompiledPredicate getCompiledPredicate() {
+        if (compiledPredicate == null && predicate != null) {
+            compiledPredicate = CompiledPredicate.compile(predicate, entity);
+        }
+        return compiledPredicate;
     }
 
     /**
@@ -233,7 +310,17 @@ public class FetchRequest<T extends ManagedObject> implements PersistentStoreReq
          * @see FetchRequest#setPredicate(com.github.dkharrat.nexusdata.predicate.Predicate)
          */
         public Builder<T> predicate(String predicateToParse) {
-            fetchRequest.setPredicate(PredicateBuilder.parse(predicateToParse));
+            return predicate(predicateToParse, null);
+        }
+
+        /**
+         * Sets the predicate given a string representation containing variables (e.g. "dueBy < $cutoff"). Parsed
+         * predicate strings are cached, so re-using the same string with different variable values is cheap.
+         *
+         * @see FetchRequest#setPredicate(PredicateTemplate, Map)
+         */
+        public Builder<T> predicate(String predicateToParse, Map<String,?> substitutionVariables) {
+            fetchRequest.setPredicate(PredicateTemplate.parse(predicateToParse), substitutionVariables);
             return this;
         }
 
@@ -0,0 +1,127 @@
+package com.github.dkharrat.nexusdata.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.github.dkharrat.nexusdata.utils.ObjectUtil;
+
+/**
+ * Collects the cache nodes that match a fetch request, and returns the page of them selected by the request's sort
+ * descriptors, offset and limit.
+ * <p>
+ * The sort keys of a node are extracted once, when it's added. If the request has a limit, only the first
+ * {@code offset + limit} nodes in sort order are kept, in a bounded heap, so selecting the first k of n matches takes
+ * O(n log k) time and O(k) memory. Without sort descriptors, nodes are kept in the order they are added, and the
+ * collector is full once it has enough of them.
+ * <p>
+ * Nodes are ordered like {@link SortDescriptorComparator} orders managed objects, so that the results of a store are
+ * in the same order as the merged results of several stores.
+ */
+class FetchResultCollector {
+
+    private static class Entry {
+        final StoreCacheNode cacheNode;
+        final Comparable<?>[] sortKeys;
+
+        Entry(StoreCacheNode cacheNode, Comparable<?>[] sortKeys) {
+            this.cacheNode = cacheNode;
+            this.sortKeys = sortKeys;
+        }
+    }
+
+    private final String[] sortNames;
+    private final SortDescriptorComparator sortComparator;
+    private final int offset;
+    private final int limit;
+
+    // the number of nodes to keep to return the requested page, or Integer.MAX_VALUE if all nodes are kept
+    private final int capacity;
+
+    private final Comparator<Entry> comparator = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            return sortComparator.compareSortKeys(lhs.sortKeys, rhs.sortKeys);
+        }
+    };
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private final PriorityQueue<Entry> heap;
+
+    FetchResultCollector(List<SortDescriptor> sortDescriptors, int offset, int limit) {
+        this.sortNames = new String[sortDescriptors.size()];
+        for (int i = 0; i < sortNames.length; i++) {
+            sortNames[i] = sortDescriptors.get(i).getAttributeName();
+        }
+        this.sortComparator = new SortDescriptorComparator(sortDescriptors);
+
+        this.offset = Math.max(offset, 0);
+        this.limit = limit;
+        this.capacity = (int) Math.min((long) this.offset + limit, Integer.MAX_VALUE);
+
+        if (sortNames.length > 0 && capacity < Integer.MAX_VALUE) {
+            // the root of the heap is the last of the kept nodes in sort order, which is replaced by any node before it
+            heap = new PriorityQueue<Entry>(Math.max(capacity, 1), Collections.reverseOrder(comparator));
+        } else {
+            heap = null;
+        }
+    }
+
+    /**
+     * Indicates whether any further nodes would be dropped, so the caller can stop looking for matches.
+     *
+     * @return true if the collector has all the nodes it needs, or false otherwise
+     */
+    boolean isFull() {
+        return sortNames.length == 0 && entries.size() >= capacity;
+    }
+
+    void add(StoreCacheNode cacheNode) {
+        if (sortNames.length == 0) {
+            if (entries.size() < capacity) {
+                entries.add(new Entry(cacheNode, null));
+            }
+            return;
+        }
+
+        Comparable<?>[] sortKeys = new Comparable<?>[sortNames.length];
+        for (int i = 0; i < sortNames.length; i++) {
+            sortKeys[i] = ObjectUtil.toComparable(cacheNode.getProperty(sortNames[i]));
+        }
+        Entry entry = new Entry(cacheNode, sortKeys);
+
+        if (heap == null) {
+            entries.add(entry);
+        } else if (heap.size() < capacity) {
+            heap.add(entry);
+        } else if (capacity > 0 && comparator.compare(entry, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(entry);
+        }
+    }
+
+    /**
+     * Returns the nodes of the requested page, in sort order.
+     *
+     * @return the collected nodes, after skipping the offset and up to the limit
+     */
+    List<StoreCacheNode> getResults() {
+        List<Entry> sortedEntries = entries;
+        if (heap != null) {
+            sortedEntries = new ArrayList<Entry>(heap);
+        }
+        if (sortNames.length > 0) {
+            Collections.sort(sortedEntries, comparator);
+        }
+
+        int fromIndex = Math.min(offset, sortedEntries.size());
+        int toIndex = (int) Math.min((long) fromIndex + limit, sortedEntries.size());
+        List<StoreCacheNode> results = new ArrayList<StoreCacheNode>(toIndex - fromIndex);
+        for (Entry entry : sortedEntries.subList(fromIndex, toIndex)) {
+            results.add(entry.cacheNode);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,16 @@
+package com.github.dkharrat.nexusdata.core;
+
+/**
+ * A {@link NotificationScheduler} that delivers notifications synchronously on the thread that changes the context,
+ * before the change operation returns. Since each change is delivered right away, notifications are not coalesced.
+ * This is mostly useful for tests and for contexts that are only used from a single thread without an event loop.
+ */
+public class ImmediateNotificationScheduler implements NotificationScheduler {
+
+    public static final ImmediateNotificationScheduler INSTANCE = new ImmediateNotificationScheduler();
+
+    @Override
+    public void schedule(Runnable delivery) {
+        delivery.run();
+    }
+}
@@ -2,11 +2,15 @@ package com.github.dkharrat.nexusdata.core;
 
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
 import com.github.dkharrat.nexusdata.metamodel.Entity;
 import com.github.dkharrat.nexusdata.metamodel.Relationship;
+import com.github.dkharrat.nexusdata.predicate.CompiledPredicate;
 
 /**
  * An IncrementalStore represents a persistence store in which data is loaded or saved incrementally as needed. It is
@@ -27,6 +31,78 @@ public abstract class IncrementalStore extends PersistentStore {
     protected abstract <T extends ManagedObject>
     List<T> executeFetchRequest(FetchRequest<T> request, ObjectContext context);
 
+    @Override
+    protected <T extends ManagedObject> FetchCursor<T> openFetchCursor(FetchRequest<T> request, ObjectContext context) {
+        return super.openFetchCursor(request, context);
+    }
+
+    /**
+     * Returns the object of the specified cache node from a context, registering it if needed. If the object is a
+     * fault, its values are set from the cache node, so a store's fetch cursor can materialize objects without keeping
+     * their cache nodes.
+     *
+     * @param context   the context of the object
+     * @param cacheNode the cache node of the object
+     * @return the object with the values of the cache node
+     */
+    protected ManagedObject getObject(ObjectContext context, StoreCacheNode cacheNode) {
+        return context.getExistingObject(cacheNode.getID(), cacheNode);
+    }
+
+    /**
+     * Returns the objects that match a fetch request, out of the cache nodes of the candidate objects. Like in an
+     * {@link AtomicStore}, the predicate is evaluated against the values of the cache nodes, and the matches are sorted
+     * and paged by them too (see {@link FetchResultCollector}), so only the objects that are returned are registered in
+     * the context. Related objects are read through {@link #getObjectValues} and {@link #getToManyRelationshipValue}.
+     * Predicates that use the objects themselves (see {@link CacheNodeValues#canEvaluate}) are evaluated against the
+     * objects instead.
+     *
+     * @param request       the fetch request
+     * @param context       the context of the returned objects
+     * @param cacheNodes    the cache nodes of the objects of the requested entity and its sub-entities, which can be
+     *                      read as they are iterated, since iteration stops once the requested page is known
+     * @return the matching objects, sorted and paged as requested
+     */
+    protected <T extends ManagedObject> List<T> getMatchingObjects(FetchRequest<T> request, final ObjectContext context,
+                                                                   Iterator<StoreCacheNode> cacheNodes) {
+        CompiledPredicate predicate = request.getCompiledPredicate();
+        boolean evaluatesCacheNodes = predicate == null || CacheNodeValues.canEvaluate(request.getPredicate(), request.getEntity());
+        CacheNodeValues.CacheNodeResolver resolver = new CacheNodeValues.CacheNodeResolver() {
+            @Override
+            public StoreCacheNode getCacheNode(ObjectID objectID) {
+                return getObjectValues(objectID, context);
+            }
+
+            @Override
+            public Collection<ObjectID> getRelatedObjectIDs(ObjectID objectID, Relationship relationship) {
+                return getToManyRelationshipValue(objectID, relationship, context);
+            }
+        };
+        FetchResultCollector matches = new FetchResultCollector(request.getSortDescriptors(), request.getOffset(), request.getLimit());
+
+        while (cacheNodes.hasNext() && !matches.isFull()) {
+            StoreCacheNode cacheNode = cacheNodes.next();
+            if (predicate == null) {
+                matches.add(cacheNode);
+            } else if (evaluatesCacheNodes) {
+                if (predicate.evaluate(new CacheNodeValues(resolver, cacheNode))) {
+                    matches.add(cacheNode);
+                }
+            } else if (predicate.evaluate(getObject(context, cacheNode))) {
+                matches.add(cacheNode);
+            }
+        }
+
+        List<StoreCacheNode> page = matches.getResults();
+        List<T> results = new ArrayList<T>(page.size());
+        for (StoreCacheNode cacheNode : page) {
+            @SuppressWarnings("unchecked")
+            T object = (T) getObject(context, cacheNode);
+            results.add(object);
+        }
+        return results;
+    }
+
     @Override
     protected abstract void executeSaveRequest(SaveChangesRequest request, ObjectContext context);
 
@@ -139,6 +139,13 @@ public class ManagedObject {
         }
     }
 
+    void fulfillFaultIfNecessary(StoreCacheNode cacheNode) {
+        if (isFault) {
+            getObjectContext().faultInObject(this, cacheNode);
+            isFault = false;
+        }
+    }
+
     /**
      * Returns a property's value for this object.
      *
@@ -146,9 +153,18 @@ public class ManagedObject {
      * @return the value of the specified property
      */
     public Object getValue(String propertyName) {
-        fulfillFaultIfNecessary();
+        return getValue(getEntity().getProperty(propertyName));
+    }
 
-        Property property = getEntity().getProperty(propertyName);
+    /**
+     * Returns a property's value for this object. This is equivalent to {@link #getValue(String)}, but avoids
+     * looking up the property by name, which is useful when the same property is read for many objects.
+     *
+     * @param property  the property to retrieve its value. It must belong to this object's entity (or a super entity).
+     * @return the value of the specified property
+     */
+    public Object getValue(Property property) {
+        fulfillFaultIfNecessary();
 
         Object value = getValueDirectly(property);
 
@@ -337,8 +353,7 @@ public class ManagedObject {
      */
     public void refresh() {
         if (!isFault) {
-            isFault = true;
-            values.clear();
+            turnIntoFault();
 
             for (Relationship relationship : getEntity().getRelationships()) {
                 refreshRelationship(relationship.getName());
@@ -348,6 +363,15 @@ public class ManagedObject {
         }
     }
 
+    /**
+     * Discards the values of this object, so they are loaded from the persistent store again when accessed. Unlike
+     * {@link #refresh()}, related objects are left as they are and no notification is sent.
+     */
+    void turnIntoFault() {
+        isFault = true;
+        values.clear();
+    }
+
     /**
      * Returns true if this object has been inserted into an object context and is pending insertion to its
      * persistence store.
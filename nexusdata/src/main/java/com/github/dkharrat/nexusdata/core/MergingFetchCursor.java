@@ -0,0 +1,111 @@
+package com.github.dkharrat.nexusdata.core;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Combines the cursors of the stores that a fetch request is executed against into a single cursor, and applies the
+ * request's offset and limit to the combined result. Without a comparator, the cursors are read one after the other.
+ * With a comparator, each cursor is expected to be sorted by it, and the cursors are merged lazily: only the next
+ * object of each cursor is materialized at a time.
+ */
+class MergingFetchCursor<T extends ManagedObject> extends FetchCursor<T> {
+
+    private static class Head<T> {
+        final int index;
+        final T object;
+
+        Head(int index, T object) {
+            this.index = index;
+            this.object = object;
+        }
+    }
+
+    private final List<FetchCursor<T>> cursors;
+    private final PriorityQueue<Head<T>> heads;
+    private int current;
+    private int skipped;
+    private final int offset;
+    private int remaining;
+
+    MergingFetchCursor(List<FetchCursor<T>> cursors, final Comparator<ManagedObject> comparator, int offset, int limit) {
+        this.cursors = cursors;
+        this.offset = Math.max(offset, 0);
+        this.remaining = limit;
+
+        if (comparator != null) {
+            heads = new PriorityQueue<Head<T>>(Math.max(cursors.size(), 1), new Comparator<Head<T>>() {
+                @Override
+                public int compare(Head<T> lhs, Head<T> rhs) {
+                    int result = comparator.compare(lhs.object, rhs.object);
+                    return result != 0 ? result : lhs.index - rhs.index;
+                }
+            });
+            for (int i = 0; i < cursors.size(); i++) {
+                if (cursors.get(i).hasNext()) {
+                    heads.add(new Head<T>(i, cursors.get(i).next()));
+                }
+            }
+        } else {
+            heads = null;
+        }
+    }
+
+    private boolean hasNextObject() {
+        if (heads != null) {
+            return !heads.isEmpty();
+        }
+        while (current < cursors.size() && !cursors.get(current).hasNext()) {
+            current++;
+        }
+        return current < cursors.size();
+    }
+
+    private T nextObject() {
+        if (heads == null) {
+            return cursors.get(current).next();
+        }
+
+        Head<T> head = heads.poll();
+        FetchCursor<T> cursor = cursors.get(head.index);
+        if (cursor.hasNext()) {
+            heads.add(new Head<T>(head.index, cursor.next()));
+        }
+        return head.object;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (remaining <= 0) {
+            return false;
+        }
+        while (skipped < offset && hasNextObject()) {
+            skip(nextObject());
+            skipped++;
+        }
+        return hasNextObject();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        remaining--;
+        return nextObject();
+    }
+
+    @Override
+    public void close() {
+        for (FetchCursor<T> cursor : cursors) {
+            cursor.close();
+        }
+        if (heads != null) {
+            while (!heads.isEmpty()) {
+                skip(heads.poll().object);
+            }
+        }
+    }
+}
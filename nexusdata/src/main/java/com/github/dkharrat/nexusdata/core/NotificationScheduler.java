@@ -0,0 +1,27 @@
+package com.github.dkharrat.nexusdata.core;
+
+/**
+ * Schedules the delivery of the {@link ObjectsChangedNotification}s of an {@link ObjectContext} to its listeners.
+ * Changes made to a context are accumulated until the scheduled delivery runs, so all the changes made before then
+ * are delivered to the listeners as a single notification. At most one delivery is scheduled at a time per context.
+ * <p>
+ * The following implementations are provided:
+ * <ul>
+ *     <li>{@link com.github.dkharrat.nexusdata.utils.android.LooperNotificationScheduler}: delivers notifications on
+ *     the event loop of an Android thread. This is the default on Android.</li>
+ *     <li>{@link ExecutorNotificationScheduler}: delivers notifications through an {@link java.util.concurrent.Executor}.</li>
+ *     <li>{@link ImmediateNotificationScheduler}: delivers notifications synchronously, as soon as the context
+ *     changes.</li>
+ * </ul>
+ *
+ * @see ObjectContext#ObjectContext(PersistentStoreCoordinator, NotificationScheduler)
+ */
+public interface NotificationScheduler {
+
+    /**
+     * Schedules the specified delivery of notifications to run.
+     *
+     * @param delivery  the task that delivers the pending notifications of a context
+     */
+    public void schedule(Runnable delivery);
+}
@@ -7,24 +7,25 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.github.dkharrat.nexusdata.metamodel.Attribute;
 import com.github.dkharrat.nexusdata.metamodel.Entity;
 import com.github.dkharrat.nexusdata.metamodel.Property;
 import com.github.dkharrat.nexusdata.metamodel.Relationship;
+import com.github.dkharrat.nexusdata.predicate.CompiledPredicate;
 import com.github.dkharrat.nexusdata.predicate.Predicate;
 import com.github.dkharrat.nexusdata.utils.ObjectUtil;
+import com.github.dkharrat.nexusdata.utils.android.LooperNotificationScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import android.os.Handler;
-import android.os.Looper;
-import android.os.Message;
-
 // TODO: unregister objects when they are no longer referenced
 // TODO: Implement custom Exception classes to identify different error types
 // TODO: Add support to query objects of super entity type
@@ -53,30 +54,76 @@ public class ObjectContext {
     private final PersistentStoreCoordinator storeCoordinator;
 
     // TODO: use weak reference for storing objects
-    private final Map<ObjectID, ManagedObject> objects = new HashMap<ObjectID, ManagedObject>();
+    // concurrent, since the stores of a fetch that spans several stores register their objects in parallel
+    private final Map<ObjectID, ManagedObject> objects = new ConcurrentHashMap<ObjectID, ManagedObject>();
     private final ChangedObjectsSet changedObjects = new ChangedObjectsSet();
+    // the stores that new objects were assigned to, keyed by their temporary IDs
+    private final Map<ObjectID, PersistentStore> storeAssignments = new HashMap<ObjectID, PersistentStore>();
+
+    // the changes to deliver with the next objects-changed notification. The delivery may run on another thread, so it's
+    // only accessed with the notification lock held, and the delivery replaces it with a new one.
+    private final Object notificationLock = new Object();
+    private ObjectsChangedNotification objectsChangedSinceLastNotification = new ObjectsChangedNotification();
 
-    private final ObjectsChangedNotification objectsChangedSinceLastNotification = new ObjectsChangedNotification();
+    private final NotificationScheduler notificationScheduler;
+    private final AtomicBoolean isNotificationScheduled = new AtomicBoolean();
 
-    private final static int NOTIFY_OBJECTS_CHANGED = 1;
-    //TODO: abstract this away for multi-platform support (use Futures?)
-    private final Handler messageHandler;
+    private static final boolean IS_ANDROID = isClassAvailable("android.os.Looper");
 
     /**
-     * Creates a new ObjectContext instance that is associated with a persistence store coordinator.
+     * Creates a new ObjectContext instance that is associated with a persistence store coordinator. Notifications are
+     * delivered on the event loop of the current thread if it has one (on Android), and otherwise on a shared
+     * background thread (see {@link ExecutorNotificationScheduler#getShared()}).
      *
      * @param storeCoordinator the associated PersistenceStoreCoordinator that will be used to retrieve objects and
      *                         save objects to
      */
     public ObjectContext(PersistentStoreCoordinator storeCoordinator) {
+        this(storeCoordinator, getDefaultNotificationScheduler());
+    }
+
+    /**
+     * Creates a new ObjectContext instance that is associated with a persistence store coordinator, and that delivers
+     * its {@link ObjectsChangedNotification}s through the specified scheduler.
+     *
+     * @param storeCoordinator      the associated PersistenceStoreCoordinator that will be used to retrieve objects and
+     *                              save objects to
+     * @param notificationScheduler the scheduler used to deliver notifications to the listeners of this context
+     */
+    public ObjectContext(PersistentStoreCoordinator storeCoordinator, NotificationScheduler notificationScheduler) {
+        if (notificationScheduler == null) {
+            throw new IllegalArgumentException("Notification scheduler must not be null");
+        }
         this.storeCoordinator = storeCoordinator;
+        this.notificationScheduler = notificationScheduler;
+    }
+
+    private static NotificationScheduler getDefaultNotificationScheduler() {
+        if (IS_ANDROID) {
+            // the Looper class is also available to local JVM tests that have android.jar on their classpath, where it
+            // can't be used, so the event loop is only used if it can actually be obtained
+            NotificationScheduler scheduler = LooperNotificationScheduler.forCurrentThreadIfAvailable();
+            if (scheduler != null) {
+                return scheduler;
+            }
+        }
+        return ExecutorNotificationScheduler.getShared();
+    }
 
-        // If there is no event loop in the current thread, use the main thread's event loop
-        Looper looper = Looper.myLooper();
-        if (looper == null) {
-            looper = Looper.getMainLooper();
+    private static boolean isClassAvailable(String className) {
+        try {
+            Class.forName(className);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
         }
-        messageHandler = new ObjectContextMessageHandler(looper, this);
+    }
+
+    /**
+     * @return  The scheduler used to deliver notifications to the listeners of this context
+     */
+    public NotificationScheduler getNotificationScheduler() {
+        return notificationScheduler;
     }
 
     /**
@@ -109,25 +156,12 @@ public class ObjectContext {
      * @param <T>               parametrized type of the entity to be fetched
      * @return                  a list of objects that match the criteria
      */
-    @SuppressWarnings("unchecked")
     public <T extends ManagedObject> List<T> executeFetchOperation(FetchRequest<T> fetchRequest) {
 
-        List<T> results = new ArrayList<T>();
-
-        //FIXME: properly route the fetch to the right store
-        PersistentStore store = getPersistentStoreCoordinator().getPersistentStores().get(0);
-
-        results = store.executeFetchRequest(fetchRequest, this);
+        List<T> results = storeCoordinator.executeFetchRequest(fetchRequest, this);
 
         if (fetchRequest.includesPendingChanges()) {
-            for (ManagedObject object : changedObjects.getInsertedObjects()) {
-                ObjectID objID = object.getID();
-                if (objID.getType().isAssignableFrom(fetchRequest.getEntity().getType())) {
-                    if (fetchRequest.getPredicate() == null || fetchRequest.getPredicate().evaluate(object)) {
-                        results.add((T)object);
-                    }
-                }
-            }
+            results.addAll(getPendingInsertedObjects(fetchRequest));
 
             //FIXME: also search from updated objects
 
@@ -137,6 +171,55 @@ public class ObjectContext {
         return results;
     }
 
+    /**
+     * Returns the objects inserted in this context, but not saved yet, that match a fetch request.
+     */
+    @SuppressWarnings("unchecked")
+    <T extends ManagedObject> List<T> getPendingInsertedObjects(FetchRequest<T> fetchRequest) {
+        List<T> results = new ArrayList<T>();
+        CompiledPredicate predicate = fetchRequest.getCompiledPredicate();
+        for (ManagedObject object : changedObjects.getInsertedObjects()) {
+            ObjectID objID = object.getID();
+            if (objID.getType().isAssignableFrom(fetchRequest.getEntity().getType())) {
+                if (predicate == null || predicate.evaluate(object)) {
+                    results.add((T)object);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Streams the objects that match the specified criteria from the persistence store coordinator. Unlike
+     * {@link #executeFetchOperation(FetchRequest)}, the results are read from the persistent stores as the stream is
+     * iterated, and each object is only registered in this context when the stream reaches it. The stream keeps the
+     * objects registered; use {@link #stream(FetchRequest, ObjectStream.Retention)} to release them as the stream
+     * moves past them. The stream must be closed once it's no longer needed.
+     *
+     * @param fetchRequest      the fetch request that specifies the criteria
+     * @param <T>               parametrized type of the entity to be fetched
+     * @return                  a stream of the objects that match the criteria
+     */
+    public <T extends ManagedObject> ObjectStream<T> stream(FetchRequest<T> fetchRequest) {
+        return stream(fetchRequest, ObjectStream.Retention.KEEP);
+    }
+
+    /**
+     * Streams the objects that match the specified criteria from the persistence store coordinator, and releases each
+     * object as specified by the retention once the stream moves past it. With {@link ObjectStream.Retention#UNREGISTER},
+     * the memory used by the stream doesn't depend on the number of results when the persistent stores read their
+     * records incrementally. {@link ObjectStream.Retention#REFAULT} releases the values of the objects, but the objects
+     * stay registered in this context, so memory still grows by a fault per result.
+     *
+     * @param fetchRequest      the fetch request that specifies the criteria
+     * @param retention         what to do with each object once the stream moves past it
+     * @param <T>               parametrized type of the entity to be fetched
+     * @return                  a stream of the objects that match the criteria
+     */
+    public <T extends ManagedObject> ObjectStream<T> stream(FetchRequest<T> fetchRequest, ObjectStream.Retention retention) {
+        return new ObjectStream<T>(this, fetchRequest, storeCoordinator.openFetchCursor(fetchRequest, this), retention);
+    }
+
     /**
      * Returns all objects of the specified entity type from the persistent store.
      *
@@ -172,14 +255,16 @@ public class ObjectContext {
      * @return      The object with the specified ID
      */
     public ManagedObject objectWithID(ObjectID id) {
-        ManagedObject object = objects.get(id);
+        synchronized (objects) {
+            ManagedObject object = objects.get(id);
 
-        if (object == null) {
-            object = ManagedObject.newObject(id);
-            registerObject(object);
-        }
+            if (object == null) {
+                object = ManagedObject.newObject(id);
+                registerObject(object);
+            }
 
-        return object;
+            return object;
+        }
     }
 
     /**
@@ -228,6 +313,21 @@ public class ObjectContext {
         return getExistingObject(id);
     }
 
+    /**
+     * Similar to {@link ObjectContext#getExistingObject(ObjectID)}, except that if the object is a fault, it is faulted
+     * in from the specified cache node, which a store has already retrieved, instead of from the store.
+     *
+     * @param id        The object's ID
+     * @param cacheNode The values of the object in the persistent store
+     * @return          The object with the specified ID
+     */
+    ManagedObject getExistingObject(ObjectID id, StoreCacheNode cacheNode) {
+        ManagedObject object = objectWithID(id);
+        object.fulfillFaultIfNecessary(cacheNode);
+
+        return object;
+    }
+
     /**
      * Creates a new object of the specified type. The object will automatically be inserted into this context, to be
      * saved to the persistence store the next time the context is saved. Therefore, it is not necessary to call
@@ -254,8 +354,10 @@ public class ObjectContext {
         //LOG.debug("Fulfilling fault on objectID: " + object.getID());
 
         PersistentStore store = object.getID().getPersistentStore();
-        StoreCacheNode cacheNode = store.getObjectValues(object.getID(), this);
+        faultInObject(object, store.getObjectValues(object.getID(), this));
+    }
 
+    void faultInObject(ManagedObject object, StoreCacheNode cacheNode) {
         if (cacheNode == null) {
             throw new RuntimeException("Could not find object " + object + " in persistent store");
         }
@@ -333,7 +435,7 @@ public class ObjectContext {
         objects.put(object.getID(), object);
     }
 
-    private void unregisterObject(ManagedObject object) {
+    void unregisterObject(ManagedObject object) {
         object.setManagedObjectContext(null);
         objects.remove(object.getID());
     }
@@ -377,8 +479,9 @@ public class ObjectContext {
     }
 
     private void sendObjectsChangedNotification() {
-        if (ObjectContextNotifier.hasListeners(this) && !messageHandler.hasMessages(NOTIFY_OBJECTS_CHANGED)) {
-            messageHandler.sendEmptyMessage(NOTIFY_OBJECTS_CHANGED);
+        // changes made until the scheduled delivery runs are coalesced into the same notification
+        if (ObjectContextNotifier.hasListeners(this) && isNotificationScheduled.compareAndSet(false, true)) {
+            notificationScheduler.schedule(new ObjectsChangedDelivery(this));
         }
     }
 
@@ -403,7 +506,9 @@ public class ObjectContext {
         changedObjects.objectInserted(object);
         registerObject(object);
 
-        objectsChangedSinceLastNotification.objectInserted(object);
+        synchronized (notificationLock) {
+            objectsChangedSinceLastNotification.objectInserted(object);
+        }
         sendObjectsChangedNotification();
     }
 
@@ -411,7 +516,9 @@ public class ObjectContext {
         changedObjects.objectUpdated(object);
 
         if (changedObjects.isUpdated(object)) {
-            objectsChangedSinceLastNotification.objectUpdated(object);
+            synchronized (notificationLock) {
+                objectsChangedSinceLastNotification.objectUpdated(object);
+            }
             sendObjectsChangedNotification();
         }
     }
@@ -426,17 +533,22 @@ public class ObjectContext {
     public void delete(ManagedObject object) {
         changedObjects.objectDeleted(object, false);
         if (object.isInserted()) {
+            storeAssignments.remove(object.getID());
             unregisterObject(object);
         } else {
             registerObject(object);
         }
 
-        objectsChangedSinceLastNotification.objectDeleted(object, true);
+        synchronized (notificationLock) {
+            objectsChangedSinceLastNotification.objectDeleted(object, true);
+        }
         sendObjectsChangedNotification();
     }
 
     void markObjectAsRefreshed(ManagedObject object) {
-        objectsChangedSinceLastNotification.objectRefreshed(object);
+        synchronized (notificationLock) {
+            objectsChangedSinceLastNotification.objectRefreshed(object);
+        }
         sendObjectsChangedNotification();
     }
 
@@ -455,26 +567,55 @@ public class ObjectContext {
      * @param objects   The list of objects
      */
     public <T extends ManagedObject> void obtainPermanentIDsForObjects(Collection<T> objects) {
-        //FIXME: properly route the save to the right store for each object
-        PersistentStore store = getPersistentStoreCoordinator().getPersistentStores().get(0);
-
-        List<ManagedObject> objectsList = new ArrayList<ManagedObject>(objects.size());
+        Map<PersistentStore, List<ManagedObject>> objectsByStore = new LinkedHashMap<PersistentStore, List<ManagedObject>>();
         for (ManagedObject object : objects) {
             if (object.getID().isTemporary()) {
+                PersistentStore store = storeAssignments.get(object.getID());
+                if (store == null) {
+                    store = storeCoordinator.getPersistentStoreForNewObject(object.getEntity());
+                }
+
+                List<ManagedObject> objectsList = objectsByStore.get(store);
+                if (objectsList == null) {
+                    objectsList = new ArrayList<ManagedObject>();
+                    objectsByStore.put(store, objectsList);
+                }
                 objectsList.add(object);
             }
         }
 
-        if (!objectsList.isEmpty()) {
-            List<ObjectID> ids = store.getPermanentIDsForObjects(objectsList);
+        for (Map.Entry<PersistentStore, List<ManagedObject>> entry : objectsByStore.entrySet()) {
+            List<ManagedObject> objectsList = entry.getValue();
+            List<ObjectID> ids = entry.getKey().getPermanentIDsForObjects(objectsList);
             for (int i=0; i<objectsList.size(); i++) {
                 ObjectID id = ids.get(i);
                 ManagedObject o = objectsList.get(i);
+                storeAssignments.remove(o.getID());
                 updateRegisteredObjectID(o, id);
             }
         }
     }
 
+    /**
+     * Assigns a new object to the persistent store it will be saved to. By default, new objects are saved to the
+     * first store that holds objects of their entity (see
+     * {@link PersistentStoreCoordinator#getPersistentStores(Entity)}). This is useful when the objects of an entity
+     * are spread across several stores.
+     *
+     * @param object    the new object, which must not have been saved yet
+     * @param store     the store to save the object to
+     * @throws IllegalArgumentException if the object already has a permanent ID, or the store doesn't hold objects of
+     *                                  the object's entity
+     */
+    public void assignObjectToStore(ManagedObject object, PersistentStore store) {
+        if (!object.getID().isTemporary()) {
+            throw new IllegalArgumentException("Object " + object + " already belongs to a persistent store");
+        } else if (!storeCoordinator.getPersistentStores(object.getEntity()).contains(store)) {
+            throw new IllegalArgumentException("Persistent store " + store + " does not hold objects of entity " + object.getEntity().getName());
+        }
+        storeAssignments.put(object.getID(), store);
+    }
+
     /**
      * Commits all unsaved changes of the registered objects to their associated persistence store.
      */
@@ -485,9 +626,6 @@ public class ObjectContext {
 
         ObjectContextNotifier.notifyListenersOfPreSave(this);
 
-        //FIXME: properly route the save to the right store for each object
-        PersistentStore store = getPersistentStoreCoordinator().getPersistentStores().get(0);
-
         // null-out to-one relationship references of deleted objects to ensure nothing references them
         for (ManagedObject object : changedObjects.getDeletedObjects()) {
             for (Relationship relationship : object.getEntity().getRelationships()) {
@@ -500,7 +638,7 @@ public class ObjectContext {
         obtainPermanentIDsForObjects(changedObjects.getInsertedObjects());
 
         SaveChangesRequest request = new SaveChangesRequest(changedObjects);
-        store.executeSaveRequest(request, this);
+        storeCoordinator.executeSaveRequest(request, this);
 
         ObjectContextNotifier.notifyListenersOfPostSave(this, new ChangedObjectsSet(changedObjects));
 
@@ -551,6 +689,7 @@ public class ObjectContext {
      */
     public void reset() {
         changedObjects.clear();
+        storeAssignments.clear();
         unregisterAllObjects();
     }
 
@@ -561,11 +700,13 @@ public class ObjectContext {
      * @param changedObjects    the <code>ChangedObjectsSet</code> that was received from a save notification
      */
     public void mergeChangesFromSaveNotification(ChangedObjectsSet changedObjects) {
-        //TODO: this should run in the same thread that was used to create the context (use Handler to do that)
+        //TODO: this should run in the same thread that was used to create the context (use the NotificationScheduler)
 
         for (ManagedObject o : changedObjects.getInsertedObjects()) {
             ManagedObject object = objectWithID(o.getID());    // registers new object
-            objectsChangedSinceLastNotification.objectInserted(object);
+            synchronized (notificationLock) {
+                objectsChangedSinceLastNotification.objectInserted(object);
+            }
         }
 
         for (ManagedObject otherObject : changedObjects.getUpdatedObjects()) {
@@ -581,8 +722,11 @@ public class ObjectContext {
                             if (otherValue != null) {
                                 value = objectWithID(((ManagedObject)otherValue).getID());
                             }
-                        } else {
+                        } else if (otherValue != null) {
                             value = ((FaultingSet<?>)otherValue).getObjectsInContext(this);
+                        } else {
+                            // the relationship was never loaded in the other context, so it wasn't changed there
+                            continue;
                         }
                     }
 
@@ -594,7 +738,9 @@ public class ObjectContext {
                 }
 
                 if (objectChanged) {
-                    objectsChangedSinceLastNotification.objectUpdated(object);
+                    synchronized (notificationLock) {
+                        objectsChangedSinceLastNotification.objectUpdated(object);
+                    }
                 }
             }
         }
@@ -602,7 +748,9 @@ public class ObjectContext {
         for (ManagedObject o : changedObjects.getDeletedObjects()) {
             ManagedObject object = objectWithID(o.getID());
             unregisterObject(object);
-            objectsChangedSinceLastNotification.objectDeleted(object, false);
+            synchronized (notificationLock) {
+                objectsChangedSinceLastNotification.objectDeleted(object, false);
+            }
         }
 
         // since we've merged from another save operation, ensure merged objects are not marked as changed
@@ -643,28 +791,27 @@ public class ObjectContext {
         return changedObjects.isDeleted(object);
     }
 
-    private static class ObjectContextMessageHandler extends Handler {
+    private static class ObjectsChangedDelivery implements Runnable {
 
         private final WeakReference<ObjectContext> contextReference;
 
-        ObjectContextMessageHandler(Looper looper, ObjectContext context) {
-            super(looper);
+        ObjectsChangedDelivery(ObjectContext context) {
             contextReference = new WeakReference<ObjectContext>(context);
         }
 
         @Override
-        public void handleMessage(Message msg) {
+        public void run() {
             ObjectContext context = contextReference.get();
-
-            switch (msg.what) {
-                case NOTIFY_OBJECTS_CHANGED: {
-                    if (context != null) {
-                        ObjectContextNotifier.notifyListenersOfObjectsChanged(context, context.objectsChangedSinceLastNotification);
-                        context.objectsChangedSinceLastNotification.clear();
-                    }
-                    break;
+            if (context != null) {
+                // changes recorded from here on go into a new notification, which is scheduled once the flag is reset
+                ObjectsChangedNotification notification;
+                synchronized (context.notificationLock) {
+                    notification = context.objectsChangedSinceLastNotification;
+                    context.objectsChangedSinceLastNotification = new ObjectsChangedNotification();
+                    context.isNotificationScheduled.set(false);
                 }
+                ObjectContextNotifier.notifyListenersOfObjectsChanged(context, notification);
             }
         }
-    };
+    }
 }
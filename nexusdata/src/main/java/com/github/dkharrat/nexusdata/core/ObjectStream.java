@@ -0,0 +1,156 @@
+package com.github.dkharrat.nexusdata.core;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An ObjectStream returns the results of a fetch request one at a time, reading them from the persistent stores as it
+ * is iterated (see {@link ObjectContext#stream(FetchRequest, Retention)}). It can be iterated only once, either
+ * directly or in a for-each loop, and must be closed once it's no longer needed:
+ * <pre>
+ * ObjectStream&lt;Employee&gt; employees = context.stream(fetchRequest, ObjectStream.Retention.UNREGISTER);
+ * try {
+ *     for (Employee employee : employees) {
+ *         ...
+ *     }
+ * } finally {
+ *     employees.close();
+ * }
+ * </pre>
+ * The cursors of the persistent stores are closed automatically once all of their objects have been read. Like
+ * {@link ObjectContext#executeFetchOperation(FetchRequest)}, if the fetch request includes pending changes, objects
+ * pending deletion in the context are skipped, and the objects inserted in the context that match the request are
+ * returned after the objects of the persistent stores.
+ *
+ * @param <T> the type of the objects returned by the stream
+ */
+public final class ObjectStream<T extends ManagedObject> implements Iterator<T>, Iterable<T>, Closeable {
+
+    /**
+     * Specifies what the stream does with an object once it moves past it, i.e. when the next object is requested or
+     * the stream is closed. Objects that have pending changes in the context are always kept as they are.
+     */
+    public enum Retention {
+        /** Objects stay registered in the context with their values, like the results of a fetch. */
+        KEEP,
+        /**
+         * Objects are turned back into faults, so their values are released and loaded again if they are accessed
+         * later. The objects themselves stay registered in the context, so the context still grows by a fault for each
+         * object of the stream.
+         */
+        REFAULT,
+        /**
+         * Objects are unregistered from the context, so nothing is kept for them and the memory used by the stream
+         * stays constant. This is only suitable for objects that the rest of the application doesn't reference, since
+         * an unregistered object no longer belongs to a context.
+         */
+        UNREGISTER
+    }
+
+    private final ObjectContext context;
+    private final FetchRequest<T> fetchRequest;
+    private final FetchCursor<T> cursor;
+    private final Retention retention;
+
+    private Iterator<T> pendingInsertedObjects;
+    private T next;
+    private T previous;
+    private boolean iterated;
+    private boolean done;
+
+    ObjectStream(ObjectContext context, FetchRequest<T> fetchRequest, FetchCursor<T> cursor, Retention retention) {
+        this.context = context;
+        this.fetchRequest = fetchRequest;
+        this.cursor = cursor;
+        this.retention = retention;
+        cursor.setStream(this);
+    }
+
+    /**
+     * Returns this stream, which can be iterated only once.
+     *
+     * @return this stream
+     * @throws IllegalStateException if the stream was already iterated
+     */
+    @Override
+    public Iterator<T> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("An object stream can only be iterated once");
+        }
+        iterated = true;
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && !done) {
+            if (pendingInsertedObjects == null && cursor.hasNext()) {
+                T object = cursor.next();
+                if (!fetchRequest.includesPendingChanges() || !object.isDeleted()) {
+                    next = object;
+                }
+            } else if (pendingInsertedObjects == null) {
+                cursor.close();
+                if (fetchRequest.includesPendingChanges()) {
+                    pendingInsertedObjects = context.getPendingInsertedObjects(fetchRequest).iterator();
+                } else {
+                    pendingInsertedObjects = Collections.<T>emptyList().iterator();
+                }
+            } else if (pendingInsertedObjects.hasNext()) {
+                next = pendingInsertedObjects.next();
+            } else {
+                done = true;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public T next() {
+        iterated = true;
+        release(previous);
+        previous = null;
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        previous = next;
+        next = null;
+        return previous;
+    }
+
+    /**
+     * Releases an object that the stream moved past, according to its retention.
+     */
+    void release(T object) {
+        if (object == null || retention == Retention.KEEP || object.hasChanges() || object.getObjectContext() != context) {
+            return;
+        }
+
+        if (retention == Retention.REFAULT) {
+            object.turnIntoFault();
+        } else {
+            context.unregisterObject(object);
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Objects can't be removed from an object stream");
+    }
+
+    /**
+     * Closes the cursors of the persistent stores, and releases the last object returned by the stream according to its
+     * retention. Calling this method more than once has no effect.
+     */
+    @Override
+    public void close() {
+        cursor.close();
+        done = true;
+        next = null;
+        release(previous);
+        previous = null;
+    }
+}
@@ -0,0 +1,406 @@
+package com.github.dkharrat.nexusdata.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A {@link PersistentMap} implemented as a hash array mapped trie. Each level of the trie branches on 5 bits of the
+ * hash of the keys, and only allocates slots for the branches that are used, so lookups and updates take
+ * O(log32 n) time. Keys with the same hash are kept together in a collision node.
+ */
+final class PersistentHashMap<K,V> extends AbstractMap<K,V> implements PersistentMap<K,V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentHashMap EMPTY = new PersistentHashMap(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     */
+    @SuppressWarnings("unchecked")
+    static <K,V> PersistentHashMap<K,V> empty() {
+        return EMPTY;
+    }
+
+    private static int hash(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean keysEqual(Object lhs, Object rhs) {
+        return lhs == rhs || (lhs != null && lhs.equals(rhs));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return root != null && root.find(hash(key), 0, key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(Object key) {
+        Leaf leaf = root == null ? null : root.find(hash(key), 0, key);
+        return leaf == null ? null : (V) leaf.value;
+    }
+
+    @Override
+    public PersistentHashMap<K,V> plus(K key, V value) {
+        Leaf leaf = new Leaf(hash(key), key, value);
+        if (root == null) {
+            return new PersistentHashMap<K,V>(leaf, 1);
+        }
+
+        boolean[] added = new boolean[1];
+        Node newRoot = root.plus(leaf, 0, added);
+        return newRoot == root ? this : new PersistentHashMap<K,V>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    @Override
+    public PersistentHashMap<K,V> minus(K key) {
+        if (root == null) {
+            return this;
+        }
+
+        Node newRoot = root.minus(hash(key), 0, key);
+        if (newRoot == root) {
+            return this;
+        }
+        return newRoot == null ? PersistentHashMap.<K,V>empty() : new PersistentHashMap<K,V>(newRoot, size - 1);
+    }
+
+    @Override
+    public Set<Entry<K,V>> entrySet() {
+        return new AbstractSet<Entry<K,V>>() {
+            @Override
+            public Iterator<Entry<K,V>> iterator() {
+                return new EntryIterator<K,V>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static abstract class Node {
+        /**
+         * Returns the leaf of the specified key, or null if this node doesn't have the key.
+         */
+        abstract Leaf find(int hash, int shift, Object key);
+
+        /**
+         * Returns this node with the specified leaf added or replacing the leaf with the same key.
+         */
+        abstract Node plus(Leaf leaf, int shift, boolean[] added);
+
+        /**
+         * Returns this node without the specified key, or null if the node is left empty.
+         */
+        abstract Node minus(int hash, int shift, Object key);
+
+        /**
+         * Returns a branch that holds two nodes with different hashes, branching as deep as needed to separate them.
+         */
+        static Node merge(Node node1, int hash1, Node node2, int hash2, int shift) {
+            int index1 = (hash1 >>> shift) & MASK;
+            int index2 = (hash2 >>> shift) & MASK;
+            if (index1 == index2) {
+                return new Branch(1 << index1, new Node[] { merge(node1, hash1, node2, hash2, shift + BITS) });
+            }
+
+            Node[] children = index1 < index2 ? new Node[] { node1, node2 } : new Node[] { node2, node1 };
+            return new Branch((1 << index1) | (1 << index2), children);
+        }
+    }
+
+    private static final class Leaf extends Node implements Entry<Object,Object> {
+        final int hash;
+        final Object key;
+        final Object value;
+
+        Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        Leaf find(int hash, int shift, Object key) {
+            return this.hash == hash && keysEqual(this.key, key) ? this : null;
+        }
+
+        @Override
+        Node plus(Leaf leaf, int shift, boolean[] added) {
+            if (hash == leaf.hash && keysEqual(key, leaf.key)) {
+                return value == leaf.value ? this : leaf;
+            }
+
+            added[0] = true;
+            if (hash == leaf.hash) {
+                return new Collision(hash, new Leaf[] { this, leaf });
+            }
+            return merge(this, hash, leaf, leaf.hash, shift);
+        }
+
+        @Override
+        Node minus(int hash, int shift, Object key) {
+            return find(hash, shift, key) == null ? this : null;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException("A persistent map can't be modified");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?,?> other = (Entry<?,?>) o;
+            return keysEqual(key, other.getKey()) && keysEqual(value, other.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    private static final class Collision extends Node {
+        final int hash;
+        final Leaf[] leaves;
+
+        Collision(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (keysEqual(leaves[i].key, key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Leaf find(int hash, int shift, Object key) {
+            if (this.hash != hash) {
+                return null;
+            }
+            int index = indexOf(key);
+            return index < 0 ? null : leaves[index];
+        }
+
+        @Override
+        Node plus(Leaf leaf, int shift, boolean[] added) {
+            if (hash != leaf.hash) {
+                added[0] = true;
+                return merge(this, hash, leaf, leaf.hash, shift);
+            }
+
+            int index = indexOf(leaf.key);
+            Leaf[] newLeaves;
+            if (index < 0) {
+                added[0] = true;
+                newLeaves = new Leaf[leaves.length + 1];
+                System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+                newLeaves[leaves.length] = leaf;
+            } else if (leaves[index].value == leaf.value) {
+                return this;
+            } else {
+                newLeaves = leaves.clone();
+                newLeaves[index] = leaf;
+            }
+            return new Collision(hash, newLeaves);
+        }
+
+        @Override
+        Node minus(int hash, int shift, Object key) {
+            int index = this.hash == hash ? indexOf(key) : -1;
+            if (index < 0) {
+                return this;
+            } else if (leaves.length == 2) {
+                return leaves[1 - index];
+            }
+
+            Leaf[] newLeaves = new Leaf[leaves.length - 1];
+            System.arraycopy(leaves, 0, newLeaves, 0, index);
+            System.arraycopy(leaves, index + 1, newLeaves, index, newLeaves.length - index);
+            return new Collision(hash, newLeaves);
+        }
+    }
+
+    private static final class Branch extends Node {
+        // the bit of each index that has a child, where the children are ordered by index
+        final int bitmap;
+        final Node[] children;
+
+        Branch(int bitmap, Node[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+        private int childIndex(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Leaf find(int hash, int shift, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            return children[childIndex(bit)].find(hash, shift + BITS, key);
+        }
+
+        @Override
+        Node plus(Leaf leaf, int shift, boolean[] added) {
+            int bit = 1 << ((leaf.hash >>> shift) & MASK);
+            int index = childIndex(bit);
+
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                Node[] newChildren = new Node[children.length + 1];
+                System.arraycopy(children, 0, newChildren, 0, index);
+                newChildren[index] = leaf;
+                System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+                return new Branch(bitmap | bit, newChildren);
+            }
+
+            Node child = children[index];
+            Node newChild = child.plus(leaf, shift + BITS, added);
+            if (newChild == child) {
+                return this;
+            }
+            Node[] newChildren = children.clone();
+            newChildren[index] = newChild;
+            return new Branch(bitmap, newChildren);
+        }
+
+        @Override
+        Node minus(int hash, int shift, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+
+            int index = childIndex(bit);
+            Node child = children[index];
+            Node newChild = child.minus(hash, shift + BITS, key);
+            if (newChild == child) {
+                return this;
+            }
+
+            if (newChild != null) {
+                if (children.length == 1 && !(newChild instanceof Branch)) {
+                    // a leaf or collision can be looked up at any level, so it doesn't need a branch of its own
+                    return newChild;
+                }
+                Node[] newChildren = children.clone();
+                newChildren[index] = newChild;
+                return new Branch(bitmap, newChildren);
+            }
+
+            if (children.length == 1) {
+                return null;
+            } else if (children.length == 2 && !(children[1 - index] instanceof Branch)) {
+                return children[1 - index];
+            }
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(children, index + 1, newChildren, index, newChildren.length - index);
+            return new Branch(bitmap & ~bit, newChildren);
+        }
+    }
+
+    private static final class EntryIterator<K,V> implements Iterator<Entry<K,V>> {
+        private final Deque<Node> pending = new ArrayDeque<Node>();
+        private Leaf next;
+
+        EntryIterator(Node root) {
+            if (root != null) {
+                pending.push(root);
+            }
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && !pending.isEmpty()) {
+                Node node = pending.pop();
+                if (node instanceof Leaf) {
+                    next = (Leaf) node;
+                } else if (node instanceof Collision) {
+                    for (Leaf leaf : ((Collision) node).leaves) {
+                        pending.push(leaf);
+                    }
+                } else {
+                    Node[] children = ((Branch) node).children;
+                    for (int i = children.length - 1; i >= 0; i--) {
+                        pending.push(children[i]);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Entry<K,V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<K,V> entry = (Entry<K,V>) (Entry<?,?>) next;
+            advance();
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("A persistent map can't be modified");
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.dkharrat.nexusdata.core;
+
+import java.util.Map;
+
+/**
+ * An immutable map that is changed by creating new versions of it. A new version shares the structure of the map it
+ * was created from, except for the path to the changed entry, so creating it takes O(log n) time and memory, and
+ * both versions remain valid. Since versions are never modified, they can be read by any number of threads without
+ * locking.
+ * <p>
+ * The {@link Map} methods that modify the map throw {@link UnsupportedOperationException}.
+ */
+interface PersistentMap<K,V> extends Map<K,V> {
+
+    /**
+     * Returns a version of this map in which the specified key is mapped to the specified value.
+     *
+     * @param key   the key of the entry
+     * @param value the value of the entry
+     * @return a new map with the entry, or this map if it already has the entry
+     */
+    PersistentMap<K,V> plus(K key, V value);
+
+    /**
+     * Returns a version of this map without the specified key.
+     *
+     * @param key   the key to remove
+     * @return a new map without the key, or this map if it doesn't have the key
+     */
+    PersistentMap<K,V> minus(K key);
+}
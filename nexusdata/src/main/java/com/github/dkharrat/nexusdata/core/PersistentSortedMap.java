@@ -0,0 +1,265 @@
+package com.github.dkharrat.nexusdata.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A {@link PersistentMap} implemented as an AVL tree, which keeps its keys sorted by a comparator and supports range
+ * lookups. Lookups and updates take O(log n) time.
+ */
+final class PersistentSortedMap<K,V> extends AbstractMap<K,V> implements PersistentMap<K,V> {
+
+    private final Comparator<? super K> comparator;
+    private final Node<K,V> root;
+    private final int size;
+
+    private PersistentSortedMap(Comparator<? super K> comparator, Node<K,V> root, int size) {
+        this.comparator = comparator;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns an empty map that sorts its keys with the specified comparator.
+     */
+    static <K,V> PersistentSortedMap<K,V> empty(Comparator<? super K> comparator) {
+        return new PersistentSortedMap<K,V>(comparator, null, 0);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<K,V> find(Object key) {
+        Node<K,V> node = root;
+        while (node != null) {
+            int result = comparator.compare((K) key, node.key);
+            if (result == 0) {
+                return node;
+            }
+            node = result < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K,V> node = find(key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public PersistentSortedMap<K,V> plus(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node<K,V> newRoot = plus(root, key, value, added);
+        return newRoot == root ? this : new PersistentSortedMap<K,V>(comparator, newRoot, added[0] ? size + 1 : size);
+    }
+
+    private Node<K,V> plus(Node<K,V> node, K key, V value, boolean[] added) {
+        if (node == null) {
+            added[0] = true;
+            return new Node<K,V>(key, value, null, null);
+        }
+
+        int result = comparator.compare(key, node.key);
+        if (result < 0) {
+            Node<K,V> left = plus(node.left, key, value, added);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        } else if (result > 0) {
+            Node<K,V> right = plus(node.right, key, value, added);
+            return right == node.right ? node : balance(node.key, node.value, node.left, right);
+        }
+        return node.value == value ? node : new Node<K,V>(node.key, value, node.left, node.right);
+    }
+
+    @Override
+    public PersistentSortedMap<K,V> minus(K key) {
+        Node<K,V> newRoot = minus(root, key);
+        return newRoot == root ? this : new PersistentSortedMap<K,V>(comparator, newRoot, size - 1);
+    }
+
+    private Node<K,V> minus(Node<K,V> node, K key) {
+        if (node == null) {
+            return null;
+        }
+
+        int result = comparator.compare(key, node.key);
+        if (result < 0) {
+            Node<K,V> left = minus(node.left, key);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        } else if (result > 0) {
+            Node<K,V> right = minus(node.right, key);
+            return right == node.right ? node : balance(node.key, node.value, node.left, right);
+        } else if (node.left == null) {
+            return node.right;
+        } else if (node.right == null) {
+            return node.left;
+        }
+
+        Node<K,V> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor.key, successor.value, node.left, minusFirst(node.right));
+    }
+
+    private static <K,V> Node<K,V> minusFirst(Node<K,V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node.key, node.value, minusFirst(node.left), node.right);
+    }
+
+    /**
+     * Returns the height of the tree, which is at most about 1.44 log2(n) since the tree is kept balanced.
+     */
+    int height() {
+        return height(root);
+    }
+
+    private static int height(Node<?,?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * Returns a node with the specified entry and subtrees, rotated if the heights of the subtrees differ by more
+     * than one.
+     */
+    private static <K,V> Node<K,V> balance(K key, V value, Node<K,V> left, Node<K,V> right) {
+        if (height(left) > height(right) + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node<K,V>(left.key, left.value, left.left, new Node<K,V>(key, value, left.right, right));
+            }
+            Node<K,V> pivot = left.right;
+            return new Node<K,V>(pivot.key, pivot.value,
+                    new Node<K,V>(left.key, left.value, left.left, pivot.left),
+                    new Node<K,V>(key, value, pivot.right, right));
+        } else if (height(right) > height(left) + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node<K,V>(right.key, right.value, new Node<K,V>(key, value, left, right.left), right.right);
+            }
+            Node<K,V> pivot = right.left;
+            return new Node<K,V>(pivot.key, pivot.value,
+                    new Node<K,V>(key, value, left, pivot.left),
+                    new Node<K,V>(right.key, right.value, pivot.right, right.right));
+        }
+        return new Node<K,V>(key, value, left, right);
+    }
+
+    /**
+     * Returns the values of the keys within the specified range, in key order.
+     *
+     * @param lowerKey          the lower bound of the range, or null if the range has no lower bound
+     * @param lowerInclusive    true if the lower bound is part of the range
+     * @param upperKey          the upper bound of the range, or null if the range has no upper bound
+     * @param upperInclusive    true if the upper bound is part of the range
+     * @return the values in the range
+     */
+    List<V> getRange(K lowerKey, boolean lowerInclusive, K upperKey, boolean upperInclusive) {
+        List<V> values = new ArrayList<V>();
+        addRange(root, lowerKey, lowerInclusive, upperKey, upperInclusive, values);
+        return values;
+    }
+
+    private void addRange(Node<K,V> node, K lowerKey, boolean lowerInclusive, K upperKey, boolean upperInclusive, List<V> values) {
+        if (node == null) {
+            return;
+        }
+
+        int lowerResult = lowerKey == null ? 1 : comparator.compare(node.key, lowerKey);
+        int upperResult = upperKey == null ? -1 : comparator.compare(node.key, upperKey);
+
+        if (lowerResult > 0) {
+            addRange(node.left, lowerKey, lowerInclusive, upperKey, upperInclusive, values);
+        }
+        if ((lowerResult > 0 || (lowerResult == 0 && lowerInclusive)) && (upperResult < 0 || (upperResult == 0 && upperInclusive))) {
+            values.add(node.value);
+        }
+        if (upperResult < 0) {
+            addRange(node.right, lowerKey, lowerInclusive, upperKey, upperInclusive, values);
+        }
+    }
+
+    @Override
+    public Set<Entry<K,V>> entrySet() {
+        return new AbstractSet<Entry<K,V>>() {
+            @Override
+            public Iterator<Entry<K,V>> iterator() {
+                return new EntryIterator<K,V>(root);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static final class Node<K,V> extends SimpleImmutableEntry<K,V> {
+        final K key;
+        final V value;
+        final Node<K,V> left;
+        final Node<K,V> right;
+        final int height;
+
+        Node(K key, V value, Node<K,V> left, Node<K,V> right) {
+            super(key, value);
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+
+    private static final class EntryIterator<K,V> implements Iterator<Entry<K,V>> {
+        // the nodes whose entry and right subtree are still to be visited, with the next node on top
+        private final Deque<Node<K,V>> pending = new ArrayDeque<Node<K,V>>();
+
+        EntryIterator(Node<K,V> root) {
+            pushLeft(root);
+        }
+
+        private void pushLeft(Node<K,V> node) {
+            while (node != null) {
+                pending.push(node);
+                node = node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !pending.isEmpty();
+        }
+
+        @Override
+        public Entry<K,V> next() {
+            if (pending.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node<K,V> node = pending.pop();
+            pushLeft(node.right);
+            return node;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("A persistent map can't be modified");
+        }
+    }
+}
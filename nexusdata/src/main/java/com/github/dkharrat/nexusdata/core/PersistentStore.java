@@ -190,6 +190,20 @@ public abstract class PersistentStore {
      */
     abstract <T extends ManagedObject> List<T> executeFetchRequest(FetchRequest<T> request, ObjectContext context);
 
+    /**
+     * Opens a cursor that returns the results of the specified fetch request one at a time. By default, the request is
+     * executed with {@link #executeFetchRequest(FetchRequest, ObjectContext)} and the cursor returns the objects of
+     * its result, so stores that can read their records incrementally should override this method.
+     *
+     * @param request   the request that describes the criteria to query
+     * @param context   the context to which the data will be returned
+     *
+     * @return a cursor over the objects that match the query criteria
+     */
+    <T extends ManagedObject> FetchCursor<T> openFetchCursor(FetchRequest<T> request, ObjectContext context) {
+        return FetchCursor.fromList(executeFetchRequest(request, context));
+    }
+
     /**
      * Saves the specified changes to the persistent store.
      *
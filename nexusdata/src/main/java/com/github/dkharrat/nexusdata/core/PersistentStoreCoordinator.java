@@ -2,10 +2,22 @@ package com.github.dkharrat.nexusdata.core;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.PriorityQueue;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import com.github.dkharrat.nexusdata.metamodel.Entity;
 import com.github.dkharrat.nexusdata.metamodel.ObjectModel;
@@ -19,14 +31,29 @@ import org.slf4j.LoggerFactory;
  * the ObjectContext, a PersistentStoreCoordinator behaves such that a group of PersistentStores appear as one virtual
  * store. This allows the ObjectContext to create the corresponding object graph from the union of the persistence
  * stores that this coordinator covers.
+ * <p>
+ * A store can be added with a configuration, which is the set of entities whose objects are kept in that store (see
+ * {@link #addStore(PersistentStore, Collection)}). The coordinator routes fetches, ID assignments and saves of each
+ * object to the stores of its entity, so for example, short-lived objects can be kept in an in-memory store while the
+ * rest of the object graph is kept in a SQLite database, behind the same context. A save that changes objects in
+ * several stores is split into one save per store, which are not atomic as a whole. Relationships between objects in
+ * different stores are not supported.
+ * <p>
+ * When the objects of a fetch are spread across several stores, the stores are queried in parallel on the fetch
+ * executor (see {@link #setFetchExecutor(Executor)}), so a fetch takes as long as the slowest store rather than the sum
+ * of all stores. Each store returns its matches in sort order, which are then merged.
  */
 public class PersistentStoreCoordinator {
 
     private static final Logger LOG = LoggerFactory.getLogger(PersistentStoreCoordinator.class);
 
     private final Map<UUID, PersistentStore> storeUuidToPersistentStore = new LinkedHashMap<UUID, PersistentStore>();
+    private final Map<PersistentStore, Set<Entity<?>>> storeConfigurations = new HashMap<PersistentStore, Set<Entity<?>>>();
     private final ObjectModel model;
 
+    private static volatile Executor sharedFetchExecutor;
+    private volatile Executor fetchExecutor;
+
     /**
      * Creates a PersistentStoreCoordinator associated with the specific model.
      *
@@ -37,11 +64,39 @@ public class PersistentStoreCoordinator {
     }
 
     /**
-     * Adds a persistent store to this coordinator. A persistent store cannot belong to multiple coordinators.
+     * Adds a persistent store to this coordinator. A persistent store cannot belong to multiple coordinators. The
+     * store holds the objects of all entities that are not assigned to another store through a configuration.
      *
      * @param store the persistent store to add
      */
     public void addStore(PersistentStore store) {
+        addStore(store, null);
+    }
+
+    /**
+     * Adds a persistent store to this coordinator, which holds the objects of the specified entities, including their
+     * sub-entities. An entity may be assigned to several stores, in which case its objects are fetched from all of
+     * them, and new objects are saved to the first one added, unless they are assigned to another one (see
+     * {@link ObjectContext#assignObjectToStore(ManagedObject, PersistentStore)}). A persistent store cannot belong to
+     * multiple coordinators.
+     *
+     * @param store     the persistent store to add
+     * @param entities  the entities whose objects are kept in the store, or null if the store holds the objects of
+     *                  all entities that are not assigned to another store
+     * @throws IllegalArgumentException if an entity is not part of the model of this coordinator
+     */
+    public void addStore(PersistentStore store, Collection<? extends Entity<?>> entities) {
+        Set<Entity<?>> configuration = null;
+        if (entities != null) {
+            configuration = new HashSet<Entity<?>>();
+            for (Entity<?> entity : entities) {
+                if (model.getEntity(entity.getName()) != entity) {
+                    throw new IllegalArgumentException("Entity " + entity.getName() + " is not part of the model of this coordinator");
+                }
+                configuration.add(entity);
+            }
+        }
+
         if (store.getCoordinator() != null && store.getCoordinator() != this) {
             throw new IllegalStateException("PersistentStore " + store + " already assigned to another coordinator");
         }
@@ -53,6 +108,9 @@ public class PersistentStoreCoordinator {
         }
 
         storeUuidToPersistentStore.put(store.getUuid(), store);
+        if (configuration != null) {
+            storeConfigurations.put(store, configuration);
+        }
 
         LOG.info("Added persistent store " + store);
     }
@@ -64,6 +122,7 @@ public class PersistentStoreCoordinator {
      */
     public void removeStore(PersistentStore store) {
         storeUuidToPersistentStore.remove(store.getUuid());
+        storeConfigurations.remove(store);
         store.setPersistentStoreCoordinator(null);
     }
 
@@ -88,6 +147,123 @@ public class PersistentStoreCoordinator {
         return new ArrayList<PersistentStore>(storeUuidToPersistentStore.values());
     }
 
+    /**
+     * Returns the persistent stores that hold the objects of the specified entity. These are the stores whose
+     * configuration includes the entity or one of its super-entities, or if there are none, the stores that were added
+     * without a configuration. The objects of the entity's sub-entities may be held in other stores.
+     *
+     * @param entity    the entity whose stores to return
+     * @return the stores that hold the objects of the entity, in the order they were added
+     */
+    public List<PersistentStore> getPersistentStores(Entity<?> entity) {
+        List<PersistentStore> stores = new ArrayList<PersistentStore>();
+        for (PersistentStore store : storeUuidToPersistentStore.values()) {
+            Set<Entity<?>> configuration = storeConfigurations.get(store);
+            if (configuration != null && isInConfiguration(entity, configuration)) {
+                stores.add(store);
+            }
+        }
+
+        if (stores.isEmpty()) {
+            for (PersistentStore store : storeUuidToPersistentStore.values()) {
+                if (!storeConfigurations.containsKey(store)) {
+                    stores.add(store);
+                }
+            }
+        }
+        return stores;
+    }
+
+    private static boolean isInConfiguration(Entity<?> entity, Set<Entity<?>> configuration) {
+        for (Entity<?> curEntity = entity; curEntity != null; curEntity = curEntity.getSuperEntity()) {
+            if (configuration.contains(curEntity)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the persistent stores that a fetch of the specified entity needs to query, which are the stores of the
+     * entity and of all its sub-entities.
+     */
+    List<PersistentStore> getPersistentStoresForFetch(Entity<?> entity) {
+        Set<PersistentStore> stores = new HashSet<PersistentStore>();
+        addPersistentStoresForFetch(entity, stores);
+
+        List<PersistentStore> orderedStores = new ArrayList<PersistentStore>(stores.size());
+        for (PersistentStore store : storeUuidToPersistentStore.values()) {
+            if (stores.contains(store)) {
+                orderedStores.add(store);
+            }
+        }
+        return orderedStores;
+    }
+
+    private void addPersistentStoresForFetch(Entity<?> entity, Set<PersistentStore> stores) {
+        stores.addAll(getPersistentStores(entity));
+        for (Entity<?> subEntity : entity.getSubEntities()) {
+            addPersistentStoresForFetch(subEntity, stores);
+        }
+    }
+
+    /**
+     * Returns the persistent store that a new object of the specified entity is saved to.
+     *
+     * @throws IllegalStateException if no store holds the objects of the entity
+     */
+    PersistentStore getPersistentStoreForNewObject(Entity<?> entity) {
+        List<PersistentStore> stores = getPersistentStores(entity);
+        if (stores.isEmpty()) {
+            throw new IllegalStateException("No persistent store holds objects of entity " + entity.getName());
+        }
+        return stores.get(0);
+    }
+
+    /**
+     * Sets the executor that fetches from several stores run on. The calling thread fetches from one of the stores
+     * itself, and the others are fetched from on the executor. Fetches that the executor rejects run on the calling
+     * thread too. By default, a pool of background threads shared by all coordinators is used.
+     *
+     * @param executor  the executor to run the fetches on
+     */
+    public void setFetchExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor must not be null");
+        }
+        fetchExecutor = executor;
+    }
+
+    /**
+     * Returns the executor that fetches from several stores run on.
+     *
+     * @return the executor that fetches from several stores run on
+     */
+    public Executor getFetchExecutor() {
+        if (fetchExecutor == null) {
+            return getSharedFetchExecutor();
+        }
+        return fetchExecutor;
+    }
+
+    private static Executor getSharedFetchExecutor() {
+        if (sharedFetchExecutor == null) {
+            synchronized (PersistentStoreCoordinator.class) {
+                if (sharedFetchExecutor == null) {
+                    sharedFetchExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "nexusdata-fetch");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+                }
+            }
+        }
+        return sharedFetchExecutor;
+    }
+
     /**
      * Returns the model associated with this coordinator.
      *
@@ -129,13 +305,208 @@ public class PersistentStoreCoordinator {
         return new ObjectID(storeUuidToPersistentStore.get(storeUuid), entity, referenceObject);
     }
 
-    //TODO: implement - must be synchronized?
-    void executeFetchRequest() {
+    /**
+     * Executes a fetch request against the stores that hold objects of the request's entity. If there are several, each
+     * store is asked for its first {@code offset + limit} matches in parallel, and their results are merged in sort
+     * order before the offset and limit are applied.
+     */
+    <T extends ManagedObject> List<T> executeFetchRequest(FetchRequest<T> request, ObjectContext context) {
+        List<PersistentStore> stores = getPersistentStoresForFetch(request.getEntity());
+        if (stores.isEmpty()) {
+            throw new IllegalStateException("No persistent store holds objects of entity " + request.getEntity().getName());
+        } else if (stores.size() == 1) {
+            return stores.get(0).executeFetchRequest(request, context);
+        }
+
+        int offset = Math.max(request.getOffset(), 0);
+        int limit = request.getLimit();
+        FetchRequest<T> storeRequest = new FetchRequest<T>(request);
+        storeRequest.setOffset(0);
+        storeRequest.setLimit((int) Math.min((long) offset + limit, Integer.MAX_VALUE));
+
+        List<List<T>> storeResults = fetchInParallel(stores, storeRequest, context);
+        if (request.hasSortDescriptors()) {
+            return merge(storeResults, new SortDescriptorComparator(request.getSortDescriptors()), offset, limit);
+        }
+
+        List<T> results = new ArrayList<T>();
+        for (List<T> objects : storeResults) {
+            results.addAll(objects);
+        }
+        int fromIndex = Math.min(offset, results.size());
+        int toIndex = (int) Math.min((long) fromIndex + limit, results.size());
+        return new ArrayList<T>(results.subList(fromIndex, toIndex));
+    }
+
+    /**
+     * Opens a cursor over the results of a fetch request from the stores that hold objects of the request's entity. If
+     * there are several, a cursor is opened on each store for its first {@code offset + limit} matches, and the cursors
+     * are merged in sort order as they are read.
+     */
+    <T extends ManagedObject> FetchCursor<T> openFetchCursor(FetchRequest<T> request, ObjectContext context) {
+        List<PersistentStore> stores = getPersistentStoresForFetch(request.getEntity());
+        if (stores.isEmpty()) {
+            throw new IllegalStateException("No persistent store holds objects of entity " + request.getEntity().getName());
+        } else if (stores.size() == 1) {
+            return stores.get(0).openFetchCursor(request, context);
+        }
 
+        int offset = Math.max(request.getOffset(), 0);
+        int limit = request.getLimit();
+        FetchRequest<T> storeRequest = new FetchRequest<T>(request);
+        storeRequest.setOffset(0);
+        storeRequest.setLimit((int) Math.min((long) offset + limit, Integer.MAX_VALUE));
+
+        List<FetchCursor<T>> cursors = new ArrayList<FetchCursor<T>>(stores.size());
+        try {
+            for (PersistentStore store : stores) {
+                cursors.add(store.openFetchCursor(storeRequest, context));
+            }
+            Comparator<ManagedObject> comparator = null;
+            if (request.hasSortDescriptors()) {
+                comparator = new SortDescriptorComparator(request.getSortDescriptors());
+            }
+            return new MergingFetchCursor<T>(cursors, comparator, offset, limit);
+        } catch (RuntimeException e) {
+            for (FetchCursor<T> cursor : cursors) {
+                cursor.close();
+            }
+            throw e;
+        }
     }
 
-    //TODO: implement - must be synchronized?
-    void save(SaveChangesRequest saveRequest) {
+    /**
+     * Fetches from each of the specified stores, with all stores but the first fetched from on the fetch executor, and
+     * returns the results of each store. If any fetch fails, its exception is thrown once all fetches are done.
+     */
+    private <T extends ManagedObject> List<List<T>> fetchInParallel(List<PersistentStore> stores, final FetchRequest<T> request, final ObjectContext context) {
+        List<FutureTask<List<T>>> tasks = new ArrayList<FutureTask<List<T>>>(stores.size());
+        Executor executor = getFetchExecutor();
+        for (final PersistentStore store : stores) {
+            FutureTask<List<T>> task = new FutureTask<List<T>>(new Callable<List<T>>() {
+                @Override
+                public List<T> call() {
+                    return store.executeFetchRequest(request, context);
+                }
+            });
+            if (!tasks.isEmpty()) {
+                try {
+                    executor.execute(task);
+                } catch (RuntimeException e) {
+                    // the executor can't take the task (e.g. it's saturated or shut down), so fetch on this thread
+                    // instead of abandoning the tasks that are already running. A task only runs once, even if the
+                    // executor started it before failing.
+                    LOG.debug("Fetch executor rejected a fetch, running it on the calling thread", e);
+                    task.run();
+                }
+            }
+            tasks.add(task);
+        }
+        tasks.get(0).run();
 
+        List<List<T>> results = new ArrayList<List<T>>(tasks.size());
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (FutureTask<List<T>> task : tasks) {
+            while (true) {
+                try {
+                    results.add(task.get());
+                    break;
+                } catch (InterruptedException e) {
+                    // the fetches are registering objects in the context, so wait for them to finish
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+        return results;
+    }
+
+    /**
+     * Merges lists of objects that are each sorted by the specified comparator, and returns the merged objects after
+     * skipping the offset and up to the limit. Objects that are ordered the same keep the order of their lists.
+     */
+    private static <T extends ManagedObject> List<T> merge(final List<List<T>> sortedLists, final Comparator<ManagedObject> comparator, int offset, int limit) {
+        // each cursor is the index of a list and the position of its next object
+        PriorityQueue<int[]> cursors = new PriorityQueue<int[]>(sortedLists.size(), new Comparator<int[]>() {
+            @Override
+            public int compare(int[] lhs, int[] rhs) {
+                int result = comparator.compare(sortedLists.get(lhs[0]).get(lhs[1]), sortedLists.get(rhs[0]).get(rhs[1]));
+                return result != 0 ? result : lhs[0] - rhs[0];
+            }
+        });
+        for (int i = 0; i < sortedLists.size(); i++) {
+            if (!sortedLists.get(i).isEmpty()) {
+                cursors.add(new int[] { i, 0 });
+            }
+        }
+
+        List<T> results = new ArrayList<T>();
+        for (int position = 0; !cursors.isEmpty() && results.size() < limit; position++) {
+            int[] cursor = cursors.poll();
+            List<T> list = sortedLists.get(cursor[0]);
+            if (position >= offset) {
+                results.add(list.get(cursor[1]));
+            }
+            if (++cursor[1] < list.size()) {
+                cursors.add(cursor);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Executes a save request by splitting it into one request per store, with the objects that are saved to that
+     * store. The objects must already have permanent IDs.
+     */
+    void executeSaveRequest(SaveChangesRequest request, ObjectContext context) {
+        Map<PersistentStore, ChangedObjectsSet> changesByStore = new LinkedHashMap<PersistentStore, ChangedObjectsSet>();
+        ChangedObjectsSet changes = request.getChanges();
+        for (ManagedObject object : changes.getInsertedObjects()) {
+            getChanges(changesByStore, object).getInsertedObjects().add(object);
+        }
+        for (ManagedObject object : changes.getUpdatedObjects()) {
+            getChanges(changesByStore, object).getUpdatedObjects().add(object);
+        }
+        for (ManagedObject object : changes.getDeletedObjects()) {
+            getChanges(changesByStore, object).getDeletedObjects().add(object);
+        }
+
+        if (changesByStore.size() == 1) {
+            changesByStore.keySet().iterator().next().executeSaveRequest(request, context);
+            return;
+        }
+        for (Map.Entry<PersistentStore, ChangedObjectsSet> entry : changesByStore.entrySet()) {
+            entry.getKey().executeSaveRequest(new SaveChangesRequest(entry.getValue()), context);
+        }
+    }
+
+    private ChangedObjectsSet getChanges(Map<PersistentStore, ChangedObjectsSet> changesByStore, ManagedObject object) {
+        PersistentStore store = object.getID().getPersistentStore();
+        if (store == null) {
+            store = getPersistentStoreForNewObject(object.getEntity());
+        }
+
+        ChangedObjectsSet changes = changesByStore.get(store);
+        if (changes == null) {
+            changes = new ChangedObjectsSet();
+            changesByStore.put(store, changes);
+        }
+        return changes;
     }
 }
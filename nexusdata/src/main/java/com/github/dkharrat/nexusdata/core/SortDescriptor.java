@@ -39,6 +39,21 @@ public class SortDescriptor {
         return isAscending;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        SortDescriptor that = (SortDescriptor) o;
+
+        return isAscending == that.isAscending && attributeName.equals(that.attributeName);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * attributeName.hashCode() + (isAscending ? 1 : 0);
+    }
+
     @Override
     public String toString() {
         return "SortDescriptor{" +
@@ -0,0 +1,57 @@
+package com.github.dkharrat.nexusdata.core;
+
+import java.util.Comparator;
+import java.util.List;
+
+import com.github.dkharrat.nexusdata.utils.ObjectUtil;
+
+/**
+ * Compares managed objects by the values of the attributes of a list of {@link SortDescriptor}s, in the order the
+ * stores sort them: null values are ordered before any other value, so they come first in ascending order and last in
+ * descending order.
+ */
+class SortDescriptorComparator implements Comparator<ManagedObject> {
+
+    private final List<SortDescriptor> sortDescriptors;
+
+    SortDescriptorComparator(List<SortDescriptor> sortDescriptors) {
+        this.sortDescriptors = sortDescriptors;
+    }
+
+    @Override
+    public int compare(ManagedObject lhs, ManagedObject rhs) {
+        for (SortDescriptor sortDescriptor : sortDescriptors) {
+            int result = compare(ObjectUtil.toComparable(lhs.getValue(sortDescriptor.getAttributeName())),
+                    ObjectUtil.toComparable(rhs.getValue(sortDescriptor.getAttributeName())), sortDescriptor);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compares the sort keys of two objects, which are the comparable values (see {@link ObjectUtil#toComparable})
+     * of the attributes of the sort descriptors, in the same order as the sort descriptors.
+     */
+    int compareSortKeys(Comparable<?>[] lhsKeys, Comparable<?>[] rhsKeys) {
+        for (int i = 0; i < lhsKeys.length; i++) {
+            int result = compare(lhsKeys[i], rhsKeys[i], sortDescriptors.get(i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Comparable lhsValue, Comparable rhsValue, SortDescriptor sortDescriptor) {
+        int result;
+        if (lhsValue == null || rhsValue == null) {
+            result = lhsValue == rhsValue ? 0 : (lhsValue == null ? -1 : 1);
+        } else {
+            result = lhsValue.compareTo(rhsValue);
+        }
+        return sortDescriptor.isAscending() ? result : -result;
+    }
+}
@@ -9,9 +9,10 @@ import com.github.dkharrat.nexusdata.core.ManagedObject;
 public class Attribute extends Property {
 
     private Object defaultValue;
+    private final boolean isIndexed;
 
     /**
-     * Creates a new Attribute.
+     * Creates a new Attribute that is not indexed.
      *
      * @param entity        the associated entity
      * @param name          the name of the property
@@ -20,11 +21,26 @@ public class Attribute extends Property {
      * @param defaultValue  the default value to initialize the attribute when constructing a new {@link ManagedObject}
      */
     public Attribute(Entity<?> entity, String name, Class<?> type, boolean isRequired, Object defaultValue) {
+        this(entity, name, type, isRequired, defaultValue, false);
+    }
+
+    /**
+     * Creates a new Attribute.
+     *
+     * @param entity        the associated entity
+     * @param name          the name of the property
+     * @param type          the property type
+     * @param isRequired    if true, property is required to have a value
+     * @param defaultValue  the default value to initialize the attribute when constructing a new {@link ManagedObject}
+     * @param isIndexed     if true, persistent stores should index the attribute to speed up lookups by its value
+     */
+    public Attribute(Entity<?> entity, String name, Class<?> type, boolean isRequired, Object defaultValue, boolean isIndexed) {
         super(entity, name, type, isRequired);
         if (defaultValue != null && !getType().isAssignableFrom(defaultValue.getClass())) {
             throw new IllegalArgumentException("Type of defaultValue '" + defaultValue + "' is not compatible with type of this attribute (" + getType() + ")");
         }
         this.defaultValue = defaultValue;
+        this.isIndexed = isIndexed;
     }
 
     /**
@@ -36,6 +52,16 @@ public class Attribute extends Property {
         return defaultValue;
     }
 
+    /**
+     * Indicates whether this attribute should be indexed by persistent stores. Indexes over multiple properties are
+     * described by {@link Entity#getIndexes()}.
+     *
+     * @return true if this attribute should be indexed, or false otherwise
+     */
+    public boolean isIndexed() {
+        return isIndexed;
+    }
+
     @Override
     public boolean isRelationship() {
         return false;
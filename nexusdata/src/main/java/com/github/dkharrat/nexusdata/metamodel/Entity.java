@@ -17,6 +17,7 @@ public class Entity<T extends ManagedObject> {
     private Entity<?> superEntity;
     private final Set<Entity<?>> subEntities = new HashSet<>();
     private final Map<String, Property> properties = new HashMap<String,Property>();
+    private final List<Index> indexes = new ArrayList<Index>();
 
     /**
      * Creates a new Entity.
@@ -150,6 +151,25 @@ public class Entity<T extends ManagedObject> {
         return relationships;
     }
 
+    void addIndex(Index index) {
+        for (Index existingIndex : indexes) {
+            if (existingIndex.getName().equals(index.getName())) {
+                throw new IllegalArgumentException("Index '" + index.getName() + "' already exists in entity " + getName());
+            }
+        }
+        indexes.add(index);
+    }
+
+    /**
+     * Returns the indexes declared on this entity, which may span multiple properties. Indexes on single attributes
+     * are instead indicated by {@link Attribute#isIndexed()}.
+     *
+     * @return the indexes declared on this entity
+     */
+    public List<Index> getIndexes() {
+        return Collections.unmodifiableList(indexes);
+    }
+
     /**
      * Returns the property instance from the specified name. The property must exist, or an exception is thrown.
      *
@@ -0,0 +1,81 @@
+package com.github.dkharrat.nexusdata.metamodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An Index describes a set of properties of an {@link Entity} by which its objects are frequently looked up or sorted,
+ * so that a persistent store can maintain a data structure (e.g. a database index) to speed up those lookups. The
+ * order of the properties is significant: an index on (lastName, firstName) can also be used for lookups by lastName
+ * alone.
+ */
+public class Index {
+
+    private final Entity<?> entity;
+    private final String name;
+    private final List<Property> properties;
+
+    /**
+     * Creates a new Index.
+     *
+     * @param entity        the entity whose properties are indexed
+     * @param name          the name of the index, which must be unique within the entity
+     * @param properties    the indexed properties, in order. They must be attributes or to-one relationships.
+     */
+    public Index(Entity<?> entity, String name, List<Property> properties) {
+        if (properties.isEmpty()) {
+            throw new IllegalArgumentException("Index '" + name + "' of entity " + entity.getName() + " has no properties");
+        }
+        for (Property property : properties) {
+            if (property.isRelationship() && ((Relationship) property).isToMany()) {
+                throw new IllegalArgumentException("Index '" + name + "' of entity " + entity.getName()
+                        + " cannot include to-many relationship '" + property.getName() + "'");
+            }
+        }
+
+        this.entity = entity;
+        this.name = name;
+        this.properties = Collections.unmodifiableList(new ArrayList<Property>(properties));
+    }
+
+    /**
+     * Returns the entity whose properties are indexed.
+     *
+     * @return the entity whose properties are indexed
+     */
+    public Entity<?> getEntity() {
+        return entity;
+    }
+
+    /**
+     * Returns the name of this index.
+     *
+     * @return the name of this index
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the indexed properties, in order.
+     *
+     * @return the indexed properties
+     */
+    public List<Property> getProperties() {
+        return properties;
+    }
+
+    @Override
+    public String toString() {
+        List<String> propertyNames = new ArrayList<String>();
+        for (Property property : properties) {
+            propertyNames.add(property.getName());
+        }
+        return "Index ["
+                +   "name=" + name
+                + ", entity=" + entity.getName()
+                + ", properties=" + propertyNames
+                + "]";
+    }
+}
@@ -72,6 +72,8 @@ class ObjectModelJsonParser {
 
         setupRelationships(entityRelationMap, entities);
 
+        setupIndexes(jsonModel, entities);
+
         Entity<?>[] entitiesArray = entities.values().toArray(new Entity<?>[0]);
         LOG.debug("Done parsing model");
         return new ParsedModel(jsonModel.name, modelVersion, Arrays.asList(entitiesArray));
@@ -170,7 +172,7 @@ class ObjectModelJsonParser {
                     throw new RuntimeException("Unknown type '" + jsonAttr.type + "' for " + jsonEntity.name + "#" + jsonAttr.name);
                 }
             }
-            Attribute attr = new Attribute(entity, jsonAttr.name, attrType, jsonAttr.required, jsonAttr.getDefaultValue());
+            Attribute attr = new Attribute(entity, jsonAttr.name, attrType, jsonAttr.required, jsonAttr.getDefaultValue(), jsonAttr.indexed);
             LOG.debug("Adding attribute: " + jsonAttr.name);
             entity.addProperty(attr);
         }
@@ -183,6 +185,34 @@ class ObjectModelJsonParser {
         }
     }
 
+    static private void setupIndexes(JsonElem.Model jsonModel, HashMap<String, Entity<?>> entities) {
+        for (JsonElem.Entity jsonEntity : jsonModel.entities) {
+            if (jsonEntity.indexes == null) {
+                continue;
+            }
+
+            Entity<?> entity = entities.get(jsonEntity.name);
+            for (JsonElem.Index jsonIndex : jsonEntity.indexes) {
+                if (jsonIndex.properties == null || jsonIndex.properties.isEmpty()) {
+                    throw new RuntimeException("No properties specified for index in entity " + jsonEntity.name);
+                }
+
+                List<Property> properties = new ArrayList<>();
+                for (String propertyName : jsonIndex.properties) {
+                    try {
+                        properties.add(entity.getProperty(propertyName));
+                    } catch (NoSuchPropertyException e) {
+                        throw new RuntimeException("Could not find property " + propertyName + " for index in entity " + jsonEntity.name, e);
+                    }
+                }
+
+                String name = jsonIndex.name != null ? jsonIndex.name : StringUtil.join(jsonIndex.properties, "_");
+                LOG.debug("Adding index: " + name + " for entity: " + entity.getName());
+                entity.addIndex(new Index(entity, name, properties));
+            }
+        }
+    }
+
     static private void setupRelationships(
             final Map<Entity<?>, List<JsonElem.Relationship>> entityRelationMap,
             final HashMap<String, Entity<?>> entities)
@@ -265,6 +295,12 @@ class JsonElem {
         List<Attribute> attributes;
         List<Relationship> relationships;
         List<EnumProperty> enums;
+        List<Index> indexes;
+    }
+
+    static class Index {
+        String name;
+        List<String> properties;
     }
 
     static class EnumProperty {
@@ -294,6 +330,7 @@ class JsonElem {
         String name;
         String type;
         @SerializedName("default") String defaultValue;
+        boolean indexed;
         boolean hasGetter = true;
         boolean hasSetter = true;
 
@@ -0,0 +1,68 @@
+package com.github.dkharrat.nexusdata.predicate;
+
+/**
+ * A predicate that checks whether a value lies within a range, inclusive of both bounds. If the value or either bound
+ * is null, the predicate is false.
+ */
+public class BetweenPredicate implements Predicate {
+
+    private final Expression<?> expression, lowerBound, upperBound;
+
+    public BetweenPredicate(Expression<?> expression, Expression<?> lowerBound, Expression<?> upperBound) {
+        this.expression = expression;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+    }
+
+    public Expression<?> getExpression() {
+        return expression;
+    }
+
+    public Expression<?> getLowerBound() {
+        return lowerBound;
+    }
+
+    public Expression<?> getUpperBound() {
+        return upperBound;
+    }
+
+    @Override
+    public <T> T accept(ExpressionVisitor<T> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public Boolean evaluate(Object object) {
+        Object value = expression.evaluate(object);
+
+        return ValueComparator.GENERIC.apply(ComparisonPredicate.Operator.GREATER_THAN_OR_EQUAL, value, lowerBound.evaluate(object))
+                && ValueComparator.GENERIC.apply(ComparisonPredicate.Operator.LESS_THAN_OR_EQUAL, value, upperBound.evaluate(object));
+    }
+
+    @Override
+    public String toString() {
+        return "(" + expression + " BETWEEN " + lowerBound + " AND " + upperBound + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BetweenPredicate that = (BetweenPredicate) o;
+
+        if (!expression.equals(that.expression)) return false;
+        if (!lowerBound.equals(that.lowerBound)) return false;
+        if (!upperBound.equals(that.upperBound)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = expression.hashCode();
+        result = 31 * result + lowerBound.hashCode();
+        result = 31 * result + upperBound.hashCode();
+        return result;
+    }
+}
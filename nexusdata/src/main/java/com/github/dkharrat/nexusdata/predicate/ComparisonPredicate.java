@@ -1,10 +1,5 @@
 package com.github.dkharrat.nexusdata.predicate;
 
-import com.github.dkharrat.nexusdata.utils.ObjectUtil;
-
-import java.math.BigDecimal;
-import java.math.BigInteger;
-
 public class ComparisonPredicate implements Predicate {
 
     public enum Operator {
@@ -14,6 +9,14 @@ public class ComparisonPredicate implements Predicate {
         GREATER_THAN_OR_EQUAL,
         LESS_THAN,
         LESS_THAN_OR_EQUAL,
+        /** the left-hand side is equal to one of the values in the right-hand side collection */
+        IN,
+        /** the left-hand side matches a pattern, where '%' matches any sequence of characters and '_' matches any
+         *  single character. Matching is case-insensitive for ASCII characters, similar to SQL's LIKE. */
+        LIKE,
+        BEGINS_WITH,
+        ENDS_WITH,
+        CONTAINS,
     }
 
     private final Expression<?> lhs, rhs;
@@ -47,56 +50,7 @@ public class ComparisonPredicate implements Predicate {
         Object lhsValue = lhs.evaluate(object);
         Object rhsValue = rhs.evaluate(object);
 
-        if (op == Operator.EQUAL) {
-            return ObjectUtil.objectsEqual(lhsValue, rhsValue);
-        } else if (op == Operator.NOT_EQUAL) {
-            return !ObjectUtil.objectsEqual(lhsValue, rhsValue);
-        }
-
-        if (!(lhsValue instanceof Number) || !(rhsValue instanceof Number)) {
-            throw new IllegalArgumentException("Cannot compare non-Numbers");
-        }
-        Number lhsNumber = (Number)lhsValue;
-        Number rhsNumber = (Number)rhsValue;
-
-        int comparison = toBigDecimal(lhsNumber).compareTo(toBigDecimal(rhsNumber));
-
-        switch (op) {
-            case GREATER_THAN:
-                return comparison >= 1;
-
-            case GREATER_THAN_OR_EQUAL:
-                return comparison >= 1 || comparison == 0;
-
-            case LESS_THAN:
-                return comparison <= -1;
-
-            case LESS_THAN_OR_EQUAL:
-                return comparison <= -1 || comparison == 0;
-
-            default:
-                throw new UnsupportedOperationException("Not implemented yet");
-        }
-    }
-
-    private static BigDecimal toBigDecimal(final Number number) {
-        if(number instanceof BigDecimal)
-            return (BigDecimal) number;
-        if(number instanceof BigInteger)
-            return new BigDecimal((BigInteger) number);
-        if(number instanceof Byte || number instanceof Short
-                || number instanceof Integer || number instanceof Long)
-            return new BigDecimal(number.longValue());
-        if(number instanceof Float || number instanceof Double)
-            return new BigDecimal(number.doubleValue());
-
-        try {
-            return new BigDecimal(number.toString());
-        } catch(final NumberFormatException e) {
-            throw new RuntimeException("The given number (\"" + number
-                    + "\" of class " + number.getClass().getName()
-                    + ") does not have a parsable string representation", e);
-        }
+        return ValueComparator.GENERIC.apply(op, lhsValue, rhsValue);
     }
 
     @Override
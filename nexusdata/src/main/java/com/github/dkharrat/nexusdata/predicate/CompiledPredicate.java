@@ -0,0 +1,68 @@
+package com.github.dkharrat.nexusdata.predicate;
+
+import com.github.dkharrat.nexusdata.metamodel.Entity;
+
+/**
+ * A predicate that has been bound to a specific {@link Entity}, so that it can be efficiently evaluated against many
+ * objects of that entity. Property lookups are resolved once at compile-time, comparisons use comparators specialized
+ * for the property types (e.g. numbers, strings, dates and enums), and compound predicates are short-circuited.
+ * <p>
+ * A compiled predicate is immutable and can be shared between threads.
+ */
+public final class CompiledPredicate {
+
+    private final Predicate predicate;
+    private final Entity<?> entity;
+    private final PredicateCompiler.Condition condition;
+
+    private CompiledPredicate(Predicate predicate, Entity<?> entity) {
+        this.predicate = predicate;
+        this.entity = entity;
+        this.condition = new PredicateCompiler(entity).compile(predicate);
+    }
+
+    /**
+     * Compiles the specified predicate for evaluating objects of the specified entity.
+     *
+     * @param predicate the predicate to compile
+     * @param entity    the entity of the objects the predicate will be evaluated against
+     * @return a compiled version of the predicate
+     */
+    public static CompiledPredicate compile(Predicate predicate, Entity<?> entity) {
+        return new CompiledPredicate(predicate, entity);
+    }
+
+    /**
+     * Returns the predicate that was compiled.
+     *
+     * @return the predicate that was compiled
+     */
+    public Predicate getPredicate() {
+        return predicate;
+    }
+
+    /**
+     * Returns the entity this predicate was compiled for.
+     *
+     * @return the entity this predicate was compiled for
+     */
+    public Entity<?> getEntity() {
+        return entity;
+    }
+
+    /**
+     * Evaluates the predicate against the specified object.
+     *
+     * @param object    the object to evaluate. It is expected to be of the compiled entity type (or a sub-entity), or
+     *                  a {@link PropertyValueSource} of such an object.
+     * @return true if the object matches the predicate, or false otherwise
+     */
+    public boolean evaluate(Object object) {
+        return condition.test(object);
+    }
+
+    @Override
+    public String toString() {
+        return predicate.toString();
+    }
+}
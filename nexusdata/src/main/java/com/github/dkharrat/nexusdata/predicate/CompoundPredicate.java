@@ -35,14 +35,11 @@ public class CompoundPredicate implements Predicate {
 
     @Override
     public Boolean evaluate(Object object) {
-        boolean lhsValue = lhs.evaluate(object);
-        boolean rhsValue = rhs.evaluate(object);
-
         switch (op) {
             case AND:
-                return lhsValue && rhsValue;
+                return lhs.evaluate(object) && rhs.evaluate(object);
             case OR:
-                return lhsValue || rhsValue;
+                return lhs.evaluate(object) || rhs.evaluate(object);
             default:
                 throw new UnsupportedOperationException("Unsupported compound operator: " + op);
         }
@@ -0,0 +1,55 @@
+package com.github.dkharrat.nexusdata.predicate;
+
+/**
+ * An expression that evaluates to the number of elements in a collection (typically a to-many relationship), such as
+ * "employees.@count". A null collection has a count of zero.
+ */
+public class CountExpression implements Expression<Integer> {
+
+    private final FieldPathExpression collection;
+
+    public CountExpression(FieldPathExpression collection) {
+        this.collection = collection;
+    }
+
+    /**
+     * Returns the expression of the collection whose elements are counted.
+     *
+     * @return the expression of the collection whose elements are counted
+     */
+    public FieldPathExpression getCollection() {
+        return collection;
+    }
+
+    @Override
+    public <T> T accept(ExpressionVisitor<T> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public Integer evaluate(Object object) {
+        return QuantifiedPredicate.toCollection(collection.evaluate(object), collection).size();
+    }
+
+    @Override
+    public String toString() {
+        return collection + ".@count";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        CountExpression that = (CountExpression) o;
+
+        if (!collection.equals(that.collection)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * collection.hashCode() + 1;
+    }
+}
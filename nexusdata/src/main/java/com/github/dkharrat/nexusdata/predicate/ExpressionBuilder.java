@@ -23,4 +23,8 @@ public class ExpressionBuilder {
     public static PredicateBuilder self() {
         return new PredicateBuilder(new ThisExpression());
     }
+
+    public static PredicateBuilder variable(String name) {
+        return new PredicateBuilder(new VariableExpression(name));
+    }
 }
\ No newline at end of file
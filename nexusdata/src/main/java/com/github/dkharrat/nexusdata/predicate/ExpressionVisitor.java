@@ -4,7 +4,11 @@ public interface ExpressionVisitor<T> {
     public T visit(ConstantExpression<?> expression);
     public T visit(FieldPathExpression expression);
     public T visit(ThisExpression expression);
+    public T visit(VariableExpression expression);
     public T visit(CompoundPredicate predicate);
     public T visit(ComparisonPredicate predicate);
     public T visit(NotPredicate predicate);
+    public T visit(BetweenPredicate predicate);
+    public T visit(QuantifiedPredicate predicate);
+    public T visit(CountExpression expression);
 }
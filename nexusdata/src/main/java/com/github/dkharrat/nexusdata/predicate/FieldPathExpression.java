@@ -1,21 +1,49 @@
 package com.github.dkharrat.nexusdata.predicate;
 
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import com.github.dkharrat.nexusdata.core.ManagedObject;
 
+/**
+ * An expression that evaluates to the value of a field of an object. The field path may be a key path of
+ * dot-separated field names (e.g. "company.name") to traverse to-one relationships. If any intermediate value along
+ * the path is null, the expression evaluates to null.
+ */
 public class FieldPathExpression implements Expression<Object> {
 
     private final String fieldPath;
+    private final List<String> pathComponents;
 
     public FieldPathExpression(String fieldPath) {
         this.fieldPath = fieldPath;
+        this.pathComponents = Collections.unmodifiableList(Arrays.asList(fieldPath.split("\\.")));
     }
 
     public String getFieldPath() {
         return fieldPath;
     }
 
+    /**
+     * Returns the names of the fields along the path. For a simple field name, the list contains just that name.
+     *
+     * @return the names of the fields along the path
+     */
+    public List<String> getPathComponents() {
+        return pathComponents;
+    }
+
+    /**
+     * Indicates whether this is a key path that traverses other objects (e.g. "company.name").
+     *
+     * @return true if the path traverses other objects, or false if it refers to a field of the object itself
+     */
+    public boolean isKeyPath() {
+        return pathComponents.size() > 1;
+    }
+
     @Override
     public <T> T accept(ExpressionVisitor<T> visitor) {
         return visitor.visit(this);
@@ -23,11 +51,22 @@ public class FieldPathExpression implements Expression<Object> {
 
     @Override
     public Object evaluate(Object object) {
+        Object value = object;
+        for (String fieldName : pathComponents) {
+            if (value == null) {
+                return null;
+            }
+            value = getFieldValue(value, fieldName);
+        }
+        return value;
+    }
+
+    private static Object getFieldValue(Object object, String fieldName) {
         try {
             if (object instanceof ManagedObject) {
-                return ((ManagedObject)object).getValue(fieldPath);
+                return ((ManagedObject)object).getValue(fieldName);
             } else {
-                Field field = object.getClass().getDeclaredField(fieldPath);
+                Field field = object.getClass().getDeclaredField(fieldName);
                 field.setAccessible(true);
                 return field.get(object);
             }
@@ -57,4 +96,4 @@ public class FieldPathExpression implements Expression<Object> {
     public int hashCode() {
         return fieldPath.hashCode();
     }
-}
\ No newline at end of file
+}
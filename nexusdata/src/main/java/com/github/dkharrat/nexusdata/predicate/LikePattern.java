@@ -0,0 +1,43 @@
+package com.github.dkharrat.nexusdata.predicate;
+
+import java.util.regex.Pattern;
+
+/**
+ * A pattern used by the LIKE operator. '%' matches any sequence of characters (including none), '_' matches exactly
+ * one character, and '\' escapes the character that follows it. Similar to SQLite, matching ignores the case of ASCII
+ * characters.
+ */
+class LikePattern {
+
+    private final Pattern pattern;
+
+    LikePattern(String likePattern) {
+        StringBuilder regex = new StringBuilder(likePattern.length() + 8);
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < likePattern.length(); i++) {
+            char c = likePattern.charAt(i);
+            if (c == '\\' && i + 1 < likePattern.length()) {
+                literal.append(likePattern.charAt(++i));
+            } else if (c == '%' || c == '_') {
+                appendLiteral(regex, literal);
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        appendLiteral(regex, literal);
+
+        pattern = Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    }
+
+    private static void appendLiteral(StringBuilder regex, StringBuilder literal) {
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    boolean matches(String value) {
+        return pattern.matcher(value).matches();
+    }
+}
@@ -1,7 +1,8 @@
 package com.github.dkharrat.nexusdata.predicate;
 
-
-import com.github.dkharrat.nexusdata.predicate.parser.PredicateParser;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
 
 public class PredicateBuilder {
 
@@ -23,8 +24,11 @@ public class PredicateBuilder {
     }
 
     public static Predicate parse(String expr) {
-        PredicateParser parser = new PredicateParser(expr);
-        return parser.parse();
+        return PredicateTemplate.parse(expr).getPredicate();
+    }
+
+    public static Predicate parse(String expr, Map<String,?> substitutionVariables) {
+        return PredicateTemplate.parse(expr).predicateWithSubstitutionVariables(substitutionVariables);
     }
 
     Expression<?> getExpression() {
@@ -39,6 +43,10 @@ public class PredicateBuilder {
         return gt(rhs.getExpression());
     }
 
+    public PredicateBuilder gt(PredicateBuilder rhs) {
+        return gt(rhs.getExpression());
+    }
+
     public <T> PredicateBuilder gt(T value) {
         return gt(new ConstantExpression<T>(value));
     }
@@ -51,6 +59,10 @@ public class PredicateBuilder {
         return lt(rhs.getExpression());
     }
 
+    public PredicateBuilder lt(PredicateBuilder rhs) {
+        return lt(rhs.getExpression());
+    }
+
     public <T> PredicateBuilder lt(T value) {
         return lt(new ConstantExpression<T>(value));
     }
@@ -63,6 +75,10 @@ public class PredicateBuilder {
         return eq(rhs.getExpression());
     }
 
+    public PredicateBuilder eq(PredicateBuilder rhs) {
+        return eq(rhs.getExpression());
+    }
+
     public <T> PredicateBuilder eq(T value) {
         return eq(new ConstantExpression<T>(value));
     }
@@ -75,10 +91,50 @@ public class PredicateBuilder {
         return notEq(rhs.getExpression());
     }
 
+    public PredicateBuilder notEq(PredicateBuilder rhs) {
+        return notEq(rhs.getExpression());
+    }
+
     public <T> PredicateBuilder notEq(T value) {
         return notEq(new ConstantExpression<T>(value));
     }
 
+    public PredicateBuilder in(Expression<?> rhs) {
+        return new PredicateBuilder(new ComparisonPredicate(curExpression, ComparisonPredicate.Operator.IN, rhs));
+    }
+
+    public PredicateBuilder in(PredicateBuilder rhs) {
+        return in(rhs.getExpression());
+    }
+
+    public PredicateBuilder in(Collection<?> values) {
+        return in(new ConstantExpression<Collection<?>>(values));
+    }
+
+    public PredicateBuilder in(Object... values) {
+        return in(Arrays.asList(values));
+    }
+
+    public <T> PredicateBuilder between(T lowerBound, T upperBound) {
+        return new PredicateBuilder(new BetweenPredicate(curExpression, new ConstantExpression<T>(lowerBound), new ConstantExpression<T>(upperBound)));
+    }
+
+    public PredicateBuilder like(String pattern) {
+        return new PredicateBuilder(new ComparisonPredicate(curExpression, ComparisonPredicate.Operator.LIKE, new ConstantExpression<String>(pattern)));
+    }
+
+    public PredicateBuilder beginsWith(String prefix) {
+        return new PredicateBuilder(new ComparisonPredicate(curExpression, ComparisonPredicate.Operator.BEGINS_WITH, new ConstantExpression<String>(prefix)));
+    }
+
+    public PredicateBuilder endsWith(String suffix) {
+        return new PredicateBuilder(new ComparisonPredicate(curExpression, ComparisonPredicate.Operator.ENDS_WITH, new ConstantExpression<String>(suffix)));
+    }
+
+    public PredicateBuilder contains(String substring) {
+        return new PredicateBuilder(new ComparisonPredicate(curExpression, ComparisonPredicate.Operator.CONTAINS, new ConstantExpression<String>(substring)));
+    }
+
     public PredicateBuilder isNull() {
         return eq(new ConstantExpression<Object>(null));
     }
@@ -94,4 +150,31 @@ public class PredicateBuilder {
     public PredicateBuilder or(PredicateBuilder rhs) {
         return new PredicateBuilder(new CompoundPredicate(curPredicate, CompoundPredicate.Operator.OR, rhs.getPredicate()));
     }
-}
\ No newline at end of file
+
+    public PredicateBuilder any(PredicateBuilder elementPredicate) {
+        return quantified(QuantifiedPredicate.Quantifier.ANY, elementPredicate);
+    }
+
+    public PredicateBuilder all(PredicateBuilder elementPredicate) {
+        return quantified(QuantifiedPredicate.Quantifier.ALL, elementPredicate);
+    }
+
+    public PredicateBuilder none(PredicateBuilder elementPredicate) {
+        return quantified(QuantifiedPredicate.Quantifier.NONE, elementPredicate);
+    }
+
+    public PredicateBuilder count() {
+        return new PredicateBuilder(new CountExpression(getCollectionExpression()));
+    }
+
+    private PredicateBuilder quantified(QuantifiedPredicate.Quantifier quantifier, PredicateBuilder elementPredicate) {
+        return new PredicateBuilder(new QuantifiedPredicate(quantifier, getCollectionExpression(), elementPredicate.getPredicate()));
+    }
+
+    private FieldPathExpression getCollectionExpression() {
+        if (!(curExpression instanceof FieldPathExpression)) {
+            throw new IllegalStateException("Collection operators can only be applied to a field, but got " + curExpression);
+        }
+        return (FieldPathExpression) curExpression;
+    }
+}
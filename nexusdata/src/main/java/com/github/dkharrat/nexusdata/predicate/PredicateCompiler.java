@@ -0,0 +1,458 @@
+package com.github.dkharrat.nexusdata.predicate;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.github.dkharrat.nexusdata.core.ManagedObject;
+import com.github.dkharrat.nexusdata.metamodel.Entity;
+import com.github.dkharrat.nexusdata.metamodel.Property;
+import com.github.dkharrat.nexusdata.metamodel.Relationship;
+
+/**
+ * Translates an expression tree into a tree of evaluators bound to a specific entity. Field paths (including key paths
+ * through to-one relationships) are resolved to their {@link Property} handles once, and each comparison picks a
+ * {@link ValueComparator} specialized for the types of its operands.
+ */
+class PredicateCompiler implements ExpressionVisitor<PredicateCompiler.Evaluator> {
+
+    /**
+     * A compiled expression that produces a value for an object.
+     */
+    static abstract class Evaluator {
+        abstract Object evaluate(Object object);
+
+        /**
+         * Returns the static type of the values produced by this evaluator, or null if it is not known.
+         */
+        Class<?> getType() {
+            return null;
+        }
+    }
+
+    /**
+     * A compiled expression that produces a boolean value for an object.
+     */
+    static abstract class Condition extends Evaluator {
+        abstract boolean test(Object object);
+
+        @Override
+        Object evaluate(Object object) {
+            return test(object);
+        }
+
+        @Override
+        Class<?> getType() {
+            return Boolean.class;
+        }
+    }
+
+    private final Entity<?> entity;
+
+    PredicateCompiler(Entity<?> entity) {
+        this.entity = entity;
+    }
+
+    Condition compile(Predicate predicate) {
+        return toCondition(predicate.accept(this));
+    }
+
+    private static Condition toCondition(final Evaluator evaluator) {
+        if (evaluator instanceof Condition) {
+            return (Condition) evaluator;
+        }
+        return new Condition() {
+            @Override
+            boolean test(Object object) {
+                return Boolean.TRUE.equals(evaluator.evaluate(object));
+            }
+        };
+    }
+
+    @Override
+    public Evaluator visit(ConstantExpression<?> expression) {
+        return new ConstantEvaluator(expression.getValue());
+    }
+
+    @Override
+    public Evaluator visit(final FieldPathExpression expression) {
+        Property[] path = resolvePath(expression);
+        if (path == null) {
+            // not a property of the entity (e.g. a plain object field); fall back to dynamic lookup
+            return new Evaluator() {
+                @Override
+                Object evaluate(Object object) {
+                    return expression.evaluate(object);
+                }
+            };
+        }
+
+        return new PropertyEvaluator(path, expression);
+    }
+
+    /**
+     * Resolves each component of a field path to its property, or returns null if the path does not refer to
+     * properties of the entity. All but the last component must be to-one relationships.
+     */
+    private Property[] resolvePath(FieldPathExpression expression) {
+        List<String> components = expression.getPathComponents();
+        Property[] path = new Property[components.size()];
+
+        Entity<?> curEntity = entity;
+        for (int i = 0; i < path.length; i++) {
+            if (curEntity == null || !curEntity.hasProperty(components.get(i))) {
+                return null;
+            }
+
+            path[i] = curEntity.getProperty(components.get(i));
+            if (i < path.length - 1) {
+                if (!path[i].isRelationship() || !((Relationship) path[i]).isToOne()) {
+                    throw new IllegalArgumentException("Key path '" + expression + "' can only traverse to-one relationships, but '"
+                            + path[i].getName() + "' is not a to-one relationship");
+                }
+                curEntity = ((Relationship) path[i]).getDestinationEntity();
+            }
+        }
+
+        return path;
+    }
+
+    /**
+     * Returns the evaluator of a collection operand, or null if the collection does not refer to a to-many
+     * relationship of the entity.
+     */
+    private PropertyEvaluator resolveCollection(FieldPathExpression collection) {
+        Property[] path = resolvePath(collection);
+        if (path == null) {
+            return null;
+        }
+
+        Property property = path[path.length - 1];
+        if (!property.isRelationship() || !((Relationship) property).isToMany()) {
+            throw new IllegalArgumentException("'" + collection + "' is not a to-many relationship");
+        }
+        return new PropertyEvaluator(path, collection);
+    }
+
+    @Override
+    public Evaluator visit(ThisExpression expression) {
+        return new Evaluator() {
+            @Override
+            Object evaluate(Object object) {
+                return object;
+            }
+        };
+    }
+
+    @Override
+    public Evaluator visit(VariableExpression expression) {
+        throw new IllegalStateException("Cannot compile predicate with unsubstituted variable " + expression);
+    }
+
+    @Override
+    public Evaluator visit(CompoundPredicate predicate) {
+        final Condition lhs = toCondition(predicate.getLhs().accept(this));
+        final Condition rhs = toCondition(predicate.getRhs().accept(this));
+
+        switch (predicate.getOperator()) {
+            case AND:
+                return new Condition() {
+                    @Override
+                    boolean test(Object object) {
+                        return lhs.test(object) && rhs.test(object);
+                    }
+                };
+            case OR:
+                return new Condition() {
+                    @Override
+                    boolean test(Object object) {
+                        return lhs.test(object) || rhs.test(object);
+                    }
+                };
+            default:
+                throw new UnsupportedOperationException("Unsupported compound operator: " + predicate.getOperator());
+        }
+    }
+
+    @Override
+    public Evaluator visit(ComparisonPredicate predicate) {
+        Evaluator lhs = predicate.getLhs().accept(this);
+        Evaluator rhs = predicate.getRhs().accept(this);
+
+        // coerce constants to the type of the property they are compared against (e.g. "ACTIVE" to an enum constant)
+        if (lhs instanceof ConstantEvaluator) {
+            lhs = ((ConstantEvaluator) lhs).coerceTo(rhs.getType());
+        }
+        if (rhs instanceof ConstantEvaluator) {
+            rhs = ((ConstantEvaluator) rhs).coerceTo(lhs.getType());
+        }
+
+        ComparisonPredicate.Operator op = predicate.getOperator();
+        if (op == ComparisonPredicate.Operator.IN && rhs instanceof ConstantEvaluator) {
+            return new InCondition(lhs, (ConstantEvaluator) rhs);
+        } else if (op == ComparisonPredicate.Operator.LIKE && rhs instanceof ConstantEvaluator && ((ConstantEvaluator) rhs).value != null) {
+            return new LikeCondition(lhs, new LikePattern(((ConstantEvaluator) rhs).value.toString()));
+        }
+
+        ValueComparator comparator = ValueComparator.forTypes(lhs.getType(), rhs.getType());
+        if (lhs instanceof PropertyEvaluator && rhs instanceof ConstantEvaluator) {
+            return new PropertyToConstantCondition((PropertyEvaluator) lhs, predicate.getOperator(), comparator, ((ConstantEvaluator) rhs).value);
+        }
+        return new ComparisonCondition(lhs, predicate.getOperator(), comparator, rhs);
+    }
+
+    @Override
+    public Evaluator visit(BetweenPredicate predicate) {
+        final Evaluator expression = predicate.getExpression().accept(this);
+        Evaluator lowerBound = predicate.getLowerBound().accept(this);
+        Evaluator upperBound = predicate.getUpperBound().accept(this);
+
+        if (lowerBound instanceof ConstantEvaluator) {
+            lowerBound = ((ConstantEvaluator) lowerBound).coerceTo(expression.getType());
+        }
+        if (upperBound instanceof ConstantEvaluator) {
+            upperBound = ((ConstantEvaluator) upperBound).coerceTo(expression.getType());
+        }
+
+        final Evaluator lower = lowerBound, upper = upperBound;
+        final ValueComparator lowerComparator = ValueComparator.forTypes(expression.getType(), lower.getType());
+        final ValueComparator upperComparator = ValueComparator.forTypes(expression.getType(), upper.getType());
+        return new Condition() {
+            @Override
+            boolean test(Object object) {
+                Object value = expression.evaluate(object);
+                return lowerComparator.apply(ComparisonPredicate.Operator.GREATER_THAN_OR_EQUAL, value, lower.evaluate(object))
+                        && upperComparator.apply(ComparisonPredicate.Operator.LESS_THAN_OR_EQUAL, value, upper.evaluate(object));
+            }
+        };
+    }
+
+    @Override
+    public Evaluator visit(final QuantifiedPredicate predicate) {
+        final PropertyEvaluator collection = resolveCollection(predicate.getCollection());
+        if (collection == null) {
+            return new Condition() {
+                @Override
+                boolean test(Object object) {
+                    return predicate.evaluate(object);
+                }
+            };
+        }
+
+        Relationship relationship = (Relationship) collection.path[collection.path.length - 1];
+        final Condition elementCondition = new PredicateCompiler(relationship.getDestinationEntity()).compile(predicate.getPredicate());
+        final QuantifiedPredicate.Quantifier quantifier = predicate.getQuantifier();
+        return new Condition() {
+            @Override
+            boolean test(Object object) {
+                for (Object element : QuantifiedPredicate.toCollection(collection.evaluate(object), collection.expression)) {
+                    boolean matches = elementCondition.test(element);
+                    if (matches && quantifier != QuantifiedPredicate.Quantifier.ALL) {
+                        return quantifier == QuantifiedPredicate.Quantifier.ANY;
+                    } else if (!matches && quantifier == QuantifiedPredicate.Quantifier.ALL) {
+                        return false;
+                    }
+                }
+                return quantifier != QuantifiedPredicate.Quantifier.ANY;
+            }
+        };
+    }
+
+    @Override
+    public Evaluator visit(final CountExpression expression) {
+        final PropertyEvaluator collection = resolveCollection(expression.getCollection());
+        return new Evaluator() {
+            @Override
+            Object evaluate(Object object) {
+                if (collection == null) {
+                    return expression.evaluate(object);
+                }
+                // counting only resolves the IDs of the related objects (as faults), without loading their values
+                return QuantifiedPredicate.toCollection(collection.evaluate(object), collection.expression).size();
+            }
+
+            @Override
+            Class<?> getType() {
+                return Integer.class;
+            }
+        };
+    }
+
+    @Override
+    public Evaluator visit(NotPredicate predicate) {
+        final Condition condition = toCondition(predicate.getPredicate().accept(this));
+        return new Condition() {
+            @Override
+            boolean test(Object object) {
+                return !condition.test(object);
+            }
+        };
+    }
+
+    private static class ConstantEvaluator extends Evaluator {
+        final Object value;
+
+        ConstantEvaluator(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object evaluate(Object object) {
+            return value;
+        }
+
+        @Override
+        Class<?> getType() {
+            return value == null ? null : value.getClass();
+        }
+
+        ConstantEvaluator coerceTo(Class<?> type) {
+            if (type == null || value == null || type.isInstance(value)) {
+                return this;
+            }
+            if (type.isEnum() && value instanceof String) {
+                for (Object constant : type.getEnumConstants()) {
+                    if (((Enum<?>) constant).name().equals(value)) {
+                        return new ConstantEvaluator(constant);
+                    }
+                }
+                // no constant has that name, so the name is kept, which no enum value is equal to
+                return this;
+            }
+            if (Date.class.equals(type) && value instanceof Number) {
+                return new ConstantEvaluator(new Date(((Number) value).longValue()));
+            }
+            return this;
+        }
+    }
+
+    private static class PropertyEvaluator extends Evaluator {
+        final Property[] path;
+        final FieldPathExpression expression;
+
+        PropertyEvaluator(Property[] path, FieldPathExpression expression) {
+            this.path = path;
+            this.expression = expression;
+        }
+
+        @Override
+        Object evaluate(Object object) {
+            Object value = object;
+            for (Property property : path) {
+                if (value instanceof ManagedObject) {
+                    value = ((ManagedObject) value).getValue(property);
+                } else if (value instanceof PropertyValueSource) {
+                    value = ((PropertyValueSource) value).getValue(property);
+                } else {
+                    return value == null ? null : expression.evaluate(object);
+                }
+            }
+            return value;
+        }
+
+        @Override
+        Class<?> getType() {
+            Property property = path[path.length - 1];
+            return property.isRelationship() ? null : property.getType();
+        }
+    }
+
+    private static class ComparisonCondition extends Condition {
+        private final Evaluator lhs, rhs;
+        private final ComparisonPredicate.Operator op;
+        private final ValueComparator comparator;
+
+        ComparisonCondition(Evaluator lhs, ComparisonPredicate.Operator op, ValueComparator comparator, Evaluator rhs) {
+            this.lhs = lhs;
+            this.op = op;
+            this.comparator = comparator;
+            this.rhs = rhs;
+        }
+
+        @Override
+        boolean test(Object object) {
+            return comparator.apply(op, lhs.evaluate(object), rhs.evaluate(object));
+        }
+    }
+
+    /**
+     * The most common form of comparison (e.g. "age > 30"), which avoids evaluating the constant side per object.
+     */
+    private static class PropertyToConstantCondition extends Condition {
+        private final PropertyEvaluator lhs;
+        private final ComparisonPredicate.Operator op;
+        private final ValueComparator comparator;
+        private final Object constant;
+
+        PropertyToConstantCondition(PropertyEvaluator lhs, ComparisonPredicate.Operator op, ValueComparator comparator, Object constant) {
+            this.lhs = lhs;
+            this.op = op;
+            this.comparator = comparator;
+            this.constant = constant;
+        }
+
+        @Override
+        boolean test(Object object) {
+            return comparator.apply(op, lhs.evaluate(object), constant);
+        }
+    }
+
+    /**
+     * Tests membership in a constant collection through a hash lookup. Numbers are normalized so that, for example, an
+     * Integer property matches a Long value in the collection.
+     */
+    private static class InCondition extends Condition {
+        private final Evaluator lhs;
+        private final Set<Object> values = new HashSet<Object>();
+
+        InCondition(Evaluator lhs, ConstantEvaluator rhs) {
+            this.lhs = lhs;
+
+            if (!(rhs.value instanceof Collection)) {
+                throw new IllegalArgumentException("Right-hand side of IN must be a collection, but got " + rhs.value);
+            }
+            for (Object value : (Collection<?>) rhs.value) {
+                if (value != null) {
+                    values.add(normalize(new ConstantEvaluator(value).coerceTo(lhs.getType()).value));
+                }
+            }
+        }
+
+        private static Object normalize(Object value) {
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                return ((Number) value).longValue();
+            } else if (value instanceof Float || value instanceof Double) {
+                double doubleValue = ((Number) value).doubleValue();
+                if (doubleValue == Math.rint(doubleValue) && !Double.isInfinite(doubleValue)) {
+                    return (long) doubleValue;
+                }
+                return doubleValue;
+            }
+            return value;
+        }
+
+        @Override
+        boolean test(Object object) {
+            Object value = lhs.evaluate(object);
+            return value != null && values.contains(normalize(value));
+        }
+    }
+
+    private static class LikeCondition extends Condition {
+        private final Evaluator lhs;
+        private final LikePattern pattern;
+
+        LikeCondition(Evaluator lhs, LikePattern pattern) {
+            this.lhs = lhs;
+            this.pattern = pattern;
+        }
+
+        @Override
+        boolean test(Object object) {
+            Object value = lhs.evaluate(object);
+            return value instanceof String && pattern.matches((String) value);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.github.dkharrat.nexusdata.predicate;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.github.dkharrat.nexusdata.predicate.parser.PredicateParser;
+
+/**
+ * An immutable, parsed predicate that may contain variables (e.g. "dueBy < $cutoff"). Templates are typically
+ * obtained through {@link #parse(String)}, which caches the parsed result of recently used predicate strings, so that
+ * the same predicate shape can be re-used many times with different values without re-parsing it.
+ * <p>
+ * Each predicate created through {@link #predicateWithSubstitutionVariables(Map)} keeps the same structure as its
+ * template, so the template instance can be used as a key to cache work derived from the predicate's shape (e.g. a
+ * compiled SQL statement).
+ */
+public final class PredicateTemplate {
+
+    private static final int MAX_CACHED_TEMPLATES = 64;
+
+    private static final Map<String,PredicateTemplate> cache = new LinkedHashMap<String,PredicateTemplate>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,PredicateTemplate> eldest) {
+            return size() > MAX_CACHED_TEMPLATES;
+        }
+    };
+
+    private final String text;
+    private final Predicate predicate;
+
+    private PredicateTemplate(String text, Predicate predicate) {
+        this.text = text;
+        this.predicate = predicate;
+    }
+
+    /**
+     * Returns the template for the specified predicate string. If the same string was recently parsed, the cached
+     * template is returned.
+     *
+     * @param text  the predicate string to parse
+     * @return the parsed template
+     */
+    public static PredicateTemplate parse(String text) {
+        PredicateTemplate template;
+        synchronized (cache) {
+            template = cache.get(text);
+        }
+
+        if (template == null) {
+            template = new PredicateTemplate(text, new PredicateParser(text).parse());
+            synchronized (cache) {
+                cache.put(text, template);
+            }
+        }
+
+        return template;
+    }
+
+    /**
+     * Removes all cached templates.
+     */
+    public static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Returns the predicate string this template was parsed from.
+     *
+     * @return the predicate string of this template
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the parsed predicate of this template. It may contain unsubstituted {@link VariableExpression}s.
+     *
+     * @return the parsed predicate of this template
+     */
+    public Predicate getPredicate() {
+        return predicate;
+    }
+
+    /**
+     * Returns a predicate in which each variable of this template is replaced by its value from the specified map.
+     *
+     * @param variables the values of the variables, keyed by the variable name (without the '$' prefix)
+     * @return a predicate with all variables substituted
+     * @throws IllegalArgumentException if a variable in this template has no value in the specified map
+     */
+    public Predicate predicateWithSubstitutionVariables(Map<String,?> variables) {
+        return substitute(predicate, variables);
+    }
+
+    /**
+     * Returns a predicate in which each variable of the specified predicate is replaced by its value from the
+     * specified map.
+     *
+     * @param predicate the predicate containing the variables
+     * @param variables the values of the variables, keyed by the variable name (without the '$' prefix)
+     * @return a predicate with all variables substituted
+     * @throws IllegalArgumentException if a variable in the predicate has no value in the specified map
+     */
+    public static Predicate substitute(Predicate predicate, Map<String,?> variables) {
+        if (variables == null) {
+            variables = Collections.emptyMap();
+        }
+        return (Predicate) predicate.accept(new SubstitutionVisitor(variables));
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static class SubstitutionVisitor implements ExpressionVisitor<Expression<?>> {
+        private final Map<String,?> variables;
+
+        SubstitutionVisitor(Map<String,?> variables) {
+            this.variables = variables;
+        }
+
+        @Override
+        public Expression<?> visit(ConstantExpression<?> expression) {
+            return expression;
+        }
+
+        @Override
+        public Expression<?> visit(FieldPathExpression expression) {
+            return expression;
+        }
+
+        @Override
+        public Expression<?> visit(ThisExpression expression) {
+            return expression;
+        }
+
+        @Override
+        public Expression<?> visit(VariableExpression expression) {
+            if (!variables.containsKey(expression.getName())) {
+                throw new IllegalArgumentException("No value specified for variable " + expression);
+            }
+            return new ConstantExpression<Object>(variables.get(expression.getName()));
+        }
+
+        // sub-trees without variables are shared with the template, rather than copied
+
+        @Override
+        public Expression<?> visit(CompoundPredicate predicate) {
+            Predicate lhs = (Predicate) predicate.getLhs().accept(this);
+            Predicate rhs = (Predicate) predicate.getRhs().accept(this);
+            if (lhs == predicate.getLhs() && rhs == predicate.getRhs()) {
+                return predicate;
+            }
+            return new CompoundPredicate(lhs, predicate.getOperator(), rhs);
+        }
+
+        @Override
+        public Expression<?> visit(ComparisonPredicate predicate) {
+            Expression<?> lhs = predicate.getLhs().accept(this);
+            Expression<?> rhs = predicate.getRhs().accept(this);
+            if (lhs == predicate.getLhs() && rhs == predicate.getRhs()) {
+                return predicate;
+            }
+            return new ComparisonPredicate(lhs, predicate.getOperator(), rhs);
+        }
+
+        @Override
+        public Expression<?> visit(BetweenPredicate predicate) {
+            Expression<?> expression = predicate.getExpression().accept(this);
+            Expression<?> lowerBound = predicate.getLowerBound().accept(this);
+            Expression<?> upperBound = predicate.getUpperBound().accept(this);
+            if (expression == predicate.getExpression() && lowerBound == predicate.getLowerBound() && upperBound == predicate.getUpperBound()) {
+                return predicate;
+            }
+            return new BetweenPredicate(expression, lowerBound, upperBound);
+        }
+
+        @Override
+        public Expression<?> visit(QuantifiedPredicate predicate) {
+            Predicate subPredicate = (Predicate) predicate.getPredicate().accept(this);
+            if (subPredicate == predicate.getPredicate()) {
+                return predicate;
+            }
+            return new QuantifiedPredicate(predicate.getQuantifier(), predicate.getCollection(), subPredicate);
+        }
+
+        @Override
+        public Expression<?> visit(CountExpression expression) {
+            return expression;
+        }
+
+        @Override
+        public Expression<?> visit(NotPredicate predicate) {
+            Predicate subPredicate = (Predicate) predicate.getPredicate().accept(this);
+            if (subPredicate == predicate.getPredicate()) {
+                return predicate;
+            }
+            return new NotPredicate(subPredicate);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.dkharrat.nexusdata.predicate;
+
+import com.github.dkharrat.nexusdata.metamodel.Property;
+
+/**
+ * An object other than a {@link com.github.dkharrat.nexusdata.core.ManagedObject} whose property values can be read by
+ * a {@link CompiledPredicate}, such as the stored data of an object. The value of a to-one relationship must be a
+ * PropertyValueSource of the related object, and the value of a to-many relationship a collection of them.
+ */
+public interface PropertyValueSource {
+
+    /**
+     * Returns the value of the specified property.
+     *
+     * @param property  the property of the object's entity
+     * @return the value of the property
+     */
+    Object getValue(Property property);
+}
@@ -0,0 +1,106 @@
+package com.github.dkharrat.nexusdata.predicate;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * A predicate that tests the elements of a collection (typically a to-many relationship), such as
+ * "ANY employees.firstName == "John"". The element predicate is evaluated against each element of the collection, and
+ * the quantifier determines how the results are combined. An empty (or null) collection matches ALL and NONE, but not
+ * ANY.
+ */
+public class QuantifiedPredicate implements Predicate {
+
+    public static enum Quantifier {
+        ANY,
+        ALL,
+        NONE
+    }
+
+    private final Quantifier quantifier;
+    private final FieldPathExpression collection;
+    private final Predicate predicate;
+
+    public QuantifiedPredicate(Quantifier quantifier, FieldPathExpression collection, Predicate predicate) {
+        this.quantifier = quantifier;
+        this.collection = collection;
+        this.predicate = predicate;
+    }
+
+    public Quantifier getQuantifier() {
+        return quantifier;
+    }
+
+    /**
+     * Returns the expression of the collection whose elements are tested.
+     *
+     * @return the expression of the collection whose elements are tested
+     */
+    public FieldPathExpression getCollection() {
+        return collection;
+    }
+
+    /**
+     * Returns the predicate that is evaluated against each element of the collection. Its field paths are relative to
+     * the elements.
+     *
+     * @return the predicate that is evaluated against each element of the collection
+     */
+    public Predicate getPredicate() {
+        return predicate;
+    }
+
+    @Override
+    public <T> T accept(ExpressionVisitor<T> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public Boolean evaluate(Object object) {
+        for (Object element : toCollection(collection.evaluate(object), collection)) {
+            boolean matches = predicate.evaluate(element);
+            if (matches && quantifier != Quantifier.ALL) {
+                return quantifier == Quantifier.ANY;
+            } else if (!matches && quantifier == Quantifier.ALL) {
+                return false;
+            }
+        }
+        return quantifier != Quantifier.ANY;
+    }
+
+    static Collection<?> toCollection(Object value, Expression<?> expression) {
+        if (value == null) {
+            return Collections.emptySet();
+        } else if (!(value instanceof Collection)) {
+            throw new IllegalArgumentException("'" + expression + "' is not a collection: " + value);
+        }
+        return (Collection<?>) value;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + quantifier + " " + collection + " " + predicate + ")";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        QuantifiedPredicate that = (QuantifiedPredicate) o;
+
+        if (quantifier != that.quantifier) return false;
+        if (!collection.equals(that.collection)) return false;
+        if (!predicate.equals(that.predicate)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = quantifier.hashCode();
+        result = 31 * result + collection.hashCode();
+        result = 31 * result + predicate.hashCode();
+        return result;
+    }
+}
@@ -0,0 +1,214 @@
+package com.github.dkharrat.nexusdata.predicate;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Date;
+
+import com.github.dkharrat.nexusdata.utils.ObjectUtil;
+
+/**
+ * Compares two non-null values of a known type. A specialized comparator is chosen once per comparison (e.g. when
+ * compiling a predicate against an entity) to avoid the cost of generic number conversions on every evaluation.
+ */
+abstract class ValueComparator {
+
+    abstract int compare(Object lhs, Object rhs);
+
+    boolean equal(Object lhs, Object rhs) {
+        return compare(lhs, rhs) == 0;
+    }
+
+    /**
+     * Evaluates the specified comparison operator on two values. Ordering comparisons involving null are always false.
+     */
+    boolean apply(ComparisonPredicate.Operator op, Object lhs, Object rhs) {
+        switch (op) {
+            case EQUAL:
+                return lhs == rhs || (lhs != null && rhs != null && equal(lhs, rhs));
+            case NOT_EQUAL:
+                return !(lhs == rhs || (lhs != null && rhs != null && equal(lhs, rhs)));
+            default:
+                break;
+        }
+
+        if (lhs == null || rhs == null) {
+            return false;
+        }
+
+        switch (op) {
+            case IN:
+                if (!(rhs instanceof Collection)) {
+                    throw new IllegalArgumentException("Right-hand side of IN must be a collection, but got " + rhs);
+                }
+                for (Object value : (Collection<?>)rhs) {
+                    if (value != null && equal(lhs, value)) {
+                        return true;
+                    }
+                }
+                return false;
+            case LIKE:
+                return lhs instanceof String && new LikePattern(rhs.toString()).matches((String)lhs);
+            case BEGINS_WITH:
+                return lhs instanceof String && ((String)lhs).startsWith(rhs.toString());
+            case ENDS_WITH:
+                return lhs instanceof String && ((String)lhs).endsWith(rhs.toString());
+            case CONTAINS:
+                return lhs instanceof String && ((String)lhs).contains(rhs.toString());
+            default:
+                break;
+        }
+
+        int comparison = compare(lhs, rhs);
+        switch (op) {
+            case GREATER_THAN:
+                return comparison > 0;
+            case GREATER_THAN_OR_EQUAL:
+                return comparison >= 0;
+            case LESS_THAN:
+                return comparison < 0;
+            case LESS_THAN_OR_EQUAL:
+                return comparison <= 0;
+            default:
+                throw new UnsupportedOperationException("Unsupported comparison operator: " + op);
+        }
+    }
+
+    static final ValueComparator LONG = new ValueComparator() {
+        @Override
+        int compare(Object lhs, Object rhs) {
+            long l = ((Number)lhs).longValue(), r = ((Number)rhs).longValue();
+            return l < r ? -1 : (l == r ? 0 : 1);
+        }
+    };
+
+    static final ValueComparator DOUBLE = new ValueComparator() {
+        @Override
+        int compare(Object lhs, Object rhs) {
+            return Double.compare(((Number)lhs).doubleValue(), ((Number)rhs).doubleValue());
+        }
+    };
+
+    static final ValueComparator STRING = new ValueComparator() {
+        @Override
+        int compare(Object lhs, Object rhs) {
+            return ((String)lhs).compareTo((String)rhs);
+        }
+
+        @Override
+        boolean equal(Object lhs, Object rhs) {
+            return lhs.equals(rhs);
+        }
+    };
+
+    static final ValueComparator DATE = new ValueComparator() {
+        @Override
+        int compare(Object lhs, Object rhs) {
+            long l = toTime(lhs), r = toTime(rhs);
+            return l < r ? -1 : (l == r ? 0 : 1);
+        }
+
+        private long toTime(Object value) {
+            return value instanceof Date ? ((Date)value).getTime() : ((Number)value).longValue();
+        }
+    };
+
+    static final ValueComparator ENUM = new ValueComparator() {
+        @Override
+        int compare(Object lhs, Object rhs) {
+            return ((Enum<?>)lhs).ordinal() - ((Enum<?>)rhs).ordinal();
+        }
+
+        @Override
+        boolean equal(Object lhs, Object rhs) {
+            return lhs == rhs;
+        }
+    };
+
+    /**
+     * Used when the types of the operands are not known ahead of time. Numbers of any type are compared by value, and
+     * any other values are compared through their natural ordering.
+     */
+    static final ValueComparator GENERIC = new ValueComparator() {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        @Override
+        int compare(Object lhs, Object rhs) {
+            if (lhs instanceof Number && rhs instanceof Number) {
+                return toBigDecimal((Number)lhs).compareTo(toBigDecimal((Number)rhs));
+            }
+            if (lhs.getClass() != rhs.getClass() && !(lhs instanceof Enum && rhs instanceof Enum)) {
+                throw new IllegalArgumentException("Cannot compare " + lhs.getClass().getName() + " with " + rhs.getClass().getName());
+            }
+
+            Comparable lhsComparable = ObjectUtil.toComparable(lhs);
+            Comparable rhsComparable = ObjectUtil.toComparable(rhs);
+            return lhsComparable.compareTo(rhsComparable);
+        }
+
+        @Override
+        boolean equal(Object lhs, Object rhs) {
+            if (lhs instanceof Number && rhs instanceof Number && lhs.getClass() != rhs.getClass()) {
+                return compare(lhs, rhs) == 0;
+            }
+            return lhs.equals(rhs);
+        }
+    };
+
+    /**
+     * Returns the most specific comparator that can compare values of the two specified types. If either type is not
+     * known, the generic comparator is returned.
+     */
+    static ValueComparator forTypes(Class<?> lhsType, Class<?> rhsType) {
+        if (lhsType == null || rhsType == null) {
+            return GENERIC;
+        }
+
+        if (isIntegral(lhsType) && isIntegral(rhsType)) {
+            return LONG;
+        } else if (isNumeric(lhsType) && isNumeric(rhsType)
+                && !BigDecimal.class.equals(lhsType) && !BigDecimal.class.equals(rhsType)) {
+            return DOUBLE;
+        } else if (String.class.equals(lhsType) && String.class.equals(rhsType)) {
+            return STRING;
+        } else if ((Date.class.isAssignableFrom(lhsType) || Date.class.isAssignableFrom(rhsType))
+                && (isDateLike(lhsType) && isDateLike(rhsType))) {
+            return DATE;
+        } else if (lhsType.isEnum() && lhsType.equals(rhsType)) {
+            return ENUM;
+        }
+
+        return GENERIC;
+    }
+
+    private static boolean isIntegral(Class<?> type) {
+        return Long.class.equals(type) || Integer.class.equals(type) || Short.class.equals(type) || Byte.class.equals(type);
+    }
+
+    private static boolean isNumeric(Class<?> type) {
+        return Number.class.isAssignableFrom(type) && !BigInteger.class.equals(type);
+    }
+
+    private static boolean isDateLike(Class<?> type) {
+        return Date.class.isAssignableFrom(type) || isIntegral(type);
+    }
+
+    static BigDecimal toBigDecimal(final Number number) {
+        if(number instanceof BigDecimal)
+            return (BigDecimal) number;
+        if(number instanceof BigInteger)
+            return new BigDecimal((BigInteger) number);
+        if(number instanceof Byte || number instanceof Short
+                || number instanceof Integer || number instanceof Long)
+            return new BigDecimal(number.longValue());
+        if(number instanceof Float || number instanceof Double)
+            return new BigDecimal(number.doubleValue());
+
+        try {
+            return new BigDecimal(number.toString());
+        } catch(final NumberFormatException e) {
+            throw new RuntimeException("The given number (\"" + number
+                    + "\" of class " + number.getClass().getName()
+                    + ") does not have a parsable string representation", e);
+        }
+    }
+}
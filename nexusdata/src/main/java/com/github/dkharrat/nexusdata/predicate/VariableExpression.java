@@ -0,0 +1,51 @@
+package com.github.dkharrat.nexusdata.predicate;
+
+/**
+ * A placeholder for a value that is provided later on, when substituting variables of a {@link PredicateTemplate}.
+ * For example, the predicate "dueBy < $cutoff" contains a variable named "cutoff". A predicate containing variables
+ * cannot be evaluated until the variables are substituted with actual values.
+ */
+public class VariableExpression implements Expression<Object> {
+
+    private final String name;
+
+    public VariableExpression(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public <T> T accept(ExpressionVisitor<T> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public Object evaluate(Object object) {
+        throw new IllegalStateException("Variable $" + name + " must be substituted before evaluation");
+    }
+
+    @Override
+    public String toString() {
+        return "$" + name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        VariableExpression that = (VariableExpression) o;
+
+        if (!name.equals(that.name)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+}
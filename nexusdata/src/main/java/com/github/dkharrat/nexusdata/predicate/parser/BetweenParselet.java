@@ -0,0 +1,30 @@
+package com.github.dkharrat.nexusdata.predicate.parser;
+
+import com.github.dkharrat.nexusdata.predicate.BetweenPredicate;
+import com.github.dkharrat.nexusdata.predicate.Expression;
+
+import static com.github.dkharrat.nexusdata.predicate.parser.PredicateParser.TokenType;
+
+/**
+ * Parses a range test of the form "age BETWEEN 18 AND 65". The bounds are parsed with a higher precedence than the
+ * logical operators, so that the "AND" separating them is not treated as a logical AND.
+ */
+class BetweenParselet implements InfixParselet<TokenType,Expression<?>> {
+    private final int precedence;
+
+    BetweenParselet(int precedence) {
+        this.precedence = precedence;
+    }
+
+    public Expression<?> parse(Parser<TokenType,Expression<?>> parser, Expression<?> left, Token<TokenType> token) {
+        Expression<?> lowerBound = parser.parse(getPrecedence());
+        parser.consume(TokenType.AND);
+        Expression<?> upperBound = parser.parse(getPrecedence());
+
+        return new BetweenPredicate(left, lowerBound, upperBound);
+    }
+
+    public int getPrecedence() {
+        return precedence;
+    }
+}
@@ -19,11 +19,40 @@ public class ConstantParselet implements PrefixParselet<TokenType,Expression<?>>
         } else if (valueStr.equalsIgnoreCase("null")) {
             value = null;
         } else if (valueStr.startsWith("\"")) {
-            value = valueStr.substring(1,valueStr.length()-1);   // remove quotes from string
+            value = unescape(valueStr.substring(1,valueStr.length()-1));   // remove quotes from string
+        } else if (valueStr.indexOf('.') >= 0) {
+            value = Double.parseDouble(valueStr);
         } else {
-            value = Integer.parseInt(valueStr);
+            long longValue = Long.parseLong(valueStr);
+            if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                value = (int) longValue;
+            } else {
+                value = longValue;
+            }
         }
 
         return new ConstantExpression(value);
     }
+
+    private static String unescape(String str) {
+        if (str.indexOf('\\') < 0) {
+            return str;
+        }
+
+        StringBuilder builder = new StringBuilder(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '\\' && i + 1 < str.length()) {
+                c = str.charAt(++i);
+                switch (c) {
+                    case 'n': c = '\n'; break;
+                    case 't': c = '\t'; break;
+                    case 'r': c = '\r'; break;
+                    default: break;
+                }
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
 }
@@ -0,0 +1,50 @@
+package com.github.dkharrat.nexusdata.predicate.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.dkharrat.nexusdata.predicate.ComparisonPredicate;
+import com.github.dkharrat.nexusdata.predicate.ConstantExpression;
+import com.github.dkharrat.nexusdata.predicate.Expression;
+
+import static com.github.dkharrat.nexusdata.predicate.parser.PredicateParser.TokenType;
+
+/**
+ * Parses a membership test, either against a list of constants (e.g. "id IN (1, 2, 3)"), or against a single
+ * expression that evaluates to a collection (e.g. "id IN $ids").
+ */
+class InParselet implements InfixParselet<TokenType,Expression<?>> {
+    private final int precedence;
+
+    InParselet(int precedence) {
+        this.precedence = precedence;
+    }
+
+    public Expression<?> parse(Parser<TokenType,Expression<?>> parser, Expression<?> left, Token<TokenType> token) {
+        Expression<?> right;
+
+        if (parser.match(TokenType.OPEN_PAREN)) {
+            List<Object> values = new ArrayList<Object>();
+            if (!parser.match(TokenType.CLOSE_PAREN)) {
+                do {
+                    Token<TokenType> valueToken = parser.lookAhead(0);
+                    Expression<?> value = parser.parse(getPrecedence());
+                    if (!(value instanceof ConstantExpression)) {
+                        throw new ParseException("Expected a constant in IN list, but got " + value, valueToken.getPosition());
+                    }
+                    values.add(((ConstantExpression<?>) value).getValue());
+                } while (parser.match(TokenType.COMMA));
+                parser.consume(TokenType.CLOSE_PAREN);
+            }
+            right = new ConstantExpression<List<Object>>(values);
+        } else {
+            right = parser.parse(getPrecedence());
+        }
+
+        return new ComparisonPredicate(left, ComparisonPredicate.Operator.IN, right);
+    }
+
+    public int getPrecedence() {
+        return precedence;
+    }
+}
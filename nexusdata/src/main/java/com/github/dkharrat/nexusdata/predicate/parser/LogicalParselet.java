@@ -19,13 +19,14 @@ public class LogicalParselet implements InfixParselet<TokenType,Expression<?>> {
     public Expression<?> parse(Parser<TokenType,Expression<?>> parser, Expression<?> left, Token<TokenType> token) {
 
         if (!(left instanceof Predicate)) {
-            throw new ParseException("Expected a predicate for left-hand side, but got an expression");
+            throw new ParseException("Expected a predicate for left-hand side, but got an expression", token.getPosition());
         }
 
-        Expression<?> right = parser.parse(getPrecedence() - 1);
+        // logical operators are left-associative, so that long chains (e.g. "a || b || c ...") are parsed iteratively
+        Expression<?> right = parser.parse(getPrecedence());
 
         if (!(right instanceof Predicate)) {
-            throw new ParseException("Expected a predicate for right-hand side, but got an expression");
+            throw new ParseException("Expected a predicate for right-hand side, but got an expression", token.getPosition());
         }
 
         return new CompoundPredicate((Predicate)left, operator, (Predicate)right);
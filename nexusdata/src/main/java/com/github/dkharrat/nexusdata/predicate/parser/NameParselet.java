@@ -1,11 +1,23 @@
 package com.github.dkharrat.nexusdata.predicate.parser;
 
+import com.github.dkharrat.nexusdata.predicate.CountExpression;
 import com.github.dkharrat.nexusdata.predicate.Expression;
 import com.github.dkharrat.nexusdata.predicate.FieldPathExpression;
 import static com.github.dkharrat.nexusdata.predicate.parser.PredicateParser.TokenType;
 
 class NameParselet implements PrefixParselet<TokenType,Expression<?>> {
+    private static final String COUNT_SUFFIX = ".@count";
+
     public Expression<?> parse(Parser<TokenType,Expression<?>> parser, Token<TokenType> token) {
-        return new FieldPathExpression(token.getText());
+        String name = token.getText();
+        int operatorIndex = name.indexOf(".@");
+        if (operatorIndex < 0) {
+            return new FieldPathExpression(name);
+        }
+
+        if (operatorIndex != name.length() - COUNT_SUFFIX.length() || !name.endsWith(COUNT_SUFFIX)) {
+            throw new ParseException("Unsupported collection operator in '" + name + "'", token.getPosition() + operatorIndex + 1);
+        }
+        return new CountExpression(new FieldPathExpression(name.substring(0, operatorIndex)));
     }
 }
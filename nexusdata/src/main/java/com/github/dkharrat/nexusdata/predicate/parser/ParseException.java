@@ -1,7 +1,24 @@
 package com.github.dkharrat.nexusdata.predicate.parser;
 
 public class ParseException extends RuntimeException {
+    private final int position;
+
     ParseException(String msg) {
         super(msg);
+        this.position = -1;
+    }
+
+    ParseException(String msg, int position) {
+        super(msg + " (at position " + position + ")");
+        this.position = position;
+    }
+
+    /**
+     * Returns the offset in the parsed text at which the error occurred, or -1 if it is not known.
+     *
+     * @return the offset in the parsed text at which the error occurred
+     */
+    public int getPosition() {
+        return position;
     }
 }
@@ -26,7 +26,7 @@ class Parser<T,V> {
         PrefixParselet<T,V> prefix = prefixParselets.get(token.getType());
 
         if (prefix == null) {
-            throw new ParseException("Could not parse \"" + token.getText() + "\".");
+            throw new ParseException("Could not parse " + token, token.getPosition());
         }
 
         V left = prefix.parse(this, token);
@@ -58,15 +58,23 @@ class Parser<T,V> {
         return read.remove(0);
     }
 
+    public boolean match(T expectedToken) {
+        if (lookAhead(0).getType() == expectedToken) {
+            consume();
+            return true;
+        }
+        return false;
+    }
+
     public Token<T> consume(T expectedToken) {
         Token<T> token = lookAhead(0);
         if (token.getType() != expectedToken) {
-            throw new ParseException("Expected token " + expectedToken + ", but found " + token);
+            throw new ParseException("Expected token " + expectedToken + ", but found " + token, token.getPosition());
         }
         return consume();
     }
 
-    private Token<T> lookAhead(int distance) {
+    Token<T> lookAhead(int distance) {
         while (read.size() <= distance) {
             read.add(tokens.next());
         }
@@ -0,0 +1,208 @@
+package com.github.dkharrat.nexusdata.predicate.parser;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static com.github.dkharrat.nexusdata.predicate.parser.PredicateParser.TokenType;
+
+/**
+ * Splits a predicate string into tokens. Tokens are scanned lazily in a single pass as the parser requests them, and
+ * each token records its offset in the text, so that errors can point to where they occurred.
+ */
+class PredicateLexer implements Iterator<Token<TokenType>> {
+
+    // keywords are matched case-sensitively, so that fields named like a keyword in another case (e.g. "in" or
+    // "contains") can still be referenced
+    private static final Map<String,TokenType> KEYWORDS = new HashMap<String,TokenType>();
+    static {
+        KEYWORDS.put("AND",         TokenType.AND);
+        KEYWORDS.put("OR",          TokenType.OR);
+        KEYWORDS.put("IN",          TokenType.IN);
+        KEYWORDS.put("BETWEEN",     TokenType.BETWEEN);
+        KEYWORDS.put("LIKE",        TokenType.LIKE);
+        KEYWORDS.put("BEGINSWITH",  TokenType.BEGINS_WITH);
+        KEYWORDS.put("ENDSWITH",    TokenType.ENDS_WITH);
+        KEYWORDS.put("CONTAINS",    TokenType.CONTAINS);
+        KEYWORDS.put("ANY",         TokenType.ANY);
+        KEYWORDS.put("ALL",         TokenType.ALL);
+        KEYWORDS.put("NONE",        TokenType.NONE);
+    }
+
+    private final String text;
+    private final int length;
+    private int pos = 0;
+
+    PredicateLexer(String text) {
+        this.text = text;
+        this.length = text.length();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return true;
+    }
+
+    @Override
+    public Token<TokenType> next() {
+        skipWhitespace();
+
+        int start = pos;
+        if (pos >= length) {
+            return new Token<TokenType>(TokenType.EOF, null, start);
+        }
+
+        char c = text.charAt(pos++);
+        switch (c) {
+            case '(':
+                return token(TokenType.OPEN_PAREN, start);
+            case ')':
+                return token(TokenType.CLOSE_PAREN, start);
+            case ',':
+                return token(TokenType.COMMA, start);
+            case '&':
+                expect('&', start);
+                return token(TokenType.AND, start);
+            case '|':
+                expect('|', start);
+                return token(TokenType.OR, start);
+            case '=':
+                expect('=', start);
+                return token(TokenType.EQUAL, start);
+            case '!':
+                expect('=', start);
+                return token(TokenType.NOT_EQUAL, start);
+            case '>':
+                return token(match('=') ? TokenType.GREATER_THAN_OR_EQUAL : TokenType.GREATER_THAN, start);
+            case '<':
+                return token(match('=') ? TokenType.LESS_THAN_OR_EQUAL : TokenType.LESS_THAN, start);
+            case '"':
+                return scanString(start);
+            case '$':
+                if (pos >= length || !isIdentifierStart(text.charAt(pos))) {
+                    throw new ParseException("Expected variable name after '$'", pos);
+                }
+                scanIdentifierPart();
+                return token(TokenType.VARIABLE, start);
+            default:
+                if (isDigit(c)) {
+                    return scanNumber(start);
+                } else if (isIdentifierStart(c)) {
+                    return scanIdentifier(start);
+                }
+                throw new ParseException("Unexpected character '" + c + "'", start);
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private Token<TokenType> token(TokenType type, int start) {
+        return new Token<TokenType>(type, text.substring(start, pos), start);
+    }
+
+    private void skipWhitespace() {
+        while (pos < length && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private boolean match(char expected) {
+        if (pos < length && text.charAt(pos) == expected) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char expected, int start) {
+        if (!match(expected)) {
+            throw new ParseException("Unexpected token '" + text.charAt(start) + "', expected '" + text.charAt(start) + expected + "'", start);
+        }
+    }
+
+    private Token<TokenType> scanString(int start) {
+        while (pos < length) {
+            char c = text.charAt(pos++);
+            if (c == '\\') {
+                pos++;  // skip the escaped character
+            } else if (c == '"') {
+                return token(TokenType.CONSTANT, start);
+            } else if (c == '\r' || c == '\n') {
+                break;
+            }
+        }
+        throw new ParseException("Unterminated string", start);
+    }
+
+    private Token<TokenType> scanNumber(int start) {
+        while (pos < length && isDigit(text.charAt(pos))) {
+            pos++;
+        }
+        if (pos + 1 < length && text.charAt(pos) == '.' && isDigit(text.charAt(pos + 1))) {
+            pos++;
+            while (pos < length && isDigit(text.charAt(pos))) {
+                pos++;
+            }
+        }
+        if (pos < length && isIdentifierStart(text.charAt(pos))) {
+            throw new ParseException("Invalid number", start);
+        }
+        return token(TokenType.CONSTANT, start);
+    }
+
+    private Token<TokenType> scanIdentifier(int start) {
+        scanIdentifierPart();
+
+        // key paths (e.g. "company.name" or "employees.@count") are scanned as a single field name
+        boolean isKeyPath = false;
+        while (pos + 1 < length && text.charAt(pos) == '.') {
+            char next = text.charAt(pos + 1);
+            if (next == '@' && pos + 2 < length && isIdentifierStart(text.charAt(pos + 2))) {
+                pos += 2;
+            } else if (isIdentifierStart(next)) {
+                pos++;
+            } else {
+                break;
+            }
+            scanIdentifierPart();
+            isKeyPath = true;
+        }
+
+        Token<TokenType> token = token(TokenType.FIELD_NAME, start);
+        if (isKeyPath) {
+            return token;
+        }
+
+        String name = token.getText();
+        if (name.equals("true") || name.equals("false") || name.equals("null")) {
+            return new Token<TokenType>(TokenType.CONSTANT, name, start);
+        }
+
+        TokenType keyword = KEYWORDS.get(name);
+        if (keyword != null) {
+            return new Token<TokenType>(keyword, name, start);
+        }
+        return token;
+    }
+
+    private void scanIdentifierPart() {
+        while (pos < length && isIdentifierPart(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c) || c == '_';
+    }
+}
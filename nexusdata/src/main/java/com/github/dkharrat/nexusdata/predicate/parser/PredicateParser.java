@@ -4,6 +4,7 @@ import com.github.dkharrat.nexusdata.predicate.ComparisonPredicate;
 import com.github.dkharrat.nexusdata.predicate.CompoundPredicate;
 import com.github.dkharrat.nexusdata.predicate.Expression;
 import com.github.dkharrat.nexusdata.predicate.Predicate;
+import com.github.dkharrat.nexusdata.predicate.QuantifiedPredicate;
 
 public class PredicateParser {
 
@@ -12,13 +13,24 @@ public class PredicateParser {
         OR,
         OPEN_PAREN,
         CLOSE_PAREN,
+        COMMA,
         EQUAL,
         GREATER_THAN_OR_EQUAL,
         LESS_THAN_OR_EQUAL,
         NOT_EQUAL,
         GREATER_THAN,
         LESS_THAN,
+        IN,
+        BETWEEN,
+        LIKE,
+        BEGINS_WITH,
+        ENDS_WITH,
+        CONTAINS,
+        ANY,
+        ALL,
+        NONE,
         FIELD_NAME,
+        VARIABLE,
         CONSTANT,
         EOF
     }
@@ -34,25 +46,9 @@ public class PredicateParser {
     }
 
     private final Parser<TokenType,Expression<?>> parser;
-    private final static LexerGrammar<TokenType> lexerGrammar = new LexerGrammar<TokenType>(TokenType.EOF);
-    static {
-        lexerGrammar.add("\\(",     TokenType.OPEN_PAREN);
-        lexerGrammar.add("\\)",     TokenType.CLOSE_PAREN);
-        lexerGrammar.add("&&",      TokenType.AND);
-        lexerGrammar.add("\\|\\|",  TokenType.OR);
-        lexerGrammar.add("==",      TokenType.EQUAL);
-        lexerGrammar.add("!=",      TokenType.NOT_EQUAL);
-        lexerGrammar.add(">=",      TokenType.GREATER_THAN_OR_EQUAL);
-        lexerGrammar.add("<=",      TokenType.LESS_THAN_OR_EQUAL);
-        lexerGrammar.add(">",       TokenType.GREATER_THAN);
-        lexerGrammar.add("<",       TokenType.LESS_THAN);
-        lexerGrammar.add("(\"[^\"\\\\\\r\\n]*(?:\\\\.[^\"\\\\\\r\\n]*)*\")|\\d+|true|false|null",       TokenType.CONSTANT);
-        lexerGrammar.add("[a-zA-Z][a-zA-Z0-9_]*",   TokenType.FIELD_NAME);
-    }
 
     public PredicateParser(String text) {
-        Lexer<TokenType> tokenizer = new Lexer<TokenType>(lexerGrammar, text);
-        parser = new Parser<TokenType,Expression<?>>(tokenizer);
+        parser = new Parser<TokenType,Expression<?>>(new PredicateLexer(text));
         parser.registerParslets(TokenType.OPEN_PAREN, new GroupParselet());
         parser.registerParslets(TokenType.EQUAL, new ComparisonParselet(ComparisonPredicate.Operator.EQUAL, Precedence.EQUALITY));
         parser.registerParslets(TokenType.NOT_EQUAL, new ComparisonParselet(ComparisonPredicate.Operator.NOT_EQUAL, Precedence.EQUALITY));
@@ -60,14 +56,30 @@ public class PredicateParser {
         parser.registerParslets(TokenType.GREATER_THAN_OR_EQUAL, new ComparisonParselet(ComparisonPredicate.Operator.GREATER_THAN_OR_EQUAL, Precedence.INEQUALITY));
         parser.registerParslets(TokenType.LESS_THAN, new ComparisonParselet(ComparisonPredicate.Operator.LESS_THAN, Precedence.INEQUALITY));
         parser.registerParslets(TokenType.LESS_THAN_OR_EQUAL, new ComparisonParselet(ComparisonPredicate.Operator.LESS_THAN_OR_EQUAL, Precedence.INEQUALITY));
+        parser.registerParslets(TokenType.IN, new InParselet(Precedence.EQUALITY));
+        parser.registerParslets(TokenType.BETWEEN, new BetweenParselet(Precedence.EQUALITY));
+        parser.registerParslets(TokenType.LIKE, new ComparisonParselet(ComparisonPredicate.Operator.LIKE, Precedence.EQUALITY));
+        parser.registerParslets(TokenType.BEGINS_WITH, new ComparisonParselet(ComparisonPredicate.Operator.BEGINS_WITH, Precedence.EQUALITY));
+        parser.registerParslets(TokenType.ENDS_WITH, new ComparisonParselet(ComparisonPredicate.Operator.ENDS_WITH, Precedence.EQUALITY));
+        parser.registerParslets(TokenType.CONTAINS, new ComparisonParselet(ComparisonPredicate.Operator.CONTAINS, Precedence.EQUALITY));
         parser.registerParslets(TokenType.AND, new LogicalParselet(CompoundPredicate.Operator.AND, Precedence.AND));
         parser.registerParslets(TokenType.OR, new LogicalParselet(CompoundPredicate.Operator.OR, Precedence.OR));
+        parser.registerParslets(TokenType.ANY, new QuantifierParselet(QuantifiedPredicate.Quantifier.ANY));
+        parser.registerParslets(TokenType.ALL, new QuantifierParselet(QuantifiedPredicate.Quantifier.ALL));
+        parser.registerParslets(TokenType.NONE, new QuantifierParselet(QuantifiedPredicate.Quantifier.NONE));
         parser.registerParslets(TokenType.CONSTANT, new ConstantParselet());
         parser.registerParslets(TokenType.FIELD_NAME, new NameParselet());
+        parser.registerParslets(TokenType.VARIABLE, new VariableParselet());
     }
 
     public Predicate parse() {
-        return (Predicate)parser.parse();
+        Expression<?> expression = parser.parse();
+        parser.consume(TokenType.EOF);
+
+        if (!(expression instanceof Predicate)) {
+            throw new ParseException("Expected a predicate, but got an expression: " + expression);
+        }
+        return (Predicate)expression;
     }
 }
 
@@ -0,0 +1,57 @@
+package com.github.dkharrat.nexusdata.predicate.parser;
+
+import com.github.dkharrat.nexusdata.predicate.BetweenPredicate;
+import com.github.dkharrat.nexusdata.predicate.ComparisonPredicate;
+import com.github.dkharrat.nexusdata.predicate.Expression;
+import com.github.dkharrat.nexusdata.predicate.FieldPathExpression;
+import com.github.dkharrat.nexusdata.predicate.Predicate;
+import com.github.dkharrat.nexusdata.predicate.QuantifiedPredicate;
+import com.github.dkharrat.nexusdata.utils.StringUtil;
+
+import static com.github.dkharrat.nexusdata.predicate.parser.PredicateParser.Precedence;
+import static com.github.dkharrat.nexusdata.predicate.parser.PredicateParser.TokenType;
+
+/**
+ * Parses a collection test of the form "ANY employees.firstName == "John"". The first component of the key path on the
+ * left-hand side of the comparison is the collection, and the rest of the key path is evaluated against each element.
+ */
+class QuantifierParselet implements PrefixParselet<TokenType,Expression<?>> {
+    private final QuantifiedPredicate.Quantifier quantifier;
+
+    QuantifierParselet(QuantifiedPredicate.Quantifier quantifier) {
+        this.quantifier = quantifier;
+    }
+
+    public Expression<?> parse(Parser<TokenType,Expression<?>> parser, Token<TokenType> token) {
+        Expression<?> expression = parser.parse(Precedence.AND);
+
+        Expression<?> lhs;
+        if (expression instanceof ComparisonPredicate) {
+            lhs = ((ComparisonPredicate) expression).getLhs();
+        } else if (expression instanceof BetweenPredicate) {
+            lhs = ((BetweenPredicate) expression).getExpression();
+        } else {
+            throw new ParseException("Expected a comparison after " + token.getText() + ", but got " + expression, token.getPosition());
+        }
+
+        if (!(lhs instanceof FieldPathExpression) || !((FieldPathExpression) lhs).isKeyPath()) {
+            throw new ParseException("Expected a key path starting with a collection after " + token.getText() + ", but got " + lhs, token.getPosition());
+        }
+
+        FieldPathExpression keyPath = (FieldPathExpression) lhs;
+        FieldPathExpression collection = new FieldPathExpression(keyPath.getPathComponents().get(0));
+        FieldPathExpression elementPath = new FieldPathExpression(
+                StringUtil.join(keyPath.getPathComponents().subList(1, keyPath.getPathComponents().size()), "."));
+
+        Predicate elementPredicate;
+        if (expression instanceof ComparisonPredicate) {
+            ComparisonPredicate comparison = (ComparisonPredicate) expression;
+            elementPredicate = new ComparisonPredicate(elementPath, comparison.getOperator(), comparison.getRhs());
+        } else {
+            BetweenPredicate between = (BetweenPredicate) expression;
+            elementPredicate = new BetweenPredicate(elementPath, between.getLowerBound(), between.getUpperBound());
+        }
+
+        return new QuantifiedPredicate(quantifier, collection, elementPredicate);
+    }
+}
@@ -3,10 +3,12 @@ package com.github.dkharrat.nexusdata.predicate.parser;
 class Token<TokenType> {
     private final TokenType type;
     private final String text;
+    private final int position;
 
-    Token(TokenType type, String value) {
+    Token(TokenType type, String value, int position) {
         this.type = type;
         this.text = value;
+        this.position = position;
     }
 
     public TokenType getType() {
@@ -16,4 +18,18 @@ class Token<TokenType> {
     public String getText() {
         return text;
     }
+
+    /**
+     * Returns the offset of the first character of this token in the parsed text.
+     *
+     * @return the offset of this token in the parsed text
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public String toString() {
+        return type + (text == null ? "" : " \"" + text + "\"");
+    }
 }
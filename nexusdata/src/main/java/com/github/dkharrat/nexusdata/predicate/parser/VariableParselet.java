@@ -0,0 +1,11 @@
+package com.github.dkharrat.nexusdata.predicate.parser;
+
+import com.github.dkharrat.nexusdata.predicate.Expression;
+import com.github.dkharrat.nexusdata.predicate.VariableExpression;
+import static com.github.dkharrat.nexusdata.predicate.parser.PredicateParser.TokenType;
+
+class VariableParselet implements PrefixParselet<TokenType,Expression<?>> {
+    public Expression<?> parse(Parser<TokenType,Expression<?>> parser, Token<TokenType> token) {
+        return new VariableExpression(token.getText().substring(1));    // remove '$' prefix
+    }
+}
@@ -2,8 +2,8 @@ package com.github.dkharrat.nexusdata.store;
 
 import java.io.File;
 import java.net.URL;
-import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,8 +15,7 @@ import android.database.sqlite.SQLiteDatabase;
 
 import com.github.dkharrat.nexusdata.core.*;
 import com.github.dkharrat.nexusdata.metamodel.*;
-import com.github.dkharrat.nexusdata.utils.android.CursorUtil;
-import com.github.dkharrat.nexusdata.utils.DateUtil;
+import com.github.dkharrat.nexusdata.utils.StringUtil;
 
 /* TODO: AndroidSqlPersistentStore changes
  *  - improve memory-management
@@ -27,16 +26,29 @@ public class AndroidSqlPersistentStore extends IncrementalStore {
 
     private static final Logger LOG = LoggerFactory.getLogger(AndroidSqlPersistentStore.class);
 
-    static final String ID_COLUMN_NAME = "_ID";
-    static final String ENTITY_COLUMN_NAME = "_ENT";
+    static final String ID_COLUMN_NAME = SqlSchema.ID_COLUMN_NAME;
+    static final String ENTITY_COLUMN_NAME = SqlSchema.ENTITY_COLUMN_NAME;
 
     private DatabaseHelper databaseHelper;
     private Map<Entity<?>,Integer> entityToIDMap = new HashMap<>();
     private Map<Integer,Entity<?>> idToEntityMap = new HashMap<>();
-    private Map<String,Long> lastRowIDs = new HashMap<>();
     private Context context;
 
     private SQLiteDatabase db;
+    private ValueEncoding valueEncoding = ValueEncoding.NATIVE;
+    private int idBlockSize = PermanentIDAllocator.DEFAULT_BLOCK_SIZE;
+    private PermanentIDAllocator idAllocator;
+    private final SlowQueryLog slowQueryLog = new SlowQueryLog();
+    private DatabaseQueryService queryService;
+
+    // the SQL of the queries used to fire faults, keyed by entity or relationship. The SQL of each query is constant
+    // (its values are bound as parameters), so that SQLite can re-use its prepared statement.
+    private final Map<Entity<?>,String> objectValuesQueries = new ConcurrentHashMap<>();
+    private final Map<Relationship,String> relationshipQueries = new ConcurrentHashMap<>();
+
+    // the decoders of rows into cache nodes, keyed by entity. All rows of an entity are currently queried with the
+    // same columns, so only the decoder of the last projection is kept.
+    private final Map<Entity<?>,RowDecoder> rowDecoders = new ConcurrentHashMap<>();
 
     // TODO: use a MRU cache and also remove objects if they are unregistered from all contexts
     private Map<Class<?>, Map<Long,StoreCacheNode>> cache = new HashMap<Class<?>, Map<Long,StoreCacheNode>>();
@@ -54,7 +66,7 @@ public class AndroidSqlPersistentStore extends IncrementalStore {
     @Override
     protected void loadMetadata() {
         ObjectModel model = getCoordinator().getModel();
-        databaseHelper = new DatabaseHelper(context, new File(getLocation().getPath()), model);
+        databaseHelper = new DatabaseHelper(context, new File(getLocation().getPath()), model, valueEncoding);
 
         // TODO: does the DB need to be closed at some point?
         db = databaseHelper.getWritableDatabase();
@@ -65,9 +77,92 @@ public class AndroidSqlPersistentStore extends IncrementalStore {
             idToEntityMap.put(entry.getValue(), entry.getKey());
         }
 
+        queryService = new DatabaseQueryService(this, entityToIDMap, valueEncoding);
+        idAllocator = new PermanentIDAllocator() {
+            @Override
+            long reserveIDs(String tableName, long count) {
+                return DatabaseHelper.reserveIDs(db, tableName, count);
+            }
+        };
+        idAllocator.setBlockSize(idBlockSize);
+
         setUuid(DatabaseHelper.getDatabaseUuid(db, model.getVersion()));
     }
 
+    /**
+     * Sets how dates and enums are stored in the database. The default is {@link ValueEncoding#NATIVE}. If an existing
+     * database uses a different encoding (e.g. {@link ValueEncoding#TEXT} for databases created by earlier versions),
+     * its values are migrated to this encoding when the store is loaded.
+     *
+     * @param valueEncoding the encoding of stored values
+     * @throws IllegalStateException if the store has already been loaded
+     */
+    public void setValueEncoding(ValueEncoding valueEncoding) {
+        if (db != null) {
+            throw new IllegalStateException("Value encoding must be set before the store is added to a coordinator");
+        }
+        this.valueEncoding = valueEncoding;
+    }
+
+    /**
+     * Returns how dates and enums are stored in the database.
+     *
+     * @return the encoding of stored values
+     */
+    public ValueEncoding getValueEncoding() {
+        return valueEncoding;
+    }
+
+    /**
+     * Sets how many IDs are reserved at a time for new objects of an entity. Permanent IDs are handed out from the
+     * reserved block without accessing the database, so a larger block makes obtaining IDs for many new objects
+     * cheaper. Reserved IDs that are not used before the store is closed are skipped. The default is
+     * {@value PermanentIDAllocator#DEFAULT_BLOCK_SIZE}.
+     *
+     * @param blockSize the number of IDs to reserve at a time
+     * @throws IllegalArgumentException if the block size is not positive
+     */
+    public void setIDBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        idBlockSize = blockSize;
+        if (idAllocator != null) {
+            idAllocator.setBlockSize(blockSize);
+        }
+    }
+
+    /**
+     * Returns how many IDs are reserved at a time for new objects of an entity.
+     *
+     * @return the number of IDs to reserve at a time
+     */
+    public int getIDBlockSize() {
+        return idBlockSize;
+    }
+
+    /**
+     * Sets the minimum time a SQL statement (for fetching, faulting, relationships or saving) must take to execute for
+     * it to be logged as a slow query. Each logged statement includes its arguments, the number of rows returned or
+     * affected, and its query plan, where steps that scan a whole table are flagged. Slow query logging is disabled by
+     * default, and can be changed at any time.
+     *
+     * @param thresholdMillis   the minimum execution time of a statement in milliseconds for it to be logged. A
+     *                          threshold of 0 logs all statements, and a negative threshold disables logging.
+     */
+    public void setSlowQueryThreshold(long thresholdMillis) {
+        slowQueryLog.setThreshold(thresholdMillis);
+    }
+
+    /**
+     * Returns the minimum time a SQL statement must take to execute for it to be logged as a slow query.
+     *
+     * @return the slow query threshold in milliseconds, or a negative value if slow query logging is disabled
+     */
+    public long getSlowQueryThreshold() {
+        return slowQueryLog.getThreshold();
+    }
+
     Map<Entity<?>,Integer> getEntityToIDMap() {
         return entityToIDMap;
     }
@@ -80,46 +175,140 @@ public class AndroidSqlPersistentStore extends IncrementalStore {
         return "`" + getColumnName(property) + "`";
     }
 
-    private ManagedObject createObjectFromCursor(ObjectContext context, Cursor cursor) {
+    ObjectID newObjectID(Entity<?> entity, long id) {
+        return createObjectID(entity, id);
+    }
 
-        long id = CursorUtil.getLong(cursor, ID_COLUMN_NAME);
-        Entity<?> entity = idToEntityMap.get(CursorUtil.getInt(cursor, ENTITY_COLUMN_NAME));
-        ObjectID objectID = this.createObjectID(entity, id);
-        ManagedObject object = context.objectWithID(objectID);
+    /**
+     * Returns the decoder for rows of the specified entity read from the specified cursor, creating it if the entity
+     * has no decoder yet for the columns of the cursor.
+     */
+    private RowDecoder getRowDecoder(Entity<?> entity, Cursor cursor) {
+        RowDecoder decoder = rowDecoders.get(entity);
+        if (decoder == null || !decoder.matches(cursor)) {
+            decoder = RowDecoder.create(this, entity, cursor);
+            rowDecoders.put(entity, decoder);
+        }
+        return decoder;
+    }
 
-        StoreCacheNode cacheNode = getStoreNodeFromCursor(objectID, cursor, context);
+    private void cacheNode(Entity<?> entity, long id, StoreCacheNode node) {
         Map<Long,StoreCacheNode> entityCache = cache.get(entity.getType());
         if (entityCache == null) {
             entityCache = new HashMap<>();
             cache.put(entity.getType(), entityCache);
         }
-        entityCache.put(id, cacheNode);
-
-        return object;
+        entityCache.put(id, node);
     }
 
     @Override
     protected <T extends ManagedObject> List<T> executeFetchRequest(FetchRequest<T> request, ObjectContext context) {
-        Cursor cursor = DatabaseQueryService.query(db, this, DatabaseHelper.getTableName(request.getEntity()), request);
+        DatabaseQueryService.Query query = queryService.buildQuery(DatabaseHelper.getTableName(request.getEntity()), request);
+        Cursor cursor = slowQueryLog.query(db, query.sql, query.args);
 
         List<T> results = new ArrayList<T>();
-        while(cursor.moveToNext()) {
-            @SuppressWarnings("unchecked")
-            T object = (T)createObjectFromCursor(context, cursor);
-            results.add(object);
-        }
+        try {
+            int idColumn = cursor.getColumnIndexOrThrow(ID_COLUMN_NAME);
+            int entityColumn = cursor.getColumnIndexOrThrow(ENTITY_COLUMN_NAME);
+
+            // the decoder is only looked up again when the entity changes between rows (i.e. for sub-entities)
+            RowDecoder decoder = null;
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(idColumn);
+                Entity<?> entity = idToEntityMap.get(cursor.getInt(entityColumn));
+                if (decoder == null || decoder.getEntity() != entity) {
+                    decoder = getRowDecoder(entity, cursor);
+                }
 
-        cursor.close();
+                ObjectID objectID = this.createObjectID(entity, id);
+                @SuppressWarnings("unchecked")
+                T object = (T)context.objectWithID(objectID);
+                cacheNode(entity, id, decoder.decode(objectID, cursor));
+                results.add(object);
+            }
+        } finally {
+            cursor.close();
+        }
 
         return results;
     }
 
+    /**
+     * Opens a cursor that reads the rows of the query as it is iterated, so only the window of rows loaded by the
+     * database cursor is held in memory. Each object is faulted in from its row without caching the row in the store.
+     */
+    @Override
+    protected <T extends ManagedObject> FetchCursor<T> openFetchCursor(FetchRequest<T> request, ObjectContext context) {
+        DatabaseQueryService.Query query = queryService.buildQuery(DatabaseHelper.getTableName(request.getEntity()), request);
+        return new DatabaseFetchCursor<T>(slowQueryLog.queryStream(db, query.sql, query.args), context);
+    }
+
+    private class DatabaseFetchCursor<T extends ManagedObject> extends FetchCursor<T> {
+        private final Cursor cursor;
+        private final ObjectContext context;
+        private final int idColumn;
+        private final int entityColumn;
+        private RowDecoder decoder;
+
+        // whether the cursor was moved to the row to return next, and whether there is such a row
+        private boolean rowRead;
+        private boolean hasRow;
+
+        DatabaseFetchCursor(Cursor cursor, ObjectContext context) {
+            this.cursor = cursor;
+            this.context = context;
+            try {
+                idColumn = cursor.getColumnIndexOrThrow(ID_COLUMN_NAME);
+                entityColumn = cursor.getColumnIndexOrThrow(ENTITY_COLUMN_NAME);
+            } catch (RuntimeException e) {
+                cursor.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!cursor.isClosed() && !rowRead) {
+                hasRow = cursor.moveToNext();
+                rowRead = true;
+                if (!hasRow) {
+                    close();
+                }
+            }
+            return hasRow && !cursor.isClosed();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            rowRead = false;
+
+            long id = cursor.getLong(idColumn);
+            Entity<?> entity = idToEntityMap.get(cursor.getInt(entityColumn));
+            if (decoder == null || decoder.getEntity() != entity) {
+                decoder = getRowDecoder(entity, cursor);
+            }
+
+            @SuppressWarnings("unchecked")
+            T object = (T)getObject(context, decoder.decode(createObjectID(entity, id), cursor));
+            return object;
+        }
+
+        @Override
+        public void close() {
+            if (!cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+    }
+
     private ContentValues getContentValues(ManagedObject object) throws IllegalArgumentException, IllegalAccessException {
         ContentValues values = new ContentValues();
 
-        values.put(ID_COLUMN_NAME, getReferenceObjectForObjectID(object.getID()).toString());
+        putValue(values, ID_COLUMN_NAME, getReferenceObjectForObjectID(object.getID()));
         for (Property property : object.getEntity().getProperties()) {
-            Class<?> propertyType = property.getType();
             Object value = object.getValue(property.getName());
 
             if (property.isRelationship()) {
@@ -127,20 +316,14 @@ public class AndroidSqlPersistentStore extends IncrementalStore {
                 if (relationship.isToOne()) {
                     ManagedObject toOneObject = (ManagedObject) value;
                     if (toOneObject != null) {
-                        values.put(getQuotedColumnName(relationship), getReferenceObjectForObjectID(toOneObject.getID()).toString());
+                        putValue(values, getQuotedColumnName(relationship), getReferenceObjectForObjectID(toOneObject.getID()));
                     } else {
                         values.putNull(getQuotedColumnName(relationship));
                     }
                 }
             } else {
                 if (value != null) {
-                    if (Date.class.isAssignableFrom(propertyType)) {
-                        values.put(getQuotedColumnName(property), DateUtil.format(DateUtil.ISO8601_NO_TIMEZONE, (Date)value));
-                    } else if (Boolean.class.isAssignableFrom(propertyType)) {
-                        values.put(getQuotedColumnName(property), ((Boolean)value) ? "1" : "0" );
-                    } else {
-                        values.put(getQuotedColumnName(property), value.toString());
-                    }
+                    putValue(values, getQuotedColumnName(property), valueEncoding.encode(value));
                 } else {
                     values.putNull(getQuotedColumnName(property));
                 }
@@ -150,6 +333,25 @@ public class AndroidSqlPersistentStore extends IncrementalStore {
         return values;
     }
 
+    /**
+     * Puts a non-null value with its SQL type, so that it is stored without relying on the type affinity of its
+     * column. Floats are stored as the double of the same decimal representation, rather than their exact binary
+     * value, so that they compare equal to the same literal in a predicate.
+     */
+    private static void putValue(ContentValues values, String column, Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            values.put(column, ((Number)value).longValue());
+        } else if (value instanceof Double) {
+            values.put(column, (Double)value);
+        } else if (value instanceof Float) {
+            values.put(column, Double.valueOf(value.toString()));
+        } else if (value instanceof byte[]) {
+            values.put(column, (byte[])value);
+        } else {
+            values.put(column, value.toString());
+        }
+    }
+
     @Override
     protected void executeSaveRequest(SaveChangesRequest request, ObjectContext context) {
         db.beginTransaction();
@@ -157,14 +359,25 @@ public class AndroidSqlPersistentStore extends IncrementalStore {
             for (ManagedObject object : request.getChanges().getInsertedObjects()) {
                 ContentValues values = getContentValues(object);
                 values.put(ENTITY_COLUMN_NAME, entityToIDMap.get(object.getEntity()));
-                //TODO: log inserts, updates & deletes
-                db.insertOrThrow(DatabaseHelper.getTableName(object.getEntity()), null, values);
+                String tableName = DatabaseHelper.getTableName(object.getEntity());
+
+                long start = slowQueryLog.start();
+                db.insertOrThrow(tableName, null, values);
+                if (slowQueryLog.isSlow(start)) {
+                    logSlowWrite("INSERT INTO " + tableName, values, null, 1, start);
+                }
             }
 
             for (ManagedObject object : request.getChanges().getUpdatedObjects()) {
                 ContentValues values = getContentValues(object);
                 long id = (Long)getReferenceObjectForObjectID(object.getID());
-                db.update(DatabaseHelper.getTableName(object.getEntity()), values, "_ID = " + id, null);
+                String tableName = DatabaseHelper.getTableName(object.getEntity());
+
+                long start = slowQueryLog.start();
+                int rowCount = db.update(tableName, values, "_ID = " + id, null);
+                if (slowQueryLog.isSlow(start)) {
+                    logSlowWrite("UPDATE " + tableName, values, "_ID = " + id, rowCount, start);
+                }
 
                 Map<Long, StoreCacheNode> entityCache = cache.get(object.getEntity().getType());
                 if (entityCache != null) {
@@ -175,7 +388,13 @@ public class AndroidSqlPersistentStore extends IncrementalStore {
 
             for (ManagedObject object : request.getChanges().getDeletedObjects()) {
                 long id = (Long)getReferenceObjectForObjectID(object.getID());
-                db.delete(DatabaseHelper.getTableName(object.getEntity()), "_ID = " + id, null);
+                String tableName = DatabaseHelper.getTableName(object.getEntity());
+
+                long start = slowQueryLog.start();
+                int rowCount = db.delete(tableName, "_ID = " + id, null);
+                if (slowQueryLog.isSlow(start)) {
+                    logSlowWrite("DELETE FROM " + tableName, null, "_ID = " + id, rowCount, start);
+                }
 
                 Map<Long, StoreCacheNode> entityCache = cache.get(object.getEntity().getType());
                 if (entityCache != null) {
@@ -191,70 +410,35 @@ public class AndroidSqlPersistentStore extends IncrementalStore {
         }
     }
 
-    private StoreCacheNode getStoreNodeFromCursor(ObjectID objectID, Cursor cursor, ObjectContext context) {
-        StoreCacheNode node = new StoreCacheNode(objectID);
+    /**
+     * Logs a slow insert, update or delete statement. The statement is reconstructed from its values, since the
+     * actual SQL is generated by {@link SQLiteDatabase}.
+     */
+    private void logSlowWrite(String statement, ContentValues values, String whereClause, int rowCount, long start) {
+        StringBuilder sql = new StringBuilder(statement);
+        List<Object> args = new ArrayList<Object>();
+        if (values != null) {
+            List<String> columns = new ArrayList<String>();
+            for (Map.Entry<String,Object> entry : values.valueSet()) {
+                columns.add(entry.getKey());
+                args.add(entry.getValue());
+            }
 
-        try {
-            for (Property property : objectID.getEntity().getProperties()) {
-                Object value;
-                @SuppressWarnings("unchecked")
-                Class<?> propType = property.getType();
-
-                String columnName = getColumnName(property);
-
-                if (property.isRelationship()) {
-                    Relationship relationship = (Relationship)property;
-                    if (relationship.isToOne()) {
-                        @SuppressWarnings("unchecked")
-                        Entity<?> assocEntity = getCoordinator().getModel().getEntity((Class<ManagedObject>)relationship.getType());
-                        long relatedID = CursorUtil.getLong(cursor, columnName);
-                        if (relatedID != 0) {
-                            value = this.createObjectID(assocEntity, relatedID);
-                        } else {
-                            continue;
-                        }
-                    } else {
-                        continue;
-                    }
-                } else if (CursorUtil.isNull(cursor, columnName)) {
-                    value = null;
-                } else if (propType.isAssignableFrom(Integer.class) || propType.isAssignableFrom(int.class)) {
-                    value = CursorUtil.getInt(cursor, columnName);
-                } else if (propType.isAssignableFrom(Long.class) || propType.isAssignableFrom(long.class)) {
-                    value = CursorUtil.getLong(cursor, columnName);
-                } else if (propType.isAssignableFrom(String.class)) {
-                    value = CursorUtil.getString(cursor, columnName);
-                } else if (propType.isAssignableFrom(Boolean.class) || propType.isAssignableFrom(boolean.class)) {
-                    value = CursorUtil.getBoolean(cursor, columnName);
-                } else if (propType.isAssignableFrom(Float.class) || propType.isAssignableFrom(float.class)) {
-                    value = CursorUtil.getFloat(cursor, columnName);
-                } else if (propType.isAssignableFrom(Double.class) || propType.isAssignableFrom(double.class)) {
-                    value = CursorUtil.getDouble(cursor, columnName);
-                } else if (Enum.class.isAssignableFrom(propType)) {
-                    String enumName = CursorUtil.getString(cursor, columnName);
-                    if (enumName != null) {
-                        value = Enum.valueOf((Class<? extends Enum>)propType, enumName);
-                    } else {
-                        value = null;
-                    }
-                } else if (propType.isAssignableFrom(Date.class)) {
-                    String dateStr = CursorUtil.getString(cursor, columnName);
-                    if (dateStr != null) {
-                        value = DateUtil.parse(DateUtil.ISO8601_NO_TIMEZONE, dateStr);
-                    } else {
-                        value = null;
-                    }
-                } else {
-                    throw new UnsupportedOperationException("Unsupported property type " + property.getType());
+            if (whereClause == null) {    // insert
+                sql.append(" (").append(StringUtil.join(columns, ", ")).append(") VALUES (");
+                for (int i = 0; i < columns.size(); i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
                 }
-
-                node.setProperty(property.getName(), value);
+                sql.append(")");
+            } else {
+                sql.append(" SET ").append(StringUtil.join(columns, "=?, ")).append("=?");
             }
-        } catch (IllegalArgumentException | ParseException e) {
-            throw new RuntimeException(e);
+        }
+        if (whereClause != null) {
+            sql.append(" WHERE ").append(whereClause);
         }
 
-        return node;
+        slowQueryLog.log(db, sql.toString(), args.toArray(), rowCount, start);
     }
 
     @Override
@@ -270,28 +454,20 @@ public class AndroidSqlPersistentStore extends IncrementalStore {
             }
         }
 
-        Cursor cursor = db.query(
-                false,          // not distinct
-                DatabaseHelper.getTableName(objectID.getEntity()),
-                null,           // columns
-                ID_COLUMN_NAME + "=?",           // selection
-                new String[]{String.valueOf(id)},           // selectionArgs
-                null,           // groupBy
-                null,           // having
-                null,           // orderBy
-                null);          // limit
+        String sql = objectValuesQueries.get(objectID.getEntity());
+        if (sql == null) {
+            sql = "SELECT * FROM " + DatabaseHelper.getTableName(objectID.getEntity()) + " WHERE " + ID_COLUMN_NAME + "=?";
+            objectValuesQueries.put(objectID.getEntity(), sql);
+        }
+        Cursor cursor = slowQueryLog.query(db, sql, new Object[]{id});
 
         StoreCacheNode node = null;
         if (cursor.moveToNext()) {
-            node = getStoreNodeFromCursor(objectID, cursor, context);
+            node = getRowDecoder(objectID.getEntity(), cursor).decode(objectID, cursor);
         }
         cursor.close();
 
-        if (entityCache == null) {
-            entityCache = new HashMap<Long,StoreCacheNode>();
-            cache.put(objectID.getEntity().getType(), entityCache);
-        }
-        entityCache.put(id, node);
+        cacheNode(objectID.getEntity(), id, node);
 
         return node;
     }
@@ -302,26 +478,19 @@ public class AndroidSqlPersistentStore extends IncrementalStore {
             Relationship relationship,
             ObjectContext context) {
 
-        String[] columns = new String[]{ID_COLUMN_NAME};
-        String table = DatabaseHelper.getTableName(relationship.getDestinationEntity());
-        String selection = getQuotedColumnName(relationship.getInverse())+"=?";
-        String[] selectionArgs = new String[]{getReferenceObjectForObjectID(objectID).toString()};
-
-        Cursor cursor = db.query(
-                false,          // not distinct
-                table,
-                columns,        // columns
-                selection,      // selection
-                selectionArgs,  // selectionArgs
-                null,           // groupBy
-                null,           // having
-                null,           // orderBy
-                null);          // limit
+        String sql = relationshipQueries.get(relationship);
+        if (sql == null) {
+            String table = DatabaseHelper.getTableName(relationship.getDestinationEntity());
+            sql = "SELECT " + ID_COLUMN_NAME + " FROM " + table + " WHERE " + getQuotedColumnName(relationship.getInverse()) + "=?";
+            relationshipQueries.put(relationship, sql);
+        }
+        Object[] selectionArgs = new Object[]{getReferenceObjectForObjectID(objectID)};
 
+        Cursor cursor = slowQueryLog.query(db, sql, selectionArgs);
 
         Set<ObjectID> results = new HashSet<ObjectID>();
         while(cursor.moveToNext()) {
-            long id = CursorUtil.getLong(cursor, ID_COLUMN_NAME);
+            long id = cursor.getLong(0);    // the only selected column
             ObjectID relatedObject = this.createObjectID(relationship.getDestinationEntity(), id);
             results.add(relatedObject);
         }
@@ -336,29 +505,24 @@ public class AndroidSqlPersistentStore extends IncrementalStore {
             Relationship relationship,
             ObjectContext context) {
 
-        String fromTable = DatabaseHelper.getTableName(objectID.getEntity());
-        String toTable = DatabaseHelper.getTableName(relationship.getDestinationEntity());
-
-        String table = fromTable + " t1," + toTable + " t2";
-        String[] columns = new String[]{"t1" + "." + ID_COLUMN_NAME};
-        String selection = "t1"+"."+ ID_COLUMN_NAME +"="+getReferenceObjectForObjectID(objectID) + " AND " +
-                           "t1"+"."+ getQuotedColumnName(relationship)+"=t2."+ ID_COLUMN_NAME;
+        String sql = relationshipQueries.get(relationship);
+        if (sql == null) {
+            String fromTable = DatabaseHelper.getTableName(relationship.getEntity());
+            String toTable = DatabaseHelper.getTableName(relationship.getDestinationEntity());
 
-        Cursor cursor = db.query(
-                false,          // not distinct
-                table,
-                columns,           // columns
-                selection,     // selection
-                null,           // selectionArgs
-                null,           // groupBy
-                null,           // having
-                null,           // orderBy
-                null);          // limit
+            // joined with the destination table, so that a dangling reference results in no related object
+            sql = "SELECT t2." + ID_COLUMN_NAME + " FROM " + fromTable + " t1," + toTable + " t2" +
+                  " WHERE t1." + ID_COLUMN_NAME + "=? AND " +
+                  "t1." + getQuotedColumnName(relationship) + "=t2." + ID_COLUMN_NAME;
+            relationshipQueries.put(relationship, sql);
+        }
+        Object[] selectionArgs = new Object[]{getReferenceObjectForObjectID(objectID)};
 
+        Cursor cursor = slowQueryLog.query(db, sql, selectionArgs);
 
         ObjectID relatedObjectID = null;
         if(cursor.moveToNext()) {
-            long id = CursorUtil.getLong(cursor, ID_COLUMN_NAME);
+            long id = cursor.getLong(0);    // the only selected column
             relatedObjectID = this.createObjectID(relationship.getDestinationEntity(), id);
         }
         cursor.close();
@@ -366,43 +530,28 @@ public class AndroidSqlPersistentStore extends IncrementalStore {
         return relatedObjectID;
     }
 
-    private long getLastRowIDFromDatabase(SQLiteDatabase db, String tableName) {
-        long lastRow = 1;
-        Cursor cursor = db.query(
-                false,          // not distinct
-                "sqlite_sequence",
-                null,           // columns
-                "name='" + tableName + "'",           // selection
-                null,           // selectionArgs
-                null,           // groupBy
-                null,           // having
-                null,           // orderBy
-                "1");           // limit
+    @Override
+    protected List<ObjectID> getPermanentIDsForObjects(List<ManagedObject> objects) {
 
-        if (cursor.moveToNext()) {
-            lastRow = CursorUtil.getLong(cursor, "seq")+1;
+        // allocate the IDs of all objects stored in the same table at once
+        Map<String,Integer> counts = new HashMap<>();
+        for (ManagedObject object : objects) {
+            String tableName = DatabaseHelper.getTableName(object.getEntity());
+            Integer count = counts.get(tableName);
+            counts.put(tableName, count == null ? 1 : count + 1);
         }
-        cursor.close();
-
-        return lastRow;
-    }
 
-    @Override
-    protected List<ObjectID> getPermanentIDsForObjects(List<ManagedObject> objects) {
+        Map<String,Long> nextIDs = new HashMap<>();
+        for (Map.Entry<String,Integer> entry : counts.entrySet()) {
+            nextIDs.put(entry.getKey(), idAllocator.allocate(entry.getKey(), entry.getValue()));
+        }
 
         List<ObjectID> objectIDs = new ArrayList<ObjectID>();
         for (ManagedObject object : objects) {
-            ObjectID id;
-
             String tableName = DatabaseHelper.getTableName(object.getEntity());
-            Long lastRowID = lastRowIDs.get(tableName);
-            if (lastRowID == null) {
-                lastRowID = getLastRowIDFromDatabase(db, tableName);
-            }
-            id = createObjectID(object.getEntity(), lastRowID++);
-            lastRowIDs.put(DatabaseHelper.getTableName(object.getEntity()), lastRowID);
-
-            objectIDs.add(id);
+            long id = nextIDs.get(tableName);
+            nextIDs.put(tableName, id + 1);
+            objectIDs.add(createObjectID(object.getEntity(), id));
         }
 
         return objectIDs;
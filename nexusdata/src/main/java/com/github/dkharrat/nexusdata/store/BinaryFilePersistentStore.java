@@ -0,0 +1,384 @@
+package com.github.dkharrat.nexusdata.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.dkharrat.nexusdata.core.AtomicStore;
+import com.github.dkharrat.nexusdata.core.ManagedObject;
+import com.github.dkharrat.nexusdata.core.ObjectID;
+import com.github.dkharrat.nexusdata.core.StoreCacheNode;
+import com.github.dkharrat.nexusdata.metamodel.Entity;
+import com.github.dkharrat.nexusdata.metamodel.ObjectModel;
+import com.github.dkharrat.nexusdata.metamodel.Property;
+
+/**
+ * An atomic store that keeps its data in a compact binary file. All the objects are kept in memory, and are loaded by
+ * memory-mapping the file and decoding it in a single pass.
+ * <p>
+ * The file is a snapshot of all the objects at some point in time. Instead of writing the whole snapshot on each save,
+ * a save appends the objects it changed and the IDs of the objects it deleted to a delta log next to the snapshot file
+ * (with a "-delta" suffix), which is replayed on top of the snapshot when the store is loaded. Records of a save that
+ * didn't complete are discarded. Once the delta log grows larger than the snapshot, the store checkpoints: a new
+ * snapshot is written to a temporary file, which then replaces the snapshot file, and the delta log is emptied.
+ * {@link #save()} checkpoints too.
+ * <p>
+ * The records use the same format as the {@link LogStructuredPersistentStore}. By default, saves are not forced to
+ * the storage device, so saved changes survive a crash of the process but not of the system. See
+ * {@link #setForceOnSave(boolean)}.
+ */
+public class BinaryFilePersistentStore extends AtomicStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BinaryFilePersistentStore.class);
+
+    private static final int HEADER_SIZE = 32;
+    private static final int SNAPSHOT_MAGIC = 0x4E585342;     // "NXSB"
+    private static final int DELTA_MAGIC = 0x4E585344;        // "NXSD"
+    private static final int FORMAT_VERSION = 1;
+
+    // the delta log is never checkpointed while it's smaller than this, in bytes
+    private static final long MIN_CHECKPOINT_SIZE = 64 * 1024;
+
+    private static final String DELTA_FILE_SUFFIX = "-delta";
+    private static final String TEMP_FILE_SUFFIX = "-tmp";
+
+    private final File file;
+    private final File deltaFile;
+    private volatile boolean forceOnSave;
+
+    private ObjectModel model;
+    private LogRecordFormat format;
+    private long nextID = 1;
+
+    // the number of checkpoints made; the delta log only applies to the snapshot of the same generation
+    private int generation;
+    private long snapshotSize;
+    private FileChannel deltaChannel;
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(8192);
+
+    /**
+     * Creates a store that keeps its data in the specified file.
+     *
+     * @param file  the snapshot file of the store
+     */
+    public BinaryFilePersistentStore(File file) {
+        super(file);
+        this.file = file;
+        this.deltaFile = new File(file.getPath() + DELTA_FILE_SUFFIX);
+    }
+
+    /**
+     * Sets whether each save is forced to the storage device before it returns, so that saved changes survive a crash
+     * of the system. This makes saves considerably slower. The default is false.
+     *
+     * @param forceOnSave   true to force each save to the storage device, false otherwise
+     */
+    public void setForceOnSave(boolean forceOnSave) {
+        this.forceOnSave = forceOnSave;
+    }
+
+    /**
+     * Returns whether each save is forced to the storage device before it returns.
+     *
+     * @return true if each save is forced to the storage device, false otherwise
+     */
+    public boolean isForceOnSave() {
+        return forceOnSave;
+    }
+
+    @Override
+    public synchronized void load() {
+        model = getCoordinator().getModel();
+        format = new LogRecordFormat(model, true, new LogRecordFormat.ObjectIDMapper() {
+            @Override
+            public ObjectID toObjectID(Entity<?> entity, long id) {
+                return createObjectID(entity, id);
+            }
+
+            @Override
+            public long toID(ObjectID objectID) {
+                return (Long) getReferenceObjectForObjectID(objectID);
+            }
+        });
+
+        try {
+            if (!file.exists() || !loadSnapshot()) {
+                // write an empty snapshot right away, so that the UUID of the store doesn't change, and discard any
+                // delta log left over from a deleted or discarded snapshot
+                deltaFile.delete();
+                writeSnapshot();
+            }
+            openDeltaLog();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not load " + file, e);
+        }
+    }
+
+    /**
+     * Reads the objects of the snapshot file into cache nodes.
+     *
+     * @return true if the snapshot was loaded, or false if it was written with another model version
+     */
+    private boolean loadSnapshot() throws IOException {
+        ByteBuffer buffer = map(file);
+        checkHeader(buffer, SNAPSHOT_MAGIC, file);
+
+        int version = buffer.getInt(8);
+        if (version != model.getVersion()) {
+            //TODO: ideally, the snapshot should be migrated to newer version as opposed to re-creating it
+            LOG.info("Upgrading snapshot from " + version + " to " + model.getVersion());
+            return false;
+        }
+
+        generation = buffer.getInt(12);
+        setUuid(new UUID(buffer.getLong(16), buffer.getLong(24)));
+        int end = readRecords(buffer);
+        if (end != buffer.limit()) {
+            throw new IOException(file + " is corrupt");
+        }
+        snapshotSize = buffer.limit();
+        return true;
+    }
+
+    /**
+     * Opens the delta log for appending, after replaying its records on top of the snapshot. A delta log of an older
+     * generation was already folded into the snapshot by a checkpoint that completed, and is emptied.
+     */
+    private void openDeltaLog() throws IOException {
+        long end = HEADER_SIZE;
+        boolean isValid = false;
+        if (deltaFile.length() >= HEADER_SIZE) {
+            ByteBuffer buffer = map(deltaFile);
+            checkHeader(buffer, DELTA_MAGIC, deltaFile);
+            if (buffer.getInt(12) == generation) {
+                end = readRecords(buffer);
+                isValid = true;
+                if (end < buffer.limit()) {
+                    LOG.warn("Discarding incomplete records at " + end + " of " + deltaFile);
+                }
+            }
+        }
+
+        deltaChannel = new RandomAccessFile(deltaFile, "rw").getChannel();
+        if (isValid) {
+            deltaChannel.truncate(end);
+            deltaChannel.position(end);
+        } else {
+            resetDeltaLog();
+        }
+    }
+
+    private void resetDeltaLog() throws IOException {
+        deltaChannel.truncate(0);
+        deltaChannel.position(0);
+        writeFully(deltaChannel, newHeader(DELTA_MAGIC));
+        deltaChannel.force(true);
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        if (file.length() < HEADER_SIZE || file.length() > Integer.MAX_VALUE) {
+            throw new IOException("Invalid size " + file.length() + " of " + file);
+        }
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            // the mapping stays valid after the file is closed
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static void checkHeader(ByteBuffer buffer, int magic, File file) throws IOException {
+        if (buffer.getInt(0) != magic) {
+            throw new IOException(file + " is not a file of a binary store");
+        } else if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version " + buffer.getInt(4) + " of " + file);
+        }
+    }
+
+    private ByteBuffer newHeader(int magic) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(magic);
+        header.putInt(FORMAT_VERSION);
+        header.putInt(model.getVersion());
+        header.putInt(generation);
+        header.putLong(getUuid().getMostSignificantBits());
+        header.putLong(getUuid().getLeastSignificantBits());
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Applies the records of the complete transactions of a snapshot or delta log to the cache nodes.
+     *
+     * @return the position after the last complete transaction
+     */
+    private int readRecords(ByteBuffer buffer) {
+        return LogRecordFormat.readTransactions(buffer, HEADER_SIZE, new LogRecordFormat.TransactionHandler() {
+            @Override
+            public void onTransaction(ByteBuffer buffer, List<Integer> recordPositions, long transactionNextID) {
+                nextID = Math.max(nextID, transactionNextID);
+                for (int position : recordPositions) {
+                    Entity<?> entity = format.getEntity(buffer, position);
+                    ObjectID objectID = createObjectID(entity, LogRecordFormat.getID(buffer, position));
+                    if (LogRecordFormat.getType(buffer, position) == LogRecordFormat.RECORD_PUT) {
+                        addCacheNode(format.readNode(buffer, position, objectID));
+                    } else {
+                        removeCacheNode(new StoreCacheNode(objectID));
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized Object createReferenceObjectForManagedObject(ManagedObject object) {
+        return nextID++;
+    }
+
+    @Override
+    protected synchronized void saveChanges(Collection<StoreCacheNode> changedNodes, Collection<StoreCacheNode> deletedNodes) {
+        ByteBuffer out = writeBuffer;
+        out.clear();
+        for (StoreCacheNode node : changedNodes) {
+            out = writePut(out, node);
+        }
+        for (StoreCacheNode node : deletedNodes) {
+            ObjectID objectID = node.getID();
+            out = format.writeDelete(out, objectID.getEntity(), (Long) getReferenceObjectForObjectID(objectID));
+        }
+        int length = out.position();
+        out = format.writeCommit(out, nextID, LogRecordFormat.checksum(out, 0, length));
+        writeBuffer = out;
+        out.flip();
+
+        try {
+            long start = deltaChannel.position();
+            try {
+                writeFully(deltaChannel, out);
+            } catch (IOException e) {
+                // don't leave a partial transaction in front of the next one
+                deltaChannel.truncate(start);
+                deltaChannel.position(start);
+                throw e;
+            }
+            if (forceOnSave) {
+                deltaChannel.force(false);
+            }
+
+            if (deltaChannel.position() > Math.max(snapshotSize, MIN_CHECKPOINT_SIZE)) {
+                checkpoint();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not save to " + deltaFile, e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of all the objects of the store and empties the delta log.
+     */
+    @Override
+    public synchronized void save() {
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not save " + file, e);
+        }
+    }
+
+    private void checkpoint() throws IOException {
+        generation++;
+        try {
+            writeSnapshot();
+        } catch (IOException e) {
+            generation--;
+            throw e;
+        }
+        resetDeltaLog();
+    }
+
+    /**
+     * Writes all the cache nodes to a temporary file, which then replaces the snapshot file. The nodes are written in
+     * chunks, so a large store doesn't need a buffer of the size of the snapshot.
+     */
+    private void writeSnapshot() throws IOException {
+        File tempFile = new File(file.getPath() + TEMP_FILE_SUFFIX);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            channel.truncate(0);
+            writeFully(channel, newHeader(SNAPSHOT_MAGIC));
+
+            CRC32 crc = new CRC32();
+            ByteBuffer out = writeBuffer;
+            out.clear();
+            for (StoreCacheNode node : getCacheNodes()) {
+                out = writePut(out, node);
+                if (out.position() >= out.capacity() / 2) {
+                    crc.update(out.array(), out.arrayOffset(), out.position());
+                    out.flip();
+                    writeFully(channel, out);
+                    out.clear();
+                }
+            }
+            crc.update(out.array(), out.arrayOffset(), out.position());
+            out = format.writeCommit(out, nextID, (int) crc.getValue());
+            writeBuffer = out;
+            out.flip();
+            writeFully(channel, out);
+
+            channel.force(true);
+            snapshotSize = channel.size();
+        } finally {
+            randomAccessFile.close();
+        }
+
+        if (!tempFile.renameTo(file)) {
+            // some platforms don't replace an existing file when renaming
+            if (!file.delete() || !tempFile.renameTo(file)) {
+                throw new IOException("Could not replace " + file + " with " + tempFile);
+            }
+        }
+    }
+
+    private ByteBuffer writePut(ByteBuffer out, StoreCacheNode node) {
+        ObjectID objectID = node.getID();
+        Entity<?> entity = objectID.getEntity();
+        Property[] properties = format.getStoredProperties(entity);
+        Object[] values = new Object[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            values[i] = node.getProperty(properties[i].getName());
+        }
+        return format.writePut(out, entity, (Long) getReferenceObjectForObjectID(objectID), values);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    /**
+     * Closes the delta log. The store must not be used afterwards.
+     */
+    public synchronized void close() {
+        if (deltaChannel != null) {
+            try {
+                deltaChannel.close();
+            } catch (IOException e) {
+                LOG.warn("Could not close " + deltaFile, e);
+            }
+            deltaChannel = null;
+        }
+    }
+}
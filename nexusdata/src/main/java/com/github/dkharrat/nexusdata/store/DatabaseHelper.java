@@ -3,16 +3,10 @@ package com.github.dkharrat.nexusdata.store;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
-import android.database.sqlite.SQLiteCursor;
-import android.database.sqlite.SQLiteCursorDriver;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteQuery;
 import com.github.dkharrat.nexusdata.core.ManagedObject;
 import com.github.dkharrat.nexusdata.metamodel.Entity;
 import com.github.dkharrat.nexusdata.metamodel.ObjectModel;
-import com.github.dkharrat.nexusdata.metamodel.Property;
-import com.github.dkharrat.nexusdata.metamodel.Relationship;
-import com.github.dkharrat.nexusdata.utils.SqlTableBuilder;
 import com.github.dkharrat.nexusdata.utils.android.CursorUtil;
 import com.github.dkharrat.nexusdata.utils.android.SQLiteDatabaseHelper;
 import org.slf4j.Logger;
@@ -25,33 +19,26 @@ class DatabaseHelper extends SQLiteDatabaseHelper {
 
     private static final Logger LOG = LoggerFactory.getLogger(DatabaseHelper.class);
 
-    private static final boolean DEBUG_QUERIES = false;
-
-    private static final String METADATA_TABLE_NAME = "nxs_metadata";
-    private static final String METADATA_COLUMN_VERSION = "version";
-    private static final String METADATA_COLUMN_UUID = "uuid";
-
-    private static final String ENTITY_TABLE_NAME = "nxs_entity";
-    private static final String ENTITY_COLUMN_ID = "_id";
-    private static final String ENTITY_COLUMN_NAME = "name";
-
     private ObjectModel model;
+    private final ValueEncoding valueEncoding;
 
-    DatabaseHelper(Context context, File path, ObjectModel model) {
-        super(context, path, DEBUG_QUERIES ? new SQLiteCursorLoggerFactory() : null, model.getVersion());
+    DatabaseHelper(Context context, File path, ObjectModel model, ValueEncoding valueEncoding) {
+        super(context, path, null, model.getVersion());
         this.model = model;
+        this.valueEncoding = valueEncoding;
     }
 
     static <T extends ManagedObject> String getTableName(Entity<T> entity) {
-        return entity.getTopMostSuperEntity().getType().getSimpleName();
+        return SqlSchema.getTableName(entity);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
         LOG.info("Creating database: " + db.getPath());
 
-        createMetadataTable(db);
-        createEntityInfoTable(db);
+        execSQL(db, SqlSchema.getCreateMetadataTableSql());
+        execSQL(db, SqlSchema.getCreateEntityInfoTableSql());
+        execSQL(db, SqlSchema.getCreateStoreInfoTableSql());
 
         Map<Entity<?>, Integer> entityIDMap = generateEntityIDs(db);
 
@@ -59,69 +46,148 @@ class DatabaseHelper extends SQLiteDatabaseHelper {
             if (!entity.isBaseEntity()) {
                 continue;
             }
-            createEntityTable(db, entity, entityIDMap);
+            execSQL(db, SqlSchema.getCreateEntityTableSql(entity, entityIDMap, valueEncoding));
         }
 
+        setStoreInfo(db, SqlSchema.STORE_INFO_VALUE_ENCODING, valueEncoding.name());
         generateMetadata(db);
     }
 
-    private void createMetadataTable(SQLiteDatabase db) {
-        // create the metadata table
-        SqlTableBuilder tableBuilder = new SqlTableBuilder();
-        tableBuilder.tableName(METADATA_TABLE_NAME);
-        tableBuilder.column(METADATA_COLUMN_VERSION, SqlTableBuilder.ColumnType.INTEGER).setUnique(SqlTableBuilder.ConflictAction.ABORT);
-        tableBuilder.column(METADATA_COLUMN_UUID, SqlTableBuilder.ColumnType.TEXT);
-        tableBuilder.createTable(db);
+    /**
+     * Returns the value of the specified store setting, or null if it is not set.
+     */
+    static String getStoreInfo(SQLiteDatabase db, String name) {
+        Cursor cursor = db.query(SqlSchema.STORE_INFO_TABLE_NAME, new String[]{SqlSchema.STORE_INFO_COLUMN_VALUE}, SqlSchema.STORE_INFO_COLUMN_NAME + "=?", new String[]{name}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
     }
 
-    private void createEntityInfoTable(SQLiteDatabase db) {
-        SqlTableBuilder tableBuilder = new SqlTableBuilder();
-        tableBuilder.tableName(ENTITY_TABLE_NAME);
-        tableBuilder.primaryKey(ENTITY_COLUMN_ID, SqlTableBuilder.ColumnType.INTEGER);
-        tableBuilder.column(ENTITY_COLUMN_NAME, SqlTableBuilder.ColumnType.TEXT);
-        tableBuilder.createTable(db);
+    static void setStoreInfo(SQLiteDatabase db, String name, String value) {
+        ContentValues values = new ContentValues();
+        values.put(SqlSchema.STORE_INFO_COLUMN_NAME, name);
+        values.put(SqlSchema.STORE_INFO_COLUMN_VALUE, value);
+        db.replace(SqlSchema.STORE_INFO_TABLE_NAME, null, values);
     }
 
-    private void createEntityTable(SQLiteDatabase db, Entity<?> entity, Map<Entity<?>, Integer> entityIDMap) {
-        SqlTableBuilder tableBuilder = new SqlTableBuilder();
-        tableBuilder.tableName(getTableName(entity));
-        tableBuilder.primaryKey(AndroidSqlPersistentStore.ID_COLUMN_NAME, SqlTableBuilder.ColumnType.INTEGER);
-        tableBuilder.column(AndroidSqlPersistentStore.ENTITY_COLUMN_NAME, SqlTableBuilder.ColumnType.INTEGER).setNullable(false);
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        // indexes are (re-)created on open, so that databases created before an index was added get it too
+        if (!db.isReadOnly()) {
+            Map<Entity<?>, Integer> entityIDMap = getEntityIDs(db);
+            execSQL(db, SqlSchema.getCreateStoreInfoTableSql());
+            initNextIDs(db);
+            migrateValueEncoding(db, entityIDMap);
+            for (String sql : SqlSchema.getCreateIndexesSql(model, entityIDMap)) {
+                execSQL(db, sql);
+            }
+        }
+    }
 
-        for (Property property : Utils.getPropertiesOfEntityAndItsChildren(entity)) {
-            SqlTableBuilder.ColumnType columnType;
-            Class<?> propType = property.getType();
+    /**
+     * Reserves a block of consecutive IDs for new rows of the specified table. The next ID of each table is kept in
+     * the store info table and advanced past the block in the same transaction, so that a reserved ID is never handed
+     * out again, even by another process using the database.
+     *
+     * @return the first ID of the reserved block
+     */
+    static long reserveIDs(SQLiteDatabase db, String tableName, long count) {
+        db.beginTransaction();
+        try {
+            long firstID = getNextID(db, tableName);
+            setStoreInfo(db, SqlSchema.STORE_INFO_NEXT_ID_PREFIX + tableName, String.valueOf(firstID + count));
+            db.setTransactionSuccessful();
+            return firstID;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static long getNextID(SQLiteDatabase db, String tableName) {
+        String nextID = getStoreInfo(db, SqlSchema.STORE_INFO_NEXT_ID_PREFIX + tableName);
+        if (nextID != null) {
+            return Long.parseLong(nextID);
+        }
+
+        // databases created by earlier versions generated IDs with AUTOINCREMENT, which never re-uses the IDs of
+        // deleted rows, so continue after the last ID it generated
+        long lastID = queryLong(db, "SELECT MAX(" + SqlSchema.ID_COLUMN_NAME + ") FROM " + tableName);
+        if (queryLong(db, "SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name='sqlite_sequence'") > 0) {
+            lastID = Math.max(lastID, queryLong(db, "SELECT seq FROM sqlite_sequence WHERE name=?", tableName));
+        }
+        return lastID + 1;
+    }
 
-            if (property.isRelationship()) {
-                Relationship relationship = (Relationship) property;
-                if (relationship.isToOne()) {
-                    columnType = SqlTableBuilder.ColumnType.INTEGER;
-                } else {
-                    continue;
+    /**
+     * Records the next ID of the tables that don't have one yet, before their AUTOINCREMENT sequence may be lost by
+     * re-creating them without it (see {@link #migrateValueEncoding}).
+     */
+    private void initNextIDs(SQLiteDatabase db) {
+        for (Entity<?> entity : model.getEntities()) {
+            if (entity.isBaseEntity()) {
+                String tableName = getTableName(entity);
+                if (getStoreInfo(db, SqlSchema.STORE_INFO_NEXT_ID_PREFIX + tableName) == null) {
+                    setStoreInfo(db, SqlSchema.STORE_INFO_NEXT_ID_PREFIX + tableName, String.valueOf(getNextID(db, tableName)));
                 }
             }
-            else if (int.class.isAssignableFrom(propType) || Integer.class.isAssignableFrom(propType) ||
-                    long.class.isAssignableFrom(propType) || Long.class.isAssignableFrom(propType)) {
-                columnType = SqlTableBuilder.ColumnType.INTEGER;
-            } else if (String.class.isAssignableFrom(propType) || Enum.class.isAssignableFrom(propType)) {
-                columnType = SqlTableBuilder.ColumnType.TEXT;
-            } else if (boolean.class.isAssignableFrom(propType) || Boolean.class.isAssignableFrom(propType)) {
-                columnType = SqlTableBuilder.ColumnType.BOOLEAN;
-            } else if (float.class.isAssignableFrom(propType) || Float.class.isAssignableFrom(propType)) {
-                columnType = SqlTableBuilder.ColumnType.REAL;
-            } else if (double.class.isAssignableFrom(propType) || Double.class.isAssignableFrom(propType)) {
-                columnType = SqlTableBuilder.ColumnType.REAL;
-            } else if (Date.class.isAssignableFrom(property.getType())) {
-                columnType = SqlTableBuilder.ColumnType.DATETIME;
-            } else {
-                throw new UnsupportedOperationException("Unsupported field type " + property.getType() + " for " + entity.getType());
+        }
+    }
+
+    /**
+     * Returns the integer of the first column of the first row of the specified query, or 0 if it has no rows or the
+     * value is null.
+     */
+    private static long queryLong(SQLiteDatabase db, String sql, String... selectionArgs) {
+        Cursor cursor = db.rawQuery(sql, selectionArgs);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the encoding of the values stored in the database. Databases created before the encoding was recorded
+     * use the text encoding.
+     */
+    static ValueEncoding getValueEncoding(SQLiteDatabase db) {
+        String encoding = getStoreInfo(db, SqlSchema.STORE_INFO_VALUE_ENCODING);
+        return encoding == null ? ValueEncoding.TEXT : ValueEncoding.valueOf(encoding);
+    }
+
+    /**
+     * Converts the stored values to the encoding of this helper, if the database uses a different one (see
+     * {@link SqlSchema#getMigrateValueEncodingSql}).
+     */
+    private void migrateValueEncoding(SQLiteDatabase db, Map<Entity<?>, Integer> entityIDMap) {
+        ValueEncoding storedEncoding = getValueEncoding(db);
+        if (storedEncoding == valueEncoding) {
+            return;
+        }
+
+        LOG.info("Migrating values of " + db.getPath() + " from " + storedEncoding + " to " + valueEncoding + " encoding");
+        db.beginTransaction();
+        try {
+            for (Entity<?> entity : model.getEntities()) {
+                if (entity.isBaseEntity()) {
+                    for (String sql : SqlSchema.getMigrateValueEncodingSql(entity, entityIDMap, storedEncoding, valueEncoding)) {
+                        execSQL(db, sql);
+                    }
+                }
             }
 
-            int entityID = entityIDMap.get(property.getEntity());
-            tableBuilder.column(property.getName() + "_" + entityID, columnType);
+            setStoreInfo(db, SqlSchema.STORE_INFO_VALUE_ENCODING, valueEncoding.name());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
+    }
 
-        tableBuilder.createTable(db);
+    private static void execSQL(SQLiteDatabase db, String sql) {
+        LOG.debug("Executing: " + sql);
+        db.execSQL(sql);
     }
 
     private Map<Entity<?>, Integer> generateEntityIDs(SQLiteDatabase db) {
@@ -129,9 +195,9 @@ class DatabaseHelper extends SQLiteDatabaseHelper {
         int entityID = 1;
         for (Entity<?> entity : model.getEntities()) {
             ContentValues entityMetadataValues = new ContentValues();
-            entityMetadataValues.put(ENTITY_COLUMN_ID, entityID);
-            entityMetadataValues.put(ENTITY_COLUMN_NAME, entity.getName());
-            db.insert(ENTITY_TABLE_NAME, null, entityMetadataValues);
+            entityMetadataValues.put(SqlSchema.ENTITY_TABLE_COLUMN_ID, entityID);
+            entityMetadataValues.put(SqlSchema.ENTITY_TABLE_COLUMN_NAME, entity.getName());
+            db.insert(SqlSchema.ENTITY_TABLE_NAME, null, entityMetadataValues);
             entityIDMap.put(entity, entityID);
             entityID++;
         }
@@ -142,10 +208,10 @@ class DatabaseHelper extends SQLiteDatabaseHelper {
     Map<Entity<?>, Integer> getEntityIDs(SQLiteDatabase db) {
         Map<Entity<?>, Integer> entityIDs = new HashMap<>();
 
-        Cursor cursor = db.query(ENTITY_TABLE_NAME, null, null, null, null, null, null);
+        Cursor cursor = db.query(SqlSchema.ENTITY_TABLE_NAME, null, null, null, null, null, null);
         while (cursor.moveToNext()) {
-            int entityID = CursorUtil.getInt(cursor, ENTITY_COLUMN_ID);
-            String entityName = CursorUtil.getString(cursor, ENTITY_COLUMN_NAME);
+            int entityID = CursorUtil.getInt(cursor, SqlSchema.ENTITY_TABLE_COLUMN_ID);
+            String entityName = CursorUtil.getString(cursor, SqlSchema.ENTITY_TABLE_COLUMN_NAME);
             entityIDs.put(model.getEntity(entityName), entityID);
         }
 
@@ -156,9 +222,9 @@ class DatabaseHelper extends SQLiteDatabaseHelper {
         UUID uuid = UUID.randomUUID();
 
         ContentValues metadataValues = new ContentValues();
-        metadataValues.put(METADATA_COLUMN_VERSION, model.getVersion());
-        metadataValues.put(METADATA_COLUMN_UUID, uuid.toString());
-        db.insert(METADATA_TABLE_NAME, null, metadataValues);
+        metadataValues.put(SqlSchema.METADATA_COLUMN_VERSION, model.getVersion());
+        metadataValues.put(SqlSchema.METADATA_COLUMN_UUID, uuid.toString());
+        db.insert(SqlSchema.METADATA_TABLE_NAME, null, metadataValues);
 
         return uuid;
     }
@@ -180,7 +246,7 @@ class DatabaseHelper extends SQLiteDatabaseHelper {
         String TABLES_SQL = "select 'drop table if exists ' || name || ';' from sqlite_master where type='table' "+
                 "and name not like 'android%' "+
                 "and name not like 'sqlite%' "+
-                "and name not like '"+METADATA_TABLE_NAME+"';";
+                "and name not like '"+SqlSchema.METADATA_TABLE_NAME+"';";
         Cursor c = db.rawQuery(TABLES_SQL, null);
         while(c.moveToNext()) {
             String dropTableSql = c.getString(0);
@@ -191,23 +257,10 @@ class DatabaseHelper extends SQLiteDatabaseHelper {
 
     static UUID getDatabaseUuid(SQLiteDatabase db, int version) {
         UUID uuid = null;
-        Cursor cursor = db.query(METADATA_TABLE_NAME, null, METADATA_COLUMN_VERSION+"=?", new String[]{String.valueOf(version)}, null, null, null);
+        Cursor cursor = db.query(SqlSchema.METADATA_TABLE_NAME, null, SqlSchema.METADATA_COLUMN_VERSION+"=?", new String[]{String.valueOf(version)}, null, null, null);
         if (cursor.moveToFirst()) {
-            uuid = UUID.fromString(CursorUtil.getString(cursor, METADATA_COLUMN_UUID));
+            uuid = UUID.fromString(CursorUtil.getString(cursor, SqlSchema.METADATA_COLUMN_UUID));
         }
         return uuid;
     }
-
-    private static class SQLiteCursorLoggerFactory implements SQLiteDatabase.CursorFactory {
-
-        @SuppressWarnings("deprecation")
-        @Override
-        public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery,
-                                String editTable, SQLiteQuery query) {
-            LOG.debug(query.toString());
-
-            // non-deprecated API is only available in API 11
-            return new SQLiteCursor(db, masterQuery, editTable, query);
-        }
-    }
 }
@@ -0,0 +1,910 @@
+package com.github.dkharrat.nexusdata.store;
+
+import com.github.dkharrat.nexusdata.core.*;
+import com.github.dkharrat.nexusdata.metamodel.Entity;
+import com.github.dkharrat.nexusdata.metamodel.Property;
+import com.github.dkharrat.nexusdata.metamodel.Relationship;
+import com.github.dkharrat.nexusdata.predicate.*;
+import com.github.dkharrat.nexusdata.utils.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Translates fetch requests into SQL queries. Each store has its own service, which caches the compiled SQL of recently
+ * executed requests by their shape: the entity, the predicate (or the template it was created from), the sort order and
+ * whether there is a limit. The values in the predicate are bound as positional parameters, so that requests that only
+ * differ in their values re-use the same SQL, which in turn lets SQLite re-use its prepared statement.
+ */
+class DatabaseQueryService {
+    private static final Logger LOG = LoggerFactory.getLogger(DatabaseQueryService.class);
+
+    private static final int MAX_CACHED_QUERIES = 64;
+
+    /**
+     * A SQL query string along with the arguments to bind to its parameters. Each argument is a Long, Double, String,
+     * byte array or null, to be bound with its SQL type (see {@link TypedArgsCursorFactory}).
+     */
+    static final class Query {
+        final String sql;
+        final Object[] args;
+
+        Query(String sql, Object[] args) {
+            this.sql = sql;
+            this.args = args;
+        }
+    }
+
+    private final IncrementalStore store;
+    private final Map<Entity<?>,Integer> entityToIDMap;
+    private final ValueEncoding valueEncoding;
+    private final Map<QueryKey,CompiledQuery> cache = new LinkedHashMap<QueryKey,CompiledQuery>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<QueryKey,CompiledQuery> eldest) {
+            return size() > MAX_CACHED_QUERIES;
+        }
+    };
+
+    /**
+     * Creates the query service of a store.
+     *
+     * @param store             the store, which provides the reference objects (row IDs) of compared objects
+     * @param entityToIDMap     the IDs of the entities in the database, which are part of the column names
+     * @param valueEncoding     the encoding of the values stored in the database
+     */
+    DatabaseQueryService(IncrementalStore store, Map<Entity<?>,Integer> entityToIDMap, ValueEncoding valueEncoding) {
+        this.store = store;
+        this.entityToIDMap = entityToIDMap;
+        this.valueEncoding = valueEncoding;
+    }
+
+    <T extends ManagedObject> Query buildQuery(String tableName, FetchRequest<T> request) {
+        // a predicate created from a template is compiled from the template, with its variables bound as parameters
+        PredicateTemplate template = request.getPredicateTemplate();
+        Predicate predicate;
+        Map<String,?> variables;
+        if (template != null) {
+            predicate = template.getPredicate();
+            variables = request.getSubstitutionVariables();
+        } else {
+            predicate = request.getPredicate();
+            variables = Collections.emptyMap();
+        }
+
+        QueryKey key = new QueryKey(request, template != null ? template : predicate, getVariablesShape(variables));
+        CompiledQuery compiledQuery;
+        synchronized (cache) {
+            compiledQuery = cache.get(key);
+        }
+
+        if (compiledQuery == null) {
+            compiledQuery = compile(tableName, request, predicate, variables);
+            synchronized (cache) {
+                cache.put(key, compiledQuery);
+            }
+        }
+
+        return compiledQuery.bind(this, variables, request);
+    }
+
+    private <T extends ManagedObject> CompiledQuery compile(String tableName, FetchRequest<T> request, Predicate predicate, Map<String,?> variables) {
+
+        LOG.debug("Constructing SQL query for request: " + request);
+
+        boolean hasLimit = request.getLimit() != Integer.MAX_VALUE || request.getOffset() != 0;
+
+        String orderBy = null;
+        if (request.hasSortDescriptors()) {
+            List<String> orderBys = new ArrayList<String>();
+            for (SortDescriptor sortDesc : request.getSortDescriptors()) {
+                String orderType = sortDesc.isAscending() ? " ASC" : " DESC";
+                String columnName = getColumnName(request.getEntity(), entityToIDMap, sortDesc.getAttributeName());
+                orderBys.add(tableName + "." + columnName + orderType);
+            }
+
+            orderBy = StringUtil.join(orderBys, ",");
+        }
+
+        String selection = getEntityIDsCondition(this, tableName, request.getEntity());
+        List<Parameter> parameters = Collections.emptyList();
+        String tables = tableName;
+        if (predicate != null) {
+            QueryBuilder queryBuilder = new QueryBuilder(this, tableName, request.getEntity(), variables);
+            QueryParts queryParts = queryBuilder.visit(predicate);
+
+            selection += " AND " + queryParts.stringBuilder.toString();
+            parameters = queryParts.params;
+            tables += queryBuilder.getJoins();
+        }
+
+        // only the columns of the queried table are selected, if others are joined
+        StringBuilder sql = new StringBuilder("SELECT ").append(tableName).append(".* FROM ").append(tables);
+        sql.append(" WHERE ").append(selection);
+        if (orderBy != null) {
+            sql.append(" ORDER BY ").append(orderBy);
+        }
+        if (hasLimit) {
+            // offset and limit are bound as the last parameters
+            sql.append(" LIMIT ?,?");
+        }
+
+        return new CompiledQuery(sql.toString(), parameters.toArray(new Parameter[parameters.size()]), hasLimit);
+    }
+
+    /**
+     * Returns a description of the variable values that affect the structure of the generated SQL (e.g. a null value
+     * is compared with "IS NULL", and a collection expands to one parameter per element). Requests whose variables
+     * have the same shape can share the same compiled query.
+     */
+    private static String getVariablesShape(Map<String,?> variables) {
+        if (variables.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder shape = new StringBuilder();
+        for (Map.Entry<String,?> entry : new TreeMap<String,Object>(variables).entrySet()) {
+            Object value = entry.getValue();
+            shape.append(entry.getKey()).append(':');
+            if (value == null) {
+                shape.append('N');
+            } else if (value instanceof Collection) {
+                int count = 0;
+                for (Object element : (Collection<?>) value) {
+                    if (element != null) {
+                        count++;
+                    }
+                }
+                shape.append('C').append(count);
+            } else if (value instanceof String && getPrefixUpperBound((String) value) == null) {
+                shape.append('S');  // can't be translated to a range for BEGINSWITH
+            } else {
+                shape.append('V');
+            }
+            shape.append(';');
+        }
+        return shape.toString();
+    }
+
+    /**
+     * The shape of a fetch request, used as the key of compiled queries. The predicate (or template) is compared by
+     * identity, since templates are cached, and requests are typically re-executed with the same predicate instance.
+     */
+    private static final class QueryKey {
+        private final Entity<?> entity;
+        private final Object predicate;
+        private final String variablesShape;
+        private final List<SortDescriptor> sortDescriptors;
+        private final boolean hasLimit;
+
+        QueryKey(FetchRequest<?> request, Object predicate, String variablesShape) {
+            this.entity = request.getEntity();
+            this.predicate = predicate;
+            this.variablesShape = variablesShape;
+            this.sortDescriptors = new ArrayList<SortDescriptor>(request.getSortDescriptors());
+            this.hasLimit = request.getLimit() != Integer.MAX_VALUE || request.getOffset() != 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            QueryKey that = (QueryKey) o;
+
+            if (hasLimit != that.hasLimit) return false;
+            if (predicate != that.predicate) return false;
+            if (!entity.equals(that.entity)) return false;
+            if (!variablesShape.equals(that.variablesShape)) return false;
+            if (!sortDescriptors.equals(that.sortDescriptors)) return false;
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = entity.hashCode();
+            result = 31 * result + System.identityHashCode(predicate);
+            result = 31 * result + variablesShape.hashCode();
+            result = 31 * result + sortDescriptors.hashCode();
+            result = 31 * result + (hasLimit ? 1 : 0);
+            return result;
+        }
+    }
+
+    /**
+     * The SQL of a fetch request, along with how to compute the values of its parameters for a particular request.
+     */
+    private static final class CompiledQuery {
+        private final String sql;
+        private final Parameter[] parameters;
+        private final boolean hasLimit;
+
+        CompiledQuery(String sql, Parameter[] parameters, boolean hasLimit) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.hasLimit = hasLimit;
+        }
+
+        Query bind(DatabaseQueryService service, Map<String,?> variables, FetchRequest<?> request) {
+            int argCount = parameters.length + (hasLimit ? 2 : 0);
+            if (argCount == 0) {
+                return new Query(sql, null);
+            }
+
+            Object[] args = new Object[argCount];
+            for (int i = 0; i < parameters.length; i++) {
+                args[i] = parameters[i].getValue(service, variables);
+            }
+            if (hasLimit) {
+                args[parameters.length] = (long) request.getOffset();
+                args[parameters.length + 1] = (long) request.getLimit();
+            }
+            return new Query(sql, args);
+        }
+    }
+
+    /**
+     * Computes the value of a SQL parameter, either from a constant in the predicate, or from the value of a variable
+     * of the request.
+     */
+    private static abstract class Parameter {
+        abstract Object getValue(DatabaseQueryService service, Map<String,?> variables);
+    }
+
+    private static final class ConstantParameter extends Parameter {
+        private final Object value;
+        private final ValueConversion conversion;
+        private final int elementIndex;
+        private final Class<?> attributeType;
+
+        ConstantParameter(Object value, ValueConversion conversion, int elementIndex, Class<?> attributeType) {
+            this.value = value;
+            this.conversion = conversion;
+            this.elementIndex = elementIndex;
+            this.attributeType = attributeType;
+        }
+
+        @Override
+        Object getValue(DatabaseQueryService service, Map<String,?> variables) {
+            // converted on each execution, since the reference of a managed object changes once it is saved
+            return conversion.convert(service, value, elementIndex, attributeType);
+        }
+    }
+
+    private static final class VariableParameter extends Parameter {
+        private final String name;
+        private final ValueConversion conversion;
+        private final int elementIndex;
+        private final Class<?> attributeType;
+
+        VariableParameter(String name, ValueConversion conversion, int elementIndex, Class<?> attributeType) {
+            this.name = name;
+            this.conversion = conversion;
+            this.elementIndex = elementIndex;
+            this.attributeType = attributeType;
+        }
+
+        @Override
+        Object getValue(DatabaseQueryService service, Map<String,?> variables) {
+            return conversion.convert(service, variables.get(name), elementIndex, attributeType);
+        }
+    }
+
+    /**
+     * How the value of an operand is converted to the value of a parameter.
+     */
+    private enum ValueConversion {
+        VALUE,
+        LIST_ELEMENT,
+        PREFIX_UPPER_BOUND,
+        GLOB_PREFIX,
+        GLOB_SUFFIX,
+        GLOB_CONTAINS;
+
+        Object convert(DatabaseQueryService service, Object value, int elementIndex, Class<?> attributeType) {
+            switch (this) {
+                case LIST_ELEMENT:
+                    int index = 0;
+                    for (Object element : (Collection<?>) value) {
+                        if (element != null && index++ == elementIndex) {
+                            return toSqlArgument(service, element, attributeType);
+                        }
+                    }
+                    throw new IllegalStateException("Collection has fewer elements than its compiled query");
+                case PREFIX_UPPER_BOUND:
+                    return getPrefixUpperBound(value.toString());
+                case GLOB_PREFIX:
+                    return escapeGlob(value.toString()) + "*";
+                case GLOB_SUFFIX:
+                    return "*" + escapeGlob(value.toString());
+                case GLOB_CONTAINS:
+                    return "*" + escapeGlob(value.toString()) + "*";
+                default:
+                    return toSqlArgument(service, value, attributeType);
+            }
+        }
+    }
+
+    /**
+     * Returns the SQL argument for a value compared against an attribute of the specified type (or null if the type is
+     * unknown). Values are encoded like the store encodes stored values, and keep their SQL type. Since the predicate
+     * parser has no enum or date literals, strings compared against an enum are converted to the enum constant of that
+     * name, and numbers compared against a date are treated as milliseconds since the epoch, like in-memory evaluation
+     * does.
+     */
+    private static Object toSqlArgument(DatabaseQueryService service, Object value, Class<?> attributeType) {
+        if (value instanceof ManagedObject) {
+            ManagedObject relatedObject = (ManagedObject)value;
+            return service.store.getReferenceObjectForObjectID(relatedObject.getID());
+        }
+
+        if (attributeType != null) {
+            if (attributeType.isEnum() && value instanceof String) {
+                value = toEnumConstant(attributeType, (String)value);
+            } else if (Date.class.isAssignableFrom(attributeType) && value instanceof Number) {
+                value = new Date(((Number)value).longValue());
+            }
+        }
+        value = service.valueEncoding.encode(value);
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal)value).doubleValue();
+        } else if (value instanceof Number || value instanceof byte[]) {
+            return value;
+        }
+        return value.toString();
+    }
+
+    /**
+     * Returns the constant of an enum with the specified name. If there is no such constant, the name is returned, which
+     * doesn't equal the stored value of any constant in either encoding, so that the comparison matches nothing.
+     */
+    private static Object toEnumConstant(Class<?> enumType, String name) {
+        for (Object constant : enumType.getEnumConstants()) {
+            if (((Enum<?>)constant).name().equals(name)) {
+                return constant;
+            }
+        }
+        return name;
+    }
+
+    private static String getEntityIDsCondition(final DatabaseQueryService service, String tableName, Entity<?> entity) {
+        return tableName + "." + SqlSchema.ENTITY_COLUMN_NAME + " IN (" + StringUtil.join(getEntityInheritanceIDs(service, entity), ",") + ")";
+    }
+
+    private static Collection<Integer> getEntityInheritanceIDs(final DatabaseQueryService service, Entity<?> entity) {
+        List<Integer> entityIDs = new ArrayList<>();
+
+        entityIDs.add(service.entityToIDMap.get(entity));
+        for (Entity<?> childEntity : Utils.getAllChildEntities(entity, new ArrayList<Entity<?>>())) {
+            entityIDs.add(service.entityToIDMap.get(childEntity));
+        }
+
+        return entityIDs;
+    }
+
+    private static String getColumnName(Entity<?> entity, Map<Entity<?>,Integer> entityIDMap, String fieldName) {
+        if (entity.getSuperEntity() == null || !entity.getSuperEntity().hasProperty(fieldName)) {
+            return fieldName + "_" + entityIDMap.get(entity);
+        } else {
+            return getColumnName(entity.getSuperEntity(), entityIDMap, fieldName);
+        }
+    }
+
+    /**
+     * Returns the smallest string that is greater than all strings starting with the specified prefix, or null if there
+     * is no such string that can be safely compared by SQLite (e.g. the prefix is empty, or ends with U+FFFF or a
+     * surrogate, or incrementing its last character would produce a lone surrogate, which is not valid UTF-8).
+     */
+    static String getPrefixUpperBound(String prefix) {
+        if (prefix.isEmpty()) {
+            return null;
+        }
+        char lastChar = prefix.charAt(prefix.length() - 1);
+        char nextChar = (char)(lastChar + 1);
+        if (lastChar == Character.MAX_VALUE || Character.isSurrogate(lastChar) || Character.isSurrogate(nextChar)) {
+            return null;
+        }
+        return prefix.substring(0, prefix.length() - 1) + nextChar;
+    }
+
+    static String escapeGlob(String str) {
+        StringBuilder builder = new StringBuilder(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '*' || c == '?' || c == '[') {
+                builder.append('[').append(c).append(']');
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    private static class QueryParts {
+        private final StringBuilder stringBuilder = new StringBuilder();
+        private final List<Parameter> params = new ArrayList<Parameter>();
+    }
+
+    private static class QueryBuilder implements ExpressionVisitor<QueryParts> {
+
+        final DatabaseQueryService service;
+        final String tableName;
+        final Entity<?> entity;
+        final Map<String,?> variables;
+        final QueryParts queryParts = new QueryParts();
+
+        // the type of the attribute that the values being visited are compared against, if known
+        private Class<?> valueType;
+
+        // the builder of the enclosing query, if this builds a subquery
+        final QueryBuilder parent;
+        private int aliasCount = 0;
+
+        // the table aliases of the joined relationships, keyed by the key path leading to them (e.g. "company")
+        final Map<String,String> joinAliases = new HashMap<String,String>();
+        final StringBuilder joins = new StringBuilder();
+
+        QueryBuilder(DatabaseQueryService service, String tableName, Entity<?> entity, Map<String,?> variables) {
+            this(service, tableName, entity, variables, null);
+        }
+
+        private QueryBuilder(DatabaseQueryService service, String tableName, Entity<?> entity, Map<String,?> variables, QueryBuilder parent) {
+            this.service = service;
+            this.tableName = tableName;
+            this.entity = entity;
+            this.variables = variables;
+            this.parent = parent;
+        }
+
+        /**
+         * Returns a new table alias that is unique within the whole query, including its subqueries.
+         */
+        private String newAlias(String prefix) {
+            if (parent != null) {
+                return parent.newAlias(prefix);
+            }
+            return prefix + (++aliasCount);
+        }
+
+        /**
+         * Returns the JOIN clauses needed for the key paths referenced in the query, to be appended to the queried table.
+         */
+        String getJoins() {
+            return joins.toString();
+        }
+
+        /**
+         * Returns the alias of the table of the destination of a to-one relationship, joining it on first use. The
+         * join is a LEFT JOIN so that a null relationship results in null values, matching in-memory evaluation.
+         */
+        private String joinRelationship(String keyPath, String sourceAlias, Entity<?> sourceEntity, Relationship relationship) {
+            String alias = joinAliases.get(keyPath);
+            if (alias == null) {
+                alias = newAlias("j");
+                joinAliases.put(keyPath, alias);
+
+                joins.append(" LEFT JOIN ")
+                        .append(SqlSchema.getTableName(relationship.getDestinationEntity()))
+                        .append(" AS ").append(alias)
+                        .append(" ON ").append(alias).append(".").append(SqlSchema.ID_COLUMN_NAME)
+                        .append(" = ").append(sourceAlias).append(".")
+                        .append(getColumnName(sourceEntity, service.entityToIDMap, relationship.getName()));
+            }
+            return alias;
+        }
+
+        @Override
+        public QueryParts visit(ConstantExpression<?> expression) {
+            appendValue(expression);
+            return queryParts;
+        }
+
+        @Override
+        public QueryParts visit(VariableExpression expression) {
+            appendValue(expression);
+            return queryParts;
+        }
+
+        /**
+         * Indicates whether the expression is a value (a constant or a variable), rather than a value derived from the
+         * queried objects.
+         */
+        private boolean isValue(Expression<?> expression) {
+            return expression instanceof ConstantExpression || expression instanceof VariableExpression;
+        }
+
+        /**
+         * Returns the value of a constant or variable expression.
+         */
+        private Object valueOf(Expression<?> expression) {
+            if (expression instanceof VariableExpression) {
+                String name = ((VariableExpression) expression).getName();
+                if (!variables.containsKey(name)) {
+                    throw new IllegalStateException("Variable " + expression + " must be substituted before querying");
+                }
+                return variables.get(name);
+            }
+            return ((ConstantExpression<?>) expression).getValue();
+        }
+
+        private void appendValue(Expression<?> expression) {
+            Object value = valueOf(expression);
+            if (value == null) {
+                queryParts.stringBuilder.append("NULL");
+            } else if (value instanceof Collection) {
+                appendList(expression, (Collection<?>)value);
+            } else {
+                appendParam(expression, value, ValueConversion.VALUE, 0);
+            }
+        }
+
+        /**
+         * Appends a parameter for the value of a constant or variable expression. The value of the parameter is computed
+         * each time the compiled query is executed.
+         */
+        private void appendParam(Expression<?> expression, Object value, ValueConversion conversion, int elementIndex) {
+            queryParts.stringBuilder.append("?");
+            if (expression instanceof VariableExpression) {
+                queryParts.params.add(new VariableParameter(((VariableExpression) expression).getName(), conversion, elementIndex, valueType));
+            } else {
+                queryParts.params.add(new ConstantParameter(value, conversion, elementIndex, valueType));
+            }
+        }
+
+        private void appendList(Expression<?> expression, Collection<?> values) {
+            queryParts.stringBuilder.append("(");
+            int index = 0;
+            for (Object value : values) {
+                if (value == null) {
+                    continue;   // NULL never matches in a list, so skip it
+                }
+                if (index > 0) {
+                    queryParts.stringBuilder.append(",");
+                }
+                appendParam(expression, values, ValueConversion.LIST_ELEMENT, index);
+                index++;
+            }
+            queryParts.stringBuilder.append(")");
+        }
+
+        /**
+         * Returns the type of the attribute referenced by the specified expression, or null if it isn't an attribute.
+         */
+        private Class<?> getAttributeType(Expression<?> expression) {
+            if (!(expression instanceof FieldPathExpression)) {
+                return null;
+            }
+
+            FieldPathExpression fieldPath = (FieldPathExpression) expression;
+            List<String> components = fieldPath.getPathComponents();
+            Entity<?> curEntity = getKeyPathEntity(fieldPath, components.size() - 1);
+            String name = components.get(components.size() - 1);
+            if (!curEntity.hasProperty(name)) {
+                return null;
+            }
+            Property property = curEntity.getProperty(name);
+            return property.isRelationship() ? null : property.getType();
+        }
+
+        /**
+         * Returns the type of the attribute referenced by either of the specified expressions, against which the other
+         * expression is compared.
+         */
+        private Class<?> getComparedAttributeType(Expression<?> lhs, Expression<?> rhs) {
+            Class<?> type = getAttributeType(lhs);
+            return type != null ? type : getAttributeType(rhs);
+        }
+
+        @Override
+        public QueryParts visit(FieldPathExpression expression) {
+            List<String> components = expression.getPathComponents();
+
+            String alias = joinKeyPath(expression, components.size() - 1);
+            Entity<?> curEntity = getKeyPathEntity(expression, components.size() - 1);
+
+            String fieldName = components.get(components.size() - 1);
+            queryParts.stringBuilder.append(alias).append(".").append(getColumnName(curEntity, service.entityToIDMap, fieldName));
+            return queryParts;
+        }
+
+        /**
+         * Joins the to-one relationships of the first {@code count} components of the key path, and returns the alias
+         * of the table of the last one.
+         */
+        private String joinKeyPath(FieldPathExpression expression, int count) {
+            List<String> components = expression.getPathComponents();
+
+            String alias = tableName;
+            Entity<?> curEntity = entity;
+            for (int i = 0; i < count; i++) {
+                Relationship relationship = curEntity.getRelationship(components.get(i));
+                if (!relationship.isToOne()) {
+                    throw new UnsupportedOperationException("Key path '" + expression + "' can only traverse to-one relationships");
+                }
+                String keyPath = StringUtil.join(components.subList(0, i + 1), ".");
+                alias = joinRelationship(keyPath, alias, curEntity, relationship);
+                curEntity = relationship.getDestinationEntity();
+            }
+            return alias;
+        }
+
+        private Entity<?> getKeyPathEntity(FieldPathExpression expression, int count) {
+            Entity<?> curEntity = entity;
+            for (int i = 0; i < count; i++) {
+                curEntity = curEntity.getRelationship(expression.getPathComponents().get(i)).getDestinationEntity();
+            }
+            return curEntity;
+        }
+
+        /**
+         * Appends a correlated subquery over the objects of a to-many relationship, which selects them through the
+         * foreign key column of the inverse relationship. If an element predicate is specified, only the elements
+         * matching it (or not matching it, if negated) are selected.
+         */
+        private void appendRelationshipSubquery(String select, FieldPathExpression collection, Predicate elementPredicate, boolean negateElementPredicate) {
+            List<String> components = collection.getPathComponents();
+            String ownerAlias = joinKeyPath(collection, components.size() - 1);
+            Entity<?> ownerEntity = getKeyPathEntity(collection, components.size() - 1);
+
+            Relationship relationship = ownerEntity.getRelationship(components.get(components.size() - 1));
+            if (!relationship.isToMany()) {
+                throw new UnsupportedOperationException("'" + collection + "' is not a to-many relationship");
+            }
+            Relationship inverse = relationship.getInverse();
+            if (inverse == null || !inverse.isToOne()) {
+                throw new UnsupportedOperationException("To-many relationship '" + collection + "' must have a to-one inverse relationship");
+            }
+
+            Entity<?> elementEntity = relationship.getDestinationEntity();
+            String alias = newAlias("s");
+            QueryBuilder subBuilder = new QueryBuilder(service, alias, elementEntity, variables, this);
+            if (elementPredicate != null) {
+                subBuilder.visit(elementPredicate);
+            }
+
+            StringBuilder sb = queryParts.stringBuilder;
+            sb.append("(SELECT ").append(select)
+                    .append(" FROM ").append(SqlSchema.getTableName(elementEntity)).append(" AS ").append(alias)
+                    .append(subBuilder.getJoins())
+                    .append(" WHERE ").append(alias).append(".").append(getColumnName(elementEntity, service.entityToIDMap, inverse.getName()))
+                    .append(" = ").append(ownerAlias).append(".").append(SqlSchema.ID_COLUMN_NAME)
+                    .append(" AND ").append(getEntityIDsCondition(service, alias, elementEntity));
+            if (elementPredicate != null) {
+                // a NULL result of the element predicate is treated as false, like in-memory evaluation does
+                sb.append(negateElementPredicate ? " AND NOT COALESCE(" : " AND (")
+                        .append(subBuilder.queryParts.stringBuilder)
+                        .append(negateElementPredicate ? ", 0)" : ")");
+                queryParts.params.addAll(subBuilder.queryParts.params);
+            }
+            sb.append(")");
+        }
+
+        @Override
+        public QueryParts visit(QuantifiedPredicate predicate) {
+            switch (predicate.getQuantifier()) {
+                case ANY:
+                    queryParts.stringBuilder.append("EXISTS ");
+                    appendRelationshipSubquery("1", predicate.getCollection(), predicate.getPredicate(), false);
+                    break;
+                case ALL:
+                    // no element fails the predicate
+                    queryParts.stringBuilder.append("NOT EXISTS ");
+                    appendRelationshipSubquery("1", predicate.getCollection(), predicate.getPredicate(), true);
+                    break;
+                case NONE:
+                    queryParts.stringBuilder.append("NOT EXISTS ");
+                    appendRelationshipSubquery("1", predicate.getCollection(), predicate.getPredicate(), false);
+                    break;
+            }
+            return queryParts;
+        }
+
+        @Override
+        public QueryParts visit(CountExpression expression) {
+            appendRelationshipSubquery("COUNT(*)", expression.getCollection(), null, false);
+            return queryParts;
+        }
+
+        @Override
+        public QueryParts visit(ThisExpression expression) {
+            queryParts.stringBuilder.append(tableName).append(".").append(SqlSchema.ID_COLUMN_NAME);
+            return queryParts;
+        }
+
+        @Override
+        public QueryParts visit(CompoundPredicate predicate) {
+            String op = null;
+            switch(predicate.getOperator()) {
+                case AND:   op = " AND "; break;
+                case OR:    op = " OR "; break;
+            }
+
+            queryParts.stringBuilder.append("(");
+            visit(predicate.getLhs());
+            queryParts.stringBuilder.append(op);
+            visit(predicate.getRhs());
+            queryParts.stringBuilder.append(")");
+
+            return queryParts;
+        }
+
+        @Override
+        public QueryParts visit(ComparisonPredicate predicate) {
+            Class<?> outerValueType = valueType;
+            valueType = getComparedAttributeType(predicate.getLhs(), predicate.getRhs());
+            try {
+                return visitComparison(predicate);
+            } finally {
+                valueType = outerValueType;
+            }
+        }
+
+        private QueryParts visitComparison(ComparisonPredicate predicate) {
+            switch (predicate.getOperator()) {
+                case IN:
+                    return visitIn(predicate);
+                case BEGINS_WITH:
+                case ENDS_WITH:
+                case CONTAINS:
+                    return visitStringMatch(predicate);
+                default:
+                    break;
+            }
+
+            String op = null;
+            if (isValue(predicate.getRhs()) && valueOf(predicate.getRhs()) == null) {
+                switch(predicate.getOperator()) {
+                    case EQUAL:                 op = " IS "; break;
+                    case NOT_EQUAL:             op = " IS NOT "; break;
+                    default: throw new UnsupportedOperationException("Invalid operator " + op + " with 'null' comparison.");
+                }
+            } else {
+                switch(predicate.getOperator()) {
+                    case EQUAL:                 op = " = "; break;
+                    case GREATER_THAN:          op = " > "; break;
+                    case GREATER_THAN_OR_EQUAL: op = " >= "; break;
+                    case LESS_THAN:             op = " < "; break;
+                    case LESS_THAN_OR_EQUAL:    op = " <= "; break;
+                    case NOT_EQUAL:             op = " != "; break;
+                    case LIKE:                  op = " LIKE "; break;
+                    default: throw new UnsupportedOperationException("Unsupported operator: " + predicate.getOperator());
+                }
+            }
+
+            queryParts.stringBuilder.append("(");
+            visit(predicate.getLhs());
+            queryParts.stringBuilder.append(op);
+            visit(predicate.getRhs());
+            if (predicate.getOperator() == ComparisonPredicate.Operator.LIKE) {
+                queryParts.stringBuilder.append(" ESCAPE '\\'");
+            }
+            queryParts.stringBuilder.append(")");
+
+            return queryParts;
+        }
+
+        private QueryParts visitIn(ComparisonPredicate predicate) {
+            if (!isValue(predicate.getRhs()) || !(valueOf(predicate.getRhs()) instanceof Collection)) {
+                throw new UnsupportedOperationException("Right-hand side of IN must be a collection constant: " + predicate);
+            }
+
+            Collection<?> values = (Collection<?>)valueOf(predicate.getRhs());
+            if (values.isEmpty()) {
+                queryParts.stringBuilder.append("(0)");     // nothing can be in an empty collection
+                return queryParts;
+            }
+
+            queryParts.stringBuilder.append("(");
+            visit(predicate.getLhs());
+            queryParts.stringBuilder.append(" IN ");
+            appendList(predicate.getRhs(), values);
+            queryParts.stringBuilder.append(")");
+
+            return queryParts;
+        }
+
+        /**
+         * Translates BEGINSWITH, ENDSWITH and CONTAINS, which are case-sensitive. A prefix match is translated to a
+         * range comparison (e.g. "name >= 'ab' AND name < 'ac'"), so that it can use an index on the column. Other
+         * matches are translated to GLOB, since LIKE is case-insensitive in SQLite.
+         */
+        private QueryParts visitStringMatch(ComparisonPredicate predicate) {
+            Expression<?> rhs = predicate.getRhs();
+            if (!isValue(rhs) || valueOf(rhs) == null) {
+                throw new UnsupportedOperationException("Right-hand side of " + predicate.getOperator() + " must be a non-null constant: " + predicate);
+            }
+            Object value = valueOf(rhs);
+
+            queryParts.stringBuilder.append("(");
+            if (predicate.getOperator() == ComparisonPredicate.Operator.BEGINS_WITH && getPrefixUpperBound(value.toString()) != null) {
+                visit(predicate.getLhs());
+                queryParts.stringBuilder.append(" >= ");
+                appendParam(rhs, value, ValueConversion.VALUE, 0);
+                queryParts.stringBuilder.append(" AND ");
+                visit(predicate.getLhs());
+                queryParts.stringBuilder.append(" < ");
+                appendParam(rhs, value, ValueConversion.PREFIX_UPPER_BOUND, 0);
+            } else {
+                ValueConversion conversion;
+                switch (predicate.getOperator()) {
+                    case BEGINS_WITH:   conversion = ValueConversion.GLOB_PREFIX; break;
+                    case ENDS_WITH:     conversion = ValueConversion.GLOB_SUFFIX; break;
+                    default:            conversion = ValueConversion.GLOB_CONTAINS; break;
+                }
+                visit(predicate.getLhs());
+                queryParts.stringBuilder.append(" GLOB ");
+                appendParam(rhs, value, conversion, 0);
+            }
+            queryParts.stringBuilder.append(")");
+
+            return queryParts;
+        }
+
+        @Override
+        public QueryParts visit(BetweenPredicate predicate) {
+            Class<?> outerValueType = valueType;
+            valueType = getAttributeType(predicate.getExpression());
+
+            queryParts.stringBuilder.append("(");
+            visit(predicate.getExpression());
+            queryParts.stringBuilder.append(" BETWEEN ");
+            visit(predicate.getLowerBound());
+            queryParts.stringBuilder.append(" AND ");
+            visit(predicate.getUpperBound());
+            queryParts.stringBuilder.append(")");
+
+            valueType = outerValueType;
+            return queryParts;
+        }
+
+        @Override
+        public QueryParts visit(NotPredicate predicate) {
+            queryParts.stringBuilder.append("NOT (");
+            visit(predicate.getPredicate());
+            queryParts.stringBuilder.append(")");
+            return queryParts;
+        }
+
+        QueryParts visit(Predicate predicate) {
+            if (predicate instanceof CompoundPredicate) {
+                return visit((CompoundPredicate)predicate);
+            } else if (predicate instanceof ComparisonPredicate) {
+                return visit((ComparisonPredicate)predicate);
+            } else if (predicate instanceof NotPredicate) {
+                return visit((NotPredicate)predicate);
+            } else if (predicate instanceof BetweenPredicate) {
+                return visit((BetweenPredicate)predicate);
+            } else if (predicate instanceof QuantifiedPredicate) {
+                return visit((QuantifiedPredicate)predicate);
+            } else {
+                throw new UnsupportedOperationException("Unsupported predicate type: " + predicate);
+            }
+        }
+
+        QueryParts visit(Expression expression) {
+            if (expression instanceof ConstantExpression) {
+                return visit((ConstantExpression)expression);
+            } else if (expression instanceof FieldPathExpression) {
+                return visit((FieldPathExpression)expression);
+            } else if (expression instanceof ThisExpression) {
+                return visit((ThisExpression)expression);
+            } else if (expression instanceof VariableExpression) {
+                return visit((VariableExpression)expression);
+            } else if (expression instanceof CountExpression) {
+                return visit((CountExpression)expression);
+            } else {
+                throw new UnsupportedOperationException("Unsupported expression type: " + expression);
+            }
+        }
+    }
+}
@@ -0,0 +1,944 @@
+package com.github.dkharrat.nexusdata.store;
+
+import java.io.File;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.dkharrat.nexusdata.core.*;
+import com.github.dkharrat.nexusdata.metamodel.*;
+import com.github.dkharrat.nexusdata.utils.StringUtil;
+
+/**
+ * A persistent store backed by a SQLite database accessed through JDBC (e.g. with the Xerial sqlite-jdbc driver), so
+ * that the data layer can be used outside of Android, such as in server-side workers or in benchmarks on a build
+ * machine. The store uses the same schema and the same translation of fetch requests into SQL as
+ * {@link AndroidSqlPersistentStore}, so both stores can open the same database files.
+ * <p>
+ * Saved changes are written with batched statements, one batch per entity and kind of change. Prepared statements are
+ * cached and re-used, and fetched rows are streamed from the database in chunks of the fetch size (see
+ * {@link #setFetchSize(int)}), if the driver supports it. The store uses a single connection, so its operations are
+ * serialized.
+ */
+public class JdbcSqlPersistentStore extends IncrementalStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcSqlPersistentStore.class);
+
+    private static final int MAX_CACHED_STATEMENTS = 64;
+
+    /**
+     * The default number of rows fetched from the database at a time.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 100;
+
+    private final String url;
+    private final Properties connectionProperties;
+
+    private Connection connection;
+    private Map<Entity<?>,Integer> entityToIDMap = new HashMap<>();
+    private Map<Integer,Entity<?>> idToEntityMap = new HashMap<>();
+    private ValueEncoding valueEncoding = ValueEncoding.NATIVE;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private int idBlockSize = PermanentIDAllocator.DEFAULT_BLOCK_SIZE;
+    private PermanentIDAllocator idAllocator;
+    private DatabaseQueryService queryService;
+
+    // the prepared statements of recently executed SQL, keyed by their SQL and closed when evicted
+    private final Map<String,PreparedStatement> statements = new LinkedHashMap<String,PreparedStatement>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,PreparedStatement> eldest) {
+            if (size() > MAX_CACHED_STATEMENTS) {
+                closeStatement(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // the SQL of the statements used to fire faults and save changes, keyed by entity or relationship
+    private final Map<Entity<?>,String> objectValuesQueries = new HashMap<>();
+    private final Map<Relationship,String> relationshipQueries = new HashMap<>();
+    private final Map<Entity<?>,String> insertStatements = new HashMap<>();
+    private final Map<Entity<?>,String> updateStatements = new HashMap<>();
+
+    private final Map<Entity<?>,ResultSetDecoder> rowDecoders = new HashMap<>();
+
+    // TODO: use a MRU cache and also remove objects if they are unregistered from all contexts
+    private final Map<Class<?>, Map<Long,StoreCacheNode>> cache = new HashMap<Class<?>, Map<Long,StoreCacheNode>>();
+
+    /**
+     * Creates a store for the SQLite database at the specified location, accessed through the "jdbc:sqlite:" driver.
+     *
+     * @param location  the database file
+     */
+    public JdbcSqlPersistentStore(File location) {
+        super(location);
+        this.url = "jdbc:sqlite:" + location.getPath();
+        this.connectionProperties = new Properties();
+    }
+
+    /**
+     * Creates a store for the SQLite database of the specified JDBC URL.
+     *
+     * @param url                   the JDBC URL of the database
+     * @param connectionProperties  the properties of the connection (e.g. "user" and "password"), or null if none
+     */
+    public JdbcSqlPersistentStore(String url, Properties connectionProperties) {
+        super((URL) null);
+        this.url = url;
+        this.connectionProperties = connectionProperties != null ? connectionProperties : new Properties();
+    }
+
+    @Override
+    protected synchronized void loadMetadata() {
+        ObjectModel model = getCoordinator().getModel();
+        try {
+            connection = DriverManager.getConnection(url, connectionProperties);
+
+            connection.setAutoCommit(false);
+            try {
+                openDatabase(model);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+            setUuid(getDatabaseUuid(model.getVersion()));
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not open database " + url, e);
+        }
+
+        for (Map.Entry<Entity<?>,Integer> entry : entityToIDMap.entrySet()) {
+            idToEntityMap.put(entry.getValue(), entry.getKey());
+        }
+
+        queryService = new DatabaseQueryService(this, entityToIDMap, valueEncoding);
+        idAllocator = new PermanentIDAllocator() {
+            @Override
+            long reserveIDs(String tableName, long count) {
+                return JdbcSqlPersistentStore.this.reserveIDs(tableName, count);
+            }
+        };
+        idAllocator.setBlockSize(idBlockSize);
+    }
+
+    /**
+     * Creates or upgrades the schema of the database, like {@link DatabaseHelper} does for the Android store. The
+     * schema version is kept in the "user_version" pragma, like on Android.
+     */
+    private void openDatabase(ObjectModel model) throws SQLException {
+        int version = (int) queryLong("PRAGMA user_version");
+        if (version != model.getVersion()) {
+            if (version == 0) {
+                LOG.info("Creating database: " + url);
+            } else {
+                //TODO: ideally, DB should be migrated to newer version as opposed to re-creating it
+                LOG.info("Upgrading DB from " + version + " to " + model.getVersion());
+                dropTables();
+            }
+            createDatabase(model);
+            execute("PRAGMA user_version = " + model.getVersion());
+        } else {
+            entityToIDMap = getEntityIDs(model);
+        }
+
+        execute(SqlSchema.getCreateStoreInfoTableSql());
+        for (Entity<?> entity : model.getEntities()) {
+            if (entity.isBaseEntity()) {
+                String tableName = SqlSchema.getTableName(entity);
+                if (getStoreInfo(SqlSchema.STORE_INFO_NEXT_ID_PREFIX + tableName) == null) {
+                    setStoreInfo(SqlSchema.STORE_INFO_NEXT_ID_PREFIX + tableName, String.valueOf(getInitialNextID(tableName)));
+                }
+            }
+        }
+
+        String storedEncoding = getStoreInfo(SqlSchema.STORE_INFO_VALUE_ENCODING);
+        ValueEncoding encoding = storedEncoding == null ? ValueEncoding.TEXT : ValueEncoding.valueOf(storedEncoding);
+        if (encoding != valueEncoding) {
+            LOG.info("Migrating values of " + url + " from " + encoding + " to " + valueEncoding + " encoding");
+            for (Entity<?> entity : model.getEntities()) {
+                if (entity.isBaseEntity()) {
+                    for (String sql : SqlSchema.getMigrateValueEncodingSql(entity, entityToIDMap, encoding, valueEncoding)) {
+                        execute(sql);
+                    }
+                }
+            }
+            setStoreInfo(SqlSchema.STORE_INFO_VALUE_ENCODING, valueEncoding.name());
+        }
+
+        for (String sql : SqlSchema.getCreateIndexesSql(model, entityToIDMap)) {
+            execute(sql);
+        }
+    }
+
+    private void createDatabase(ObjectModel model) throws SQLException {
+        if (queryLong("SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name='" + SqlSchema.METADATA_TABLE_NAME + "'") == 0) {
+            execute(SqlSchema.getCreateMetadataTableSql());
+        }
+        execute(SqlSchema.getCreateEntityInfoTableSql());
+        execute(SqlSchema.getCreateStoreInfoTableSql());
+
+        entityToIDMap = new HashMap<>();
+        int entityID = 1;
+        for (Entity<?> entity : model.getEntities()) {
+            executeUpdate("INSERT INTO " + SqlSchema.ENTITY_TABLE_NAME + " (" + SqlSchema.ENTITY_TABLE_COLUMN_ID + ", " +
+                    SqlSchema.ENTITY_TABLE_COLUMN_NAME + ") VALUES (?, ?)", entityID, entity.getName());
+            entityToIDMap.put(entity, entityID);
+            entityID++;
+        }
+
+        for (Entity<?> entity : model.getEntities()) {
+            if (entity.isBaseEntity()) {
+                execute(SqlSchema.getCreateEntityTableSql(entity, entityToIDMap, valueEncoding));
+            }
+        }
+
+        setStoreInfo(SqlSchema.STORE_INFO_VALUE_ENCODING, valueEncoding.name());
+        executeUpdate("INSERT INTO " + SqlSchema.METADATA_TABLE_NAME + " (" + SqlSchema.METADATA_COLUMN_VERSION + ", " +
+                SqlSchema.METADATA_COLUMN_UUID + ") VALUES (?, ?)", model.getVersion(), UUID.randomUUID().toString());
+    }
+
+    private void dropTables() throws SQLException {
+        List<String> tableNames = new ArrayList<>();
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery("SELECT name FROM sqlite_master WHERE type='table' " +
+                    "AND name NOT LIKE 'sqlite%' AND name <> '" + SqlSchema.METADATA_TABLE_NAME + "'");
+            while (resultSet.next()) {
+                tableNames.add(resultSet.getString(1));
+            }
+        } finally {
+            statement.close();
+        }
+
+        for (String tableName : tableNames) {
+            execute("DROP TABLE IF EXISTS " + tableName);
+        }
+    }
+
+    private Map<Entity<?>,Integer> getEntityIDs(ObjectModel model) throws SQLException {
+        Map<Entity<?>,Integer> entityIDs = new HashMap<>();
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery("SELECT " + SqlSchema.ENTITY_TABLE_COLUMN_ID + ", " +
+                    SqlSchema.ENTITY_TABLE_COLUMN_NAME + " FROM " + SqlSchema.ENTITY_TABLE_NAME);
+            while (resultSet.next()) {
+                entityIDs.put(model.getEntity(resultSet.getString(2)), resultSet.getInt(1));
+            }
+        } finally {
+            statement.close();
+        }
+        return entityIDs;
+    }
+
+    private UUID getDatabaseUuid(int version) throws SQLException {
+        PreparedStatement statement = prepare("SELECT " + SqlSchema.METADATA_COLUMN_UUID + " FROM " +
+                SqlSchema.METADATA_TABLE_NAME + " WHERE " + SqlSchema.METADATA_COLUMN_VERSION + "=?");
+        statement.setInt(1, version);
+        ResultSet resultSet = statement.executeQuery();
+        try {
+            return resultSet.next() ? UUID.fromString(resultSet.getString(1)) : null;
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    private String getStoreInfo(String name) throws SQLException {
+        PreparedStatement statement = prepare("SELECT " + SqlSchema.STORE_INFO_COLUMN_VALUE + " FROM " +
+                SqlSchema.STORE_INFO_TABLE_NAME + " WHERE " + SqlSchema.STORE_INFO_COLUMN_NAME + "=?");
+        statement.setString(1, name);
+        ResultSet resultSet = statement.executeQuery();
+        try {
+            return resultSet.next() ? resultSet.getString(1) : null;
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    private void setStoreInfo(String name, String value) throws SQLException {
+        executeUpdate("INSERT OR REPLACE INTO " + SqlSchema.STORE_INFO_TABLE_NAME + " (" + SqlSchema.STORE_INFO_COLUMN_NAME +
+                ", " + SqlSchema.STORE_INFO_COLUMN_VALUE + ") VALUES (?, ?)", name, value);
+    }
+
+    private long getInitialNextID(String tableName) throws SQLException {
+        // databases created by earlier versions generated IDs with AUTOINCREMENT, which never re-uses the IDs of
+        // deleted rows, so continue after the last ID it generated
+        long lastID = queryLong("SELECT MAX(" + SqlSchema.ID_COLUMN_NAME + ") FROM " + tableName);
+        if (queryLong("SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name='sqlite_sequence'") > 0) {
+            lastID = Math.max(lastID, queryLong("SELECT seq FROM sqlite_sequence WHERE name='" + tableName + "'"));
+        }
+        return lastID + 1;
+    }
+
+    /**
+     * Reserves a block of IDs for the specified table, by advancing its next ID in the store info table. The next ID
+     * is incremented by the UPDATE statement itself, so the reservation is atomic even if another process is using
+     * the database.
+     */
+    private synchronized long reserveIDs(String tableName, long count) {
+        String name = SqlSchema.STORE_INFO_NEXT_ID_PREFIX + tableName;
+        try {
+            connection.setAutoCommit(false);
+            try {
+                executeUpdate("UPDATE " + SqlSchema.STORE_INFO_TABLE_NAME + " SET " + SqlSchema.STORE_INFO_COLUMN_VALUE +
+                        " = CAST(" + SqlSchema.STORE_INFO_COLUMN_VALUE + " AS INTEGER) + ? WHERE " +
+                        SqlSchema.STORE_INFO_COLUMN_NAME + "=?", count, name);
+                long firstID = Long.parseLong(getStoreInfo(name)) - count;
+                connection.commit();
+                return firstID;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Sets how dates and enums are stored in the database. The default is {@link ValueEncoding#NATIVE}. If an existing
+     * database uses a different encoding, its values are migrated to this encoding when the store is loaded.
+     *
+     * @param valueEncoding the encoding of stored values
+     * @throws IllegalStateException if the store has already been loaded
+     */
+    public void setValueEncoding(ValueEncoding valueEncoding) {
+        if (connection != null) {
+            throw new IllegalStateException("Value encoding must be set before the store is added to a coordinator");
+        }
+        this.valueEncoding = valueEncoding;
+    }
+
+    /**
+     * Returns how dates and enums are stored in the database.
+     *
+     * @return the encoding of stored values
+     */
+    public ValueEncoding getValueEncoding() {
+        return valueEncoding;
+    }
+
+    /**
+     * Sets the number of rows fetched from the database at a time when executing a fetch request. A larger fetch size
+     * needs fewer round-trips to the database, while a smaller one uses less memory for large results. The fetch size
+     * is only a hint to the JDBC driver. The default is {@value #DEFAULT_FETCH_SIZE}.
+     *
+     * @param fetchSize the number of rows to fetch at a time, or 0 to let the driver decide
+     * @throws IllegalArgumentException if the fetch size is negative
+     */
+    public synchronized void setFetchSize(int fetchSize) {
+        if (fetchSize < 0) {
+            throw new IllegalArgumentException("Fetch size must not be negative: " + fetchSize);
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Returns the number of rows fetched from the database at a time when executing a fetch request.
+     *
+     * @return the fetch size
+     */
+    public synchronized int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Sets how many IDs are reserved at a time for new objects of an entity. See
+     * {@link AndroidSqlPersistentStore#setIDBlockSize(int)}.
+     *
+     * @param blockSize the number of IDs to reserve at a time
+     * @throws IllegalArgumentException if the block size is not positive
+     */
+    public void setIDBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        idBlockSize = blockSize;
+        if (idAllocator != null) {
+            idAllocator.setBlockSize(blockSize);
+        }
+    }
+
+    /**
+     * Returns how many IDs are reserved at a time for new objects of an entity.
+     *
+     * @return the number of IDs to reserve at a time
+     */
+    public int getIDBlockSize() {
+        return idBlockSize;
+    }
+
+    /**
+     * Closes the cached prepared statements and the connection to the database. The store can't be used afterwards.
+     */
+    public synchronized void close() {
+        for (PreparedStatement statement : statements.values()) {
+            closeStatement(statement);
+        }
+        statements.clear();
+
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                LOG.warn("Could not close database " + url, e);
+            }
+        }
+    }
+
+    String getColumnName(Property property) {
+        return SqlSchema.getColumnName(property, entityToIDMap);
+    }
+
+    ObjectID newObjectID(Entity<?> entity, long id) {
+        return createObjectID(entity, id);
+    }
+
+    /**
+     * Returns the cached prepared statement of the specified SQL, preparing it if it is not cached.
+     */
+    private PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    private static void closeStatement(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            LOG.warn("Could not close statement", e);
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        LOG.debug("Executing: " + sql);
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute(sql);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private int executeUpdate(String sql, Object... args) throws SQLException {
+        PreparedStatement statement = prepare(sql);
+        for (int i = 0; i < args.length; i++) {
+            bind(statement, i + 1, args[i]);
+        }
+        return statement.executeUpdate();
+    }
+
+    /**
+     * Returns the integer of the first column of the first row of the specified query, or 0 if it has no rows or the
+     * value is null.
+     */
+    private long queryLong(String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery(sql);
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Binds a value with its SQL type, like {@link TypedArgsCursorFactory#bind} does for Android queries. Floats are
+     * bound as the double of the same decimal representation, so that they compare equal to the same literal in a
+     * predicate.
+     */
+    private static void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.NULL);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            statement.setLong(index, ((Number) value).longValue());
+        } else if (value instanceof Double) {
+            statement.setDouble(index, (Double) value);
+        } else if (value instanceof Float) {
+            statement.setDouble(index, Double.valueOf(value.toString()));
+        } else if (value instanceof Boolean) {
+            statement.setLong(index, ((Boolean) value) ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            statement.setBytes(index, (byte[]) value);
+        } else {
+            statement.setString(index, value.toString());
+        }
+    }
+
+    /**
+     * Returns the decoder for rows of the specified entity read from the specified result set, creating it if the
+     * entity has no decoder yet for the columns of the result set.
+     */
+    private ResultSetDecoder getRowDecoder(Entity<?> entity, ResultSet resultSet) throws SQLException {
+        ResultSetDecoder decoder = rowDecoders.get(entity);
+        if (decoder == null || !decoder.matches(resultSet)) {
+            decoder = ResultSetDecoder.create(this, entity, resultSet);
+            rowDecoders.put(entity, decoder);
+        }
+        return decoder;
+    }
+
+    private void cacheNode(Entity<?> entity, long id, StoreCacheNode node) {
+        Map<Long,StoreCacheNode> entityCache = cache.get(entity.getType());
+        if (entityCache == null) {
+            entityCache = new HashMap<>();
+            cache.put(entity.getType(), entityCache);
+        }
+        entityCache.put(id, node);
+    }
+
+    private void uncacheNode(Entity<?> entity, long id) {
+        Map<Long,StoreCacheNode> entityCache = cache.get(entity.getType());
+        if (entityCache != null) {
+            entityCache.remove(id);
+        }
+    }
+
+    @Override
+    protected synchronized <T extends ManagedObject> List<T> executeFetchRequest(FetchRequest<T> request, ObjectContext context) {
+        DatabaseQueryService.Query query = queryService.buildQuery(SqlSchema.getTableName(request.getEntity()), request);
+
+        List<T> results = new ArrayList<T>();
+        try {
+            PreparedStatement statement = prepare(query.sql);
+            ResultSet resultSet = executeQuery(statement, query);
+            try {
+                // the columns are looked up on the first row, since some drivers close an empty result set right away
+                int idColumn = 0;
+                int entityColumn = 0;
+                ResultSetDecoder decoder = null;
+                while (resultSet.next()) {
+                    if (idColumn == 0) {
+                        idColumn = resultSet.findColumn(SqlSchema.ID_COLUMN_NAME);
+                        entityColumn = resultSet.findColumn(SqlSchema.ENTITY_COLUMN_NAME);
+                    }
+                    long id = resultSet.getLong(idColumn);
+                    Entity<?> entity = idToEntityMap.get(resultSet.getInt(entityColumn));
+                    if (decoder == null || decoder.getEntity() != entity) {
+                        decoder = getRowDecoder(entity, resultSet);
+                    }
+
+                    ObjectID objectID = createObjectID(entity, id);
+                    @SuppressWarnings("unchecked")
+                    T object = (T)context.objectWithID(objectID);
+                    cacheNode(entity, id, decoder.decode(objectID, resultSet));
+                    results.add(object);
+                }
+            } finally {
+                resultSet.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not execute query: " + query.sql, e);
+        }
+
+        return results;
+    }
+
+    private ResultSet executeQuery(PreparedStatement statement, DatabaseQueryService.Query query) throws SQLException {
+        statement.setFetchSize(fetchSize);
+        if (query.args != null) {
+            for (int i = 0; i < query.args.length; i++) {
+                bind(statement, i + 1, query.args[i]);
+            }
+        }
+        return statement.executeQuery();
+    }
+
+    /**
+     * Opens a cursor that reads the rows of the query as it is iterated, so only the rows fetched by the driver (see
+     * {@link #setFetchSize(int)}) are held in memory. The cursor uses a statement of its own, so other queries can run
+     * while it's open, and each object is faulted in from its row without caching the row in the store.
+     */
+    @Override
+    protected synchronized <T extends ManagedObject> FetchCursor<T> openFetchCursor(FetchRequest<T> request, ObjectContext context) {
+        DatabaseQueryService.Query query = queryService.buildQuery(SqlSchema.getTableName(request.getEntity()), request);
+
+        try {
+            PreparedStatement statement = connection.prepareStatement(query.sql);
+            try {
+                return new ResultSetFetchCursor<T>(statement, executeQuery(statement, query), context);
+            } catch (SQLException e) {
+                closeStatement(statement);
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not execute query: " + query.sql, e);
+        }
+    }
+
+    private class ResultSetFetchCursor<T extends ManagedObject> extends FetchCursor<T> {
+        private final PreparedStatement statement;
+        private final ResultSet resultSet;
+        private final ObjectContext context;
+
+        private int idColumn;
+        private int entityColumn;
+        private ResultSetDecoder decoder;
+
+        // whether the result set was advanced to the row to return next, and whether there is such a row
+        private boolean rowRead;
+        private boolean hasRow;
+        private boolean closed;
+
+        ResultSetFetchCursor(PreparedStatement statement, ResultSet resultSet, ObjectContext context) {
+            this.statement = statement;
+            this.resultSet = resultSet;
+            this.context = context;
+        }
+
+        @Override
+        public boolean hasNext() {
+            synchronized (JdbcSqlPersistentStore.this) {
+                if (!closed && !rowRead) {
+                    try {
+                        hasRow = resultSet.next();
+                    } catch (SQLException e) {
+                        throw new RuntimeException("Could not read the next row of the query", e);
+                    }
+                    rowRead = true;
+                    if (!hasRow) {
+                        close();
+                    }
+                }
+                return hasRow && !closed;
+            }
+        }
+
+        @Override
+        public T next() {
+            synchronized (JdbcSqlPersistentStore.this) {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                rowRead = false;
+
+                try {
+                    // the columns are looked up on the first row, like in executeFetchRequest()
+                    if (idColumn == 0) {
+                        idColumn = resultSet.findColumn(SqlSchema.ID_COLUMN_NAME);
+                        entityColumn = resultSet.findColumn(SqlSchema.ENTITY_COLUMN_NAME);
+                    }
+                    long id = resultSet.getLong(idColumn);
+                    Entity<?> entity = idToEntityMap.get(resultSet.getInt(entityColumn));
+                    if (decoder == null || decoder.getEntity() != entity) {
+                        decoder = getRowDecoder(entity, resultSet);
+                    }
+
+                    @SuppressWarnings("unchecked")
+                    T object = (T)getObject(context, decoder.decode(createObjectID(entity, id), resultSet));
+                    return object;
+                } catch (SQLException e) {
+                    throw new RuntimeException("Could not read the next row of the query", e);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (JdbcSqlPersistentStore.this) {
+                if (!closed) {
+                    closed = true;
+                    try {
+                        resultSet.close();
+                    } catch (SQLException e) {
+                        LOG.warn("Could not close result set", e);
+                    }
+                    closeStatement(statement);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the columns stored for objects of the specified entity: the columns of its attributes and to-one
+     * relationships, in the order of the entity's properties.
+     */
+    private List<Property> getStoredProperties(Entity<?> entity) {
+        List<Property> properties = new ArrayList<>();
+        for (Property property : entity.getProperties()) {
+            if (!property.isRelationship() || ((Relationship) property).isToOne()) {
+                properties.add(property);
+            }
+        }
+        return properties;
+    }
+
+    private String getInsertStatement(Entity<?> entity) {
+        String sql = insertStatements.get(entity);
+        if (sql == null) {
+            List<String> columns = new ArrayList<>();
+            List<String> params = new ArrayList<>();
+            columns.add(SqlSchema.ID_COLUMN_NAME);
+            columns.add(SqlSchema.ENTITY_COLUMN_NAME);
+            params.add("?");
+            params.add("?");
+            for (Property property : getStoredProperties(entity)) {
+                columns.add(getColumnName(property));
+                params.add("?");
+            }
+            sql = "INSERT INTO " + SqlSchema.getTableName(entity) + " (" + StringUtil.join(columns, ", ") + ") VALUES (" +
+                    StringUtil.join(params, ", ") + ")";
+            insertStatements.put(entity, sql);
+        }
+        return sql;
+    }
+
+    private String getUpdateStatement(Entity<?> entity) {
+        String sql = updateStatements.get(entity);
+        if (sql == null) {
+            List<String> columns = new ArrayList<>();
+            for (Property property : getStoredProperties(entity)) {
+                columns.add(getColumnName(property) + "=?");
+            }
+            sql = "UPDATE " + SqlSchema.getTableName(entity) + " SET " + StringUtil.join(columns, ", ") +
+                    " WHERE " + SqlSchema.ID_COLUMN_NAME + "=?";
+            updateStatements.put(entity, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Binds the stored values of the properties of an object, starting at the specified parameter index.
+     *
+     * @return the index of the parameter after the bound values
+     */
+    private int bindPropertyValues(PreparedStatement statement, int index, ManagedObject object) throws SQLException {
+        for (Property property : getStoredProperties(object.getEntity())) {
+            Object value = object.getValue(property.getName());
+            if (value == null) {
+                bind(statement, index++, null);
+            } else if (property.isRelationship()) {
+                bind(statement, index++, getReferenceObjectForObjectID(((ManagedObject) value).getID()));
+            } else {
+                bind(statement, index++, valueEncoding.encode(value));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Groups the specified objects by their entity, preserving their order.
+     */
+    private static Map<Entity<?>,List<ManagedObject>> groupByEntity(Collection<ManagedObject> objects) {
+        Map<Entity<?>,List<ManagedObject>> objectsByEntity = new LinkedHashMap<>();
+        for (ManagedObject object : objects) {
+            List<ManagedObject> entityObjects = objectsByEntity.get(object.getEntity());
+            if (entityObjects == null) {
+                entityObjects = new ArrayList<>();
+                objectsByEntity.put(object.getEntity(), entityObjects);
+            }
+            entityObjects.add(object);
+        }
+        return objectsByEntity;
+    }
+
+    @Override
+    protected synchronized void executeSaveRequest(SaveChangesRequest request, ObjectContext context) {
+        ChangedObjectsSet changes = request.getChanges();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                for (Map.Entry<Entity<?>,List<ManagedObject>> entry : groupByEntity(changes.getInsertedObjects()).entrySet()) {
+                    PreparedStatement statement = prepare(getInsertStatement(entry.getKey()));
+                    for (ManagedObject object : entry.getValue()) {
+                        bind(statement, 1, getReferenceObjectForObjectID(object.getID()));
+                        bind(statement, 2, entityToIDMap.get(object.getEntity()));
+                        bindPropertyValues(statement, 3, object);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+
+                for (Map.Entry<Entity<?>,List<ManagedObject>> entry : groupByEntity(changes.getUpdatedObjects()).entrySet()) {
+                    PreparedStatement statement = prepare(getUpdateStatement(entry.getKey()));
+                    for (ManagedObject object : entry.getValue()) {
+                        long id = (Long) getReferenceObjectForObjectID(object.getID());
+                        int index = bindPropertyValues(statement, 1, object);
+                        bind(statement, index, id);
+                        statement.addBatch();
+
+                        //TODO: update cache entry instead of deleting it
+                        uncacheNode(object.getEntity(), id);
+                    }
+                    statement.executeBatch();
+                }
+
+                for (Map.Entry<Entity<?>,List<ManagedObject>> entry : groupByEntity(changes.getDeletedObjects()).entrySet()) {
+                    PreparedStatement statement = prepare("DELETE FROM " + SqlSchema.getTableName(entry.getKey()) +
+                            " WHERE " + SqlSchema.ID_COLUMN_NAME + "=?");
+                    for (ManagedObject object : entry.getValue()) {
+                        long id = (Long) getReferenceObjectForObjectID(object.getID());
+                        bind(statement, 1, id);
+                        statement.addBatch();
+                        uncacheNode(object.getEntity(), id);
+                    }
+                    statement.executeBatch();
+                }
+
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not save changes", e);
+        }
+    }
+
+    @Override
+    protected synchronized StoreCacheNode getObjectValues(ObjectID objectID, ObjectContext context) {
+        long id = Long.valueOf(getReferenceObjectForObjectID(objectID).toString());
+
+        Map<Long,StoreCacheNode> entityCache = cache.get(objectID.getEntity().getType());
+        if (entityCache != null) {
+            StoreCacheNode node = entityCache.get(id);
+            if (node != null) {
+                return node;
+            }
+        }
+
+        String sql = objectValuesQueries.get(objectID.getEntity());
+        if (sql == null) {
+            sql = "SELECT * FROM " + SqlSchema.getTableName(objectID.getEntity()) + " WHERE " + SqlSchema.ID_COLUMN_NAME + "=?";
+            objectValuesQueries.put(objectID.getEntity(), sql);
+        }
+
+        StoreCacheNode node = null;
+        try {
+            PreparedStatement statement = prepare(sql);
+            statement.setLong(1, id);
+            ResultSet resultSet = statement.executeQuery();
+            try {
+                if (resultSet.next()) {
+                    node = getRowDecoder(objectID.getEntity(), resultSet).decode(objectID, resultSet);
+                }
+            } finally {
+                resultSet.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not execute query: " + sql, e);
+        }
+
+        cacheNode(objectID.getEntity(), id, node);
+
+        return node;
+    }
+
+    @Override
+    protected synchronized Set<ObjectID> getToManyRelationshipValue(
+            ObjectID objectID,
+            Relationship relationship,
+            ObjectContext context) {
+
+        String sql = relationshipQueries.get(relationship);
+        if (sql == null) {
+            String table = SqlSchema.getTableName(relationship.getDestinationEntity());
+            sql = "SELECT " + SqlSchema.ID_COLUMN_NAME + " FROM " + table + " WHERE " + getColumnName(relationship.getInverse()) + "=?";
+            relationshipQueries.put(relationship, sql);
+        }
+
+        Set<ObjectID> results = new HashSet<ObjectID>();
+        try {
+            PreparedStatement statement = prepare(sql);
+            bind(statement, 1, getReferenceObjectForObjectID(objectID));
+            ResultSet resultSet = statement.executeQuery();
+            try {
+                while (resultSet.next()) {
+                    long id = resultSet.getLong(1);     // the only selected column
+                    results.add(createObjectID(relationship.getDestinationEntity(), id));
+                }
+            } finally {
+                resultSet.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not execute query: " + sql, e);
+        }
+
+        return results;
+    }
+
+    @Override
+    protected synchronized ObjectID getToOneRelationshipValue(
+            ObjectID objectID,
+            Relationship relationship,
+            ObjectContext context) {
+
+        String sql = relationshipQueries.get(relationship);
+        if (sql == null) {
+            String fromTable = SqlSchema.getTableName(relationship.getEntity());
+            String toTable = SqlSchema.getTableName(relationship.getDestinationEntity());
+
+            // joined with the destination table, so that a dangling reference results in no related object
+            sql = "SELECT t2." + SqlSchema.ID_COLUMN_NAME + " FROM " + fromTable + " t1," + toTable + " t2" +
+                  " WHERE t1." + SqlSchema.ID_COLUMN_NAME + "=? AND " +
+                  "t1." + getColumnName(relationship) + "=t2." + SqlSchema.ID_COLUMN_NAME;
+            relationshipQueries.put(relationship, sql);
+        }
+
+        ObjectID relatedObjectID = null;
+        try {
+            PreparedStatement statement = prepare(sql);
+            bind(statement, 1, getReferenceObjectForObjectID(objectID));
+            ResultSet resultSet = statement.executeQuery();
+            try {
+                if (resultSet.next()) {
+                    long id = resultSet.getLong(1);     // the only selected column
+                    relatedObjectID = createObjectID(relationship.getDestinationEntity(), id);
+                }
+            } finally {
+                resultSet.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not execute query: " + sql, e);
+        }
+
+        return relatedObjectID;
+    }
+
+    @Override
+    protected List<ObjectID> getPermanentIDsForObjects(List<ManagedObject> objects) {
+
+        // allocate the IDs of all objects stored in the same table at once
+        Map<String,Integer> counts = new HashMap<>();
+        for (ManagedObject object : objects) {
+            String tableName = SqlSchema.getTableName(object.getEntity());
+            Integer count = counts.get(tableName);
+            counts.put(tableName, count == null ? 1 : count + 1);
+        }
+
+        Map<String,Long> nextIDs = new HashMap<>();
+        for (Map.Entry<String,Integer> entry : counts.entrySet()) {
+            nextIDs.put(entry.getKey(), idAllocator.allocate(entry.getKey(), entry.getValue()));
+        }
+
+        List<ObjectID> objectIDs = new ArrayList<ObjectID>();
+        for (ManagedObject object : objects) {
+            String tableName = SqlSchema.getTableName(object.getEntity());
+            long id = nextIDs.get(tableName);
+            nextIDs.put(tableName, id + 1);
+            objectIDs.add(createObjectID(object.getEntity(), id));
+        }
+
+        return objectIDs;
+    }
+}
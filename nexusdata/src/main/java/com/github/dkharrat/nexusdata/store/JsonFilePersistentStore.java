@@ -0,0 +1,437 @@
+package com.github.dkharrat.nexusdata.store;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.dkharrat.nexusdata.core.AtomicStore;
+import com.github.dkharrat.nexusdata.core.ManagedObject;
+import com.github.dkharrat.nexusdata.core.ObjectID;
+import com.github.dkharrat.nexusdata.core.StoreCacheNode;
+import com.github.dkharrat.nexusdata.metamodel.Entity;
+import com.github.dkharrat.nexusdata.metamodel.ObjectModel;
+import com.github.dkharrat.nexusdata.metamodel.Property;
+import com.github.dkharrat.nexusdata.metamodel.Relationship;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * An atomic store that keeps its data in a JSON file, which is useful for exchanging object graphs with other
+ * applications. The file is read and written with Gson's streaming API, straight from and to the cache nodes of the
+ * store, so no document tree or managed objects are created, and loading a large file only needs memory for the
+ * loaded objects. Each save writes the whole file, to a temporary file that then replaces it.
+ * <p>
+ * The file has the following structure:
+ * <pre>
+ * {
+ *   "modelVersion": 1,
+ *   "uuid": "8a6b2b5e-...",
+ *   "nextID": 4,
+ *   "entities": {
+ *     "Company": [
+ *       {"@id": 1, "name": "Google", "employees": [2, {"@entity": "Director", "@id": 3}]}
+ *     ],
+ *     ...
+ *   }
+ * }
+ * </pre>
+ * A related object is referenced by its ID, or by its entity and ID if its entity is a sub-entity of the
+ * relationship's destination entity. Dates are stored as milliseconds since the epoch, and enums by their names. All
+ * keys are optional when reading, so a file written by hand only needs the "entities" key, and entities and properties
+ * that are not in the model are skipped. Like the other stores, a file written with another model version is discarded
+ * and replaced by an empty one.
+ */
+public class JsonFilePersistentStore extends AtomicStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsonFilePersistentStore.class);
+
+    private static final String KEY_MODEL_VERSION = "modelVersion";
+    private static final String KEY_UUID = "uuid";
+    private static final String KEY_NEXT_ID = "nextID";
+    private static final String KEY_ENTITIES = "entities";
+    private static final String KEY_ID = "@id";
+    private static final String KEY_ENTITY = "@entity";
+
+    private static final String TEMP_FILE_SUFFIX = "-tmp";
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private ObjectModel model;
+    private long nextID = 1;
+
+    /**
+     * Creates a store that keeps its data in the specified JSON file.
+     *
+     * @param file  the JSON file of the store
+     */
+    public JsonFilePersistentStore(File file) {
+        super(file);
+        this.file = file;
+    }
+
+    @Override
+    public synchronized void load() {
+        model = getCoordinator().getModel();
+        if (!file.exists()) {
+            return;
+        }
+
+        boolean isLoaded;
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                Reader reader = Channels.newReader(in.getChannel(), "UTF-8");
+                isLoaded = read(new JsonReader(reader));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not load " + file, e);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Could not load " + file + ": " + e.getMessage(), e);
+        }
+
+        if (!isLoaded) {
+            // write an empty file right away, so that the UUID of the store doesn't change
+            save();
+        }
+    }
+
+    /**
+     * Reads the objects of the file into cache nodes. The nodes are only added once the whole file is read, since the
+     * model version may follow the objects in a file written by hand.
+     *
+     * @return true if the file was loaded, or false if it was written with another model version
+     */
+    private boolean read(JsonReader reader) throws IOException {
+        Integer version = null;
+        UUID uuid = null;
+        long fileNextID = 1;
+        List<StoreCacheNode> nodes = new ArrayList<StoreCacheNode>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(KEY_MODEL_VERSION)) {
+                version = reader.nextInt();
+            } else if (name.equals(KEY_UUID)) {
+                uuid = UUID.fromString(reader.nextString());
+            } else if (name.equals(KEY_NEXT_ID)) {
+                fileNextID = Math.max(fileNextID, reader.nextLong());
+            } else if (name.equals(KEY_ENTITIES)) {
+                readEntities(reader, nodes);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (version != null && version != model.getVersion()) {
+            //TODO: ideally, the file should be migrated to newer version as opposed to re-creating it
+            LOG.info("Upgrading " + file + " from " + version + " to " + model.getVersion());
+            return false;
+        }
+
+        if (uuid != null) {
+            setUuid(uuid);
+        }
+        nextID = fileNextID;
+        for (StoreCacheNode node : nodes) {
+            nextID = Math.max(nextID, getID(node.getID()) + 1);
+            addCacheNode(node);
+        }
+        return true;
+    }
+
+    private void readEntities(JsonReader reader, List<StoreCacheNode> nodes) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String entityName = reader.nextName();
+            Entity<?> entity = model.getEntity(entityName);
+            if (entity == null) {
+                LOG.warn("Skipping objects of unknown entity " + entityName + " in " + file);
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+            while (reader.hasNext()) {
+                nodes.add(readNode(reader, entity));
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    private StoreCacheNode readNode(JsonReader reader, Entity<?> entity) throws IOException {
+        Long id = null;
+        Map<String,Object> values = new HashMap<String,Object>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(KEY_ID)) {
+                id = reader.nextLong();
+            } else if (entity.hasProperty(name)) {
+                values.put(name, readValue(reader, entity.getProperty(name)));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (id == null) {
+            throw new IllegalStateException("Object of " + entity.getName() + " has no " + KEY_ID);
+        }
+
+        StoreCacheNode node = new StoreCacheNode(createObjectID(entity, id));
+        node.setProperties(values);
+        for (Relationship relationship : entity.getRelationships()) {
+            if (relationship.isToMany() && node.getProperty(relationship.getName()) == null) {
+                node.setProperty(relationship.getName(), new LinkedHashSet<ObjectID>());
+            }
+        }
+        return node;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object readValue(JsonReader reader, Property property) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        if (property.isRelationship()) {
+            Relationship relationship = (Relationship) property;
+            if (relationship.isToOne()) {
+                return readReference(reader, relationship);
+            } else {
+                Set<ObjectID> objectIDs = new LinkedHashSet<ObjectID>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    objectIDs.add(readReference(reader, relationship));
+                }
+                reader.endArray();
+                return objectIDs;
+            }
+        }
+
+        Class<?> type = property.getType();
+        if (type == String.class) {
+            return reader.nextString();
+        } else if (type == Integer.class) {
+            return reader.nextInt();
+        } else if (type == Long.class) {
+            return reader.nextLong();
+        } else if (type == Short.class) {
+            return (short) reader.nextInt();
+        } else if (type == Boolean.class) {
+            return reader.nextBoolean();
+        } else if (type == Float.class) {
+            return (float) reader.nextDouble();
+        } else if (type == Double.class) {
+            return reader.nextDouble();
+        } else if (type == Date.class) {
+            return new Date(reader.nextLong());
+        } else if (type.isEnum()) {
+            return Enum.valueOf((Class<? extends Enum>) type, reader.nextString());
+        } else {
+            throw new UnsupportedOperationException("Unsupported type " + type + " of property " + property.getName());
+        }
+    }
+
+    private ObjectID readReference(JsonReader reader, Relationship relationship) throws IOException {
+        if (reader.peek() == JsonToken.NUMBER) {
+            return createObjectID(relationship.getDestinationEntity(), reader.nextLong());
+        }
+
+        Entity<?> entity = relationship.getDestinationEntity();
+        Long id = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(KEY_ENTITY)) {
+                String entityName = reader.nextString();
+                entity = model.getEntity(entityName);
+                if (entity == null) {
+                    throw new IllegalStateException("Unknown entity " + entityName + " referenced by " + relationship.getName());
+                }
+            } else if (name.equals(KEY_ID)) {
+                id = reader.nextLong();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (id == null) {
+            throw new IllegalStateException("Reference of " + relationship.getName() + " has no " + KEY_ID);
+        }
+        return createObjectID(entity, id);
+    }
+
+    @Override
+    public synchronized Object createReferenceObjectForManagedObject(ManagedObject object) {
+        return nextID++;
+    }
+
+    /**
+     * Writes all the objects of the store to the JSON file. Entities, objects and properties are written in a stable
+     * order (by name and ID), so that saving the same objects again writes the same file.
+     */
+    @Override
+    public synchronized void save() {
+        File tempFile = new File(file.getPath() + TEMP_FILE_SUFFIX);
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(tempFile, "rw");
+            try {
+                FileChannel channel = randomAccessFile.getChannel();
+                channel.truncate(0);
+                Writer writer = new BufferedWriter(Channels.newWriter(channel, "UTF-8"), WRITE_BUFFER_SIZE);
+                JsonWriter jsonWriter = new JsonWriter(writer);
+                write(jsonWriter);
+                jsonWriter.flush();
+                channel.force(true);
+            } finally {
+                randomAccessFile.close();
+            }
+
+            if (!tempFile.renameTo(file)) {
+                // some platforms don't replace an existing file when renaming
+                if (!file.delete() || !tempFile.renameTo(file)) {
+                    throw new IOException("Could not replace " + file + " with " + tempFile);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not save " + file, e);
+        }
+    }
+
+    private void write(JsonWriter writer) throws IOException {
+        Map<String,List<StoreCacheNode>> nodesByEntity = new HashMap<String,List<StoreCacheNode>>();
+        for (StoreCacheNode node : getCacheNodes()) {
+            String entityName = node.getID().getEntity().getName();
+            List<StoreCacheNode> nodes = nodesByEntity.get(entityName);
+            if (nodes == null) {
+                nodes = new ArrayList<StoreCacheNode>();
+                nodesByEntity.put(entityName, nodes);
+            }
+            nodes.add(node);
+        }
+        List<String> entityNames = new ArrayList<String>(nodesByEntity.keySet());
+        Collections.sort(entityNames);
+
+        writer.beginObject();
+        writer.name(KEY_MODEL_VERSION).value(model.getVersion());
+        writer.name(KEY_UUID).value(getUuid().toString());
+        writer.name(KEY_NEXT_ID).value(nextID);
+        writer.name(KEY_ENTITIES).beginObject();
+        for (String entityName : entityNames) {
+            Entity<?> entity = model.getEntity(entityName);
+            List<Property> properties = new ArrayList<Property>(entity.getProperties());
+            Collections.sort(properties, new Comparator<Property>() {
+                @Override
+                public int compare(Property lhs, Property rhs) {
+                    return lhs.getName().compareTo(rhs.getName());
+                }
+            });
+            List<StoreCacheNode> nodes = nodesByEntity.get(entityName);
+            Collections.sort(nodes, new Comparator<StoreCacheNode>() {
+                @Override
+                public int compare(StoreCacheNode lhs, StoreCacheNode rhs) {
+                    return getID(lhs.getID()).compareTo(getID(rhs.getID()));
+                }
+            });
+
+            writer.name(entityName).beginArray();
+            for (StoreCacheNode node : nodes) {
+                writeNode(writer, node, properties);
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+
+    private void writeNode(JsonWriter writer, StoreCacheNode node, List<Property> properties) throws IOException {
+        writer.beginObject();
+        writer.name(KEY_ID).value(getID(node.getID()));
+        for (Property property : properties) {
+            Object value = node.getProperty(property.getName());
+            writer.name(property.getName());
+            if (value == null) {
+                writer.nullValue();
+            } else if (property.isRelationship()) {
+                Relationship relationship = (Relationship) property;
+                if (relationship.isToOne()) {
+                    writeReference(writer, (ObjectID) value, relationship);
+                } else {
+                    writer.beginArray();
+                    for (Object objectID : (Set<?>) value) {
+                        writeReference(writer, (ObjectID) objectID, relationship);
+                    }
+                    writer.endArray();
+                }
+            } else {
+                writeValue(writer, value, property);
+            }
+        }
+        writer.endObject();
+    }
+
+    private static void writeValue(JsonWriter writer, Object value, Property property) throws IOException {
+        if (value instanceof String) {
+            writer.value((String) value);
+        } else if (value instanceof Boolean) {
+            writer.value((Boolean) value);
+        } else if (value instanceof Float) {
+            // written with Float.toString, since widening to a double would write e.g. 0.1f as 0.10000000149011612
+            writer.value((Float) value);
+        } else if (value instanceof Double) {
+            writer.value(((Double) value).doubleValue());
+        } else if (value instanceof Number) {
+            writer.value(((Number) value).longValue());
+        } else if (value instanceof Date) {
+            writer.value(((Date) value).getTime());
+        } else if (value instanceof Enum) {
+            writer.value(((Enum<?>) value).name());
+        } else {
+            throw new UnsupportedOperationException("Unsupported value type " + value.getClass() + " of property " + property.getName());
+        }
+    }
+
+    private void writeReference(JsonWriter writer, ObjectID objectID, Relationship relationship) throws IOException {
+        if (objectID.getEntity().equals(relationship.getDestinationEntity())) {
+            writer.value(getID(objectID));
+        } else {
+            writer.beginObject();
+            writer.name(KEY_ENTITY).value(objectID.getEntity().getName());
+            writer.name(KEY_ID).value(getID(objectID));
+            writer.endObject();
+        }
+    }
+
+    private Long getID(ObjectID objectID) {
+        return (Long) getReferenceObjectForObjectID(objectID);
+    }
+}
@@ -0,0 +1,425 @@
+package com.github.dkharrat.nexusdata.store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import com.github.dkharrat.nexusdata.core.ObjectID;
+import com.github.dkharrat.nexusdata.core.StoreCacheNode;
+import com.github.dkharrat.nexusdata.metamodel.Entity;
+import com.github.dkharrat.nexusdata.metamodel.ObjectModel;
+import com.github.dkharrat.nexusdata.metamodel.Property;
+import com.github.dkharrat.nexusdata.metamodel.Relationship;
+
+/**
+ * The binary format of the records of a {@link LogStructuredPersistentStore} and a {@link BinaryFilePersistentStore}.
+ * Each record starts with its type (one byte) and the length of its body (an int), followed by the body:
+ * <ul>
+ *     <li>put: the index of the object's entity (a short), the object's ID (a long) and the values of the entity's
+ *     attributes and to-one relationships, each starting with a tag byte that identifies its type. If the format
+ *     includes to-many relationships, their values are stored too.</li>
+ *     <li>delete: the index of the object's entity and the object's ID.</li>
+ *     <li>commit: the next unused object ID and the CRC32 checksum of the records since the previous commit. Records
+ *     that are not followed by a valid commit belong to a save that didn't complete, and are ignored.</li>
+ * </ul>
+ * Entities and their properties are identified by their position when sorted by name, which only depends on the model,
+ * so a log is only readable with the model version it was written with.
+ */
+class LogRecordFormat {
+
+    static final byte RECORD_NONE = 0;
+    static final byte RECORD_PUT = 1;
+    static final byte RECORD_DELETE = 2;
+    static final byte RECORD_COMMIT = 3;
+
+    static final int RECORD_HEADER_SIZE = 5;
+    static final int COMMIT_RECORD_SIZE = RECORD_HEADER_SIZE + 12;
+
+    private static final byte VALUE_NULL = 0;
+    private static final byte VALUE_INT = 1;
+    private static final byte VALUE_LONG = 2;
+    private static final byte VALUE_STRING = 3;
+    private static final byte VALUE_TRUE = 4;
+    private static final byte VALUE_FALSE = 5;
+    private static final byte VALUE_FLOAT = 6;
+    private static final byte VALUE_DOUBLE = 7;
+    private static final byte VALUE_DATE = 8;
+    private static final byte VALUE_ENUM = 9;
+    private static final byte VALUE_REFERENCE = 10;
+    private static final byte VALUE_SHORT = 11;
+    private static final byte VALUE_REFERENCE_SET = 12;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Maps the IDs stored in records to the ObjectIDs of a store, and back.
+     */
+    interface ObjectIDMapper {
+        ObjectID toObjectID(Entity<?> entity, long id);
+
+        long toID(ObjectID objectID);
+    }
+
+    /**
+     * Receives the records of each complete transaction read by {@link #readTransactions}.
+     */
+    interface TransactionHandler {
+        /**
+         * Called for each transaction, in the order of the log.
+         *
+         * @param buffer            the buffer the records were read from
+         * @param recordPositions   the positions of the put and delete records of the transaction
+         * @param nextID            the next unused object ID when the transaction was written
+         */
+        void onTransaction(ByteBuffer buffer, List<Integer> recordPositions, long nextID);
+    }
+
+    private final ObjectIDMapper objectIDMapper;
+    private final List<Entity<?>> entities = new ArrayList<>();
+    private final Map<Entity<?>,Integer> entityIndexes = new HashMap<>();
+    private final Map<Entity<?>,Property[]> storedProperties = new HashMap<>();
+
+    /**
+     * Creates the format of the records of the specified model.
+     *
+     * @param model                 the model of the stored objects
+     * @param includesToManyValues  true if put records store the values of to-many relationships too
+     * @param objectIDMapper        the mapping of stored IDs to the ObjectIDs of the store
+     */
+    LogRecordFormat(ObjectModel model, boolean includesToManyValues, ObjectIDMapper objectIDMapper) {
+        this.objectIDMapper = objectIDMapper;
+
+        Comparator<Entity<?>> entityComparator = new Comparator<Entity<?>>() {
+            @Override
+            public int compare(Entity<?> lhs, Entity<?> rhs) {
+                return lhs.getName().compareTo(rhs.getName());
+            }
+        };
+        Comparator<Property> propertyComparator = new Comparator<Property>() {
+            @Override
+            public int compare(Property lhs, Property rhs) {
+                return lhs.getName().compareTo(rhs.getName());
+            }
+        };
+
+        entities.addAll(model.getEntities());
+        Collections.sort(entities, entityComparator);
+        for (int i = 0; i < entities.size(); i++) {
+            Entity<?> entity = entities.get(i);
+            entityIndexes.put(entity, i);
+
+            List<Property> properties = new ArrayList<>();
+            for (Property property : entity.getProperties()) {
+                if (!property.isRelationship() || ((Relationship) property).isToOne() || includesToManyValues) {
+                    properties.add(property);
+                }
+            }
+            Collections.sort(properties, propertyComparator);
+            storedProperties.put(entity, properties.toArray(new Property[properties.size()]));
+        }
+    }
+
+    /**
+     * Returns the properties stored in the put records of the specified entity: its attributes and relationships (or
+     * only the to-one relationships if to-many values are not included), in the order their values are stored.
+     */
+    Property[] getStoredProperties(Entity<?> entity) {
+        return storedProperties.get(entity);
+    }
+
+    static byte getType(ByteBuffer buffer, int position) {
+        return buffer.get(position);
+    }
+
+    /**
+     * Returns the size of the record at the specified position, including its header.
+     */
+    static int getSize(ByteBuffer buffer, int position) {
+        return RECORD_HEADER_SIZE + buffer.getInt(position + 1);
+    }
+
+    /**
+     * Returns the entity of the put or delete record at the specified position.
+     */
+    Entity<?> getEntity(ByteBuffer buffer, int position) {
+        return entities.get(buffer.getShort(position + RECORD_HEADER_SIZE));
+    }
+
+    /**
+     * Returns the object ID of the put or delete record at the specified position.
+     */
+    static long getID(ByteBuffer buffer, int position) {
+        return buffer.getLong(position + RECORD_HEADER_SIZE + 2);
+    }
+
+    static long getCommitNextID(ByteBuffer buffer, int position) {
+        return buffer.getLong(position + RECORD_HEADER_SIZE);
+    }
+
+    static int getCommitChecksum(ByteBuffer buffer, int position) {
+        return buffer.getInt(position + RECORD_HEADER_SIZE + 8);
+    }
+
+    /**
+     * Writes a put record of the specified object values, which are in the order of
+     * {@link #getStoredProperties(Entity)}. The values of to-one relationships are the {@link ObjectID}s of the
+     * related objects, and the values of to-many relationships are collections of them.
+     *
+     * @return the buffer that was written to, which is a larger copy of the specified buffer if it was too small
+     */
+    ByteBuffer writePut(ByteBuffer out, Entity<?> entity, long id, Object[] values) {
+        out = ensureRemaining(out, RECORD_HEADER_SIZE + 10);
+        int start = out.position();
+        out.put(RECORD_PUT);
+        out.putInt(0);      // the length, written once the body is
+        out.putShort(entityIndexes.get(entity).shortValue());
+        out.putLong(id);
+        for (Object value : values) {
+            out = writeValue(out, value);
+        }
+        out.putInt(start + 1, out.position() - start - RECORD_HEADER_SIZE);
+        return out;
+    }
+
+    ByteBuffer writeDelete(ByteBuffer out, Entity<?> entity, long id) {
+        out = ensureRemaining(out, RECORD_HEADER_SIZE + 10);
+        out.put(RECORD_DELETE);
+        out.putInt(10);
+        out.putShort(entityIndexes.get(entity).shortValue());
+        out.putLong(id);
+        return out;
+    }
+
+    ByteBuffer writeCommit(ByteBuffer out, long nextID, int checksum) {
+        out = ensureRemaining(out, COMMIT_RECORD_SIZE);
+        out.put(RECORD_COMMIT);
+        out.putInt(COMMIT_RECORD_SIZE - RECORD_HEADER_SIZE);
+        out.putLong(nextID);
+        out.putInt(checksum);
+        return out;
+    }
+
+    private ByteBuffer writeValue(ByteBuffer out, Object value) {
+        if (value == null) {
+            out = ensureRemaining(out, 1);
+            out.put(VALUE_NULL);
+        } else if (value instanceof Integer) {
+            out = ensureRemaining(out, 5);
+            out.put(VALUE_INT);
+            out.putInt((Integer) value);
+        } else if (value instanceof Long) {
+            out = ensureRemaining(out, 9);
+            out.put(VALUE_LONG);
+            out.putLong((Long) value);
+        } else if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes(UTF8);
+            out = ensureRemaining(out, 5 + bytes.length);
+            out.put(VALUE_STRING);
+            out.putInt(bytes.length);
+            out.put(bytes);
+        } else if (value instanceof Boolean) {
+            out = ensureRemaining(out, 1);
+            out.put((Boolean) value ? VALUE_TRUE : VALUE_FALSE);
+        } else if (value instanceof Float) {
+            out = ensureRemaining(out, 5);
+            out.put(VALUE_FLOAT);
+            out.putFloat((Float) value);
+        } else if (value instanceof Double) {
+            out = ensureRemaining(out, 9);
+            out.put(VALUE_DOUBLE);
+            out.putDouble((Double) value);
+        } else if (value instanceof Date) {
+            out = ensureRemaining(out, 9);
+            out.put(VALUE_DATE);
+            out.putLong(((Date) value).getTime());
+        } else if (value instanceof Enum) {
+            out = ensureRemaining(out, 5);
+            out.put(VALUE_ENUM);
+            out.putInt(((Enum<?>) value).ordinal());
+        } else if (value instanceof ObjectID) {
+            ObjectID objectID = (ObjectID) value;
+            out = ensureRemaining(out, 11);
+            out.put(VALUE_REFERENCE);
+            out.putShort(entityIndexes.get(objectID.getEntity()).shortValue());
+            out.putLong(objectIDMapper.toID(objectID));
+        } else if (value instanceof Collection) {
+            Collection<?> objectIDs = (Collection<?>) value;
+            out = ensureRemaining(out, 5 + objectIDs.size() * 10);
+            out.put(VALUE_REFERENCE_SET);
+            out.putInt(objectIDs.size());
+            for (Object element : objectIDs) {
+                ObjectID objectID = (ObjectID) element;
+                out.putShort(entityIndexes.get(objectID.getEntity()).shortValue());
+                out.putLong(objectIDMapper.toID(objectID));
+            }
+        } else if (value instanceof Short) {
+            out = ensureRemaining(out, 3);
+            out.put(VALUE_SHORT);
+            out.putShort((Short) value);
+        } else {
+            throw new UnsupportedOperationException("Unsupported value type " + value.getClass());
+        }
+        return out;
+    }
+
+    /**
+     * Reads the values of the put record at the specified position, in the order of
+     * {@link #getStoredProperties(Entity)}. Values are read straight from the specified buffer, which is typically
+     * the mapped segment, without copying the record first.
+     */
+    Object[] readValues(ByteBuffer buffer, int position) {
+        Property[] properties = storedProperties.get(getEntity(buffer, position));
+        ByteBuffer in = buffer.duplicate();
+        in.position(position + RECORD_HEADER_SIZE + 10);
+
+        Object[] values = new Object[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            values[i] = readValue(in, properties[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Reads the put record at the specified position into a cache node. A null relationship is left unset in the
+     * returned node, while a null attribute is set to null.
+     */
+    StoreCacheNode readNode(ByteBuffer buffer, int position, ObjectID objectID) {
+        Property[] properties = storedProperties.get(objectID.getEntity());
+        Object[] values = readValues(buffer, position);
+
+        StoreCacheNode node = new StoreCacheNode(objectID);
+        for (int i = 0; i < properties.length; i++) {
+            if (values[i] != null || !properties[i].isRelationship()) {
+                node.setProperty(properties[i].getName(), values[i]);
+            }
+        }
+        return node;
+    }
+
+    private Object readValue(ByteBuffer in, Property property) {
+        byte tag = in.get();
+        switch (tag) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_INT:
+                return in.getInt();
+            case VALUE_LONG:
+                return in.getLong();
+            case VALUE_STRING: {
+                byte[] bytes = new byte[in.getInt()];
+                in.get(bytes);
+                return new String(bytes, UTF8);
+            }
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_FLOAT:
+                return in.getFloat();
+            case VALUE_DOUBLE:
+                return in.getDouble();
+            case VALUE_DATE:
+                return new Date(in.getLong());
+            case VALUE_ENUM:
+                return property.getType().getEnumConstants()[in.getInt()];
+            case VALUE_REFERENCE: {
+                Entity<?> entity = entities.get(in.getShort());
+                return objectIDMapper.toObjectID(entity, in.getLong());
+            }
+            case VALUE_REFERENCE_SET: {
+                int count = in.getInt();
+                Set<ObjectID> objectIDs = new LinkedHashSet<>();
+                for (int i = 0; i < count; i++) {
+                    Entity<?> entity = entities.get(in.getShort());
+                    objectIDs.add(objectIDMapper.toObjectID(entity, in.getLong()));
+                }
+                return objectIDs;
+            }
+            case VALUE_SHORT:
+                return in.getShort();
+            default:
+                throw new IllegalStateException("Unknown value type " + tag + " of property " + property.getName());
+        }
+    }
+
+    /**
+     * Reads the transactions of a log, from the specified position up to the first record that is incomplete, is not
+     * followed by a valid commit record, or has type {@link #RECORD_NONE}.
+     *
+     * @return the position after the last complete transaction
+     */
+    static int readTransactions(ByteBuffer buffer, int position, TransactionHandler handler) {
+        List<Integer> recordPositions = new ArrayList<>();
+        int transactionStart = position;
+
+        while (position + RECORD_HEADER_SIZE <= buffer.limit()) {
+            byte type = getType(buffer, position);
+            if (type == RECORD_NONE) {
+                break;
+            }
+            int size = getSize(buffer, position);
+            if (size < RECORD_HEADER_SIZE || size > buffer.limit() - position) {
+                break;
+            }
+
+            if (type == RECORD_COMMIT) {
+                if (getCommitChecksum(buffer, position) != checksum(buffer, transactionStart, position)) {
+                    break;
+                }
+                handler.onTransaction(buffer, recordPositions, getCommitNextID(buffer, position));
+                recordPositions.clear();
+                transactionStart = position + size;
+            } else {
+                recordPositions.add(position);
+            }
+            position += size;
+        }
+
+        return transactionStart;
+    }
+
+    /**
+     * Returns the CRC32 checksum of the specified range of the buffer, as stored in commit records.
+     */
+    static int checksum(ByteBuffer buffer, int from, int to) {
+        CRC32 crc = new CRC32();
+        if (buffer.hasArray()) {
+            crc.update(buffer.array(), buffer.arrayOffset() + from, to - from);
+        } else {
+            ByteBuffer in = buffer.duplicate();
+            in.position(from);
+            byte[] chunk = new byte[Math.min(8192, Math.max(to - from, 1))];
+            for (int remaining = to - from; remaining > 0; remaining -= chunk.length) {
+                int length = Math.min(chunk.length, remaining);
+                in.get(chunk, 0, length);
+                crc.update(chunk, 0, length);
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Returns a buffer with at least the specified number of bytes remaining, which is the specified buffer if it
+     * already has them, or a larger copy of it otherwise.
+     */
+    static ByteBuffer ensureRemaining(ByteBuffer buffer, int count) {
+        if (buffer.remaining() >= count) {
+            return buffer;
+        }
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + count);
+        ByteBuffer newBuffer = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        newBuffer.put(buffer);
+        return newBuffer;
+    }
+}
@@ -0,0 +1,170 @@
+package com.github.dkharrat.nexusdata.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.UUID;
+
+/**
+ * A segment file of a {@link LogStructuredPersistentStore}. The file has a fixed size and is memory-mapped as a whole:
+ * records are appended to the mapped buffer and read from it in place. The file starts with a header that identifies
+ * the store and the model version the records were written with, and the unused space after the last record is
+ * zero-filled, so the end of the log is found by reading records until a zero record type.
+ */
+class LogSegment {
+
+    static final int HEADER_SIZE = 32;
+
+    private static final int MAGIC = 0x4E58534C;    // "NXSL"
+    private static final int FORMAT_VERSION = 1;
+
+    // the zeros written in bulk when clearing a segment
+    private static final byte[] ZEROS = new byte[64 * 1024];
+
+    private final int number;
+    private final File file;
+    private final MappedByteBuffer buffer;
+
+    // the position after the last committed record
+    private int end = HEADER_SIZE;
+
+    // the number of bytes of the put records of this segment that hold the current values of their objects
+    private long liveBytes;
+
+    private LogSegment(int number, File file, MappedByteBuffer buffer) {
+        this.number = number;
+        this.file = file;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Creates a new, empty segment file of the specified size.
+     */
+    static LogSegment create(File file, int number, int capacity, int modelVersion, UUID uuid) throws IOException {
+        LogSegment segment = new LogSegment(number, file, map(file, capacity));
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(4, FORMAT_VERSION);
+        segment.buffer.putInt(8, modelVersion);
+        segment.buffer.putLong(16, uuid.getMostSignificantBits());
+        segment.buffer.putLong(24, uuid.getLeastSignificantBits());
+        return segment;
+    }
+
+    /**
+     * Opens an existing segment file. The end of the segment is unknown until its records have been read.
+     *
+     * @throws IOException if the file is not a segment file
+     */
+    static LogSegment open(File file, int number) throws IOException {
+        if (file.length() < HEADER_SIZE || file.length() > Integer.MAX_VALUE) {
+            throw new IOException("Invalid segment size " + file.length() + " of " + file);
+        }
+        LogSegment segment = new LogSegment(number, file, map(file, (int) file.length()));
+        if (segment.buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a segment file");
+        } else if (segment.buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version " + segment.buffer.getInt(4) + " of " + file);
+        }
+        return segment;
+    }
+
+    private static MappedByteBuffer map(File file, int capacity) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // the mapping stays valid after the file is closed
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    int getNumber() {
+        return number;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getModelVersion() {
+        return buffer.getInt(8);
+    }
+
+    UUID getUuid() {
+        return new UUID(buffer.getLong(16), buffer.getLong(24));
+    }
+
+    /**
+     * Returns the mapped buffer of the segment, which must only be read with absolute positions (or through a
+     * duplicate), since it's shared by all readers.
+     */
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    int getEnd() {
+        return end;
+    }
+
+    void setEnd(int end) {
+        this.end = end;
+    }
+
+    int getRemaining() {
+        return buffer.capacity() - end;
+    }
+
+    long getLiveBytes() {
+        return liveBytes;
+    }
+
+    void addLiveBytes(long count) {
+        liveBytes += count;
+    }
+
+    /**
+     * Appends the remaining bytes of the specified buffer after the last record.
+     *
+     * @return the position the bytes were written at
+     */
+    int append(ByteBuffer data) {
+        int position = end;
+        ByteBuffer out = buffer.duplicate();
+        out.position(position);
+        out.put(data);
+        end = out.position();
+        return position;
+    }
+
+    /**
+     * Zero-fills the segment from the specified position, discarding any records written there.
+     */
+    void clear(int from) {
+        ByteBuffer out = buffer.duplicate();
+        out.position(from);
+        while (out.hasRemaining()) {
+            out.put(ZEROS, 0, Math.min(ZEROS.length, out.remaining()));
+        }
+    }
+
+    /**
+     * Writes the changes made to the mapped buffer to the storage device.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Deletes the segment file. The mapped buffer must not be used afterwards.
+     */
+    boolean delete() {
+        return file.delete();
+    }
+}
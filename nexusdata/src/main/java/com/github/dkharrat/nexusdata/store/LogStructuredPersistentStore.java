@@ -0,0 +1,641 @@
+package com.github.dkharrat.nexusdata.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.dkharrat.nexusdata.core.*;
+import com.github.dkharrat.nexusdata.metamodel.Entity;
+import com.github.dkharrat.nexusdata.metamodel.ObjectModel;
+import com.github.dkharrat.nexusdata.metamodel.Property;
+import com.github.dkharrat.nexusdata.metamodel.Relationship;
+
+/**
+ * A write-optimized persistent store that appends the changes of each save to a log, instead of updating records in
+ * place. It's useful for capturing data at a high rate (e.g. events), where the transaction overhead of a SQL database
+ * dominates the cost of a save.
+ * <p>
+ * The log is kept in fixed-size segment files in a directory, which are memory-mapped. A save appends a put record for
+ * each inserted or updated object and a delete record for each deleted object to the last segment, followed by a
+ * commit record, so a save that didn't complete (e.g. because the process crashed) is ignored when the store is
+ * loaded. When the last segment is full, a new one is started. The location of the latest record of each object is
+ * kept in an in-memory index, which is rebuilt from the log when the store is loaded, and objects are read straight
+ * from the mapped segments. To-many relationships are not stored, but looked up from an in-memory index of the to-one
+ * relationships that are their inverse, like the SQL stores look them up from the foreign keys.
+ * <p>
+ * Records of objects that were updated or deleted since are dead space in the log. Once most of the space of the full
+ * segments is dead, they are compacted in the background: the current records in them are appended to the log again
+ * and the segment files are deleted. {@link #compact()} can also be called directly.
+ * <p>
+ * Fetch requests are evaluated in memory by scanning the objects of the requested entity, so this store is not suited
+ * for ad-hoc queries on large data sets. By default, saves are not forced to the storage device, so saved changes
+ * survive a crash of the process but not of the system. See {@link #setForceOnSave(boolean)}.
+ */
+public class LogStructuredPersistentStore extends IncrementalStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogStructuredPersistentStore.class);
+
+    /**
+     * The default size of a segment file, in bytes.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    // the fraction of the full segments that must be dead space before they are compacted
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".log";
+
+    private final File directory;
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private volatile boolean forceOnSave;
+
+    private LogRecordFormat format;
+    private final TreeMap<Integer,LogSegment> segments = new TreeMap<>();
+
+    // the location of the latest put record of each object, by entity and object ID (see #getLocation)
+    private final Map<Entity<?>,Map<Long,Long>> index = new LinkedHashMap<>();
+
+    // the objects referencing each object through a to-one relationship whose inverse is a to-many relationship
+    private final Map<Relationship,Map<ObjectID,Set<ObjectID>>> inverseIndex = new HashMap<>();
+
+    private long nextID = 1;
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(8192);
+
+    private ExecutorService compactionExecutor;
+    private boolean isCompactionScheduled;
+    private boolean isClosed;
+
+    /**
+     * Creates a store that keeps its log in the specified directory, which is created if it doesn't exist.
+     *
+     * @param directory the directory of the segment files
+     */
+    public LogStructuredPersistentStore(File directory) {
+        super(directory);
+        this.directory = directory;
+    }
+
+    /**
+     * Sets the size of new segment files. Larger segments need fewer files, but are compacted less often. A save that
+     * doesn't fit in a segment of this size is written to a larger segment. The default is
+     * {@value #DEFAULT_SEGMENT_SIZE} bytes.
+     *
+     * @param segmentSize   the size of a segment file, in bytes
+     * @throws IllegalArgumentException if the size is too small to hold any record
+     */
+    public synchronized void setSegmentSize(int segmentSize) {
+        if (segmentSize < LogSegment.HEADER_SIZE + LogRecordFormat.COMMIT_RECORD_SIZE) {
+            throw new IllegalArgumentException("Segment size is too small: " + segmentSize);
+        }
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Returns the size of new segment files, in bytes.
+     *
+     * @return the size of a segment file
+     */
+    public synchronized int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Sets whether each save is forced to the storage device before it returns, so that saved changes survive a crash
+     * of the system. This makes saves considerably slower. The default is false.
+     *
+     * @param forceOnSave   true to force each save to the storage device, false otherwise
+     */
+    public void setForceOnSave(boolean forceOnSave) {
+        this.forceOnSave = forceOnSave;
+    }
+
+    /**
+     * Returns whether each save is forced to the storage device before it returns.
+     *
+     * @return true if each save is forced to the storage device, false otherwise
+     */
+    public boolean isForceOnSave() {
+        return forceOnSave;
+    }
+
+    @Override
+    protected synchronized void loadMetadata() {
+        ObjectModel model = getCoordinator().getModel();
+        format = new LogRecordFormat(model, false, new LogRecordFormat.ObjectIDMapper() {
+            @Override
+            public ObjectID toObjectID(Entity<?> entity, long id) {
+                return createObjectID(entity, id);
+            }
+
+            @Override
+            public long toID(ObjectID objectID) {
+                return (Long) getReferenceObjectForObjectID(objectID);
+            }
+        });
+        for (Entity<?> entity : model.getEntities()) {
+            for (Relationship relationship : entity.getRelationships()) {
+                if (relationship.isToOne() && relationship.getInverse() != null && relationship.getInverse().isToMany()) {
+                    inverseIndex.put(relationship, new HashMap<ObjectID,Set<ObjectID>>());
+                }
+            }
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("Could not create directory " + directory);
+        }
+
+        try {
+            List<LogSegment> existingSegments = openSegments();
+            UUID uuid = null;
+            if (!existingSegments.isEmpty()) {
+                int version = existingSegments.get(0).getModelVersion();
+                if (version != model.getVersion()) {
+                    //TODO: ideally, the log should be migrated to newer version as opposed to re-creating it
+                    LOG.info("Upgrading log from " + version + " to " + model.getVersion());
+                    for (LogSegment segment : existingSegments) {
+                        deleteSegmentFile(segment);
+                    }
+                    existingSegments.clear();
+                } else {
+                    uuid = existingSegments.get(0).getUuid();
+                }
+            }
+            setUuid(uuid != null ? uuid : UUID.randomUUID());
+
+            for (LogSegment segment : existingSegments) {
+                segments.put(segment.getNumber(), segment);
+                replay(segment);
+            }
+            if (segments.isEmpty()) {
+                LOG.info("Creating log: " + directory);
+                startSegment(segmentSize);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open log " + directory, e);
+        }
+    }
+
+    private List<LogSegment> openSegments() throws IOException {
+        SortedMap<Integer,File> files = new TreeMap<>();
+        File[] directoryFiles = directory.listFiles();
+        if (directoryFiles != null) {
+            for (File file : directoryFiles) {
+                String name = file.getName();
+                if (name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_SUFFIX)) {
+                    String number = name.substring(SEGMENT_FILE_PREFIX.length(), name.length() - SEGMENT_FILE_SUFFIX.length());
+                    try {
+                        files.put(Integer.parseInt(number), file);
+                    } catch (NumberFormatException e) {
+                        LOG.warn("Ignoring unknown file " + file);
+                    }
+                }
+            }
+        }
+
+        List<LogSegment> openedSegments = new ArrayList<>();
+        for (Map.Entry<Integer,File> entry : files.entrySet()) {
+            openedSegments.add(LogSegment.open(entry.getValue(), entry.getKey()));
+        }
+        return openedSegments;
+    }
+
+    private LogSegment startSegment(int capacity) throws IOException {
+        int number = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        File file = new File(directory, String.format(Locale.US, "%s%08d%s", SEGMENT_FILE_PREFIX, number, SEGMENT_FILE_SUFFIX));
+        LogSegment segment = LogSegment.create(file, number, capacity, getCoordinator().getModel().getVersion(), getUuid());
+        segments.put(number, segment);
+        return segment;
+    }
+
+    private void deleteSegmentFile(LogSegment segment) {
+        if (!segment.delete()) {
+            LOG.warn("Could not delete segment " + segment.getFile());
+        }
+    }
+
+    /**
+     * Reads the records of a segment into the index. Records after the last valid commit record belong to a save
+     * that didn't complete, and are discarded.
+     */
+    private void replay(final LogSegment segment) {
+        int end = LogRecordFormat.readTransactions(segment.getBuffer(), LogSegment.HEADER_SIZE, new LogRecordFormat.TransactionHandler() {
+            @Override
+            public void onTransaction(ByteBuffer buffer, List<Integer> recordPositions, long transactionNextID) {
+                nextID = Math.max(nextID, transactionNextID);
+                for (int recordPosition : recordPositions) {
+                    applyRecord(segment, recordPosition);
+                }
+            }
+        });
+
+        segment.setEnd(end);
+        if (end < segment.getCapacity() && LogRecordFormat.getType(segment.getBuffer(), end) != LogRecordFormat.RECORD_NONE) {
+            LOG.warn("Discarding incomplete records at " + end + " of " + segment.getFile());
+            segment.clear(end);
+        }
+    }
+
+    private static long getLocation(LogSegment segment, int position) {
+        return ((long) segment.getNumber() << 32) | position;
+    }
+
+    private LogSegment getSegment(long location) {
+        return segments.get((int) (location >>> 32));
+    }
+
+    private static int getPosition(long location) {
+        return (int) location;
+    }
+
+    private Long findLocation(Entity<?> entity, long id) {
+        Map<Long,Long> entityIndex = index.get(entity);
+        return entityIndex == null ? null : entityIndex.get(id);
+    }
+
+    private Long findLocation(ObjectID objectID) {
+        Object referenceObject = getReferenceObjectForObjectID(objectID);
+        if (!(referenceObject instanceof Long)) {
+            return null;
+        }
+        return findLocation(objectID.getEntity(), (Long) referenceObject);
+    }
+
+    /**
+     * Updates the index with a committed put or delete record.
+     */
+    private void applyRecord(LogSegment segment, int position) {
+        ByteBuffer buffer = segment.getBuffer();
+        Entity<?> entity = format.getEntity(buffer, position);
+        long id = LogRecordFormat.getID(buffer, position);
+
+        Map<Long,Long> entityIndex = index.get(entity);
+        if (entityIndex == null) {
+            entityIndex = new LinkedHashMap<>();
+            index.put(entity, entityIndex);
+        }
+
+        Long oldLocation;
+        if (LogRecordFormat.getType(buffer, position) == LogRecordFormat.RECORD_PUT) {
+            oldLocation = entityIndex.put(id, getLocation(segment, position));
+            segment.addLiveBytes(LogRecordFormat.getSize(buffer, position));
+        } else {
+            oldLocation = entityIndex.remove(id);
+        }
+
+        ObjectID objectID = null;
+        if (oldLocation != null) {
+            LogSegment oldSegment = getSegment(oldLocation);
+            int oldPosition = getPosition(oldLocation);
+            oldSegment.addLiveBytes(-LogRecordFormat.getSize(oldSegment.getBuffer(), oldPosition));
+            objectID = createObjectID(entity, id);
+            updateInverseIndex(objectID, oldSegment.getBuffer(), oldPosition, false);
+        }
+        if (LogRecordFormat.getType(buffer, position) == LogRecordFormat.RECORD_PUT) {
+            if (objectID == null) {
+                objectID = createObjectID(entity, id);
+            }
+            updateInverseIndex(objectID, buffer, position, true);
+        }
+    }
+
+    private void updateInverseIndex(ObjectID objectID, ByteBuffer buffer, int position, boolean add) {
+        Property[] properties = format.getStoredProperties(objectID.getEntity());
+        Object[] values = null;
+        for (int i = 0; i < properties.length; i++) {
+            Map<ObjectID,Set<ObjectID>> relatedObjects = inverseIndex.get(properties[i]);
+            if (relatedObjects == null) {
+                continue;
+            }
+            if (values == null) {
+                values = format.readValues(buffer, position);
+            }
+
+            ObjectID relatedID = (ObjectID) values[i];
+            if (relatedID == null) {
+                continue;
+            }
+            Set<ObjectID> referencingIDs = relatedObjects.get(relatedID);
+            if (add) {
+                if (referencingIDs == null) {
+                    referencingIDs = new LinkedHashSet<>();
+                    relatedObjects.put(relatedID, referencingIDs);
+                }
+                referencingIDs.add(objectID);
+            } else if (referencingIDs != null) {
+                referencingIDs.remove(objectID);
+                if (referencingIDs.isEmpty()) {
+                    relatedObjects.remove(relatedID);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the records in the specified buffer, followed by a commit record, as one transaction, and applies them
+     * to the index. A new segment is started if the transaction doesn't fit in the last one.
+     *
+     * @param out               the buffer holding the records, from its start to its position
+     * @param recordPositions   the positions of the records in the buffer
+     * @return the buffer that was written to, which is a larger copy of the specified buffer if it was too small
+     */
+    private ByteBuffer appendTransaction(ByteBuffer out, List<Integer> recordPositions) throws IOException {
+        int length = out.position();
+        LogSegment segment = segments.lastEntry().getValue();
+        if (segment.getRemaining() < length + LogRecordFormat.COMMIT_RECORD_SIZE) {
+            segment = startSegment(Math.max(segmentSize, LogSegment.HEADER_SIZE + length + LogRecordFormat.COMMIT_RECORD_SIZE));
+        }
+
+        out = format.writeCommit(out, nextID, LogRecordFormat.checksum(out, 0, length));
+        out.flip();
+        int start = segment.append(out);
+        for (int recordPosition : recordPositions) {
+            applyRecord(segment, start + recordPosition);
+        }
+        return out;
+    }
+
+    /**
+     * Returns the values of the stored properties of an object, in the order of the put records.
+     */
+    private Object[] getStoredValues(ManagedObject object) {
+        Property[] properties = format.getStoredProperties(object.getEntity());
+        Object[] values = new Object[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            Object value = object.getValue(properties[i].getName());
+            if (value != null && properties[i].isRelationship()) {
+                value = ((ManagedObject) value).getID();
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+
+    @Override
+    protected synchronized void executeSaveRequest(SaveChangesRequest request, ObjectContext context) {
+        ChangedObjectsSet changes = request.getChanges();
+        ByteBuffer out = writeBuffer;
+        out.clear();
+        List<Integer> recordPositions = new ArrayList<>();
+
+        for (ManagedObject object : changes.getInsertedObjects()) {
+            recordPositions.add(out.position());
+            out = format.writePut(out, object.getEntity(), (Long) getReferenceObjectForObjectID(object.getID()), getStoredValues(object));
+        }
+        for (ManagedObject object : changes.getUpdatedObjects()) {
+            recordPositions.add(out.position());
+            out = format.writePut(out, object.getEntity(), (Long) getReferenceObjectForObjectID(object.getID()), getStoredValues(object));
+        }
+        for (ManagedObject object : changes.getDeletedObjects()) {
+            if (findLocation(object.getID()) != null) {
+                recordPositions.add(out.position());
+                out = format.writeDelete(out, object.getEntity(), (Long) getReferenceObjectForObjectID(object.getID()));
+            }
+        }
+
+        if (recordPositions.isEmpty()) {
+            return;
+        }
+
+        try {
+            out = appendTransaction(out, recordPositions);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not save changes", e);
+        } finally {
+            writeBuffer = out;
+        }
+
+        if (forceOnSave) {
+            segments.lastEntry().getValue().force();
+        }
+
+        if (needsCompaction()) {
+            scheduleCompaction();
+        }
+    }
+
+    private boolean needsCompaction() {
+        long size = 0;
+        long liveBytes = 0;
+        for (LogSegment segment : segments.headMap(segments.lastKey()).values()) {
+            size += segment.getEnd() - LogSegment.HEADER_SIZE;
+            liveBytes += segment.getLiveBytes();
+        }
+        return size > 0 && size - liveBytes >= size * COMPACTION_THRESHOLD;
+    }
+
+    private void scheduleCompaction() {
+        if (isCompactionScheduled || isClosed) {
+            return;
+        }
+        if (compactionExecutor == null) {
+            compactionExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "nexusdata-log-compaction");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        isCompactionScheduled = true;
+        compactionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (RuntimeException e) {
+                    LOG.error("Could not compact log " + directory, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Compacts the full segments of the log: the current records of their objects are appended to the log again, and
+     * the segment files are deleted. This is done automatically in the background, once most of the space of the full
+     * segments is taken by records of objects that were updated or deleted since.
+     */
+    public synchronized void compact() {
+        isCompactionScheduled = false;
+        if (isClosed || segments.size() < 2) {
+            return;
+        }
+
+        List<LogSegment> fullSegments = new ArrayList<>(segments.headMap(segments.lastKey()).values());
+        Set<Integer> fullSegmentNumbers = new HashSet<>();
+        for (LogSegment segment : fullSegments) {
+            fullSegmentNumbers.add(segment.getNumber());
+        }
+
+        List<Long> liveLocations = new ArrayList<>();
+        for (Map<Long,Long> entityIndex : index.values()) {
+            for (Long location : entityIndex.values()) {
+                if (fullSegmentNumbers.contains((int) (location >>> 32))) {
+                    liveLocations.add(location);
+                }
+            }
+        }
+
+        try {
+            // the copied records are the latest of their objects, so appending them keeps the order of the log
+            ByteBuffer out = writeBuffer;
+            out.clear();
+            List<Integer> recordPositions = new ArrayList<>();
+            for (long location : liveLocations) {
+                ByteBuffer buffer = getSegment(location).getBuffer().duplicate();
+                buffer.position(getPosition(location));
+                buffer.limit(getPosition(location) + LogRecordFormat.getSize(buffer, getPosition(location)));
+
+                if (!recordPositions.isEmpty() && out.position() + buffer.remaining() > segmentSize / 2) {
+                    out = appendTransaction(out, recordPositions);
+                    out.clear();
+                    recordPositions.clear();
+                }
+                out = LogRecordFormat.ensureRemaining(out, buffer.remaining());
+                recordPositions.add(out.position());
+                out.put(buffer);
+            }
+            if (!recordPositions.isEmpty()) {
+                out = appendTransaction(out, recordPositions);
+            }
+            writeBuffer = out;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not compact log " + directory, e);
+        }
+
+        // the copies must be stored before the originals are deleted, and the oldest segments are deleted first, so
+        // that a crash in between never leaves a deleted object's record without the later record that deleted it
+        for (LogSegment segment : segments.tailMap(fullSegments.get(fullSegments.size() - 1).getNumber(), false).values()) {
+            segment.force();
+        }
+        for (LogSegment segment : fullSegments) {
+            segments.remove(segment.getNumber());
+            deleteSegmentFile(segment);
+        }
+
+        LOG.info("Compacted " + fullSegments.size() + " segments of " + directory + " (" + liveLocations.size() + " records kept)");
+    }
+
+    /**
+     * Forces all saved changes to the storage device and stops background compaction. The store can't be used
+     * afterwards. Note that the segments stay mapped until they are garbage-collected.
+     */
+    public synchronized void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        if (compactionExecutor != null) {
+            compactionExecutor.shutdown();
+        }
+        for (LogSegment segment : segments.values()) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Fetches the objects that match the request. The records of the candidate objects are decoded one at a time, and
+     * the predicate is evaluated against their values, so only the objects that are returned are registered in the
+     * context (see {@link IncrementalStore#getMatchingObjects}).
+     */
+    @Override
+    protected synchronized <T extends ManagedObject> List<T> executeFetchRequest(FetchRequest<T> request, ObjectContext context) {
+        final List<Map.Entry<Entity<?>,Map<Long,Long>>> entityIndexes = new ArrayList<>();
+        for (Map.Entry<Entity<?>,Map<Long,Long>> entry : index.entrySet()) {
+            if (request.getEntity().getType().isAssignableFrom(entry.getKey().getType())) {
+                entityIndexes.add(entry);
+            }
+        }
+
+        Iterator<StoreCacheNode> cacheNodes = new Iterator<StoreCacheNode>() {
+            private final Iterator<Map.Entry<Entity<?>,Map<Long,Long>>> entityIterator = entityIndexes.iterator();
+            private Entity<?> entity;
+            private Iterator<Map.Entry<Long,Long>> locations = Collections.<Map.Entry<Long,Long>>emptySet().iterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!locations.hasNext() && entityIterator.hasNext()) {
+                    Map.Entry<Entity<?>,Map<Long,Long>> entry = entityIterator.next();
+                    entity = entry.getKey();
+                    locations = entry.getValue().entrySet().iterator();
+                }
+                return locations.hasNext();
+            }
+
+            @Override
+            public StoreCacheNode next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Map.Entry<Long,Long> location = locations.next();
+                return format.readNode(getSegment(location.getValue()).getBuffer(), getPosition(location.getValue()),
+                        createObjectID(entity, location.getKey()));
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        return getMatchingObjects(request, context, cacheNodes);
+    }
+
+    @Override
+    protected synchronized StoreCacheNode getObjectValues(ObjectID objectID, ObjectContext context) {
+        Long location = findLocation(objectID);
+        if (location == null) {
+            return null;
+        }
+        return format.readNode(getSegment(location).getBuffer(), getPosition(location), objectID);
+    }
+
+    @Override
+    protected synchronized ObjectID getToOneRelationshipValue(ObjectID objectID, Relationship relationship, ObjectContext context) {
+        Long location = findLocation(objectID);
+        if (location == null) {
+            return null;
+        }
+
+        Property[] properties = format.getStoredProperties(objectID.getEntity());
+        Object[] values = format.readValues(getSegment(location).getBuffer(), getPosition(location));
+        for (int i = 0; i < properties.length; i++) {
+            if (properties[i].getName().equals(relationship.getName())) {
+                ObjectID relatedID = (ObjectID) values[i];
+
+                // a dangling reference results in no related object
+                return relatedID != null && findLocation(relatedID) != null ? relatedID : null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected synchronized Set<ObjectID> getToManyRelationshipValue(ObjectID objectID, Relationship relationship, ObjectContext context) {
+        Map<ObjectID,Set<ObjectID>> relatedObjects = inverseIndex.get(relationship.getInverse());
+        if (relatedObjects == null) {
+            throw new UnsupportedOperationException("To-many relationship " + relationship.getName() + " must have a to-one inverse");
+        }
+
+        Set<ObjectID> relatedIDs = relatedObjects.get(objectID);
+        return relatedIDs == null ? new HashSet<ObjectID>() : new HashSet<ObjectID>(relatedIDs);
+    }
+
+    @Override
+    protected synchronized List<ObjectID> getPermanentIDsForObjects(List<ManagedObject> objects) {
+        List<ObjectID> objectIDs = new ArrayList<ObjectID>();
+        for (ManagedObject object : objects) {
+            objectIDs.add(createObjectID(object.getEntity(), nextID++));
+        }
+        return objectIDs;
+    }
+}
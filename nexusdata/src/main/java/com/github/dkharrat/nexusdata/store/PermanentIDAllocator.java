@@ -0,0 +1,96 @@
+package com.github.dkharrat.nexusdata.store;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates the IDs of new rows, using a hi-lo scheme: blocks of consecutive IDs are reserved per table in the
+ * database by the store (see {@link #reserveIDs}), and IDs are then handed out from the reserved block in memory,
+ * without locking. Only reserving a new block, once the current one is used up, requires a database transaction.
+ * <p>
+ * Since a block is reserved in the database before any of its IDs are handed out, IDs are unique across threads,
+ * stores and processes using the same database. IDs of a block that are not used before the store is closed are
+ * skipped, so the IDs of a table may have gaps.
+ */
+abstract class PermanentIDAllocator {
+
+    static final int DEFAULT_BLOCK_SIZE = 100;
+
+    private volatile int blockSize = DEFAULT_BLOCK_SIZE;
+
+    // the current block of each table
+    private final ConcurrentMap<String,IDBlock> blocks = new ConcurrentHashMap<>();
+
+    void setBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Allocates the specified number of consecutive IDs for new rows of the specified table.
+     *
+     * @return the first allocated ID
+     */
+    long allocate(String tableName, int count) {
+        while (true) {
+            IDBlock block = blocks.get(tableName);
+            if (block != null) {
+                long firstID = block.take(count);
+                if (firstID >= 0) {
+                    return firstID;
+                }
+            }
+
+            synchronized (this) {
+                // another thread may have already replaced the used up block while this one was waiting
+                if (blocks.get(tableName) == block) {
+                    long size = Math.max(blockSize, count);
+                    long firstID = reserveIDs(tableName, size);
+                    blocks.put(tableName, new IDBlock(firstID, firstID + size));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reserves a block of consecutive IDs for new rows of the specified table in the database, such that they are never
+     * reserved again.
+     *
+     * @return the first ID of the reserved block
+     */
+    abstract long reserveIDs(String tableName, long count);
+
+    private static class IDBlock {
+        private final AtomicLong nextID;
+        private final long endID;
+
+        IDBlock(long firstID, long endID) {
+            this.nextID = new AtomicLong(firstID);
+            this.endID = endID;
+        }
+
+        /**
+         * Takes the specified number of consecutive IDs from this block.
+         *
+         * @return the first ID taken, or -1 if there are not enough IDs left in this block
+         */
+        long take(int count) {
+            while (true) {
+                long id = nextID.get();
+                if (id + count > endID) {
+                    return -1;
+                }
+                if (nextID.compareAndSet(id, id + count)) {
+                    return id;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.github.dkharrat.nexusdata.store;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.github.dkharrat.nexusdata.core.ObjectID;
+import com.github.dkharrat.nexusdata.core.StoreCacheNode;
+import com.github.dkharrat.nexusdata.metamodel.Entity;
+import com.github.dkharrat.nexusdata.metamodel.Property;
+import com.github.dkharrat.nexusdata.metamodel.Relationship;
+
+/**
+ * Decodes JDBC result set rows of a particular entity into {@link StoreCacheNode}s. This is the JDBC counterpart of
+ * {@link RowDecoder}: a decoder is built once for an entity and the columns of a query, so that decoding a row doesn't
+ * need to look up column names or inspect property types.
+ */
+class ResultSetDecoder {
+
+    private final Entity<?> entity;
+    private final String[] columnNames;
+    private final String[] propertyNames;
+    private final int[] columnIndexes;
+    private final ColumnReader[] readers;
+
+    private ResultSetDecoder(Entity<?> entity, String[] columnNames, List<String> propertyNames, List<Integer> columnIndexes, List<ColumnReader> readers) {
+        this.entity = entity;
+        this.columnNames = columnNames;
+        this.propertyNames = propertyNames.toArray(new String[propertyNames.size()]);
+        this.columnIndexes = new int[columnIndexes.size()];
+        for (int i = 0; i < this.columnIndexes.length; i++) {
+            this.columnIndexes[i] = columnIndexes.get(i);
+        }
+        this.readers = readers.toArray(new ColumnReader[readers.size()]);
+    }
+
+    /**
+     * Creates a decoder for rows of the specified entity, read from result sets with the same columns as the specified
+     * result set. Properties that have no column in the result set (including to-many relationships) are not decoded.
+     */
+    static ResultSetDecoder create(JdbcSqlPersistentStore store, Entity<?> entity, ResultSet resultSet) throws SQLException {
+        String[] columnNames = getColumnNames(resultSet);
+        List<String> propertyNames = new ArrayList<String>();
+        List<Integer> columnIndexes = new ArrayList<Integer>();
+        List<ColumnReader> readers = new ArrayList<ColumnReader>();
+
+        for (Property property : entity.getProperties()) {
+            if (property.isRelationship() && !((Relationship)property).isToOne()) {
+                continue;
+            }
+
+            int columnIndex = indexOf(columnNames, store.getColumnName(property));
+            if (columnIndex < 0) {
+                continue;
+            }
+
+            propertyNames.add(property.getName());
+            columnIndexes.add(columnIndex + 1);     // JDBC columns are 1-based
+            readers.add(readerFor(store, property));
+        }
+
+        return new ResultSetDecoder(entity, columnNames, propertyNames, columnIndexes, readers);
+    }
+
+    private static String[] getColumnNames(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        String[] columnNames = new String[metaData.getColumnCount()];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnNames[i] = metaData.getColumnLabel(i + 1);
+        }
+        return columnNames;
+    }
+
+    private static int indexOf(String[] columnNames, String columnName) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    Entity<?> getEntity() {
+        return entity;
+    }
+
+    /**
+     * Indicates whether this decoder can decode the rows of the specified result set, i.e. whether it has the same
+     * columns as the result set this decoder was created for.
+     */
+    boolean matches(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        if (metaData.getColumnCount() != columnNames.length) {
+            return false;
+        }
+        for (int i = 0; i < columnNames.length; i++) {
+            if (!columnNames[i].equals(metaData.getColumnLabel(i + 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the current row of the result set. A null to-one relationship is left unset in the returned node, while a
+     * null attribute is set to null.
+     */
+    StoreCacheNode decode(ObjectID objectID, ResultSet resultSet) throws SQLException {
+        StoreCacheNode node = new StoreCacheNode(objectID);
+        for (int i = 0; i < readers.length; i++) {
+            ColumnReader reader = readers[i];
+            Object value = reader.read(resultSet, columnIndexes[i]);
+            if (resultSet.wasNull()) {
+                if (!reader.skipsNull()) {
+                    node.setProperty(propertyNames[i], null);
+                }
+            } else {
+                node.setProperty(propertyNames[i], value);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Reads the value of a column, converting it to the type of its property. The returned value is ignored if the
+     * column is null, as reported by {@link ResultSet#wasNull()}.
+     */
+    static abstract class ColumnReader {
+        abstract Object read(ResultSet resultSet, int columnIndex) throws SQLException;
+
+        boolean skipsNull() {
+            return false;
+        }
+    }
+
+    private static final ColumnReader INTEGER = new ColumnReader() {
+        @Override
+        Object read(ResultSet resultSet, int columnIndex) throws SQLException {
+            return resultSet.getInt(columnIndex);
+        }
+    };
+
+    private static final ColumnReader LONG = new ColumnReader() {
+        @Override
+        Object read(ResultSet resultSet, int columnIndex) throws SQLException {
+            return resultSet.getLong(columnIndex);
+        }
+    };
+
+    private static final ColumnReader STRING = new ColumnReader() {
+        @Override
+        Object read(ResultSet resultSet, int columnIndex) throws SQLException {
+            return resultSet.getString(columnIndex);
+        }
+    };
+
+    private static final ColumnReader BOOLEAN = new ColumnReader() {
+        @Override
+        Object read(ResultSet resultSet, int columnIndex) throws SQLException {
+            return resultSet.getInt(columnIndex) != 0;
+        }
+    };
+
+    private static final ColumnReader FLOAT = new ColumnReader() {
+        @Override
+        Object read(ResultSet resultSet, int columnIndex) throws SQLException {
+            return resultSet.getFloat(columnIndex);
+        }
+    };
+
+    private static final ColumnReader DOUBLE = new ColumnReader() {
+        @Override
+        Object read(ResultSet resultSet, int columnIndex) throws SQLException {
+            return resultSet.getDouble(columnIndex);
+        }
+    };
+
+    private static final ColumnReader NATIVE_DATE = new ColumnReader() {
+        @Override
+        Object read(ResultSet resultSet, int columnIndex) throws SQLException {
+            Object value = resultSet.getObject(columnIndex);
+            // text is only left in a native column by a migration that couldn't convert it
+            if (value instanceof String) {
+                return ValueEncoding.TEXT.decodeDate((String) value);
+            }
+            return value == null ? null : ValueEncoding.NATIVE.decodeDate(((Number) value).longValue());
+        }
+    };
+
+    private static final ColumnReader TEXT_DATE = new ColumnReader() {
+        @Override
+        Object read(ResultSet resultSet, int columnIndex) throws SQLException {
+            String text = resultSet.getString(columnIndex);
+            return text == null ? null : ValueEncoding.TEXT.decodeDate(text);
+        }
+    };
+
+    private static class NativeEnumReader<E extends Enum<E>> extends ColumnReader {
+        private final Class<E> enumType;
+        private final E[] constants;
+
+        NativeEnumReader(Class<E> enumType) {
+            this.enumType = enumType;
+            this.constants = enumType.getEnumConstants();
+        }
+
+        @Override
+        Object read(ResultSet resultSet, int columnIndex) throws SQLException {
+            Object value = resultSet.getObject(columnIndex);
+            // text is only left in a native column by a migration that couldn't convert it
+            if (value instanceof String) {
+                return Enum.valueOf(enumType, (String) value);
+            } else if (value == null) {
+                return null;
+            }
+            int ordinal = ((Number) value).intValue();
+            if (ordinal < 0 || ordinal >= constants.length) {
+                throw new IllegalArgumentException("No enum constant " + enumType.getCanonicalName() + " with ordinal " + ordinal);
+            }
+            return constants[ordinal];
+        }
+    }
+
+    private static class TextEnumReader<E extends Enum<E>> extends ColumnReader {
+        private final Class<E> enumType;
+
+        TextEnumReader(Class<E> enumType) {
+            this.enumType = enumType;
+        }
+
+        @Override
+        Object read(ResultSet resultSet, int columnIndex) throws SQLException {
+            String name = resultSet.getString(columnIndex);
+            return name == null ? null : Enum.valueOf(enumType, name);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Enum<E>> ColumnReader newEnumReader(Class<?> type, ValueEncoding encoding) {
+        Class<E> enumType = (Class<E>) type;
+        if (encoding == ValueEncoding.NATIVE) {
+            return new NativeEnumReader<E>(enumType);
+        }
+        return new TextEnumReader<E>(enumType);
+    }
+
+    private static class ToOneRelationshipReader extends ColumnReader {
+        private final JdbcSqlPersistentStore store;
+        private final Entity<?> destinationEntity;
+
+        ToOneRelationshipReader(JdbcSqlPersistentStore store, Entity<?> destinationEntity) {
+            this.store = store;
+            this.destinationEntity = destinationEntity;
+        }
+
+        @Override
+        Object read(ResultSet resultSet, int columnIndex) throws SQLException {
+            long id = resultSet.getLong(columnIndex);
+            return resultSet.wasNull() ? null : store.newObjectID(destinationEntity, id);
+        }
+
+        @Override
+        boolean skipsNull() {
+            return true;
+        }
+    }
+
+    private static ColumnReader readerFor(JdbcSqlPersistentStore store, Property property) {
+        Class<?> propType = property.getType();
+
+        if (property.isRelationship()) {
+            return new ToOneRelationshipReader(store, ((Relationship)property).getDestinationEntity());
+        } else if (propType.isAssignableFrom(Integer.class) || propType.isAssignableFrom(int.class)) {
+            return INTEGER;
+        } else if (propType.isAssignableFrom(Long.class) || propType.isAssignableFrom(long.class)) {
+            return LONG;
+        } else if (propType.isAssignableFrom(String.class)) {
+            return STRING;
+        } else if (propType.isAssignableFrom(Boolean.class) || propType.isAssignableFrom(boolean.class)) {
+            return BOOLEAN;
+        } else if (propType.isAssignableFrom(Float.class) || propType.isAssignableFrom(float.class)) {
+            return FLOAT;
+        } else if (propType.isAssignableFrom(Double.class) || propType.isAssignableFrom(double.class)) {
+            return DOUBLE;
+        } else if (Enum.class.isAssignableFrom(propType)) {
+            return newEnumReader(propType, store.getValueEncoding());
+        } else if (propType.isAssignableFrom(Date.class)) {
+            return store.getValueEncoding() == ValueEncoding.NATIVE ? NATIVE_DATE : TEXT_DATE;
+        } else {
+            throw new UnsupportedOperationException("Unsupported property type " + property.getType() + " for " + property.getEntity().getType());
+        }
+    }
+}
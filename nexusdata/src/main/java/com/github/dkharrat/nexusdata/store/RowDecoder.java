@@ -0,0 +1,260 @@
+package com.github.dkharrat.nexusdata.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import android.database.Cursor;
+
+import com.github.dkharrat.nexusdata.core.ObjectID;
+import com.github.dkharrat.nexusdata.core.StoreCacheNode;
+import com.github.dkharrat.nexusdata.metamodel.Entity;
+import com.github.dkharrat.nexusdata.metamodel.Property;
+import com.github.dkharrat.nexusdata.metamodel.Relationship;
+
+/**
+ * Decodes rows of a particular entity into {@link StoreCacheNode}s. A decoder is built once for an entity and the set
+ * of columns of a query (its projection): the column index and a reader specific to the type of each property are
+ * resolved up-front, so that decoding a row doesn't need to look up column names or inspect property types.
+ */
+class RowDecoder {
+
+    private final Entity<?> entity;
+    private final String[] columnNames;
+    private final String[] propertyNames;
+    private final int[] columnIndexes;
+    private final ColumnReader[] readers;
+
+    private RowDecoder(Entity<?> entity, String[] columnNames, List<String> propertyNames, List<Integer> columnIndexes, List<ColumnReader> readers) {
+        this.entity = entity;
+        this.columnNames = columnNames;
+        this.propertyNames = propertyNames.toArray(new String[propertyNames.size()]);
+        this.columnIndexes = new int[columnIndexes.size()];
+        for (int i = 0; i < this.columnIndexes.length; i++) {
+            this.columnIndexes[i] = columnIndexes.get(i);
+        }
+        this.readers = readers.toArray(new ColumnReader[readers.size()]);
+    }
+
+    /**
+     * Creates a decoder for rows of the specified entity, read from cursors with the same columns as the specified
+     * cursor. Properties that have no column in the cursor (including to-many relationships) are not decoded.
+     */
+    static RowDecoder create(AndroidSqlPersistentStore store, Entity<?> entity, Cursor cursor) {
+        List<String> propertyNames = new ArrayList<String>();
+        List<Integer> columnIndexes = new ArrayList<Integer>();
+        List<ColumnReader> readers = new ArrayList<ColumnReader>();
+
+        for (Property property : entity.getProperties()) {
+            if (property.isRelationship() && !((Relationship)property).isToOne()) {
+                continue;
+            }
+
+            int columnIndex = cursor.getColumnIndex(store.getColumnName(property));
+            if (columnIndex < 0) {
+                continue;
+            }
+
+            propertyNames.add(property.getName());
+            columnIndexes.add(columnIndex);
+            readers.add(readerFor(store, property));
+        }
+
+        return new RowDecoder(entity, cursor.getColumnNames(), propertyNames, columnIndexes, readers);
+    }
+
+    Entity<?> getEntity() {
+        return entity;
+    }
+
+    /**
+     * Indicates whether this decoder can decode the rows of the specified cursor, i.e. whether it has the same columns
+     * as the cursor this decoder was created for.
+     */
+    boolean matches(Cursor cursor) {
+        return Arrays.equals(columnNames, cursor.getColumnNames());
+    }
+
+    /**
+     * Decodes the current row of the cursor. A null to-one relationship is left unset in the returned node, while a
+     * null attribute is set to null.
+     */
+    StoreCacheNode decode(ObjectID objectID, Cursor cursor) {
+        StoreCacheNode node = new StoreCacheNode(objectID);
+        for (int i = 0; i < readers.length; i++) {
+            int columnIndex = columnIndexes[i];
+            ColumnReader reader = readers[i];
+            if (cursor.isNull(columnIndex)) {
+                if (!reader.skipsNull()) {
+                    node.setProperty(propertyNames[i], null);
+                }
+            } else {
+                node.setProperty(propertyNames[i], reader.read(cursor, columnIndex));
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Reads the non-null value of a column, converting it to the type of its property.
+     */
+    static abstract class ColumnReader {
+        abstract Object read(Cursor cursor, int columnIndex);
+
+        boolean skipsNull() {
+            return false;
+        }
+    }
+
+    private static final ColumnReader INTEGER = new ColumnReader() {
+        @Override
+        Object read(Cursor cursor, int columnIndex) {
+            return cursor.getInt(columnIndex);
+        }
+    };
+
+    private static final ColumnReader LONG = new ColumnReader() {
+        @Override
+        Object read(Cursor cursor, int columnIndex) {
+            return cursor.getLong(columnIndex);
+        }
+    };
+
+    private static final ColumnReader STRING = new ColumnReader() {
+        @Override
+        Object read(Cursor cursor, int columnIndex) {
+            return cursor.getString(columnIndex);
+        }
+    };
+
+    private static final ColumnReader BOOLEAN = new ColumnReader() {
+        @Override
+        Object read(Cursor cursor, int columnIndex) {
+            return cursor.getInt(columnIndex) != 0;
+        }
+    };
+
+    private static final ColumnReader FLOAT = new ColumnReader() {
+        @Override
+        Object read(Cursor cursor, int columnIndex) {
+            return cursor.getFloat(columnIndex);
+        }
+    };
+
+    private static final ColumnReader DOUBLE = new ColumnReader() {
+        @Override
+        Object read(Cursor cursor, int columnIndex) {
+            return cursor.getDouble(columnIndex);
+        }
+    };
+
+    private static final ColumnReader NATIVE_DATE = new ColumnReader() {
+        @Override
+        Object read(Cursor cursor, int columnIndex) {
+            // text is only left in a native column by a migration that couldn't convert it
+            if (cursor.getType(columnIndex) == Cursor.FIELD_TYPE_STRING) {
+                return ValueEncoding.TEXT.decodeDate(cursor.getString(columnIndex));
+            }
+            return ValueEncoding.NATIVE.decodeDate(cursor.getLong(columnIndex));
+        }
+    };
+
+    private static final ColumnReader TEXT_DATE = new ColumnReader() {
+        @Override
+        Object read(Cursor cursor, int columnIndex) {
+            return ValueEncoding.TEXT.decodeDate(cursor.getString(columnIndex));
+        }
+    };
+
+    private static class NativeEnumReader<E extends Enum<E>> extends ColumnReader {
+        private final Class<E> enumType;
+        private final E[] constants;
+
+        NativeEnumReader(Class<E> enumType) {
+            this.enumType = enumType;
+            this.constants = enumType.getEnumConstants();
+        }
+
+        @Override
+        Object read(Cursor cursor, int columnIndex) {
+            // text is only left in a native column by a migration that couldn't convert it
+            if (cursor.getType(columnIndex) == Cursor.FIELD_TYPE_STRING) {
+                return Enum.valueOf(enumType, cursor.getString(columnIndex));
+            }
+            int ordinal = cursor.getInt(columnIndex);
+            if (ordinal < 0 || ordinal >= constants.length) {
+                throw new IllegalArgumentException("No enum constant " + enumType.getCanonicalName() + " with ordinal " + ordinal);
+            }
+            return constants[ordinal];
+        }
+    }
+
+    private static class TextEnumReader<E extends Enum<E>> extends ColumnReader {
+        private final Class<E> enumType;
+
+        TextEnumReader(Class<E> enumType) {
+            this.enumType = enumType;
+        }
+
+        @Override
+        Object read(Cursor cursor, int columnIndex) {
+            return Enum.valueOf(enumType, cursor.getString(columnIndex));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Enum<E>> ColumnReader newEnumReader(Class<?> type, ValueEncoding encoding) {
+        Class<E> enumType = (Class<E>) type;
+        if (encoding == ValueEncoding.NATIVE) {
+            return new NativeEnumReader<E>(enumType);
+        }
+        return new TextEnumReader<E>(enumType);
+    }
+
+    private static class ToOneRelationshipReader extends ColumnReader {
+        private final AndroidSqlPersistentStore store;
+        private final Entity<?> destinationEntity;
+
+        ToOneRelationshipReader(AndroidSqlPersistentStore store, Entity<?> destinationEntity) {
+            this.store = store;
+            this.destinationEntity = destinationEntity;
+        }
+
+        @Override
+        Object read(Cursor cursor, int columnIndex) {
+            return store.newObjectID(destinationEntity, cursor.getLong(columnIndex));
+        }
+
+        @Override
+        boolean skipsNull() {
+            return true;
+        }
+    }
+
+    private static ColumnReader readerFor(AndroidSqlPersistentStore store, Property property) {
+        Class<?> propType = property.getType();
+
+        if (property.isRelationship()) {
+            return new ToOneRelationshipReader(store, ((Relationship)property).getDestinationEntity());
+        } else if (propType.isAssignableFrom(Integer.class) || propType.isAssignableFrom(int.class)) {
+            return INTEGER;
+        } else if (propType.isAssignableFrom(Long.class) || propType.isAssignableFrom(long.class)) {
+            return LONG;
+        } else if (propType.isAssignableFrom(String.class)) {
+            return STRING;
+        } else if (propType.isAssignableFrom(Boolean.class) || propType.isAssignableFrom(boolean.class)) {
+            return BOOLEAN;
+        } else if (propType.isAssignableFrom(Float.class) || propType.isAssignableFrom(float.class)) {
+            return FLOAT;
+        } else if (propType.isAssignableFrom(Double.class) || propType.isAssignableFrom(double.class)) {
+            return DOUBLE;
+        } else if (Enum.class.isAssignableFrom(propType)) {
+            return newEnumReader(propType, store.getValueEncoding());
+        } else if (propType.isAssignableFrom(Date.class)) {
+            return store.getValueEncoding() == ValueEncoding.NATIVE ? NATIVE_DATE : TEXT_DATE;
+        } else {
+            throw new UnsupportedOperationException("Unsupported property type " + property.getType());
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.github.dkharrat.nexusdata.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Logs SQL statements that take longer than a configurable threshold to execute. Each entry includes the SQL, its
+ * bound arguments, the number of rows returned or affected (unless they are streamed), and the output of "EXPLAIN QUERY PLAN" for the statement.
+ * Plan steps that scan a whole table (rather than searching it through an index) are flagged, since they usually
+ * indicate a missing index.
+ * <p>
+ * Logging is disabled by default. The threshold can be changed at any time, from any thread.
+ */
+class SlowQueryLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SlowQueryLog.class);
+
+    static final long DISABLED = -1;
+
+    /**
+     * The row count of a statement whose rows were not counted.
+     */
+    static final int UNKNOWN_ROW_COUNT = -1;
+
+    private volatile long thresholdMillis = DISABLED;
+
+    /**
+     * Sets the minimum execution time of a statement for it to be logged. A threshold of 0 logs every statement, and
+     * a negative threshold disables logging.
+     */
+    void setThreshold(long thresholdMillis) {
+        this.thresholdMillis = thresholdMillis < 0 ? DISABLED : thresholdMillis;
+    }
+
+    long getThreshold() {
+        return thresholdMillis;
+    }
+
+    boolean isEnabled() {
+        return thresholdMillis != DISABLED;
+    }
+
+    /**
+     * Returns the start time to later pass to {@link #isSlow(long)} and {@link #log}.
+     */
+    long start() {
+        return isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Returns whether a statement that started at the specified time exceeded the threshold.
+     */
+    boolean isSlow(long startNanos) {
+        long threshold = thresholdMillis;
+        return threshold != DISABLED && elapsedMillis(startNanos) >= threshold;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000;
+    }
+
+    /**
+     * Executes the specified query with its arguments bound with their types (see {@link TypedArgsCursorFactory}), and
+     * logs it if it is slow. Since SQLite executes a query lazily as its cursor is read, the rows are counted when
+     * logging is enabled, so that the measured time covers the actual execution.
+     *
+     * @return the cursor of the query results
+     */
+    Cursor query(SQLiteDatabase db, String sql, Object[] args) {
+        if (!isEnabled()) {
+            return TypedArgsCursorFactory.query(db, sql, args);
+        }
+
+        long startNanos = System.nanoTime();
+        Cursor cursor = TypedArgsCursorFactory.query(db, sql, args);
+        int rowCount = cursor.getCount();
+        if (isSlow(startNanos)) {
+            log(db, sql, args, rowCount, startNanos);
+        }
+        return cursor;
+    }
+
+    /**
+     * Executes the specified query like {@link #query}, for a cursor whose rows are read as they are needed. Counting
+     * the rows would run the whole query before the first row is read, so only the time until the first row is
+     * available is measured, and the logged entry has no row count. The returned cursor is positioned before the first
+     * row.
+     *
+     * @return the cursor of the query results
+     */
+    Cursor queryStream(SQLiteDatabase db, String sql, Object[] args) {
+        if (!isEnabled()) {
+            return TypedArgsCursorFactory.query(db, sql, args);
+        }
+
+        long startNanos = System.nanoTime();
+        Cursor cursor = TypedArgsCursorFactory.query(db, sql, args);
+        cursor.moveToFirst();
+        cursor.moveToPosition(-1);
+        if (isSlow(startNanos)) {
+            log(db, sql, args, UNKNOWN_ROW_COUNT, startNanos);
+        }
+        return cursor;
+    }
+
+    /**
+     * Logs a statement that exceeded the threshold, along with its query plan.
+     */
+    void log(SQLiteDatabase db, String sql, Object[] args, int rowCount, long startNanos) {
+        long elapsed = elapsedMillis(startNanos);
+        write(formatEntry(sql, args, rowCount, elapsed, explainQueryPlan(db, sql, args)));
+    }
+
+    /**
+     * Writes an entry to the log.
+     */
+    void write(String entry) {
+        LOG.warn(entry);
+    }
+
+    /**
+     * Returns the log entry of a slow statement, which flags the steps of its plan that are full table scans. The row
+     * count is left out if it is {@link #UNKNOWN_ROW_COUNT}.
+     */
+    static String formatEntry(String sql, Object[] args, int rowCount, long elapsedMillis, List<String> plan) {
+        StringBuilder entry = new StringBuilder();
+        boolean hasFullScan = false;
+        for (String step : plan) {
+            if (isFullScan(step)) {
+                hasFullScan = true;
+                break;
+            }
+        }
+
+        entry.append("Slow SQL (").append(elapsedMillis).append(" ms");
+        if (rowCount != UNKNOWN_ROW_COUNT) {
+            entry.append(", ").append(rowCount).append(" rows");
+        }
+        entry.append(")");
+        if (hasFullScan) {
+            entry.append(" [FULL SCAN]");
+        }
+        entry.append(": ").append(sql);
+        if (args != null && args.length > 0) {
+            entry.append("\n  args: ").append(Arrays.toString(args));
+        }
+        for (String step : plan) {
+            entry.append("\n  plan: ").append(step);
+            if (isFullScan(step)) {
+                entry.append("  <-- full scan");
+            }
+        }
+        return entry.toString();
+    }
+
+    /**
+     * Returns the steps of the query plan of the specified statement, or an empty list if the plan could not be
+     * determined.
+     */
+    static List<String> explainQueryPlan(SQLiteDatabase db, String sql, Object[] args) {
+        List<String> plan = new ArrayList<String>();
+        Cursor cursor = null;
+        try {
+            cursor = TypedArgsCursorFactory.query(db, "EXPLAIN QUERY PLAN " + sql, args);
+            int detailColumn = cursor.getColumnIndex("detail");
+            if (detailColumn < 0) {
+                detailColumn = cursor.getColumnCount() - 1;
+            }
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detailColumn));
+            }
+        } catch (RuntimeException e) {
+            LOG.debug("Could not get query plan for: " + sql, e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Indicates whether a step of a query plan reads every row of a table, e.g. "SCAN TABLE Person". Steps that
+     * search a table (e.g. "SEARCH TABLE Person USING INDEX ...") or scan an index are not full table scans.
+     */
+    static boolean isFullScan(String planStep) {
+        if (planStep == null || !planStep.startsWith("SCAN ")) {
+            return false;
+        }
+        return !planStep.contains(" USING ") && !planStep.startsWith("SCAN SUBQUERY") && !planStep.startsWith("SCAN CONSTANT ROW");
+    }
+}
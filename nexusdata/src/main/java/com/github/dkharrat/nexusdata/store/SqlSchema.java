@@ -0,0 +1,212 @@
+package com.github.dkharrat.nexusdata.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.github.dkharrat.nexusdata.metamodel.Attribute;
+import com.github.dkharrat.nexusdata.metamodel.Entity;
+import com.github.dkharrat.nexusdata.metamodel.Index;
+import com.github.dkharrat.nexusdata.metamodel.ObjectModel;
+import com.github.dkharrat.nexusdata.metamodel.Property;
+import com.github.dkharrat.nexusdata.metamodel.Relationship;
+import com.github.dkharrat.nexusdata.utils.SqlTableBuilder;
+import com.github.dkharrat.nexusdata.utils.StringUtil;
+
+/**
+ * The SQLite schema of the SQL stores. Each top-most entity is stored in its own table, which also holds the objects
+ * of its sub-entities, and each property in a column named after the property and the ID of the entity declaring it.
+ * The statements are only generated here, so that both {@link AndroidSqlPersistentStore} and
+ * {@link JdbcSqlPersistentStore} can execute them and open the same database files.
+ */
+final class SqlSchema {
+
+    static final String ID_COLUMN_NAME = "_ID";
+    static final String ENTITY_COLUMN_NAME = "_ENT";
+
+    static final String METADATA_TABLE_NAME = "nxs_metadata";
+    static final String METADATA_COLUMN_VERSION = "version";
+    static final String METADATA_COLUMN_UUID = "uuid";
+
+    static final String ENTITY_TABLE_NAME = "nxs_entity";
+    static final String ENTITY_TABLE_COLUMN_ID = "_id";
+    static final String ENTITY_TABLE_COLUMN_NAME = "name";
+
+    // a key/value table of store-wide settings
+    static final String STORE_INFO_TABLE_NAME = "nxs_store_info";
+    static final String STORE_INFO_COLUMN_NAME = "name";
+    static final String STORE_INFO_COLUMN_VALUE = "value";
+
+    static final String STORE_INFO_VALUE_ENCODING = "value_encoding";
+    static final String STORE_INFO_NEXT_ID_PREFIX = "next_id.";
+
+    private SqlSchema() {
+    }
+
+    static String getTableName(Entity<?> entity) {
+        return entity.getTopMostSuperEntity().getType().getSimpleName();
+    }
+
+    static String getColumnName(Property property, Map<Entity<?>, Integer> entityIDMap) {
+        return property.getName() + "_" + entityIDMap.get(property.getEntity());
+    }
+
+    static String getCreateMetadataTableSql() {
+        SqlTableBuilder tableBuilder = new SqlTableBuilder();
+        tableBuilder.tableName(METADATA_TABLE_NAME);
+        tableBuilder.column(METADATA_COLUMN_VERSION, SqlTableBuilder.ColumnType.INTEGER).setUnique(SqlTableBuilder.ConflictAction.ABORT);
+        tableBuilder.column(METADATA_COLUMN_UUID, SqlTableBuilder.ColumnType.TEXT);
+        return tableBuilder.toSql();
+    }
+
+    static String getCreateEntityInfoTableSql() {
+        SqlTableBuilder tableBuilder = new SqlTableBuilder();
+        tableBuilder.tableName(ENTITY_TABLE_NAME);
+        tableBuilder.primaryKey(ENTITY_TABLE_COLUMN_ID, SqlTableBuilder.ColumnType.INTEGER);
+        tableBuilder.column(ENTITY_TABLE_COLUMN_NAME, SqlTableBuilder.ColumnType.TEXT);
+        return tableBuilder.toSql();
+    }
+
+    static String getCreateStoreInfoTableSql() {
+        // databases created by earlier versions don't have this table, so it may be created when opening them
+        return "CREATE TABLE IF NOT EXISTS " + STORE_INFO_TABLE_NAME + " (" +
+                STORE_INFO_COLUMN_NAME + " TEXT PRIMARY KEY, " + STORE_INFO_COLUMN_VALUE + " TEXT)";
+    }
+
+    static String getCreateEntityTableSql(Entity<?> entity, Map<Entity<?>, Integer> entityIDMap, ValueEncoding encoding) {
+        SqlTableBuilder tableBuilder = new SqlTableBuilder();
+        tableBuilder.tableName(getTableName(entity));
+        // IDs are allocated by the store (see PermanentIDAllocator), so SQLite doesn't need to track them with AUTOINCREMENT
+        tableBuilder.primaryKey(ID_COLUMN_NAME, SqlTableBuilder.ColumnType.INTEGER, SqlTableBuilder.Order.DEFAULT, false);
+        tableBuilder.column(ENTITY_COLUMN_NAME, SqlTableBuilder.ColumnType.INTEGER).setNullable(false);
+
+        for (Property property : Utils.getPropertiesOfEntityAndItsChildren(entity)) {
+            SqlTableBuilder.ColumnType columnType;
+            Class<?> propType = property.getType();
+
+            if (property.isRelationship()) {
+                Relationship relationship = (Relationship) property;
+                if (relationship.isToOne()) {
+                    columnType = SqlTableBuilder.ColumnType.INTEGER;
+                } else {
+                    continue;
+                }
+            }
+            else if (ValueEncoding.isEncoded(propType)) {
+                columnType = encoding.getColumnType(propType);
+            } else if (int.class.isAssignableFrom(propType) || Integer.class.isAssignableFrom(propType) ||
+                    long.class.isAssignableFrom(propType) || Long.class.isAssignableFrom(propType)) {
+                columnType = SqlTableBuilder.ColumnType.INTEGER;
+            } else if (String.class.isAssignableFrom(propType)) {
+                columnType = SqlTableBuilder.ColumnType.TEXT;
+            } else if (boolean.class.isAssignableFrom(propType) || Boolean.class.isAssignableFrom(propType)) {
+                columnType = SqlTableBuilder.ColumnType.BOOLEAN;
+            } else if (float.class.isAssignableFrom(propType) || Float.class.isAssignableFrom(propType)) {
+                columnType = SqlTableBuilder.ColumnType.REAL;
+            } else if (double.class.isAssignableFrom(propType) || Double.class.isAssignableFrom(propType)) {
+                columnType = SqlTableBuilder.ColumnType.REAL;
+            } else {
+                throw new UnsupportedOperationException("Unsupported field type " + property.getType() + " for " + entity.getType());
+            }
+
+            tableBuilder.column(getColumnName(property, entityIDMap), columnType);
+        }
+
+        return tableBuilder.toSql();
+    }
+
+    /**
+     * Returns the statements that create the indexes of the entity tables, if they don't exist yet. The entity type
+     * column and the foreign key columns of to-one relationships are always indexed, since they are used to look up
+     * objects by their type and to fetch the objects of to-many relationships. Attributes and compound indexes are
+     * indexed as declared in the model.
+     */
+    static List<String> getCreateIndexesSql(ObjectModel model, Map<Entity<?>, Integer> entityIDMap) {
+        List<String> statements = new ArrayList<>();
+        for (Entity<?> entity : model.getEntities()) {
+            if (!entity.isBaseEntity()) {
+                continue;
+            }
+
+            String tableName = getTableName(entity);
+            statements.add(getCreateIndexSql(tableName, tableName, ENTITY_COLUMN_NAME));
+
+            for (Property property : Utils.getPropertiesOfEntityAndItsChildren(entity)) {
+                boolean isIndexed;
+                if (property.isRelationship()) {
+                    isIndexed = ((Relationship) property).isToOne();
+                } else {
+                    isIndexed = ((Attribute) property).isIndexed();
+                }
+
+                if (isIndexed) {
+                    String columnName = getColumnName(property, entityIDMap);
+                    statements.add(getCreateIndexSql(tableName, tableName + "_" + columnName, columnName));
+                }
+            }
+
+            List<Entity<?>> tableEntities = new ArrayList<>();
+            tableEntities.add(entity);
+            Utils.getAllChildEntities(entity, tableEntities);
+            for (Entity<?> tableEntity : tableEntities) {
+                for (Index index : tableEntity.getIndexes()) {
+                    List<String> columnNames = new ArrayList<>();
+                    for (Property property : index.getProperties()) {
+                        columnNames.add(getColumnName(property, entityIDMap));
+                    }
+                    String indexName = tableName + "_" + tableEntity.getName() + "_" + index.getName();
+                    statements.add(getCreateIndexSql(tableName, indexName, columnNames.toArray(new String[columnNames.size()])));
+                }
+            }
+        }
+        return statements;
+    }
+
+    private static String getCreateIndexSql(String tableName, String indexName, String... columnNames) {
+        return "CREATE INDEX IF NOT EXISTS idx_" + indexName + " ON " + tableName + " (" + StringUtil.join(columnNames, ", ") + ")";
+    }
+
+    /**
+     * Returns the statements that convert the stored values of the table of the specified base entity from one encoding
+     * to another, or an empty list if the table has no encoded columns. Since SQLite can't change the type of a column,
+     * the table is re-created and its rows copied, converting the encoded columns in SQL.
+     */
+    static List<String> getMigrateValueEncodingSql(Entity<?> entity, Map<Entity<?>, Integer> entityIDMap, ValueEncoding storedEncoding, ValueEncoding valueEncoding) {
+        List<String> columns = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        columns.add(ID_COLUMN_NAME);
+        values.add(ID_COLUMN_NAME);
+        columns.add(ENTITY_COLUMN_NAME);
+        values.add(ENTITY_COLUMN_NAME);
+
+        boolean hasEncodedColumns = false;
+        for (Property property : Utils.getPropertiesOfEntityAndItsChildren(entity)) {
+            if (property.isRelationship() && !((Relationship) property).isToOne()) {
+                continue;
+            }
+
+            String columnName = getColumnName(property, entityIDMap);
+            columns.add(columnName);
+            if (!property.isRelationship() && ValueEncoding.isEncoded(property.getType())) {
+                values.add(storedEncoding.getConversionExpression(valueEncoding, columnName, property.getType()));
+                hasEncodedColumns = true;
+            } else {
+                values.add(columnName);
+            }
+        }
+
+        List<String> statements = new ArrayList<>();
+        if (!hasEncodedColumns) {
+            return statements;
+        }
+
+        String tableName = getTableName(entity);
+        String oldTableName = tableName + "_nxs_old";
+        statements.add("ALTER TABLE " + tableName + " RENAME TO " + oldTableName);
+        statements.add(getCreateEntityTableSql(entity, entityIDMap, valueEncoding));
+        statements.add("INSERT INTO " + tableName + " (" + StringUtil.join(columns, ", ") + ") " +
+                "SELECT " + StringUtil.join(values, ", ") + " FROM " + oldTableName);
+        statements.add("DROP TABLE " + oldTableName);
+        return statements;
+    }
+}
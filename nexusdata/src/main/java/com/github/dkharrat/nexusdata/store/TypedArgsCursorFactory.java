@@ -0,0 +1,69 @@
+package com.github.dkharrat.nexusdata.store;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteProgram;
+import android.database.sqlite.SQLiteQuery;
+
+/**
+ * Executes queries with arguments bound as their SQL types (INTEGER, REAL, TEXT, BLOB or NULL).
+ * {@link SQLiteDatabase#rawQuery} binds every argument as TEXT. With TEXT arguments, comparisons against numeric
+ * columns rely on SQLite's type affinity conversions, and fail for expressions that have no affinity (e.g. a subquery).
+ * <p>
+ * The arguments are bound by a cursor factory, since it receives the compiled query before it is executed, and that
+ * works on all API levels.
+ */
+class TypedArgsCursorFactory implements SQLiteDatabase.CursorFactory {
+
+    private final Object[] args;
+
+    private TypedArgsCursorFactory(Object[] args) {
+        this.args = args;
+    }
+
+    /**
+     * Executes the specified query, binding the arguments with their types.
+     *
+     * @return the cursor of the query results
+     */
+    static Cursor query(SQLiteDatabase db, String sql, Object[] args) {
+        if (args == null || args.length == 0) {
+            return db.rawQuery(sql, null);
+        }
+        return db.rawQueryWithFactory(new TypedArgsCursorFactory(args), sql, null, null);
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable, SQLiteQuery query) {
+        bind(query, args);
+        // the constructor taking the database is deprecated, but is the only one available on API level 10
+        return new SQLiteCursor(db, masterQuery, editTable, query);
+    }
+
+    /**
+     * Binds the specified arguments to the parameters of a compiled statement, in order. Integral numbers and booleans
+     * are bound as INTEGER, floating-point numbers as REAL, byte arrays as BLOB, and any other value as TEXT.
+     */
+    static void bind(SQLiteProgram program, Object[] args) {
+        for (int i = 0; i < args.length; i++) {
+            int index = i + 1;
+            Object arg = args[i];
+            if (arg == null) {
+                program.bindNull(index);
+            } else if (arg instanceof Long || arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+                program.bindLong(index, ((Number) arg).longValue());
+            } else if (arg instanceof Double || arg instanceof Float) {
+                program.bindDouble(index, ((Number) arg).doubleValue());
+            } else if (arg instanceof Boolean) {
+                program.bindLong(index, ((Boolean) arg) ? 1 : 0);
+            } else if (arg instanceof byte[]) {
+                program.bindBlob(index, (byte[]) arg);
+            } else {
+                program.bindString(index, arg.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.dkharrat.nexusdata.store;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.github.dkharrat.nexusdata.utils.DateUtil;
+import com.github.dkharrat.nexusdata.utils.SqlTableBuilder;
+import com.github.dkharrat.nexusdata.utils.StringUtil;
+
+/**
+ * Specifies how {@link AndroidSqlPersistentStore} encodes attribute values of types that SQLite does not natively
+ * support. The encoding applies to stored values as well as to values in predicates, so that queries and sorting
+ * behave the same regardless of the encoding.
+ */
+public enum ValueEncoding {
+
+    /**
+     * Dates are stored as ISO-8601 strings (without milliseconds) and enums as the names of their constants. This is
+     * the encoding of databases created by earlier versions.
+     */
+    TEXT,
+
+    /**
+     * Dates are stored as INTEGER milliseconds since the epoch and enums as INTEGER ordinals. This encoding is more
+     * compact and faster to decode, preserves the milliseconds of dates, and sorts enums by their declaration order,
+     * like in-memory sorting does. Note that re-ordering the constants of a stored enum changes the meaning of its
+     * stored values.
+     */
+    NATIVE;
+
+    /**
+     * Returns the SQL column type used to store attributes of the specified type, or null if the type is not affected
+     * by the encoding.
+     */
+    SqlTableBuilder.ColumnType getColumnType(Class<?> type) {
+        if (Date.class.isAssignableFrom(type)) {
+            return SqlTableBuilder.ColumnType.DATETIME;
+        } else if (Enum.class.isAssignableFrom(type)) {
+            return this == NATIVE ? SqlTableBuilder.ColumnType.INTEGER : SqlTableBuilder.ColumnType.TEXT;
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the stored value of attributes of the specified type depends on the encoding.
+     */
+    static boolean isEncoded(Class<?> type) {
+        return Date.class.isAssignableFrom(type) || Enum.class.isAssignableFrom(type);
+    }
+
+    /**
+     * Returns the value to store for the specified non-null date.
+     */
+    Object encodeDate(Date date) {
+        if (this == NATIVE) {
+            return date.getTime();
+        }
+        return DateUtil.format(DateUtil.ISO8601_NO_TIMEZONE, date);
+    }
+
+    /**
+     * Returns the value to store for the specified non-null enum constant.
+     */
+    Object encodeEnum(Enum<?> value) {
+        if (this == NATIVE) {
+            return value.ordinal();
+        }
+        return value.name();
+    }
+
+    /**
+     * Returns the stored form of a non-null value, encoding dates, enums and booleans. Other values are returned as-is.
+     */
+    Object encode(Object value) {
+        if (value instanceof Date) {
+            return encodeDate((Date) value);
+        } else if (value instanceof Enum) {
+            return encodeEnum((Enum<?>) value);
+        } else if (value instanceof Boolean) {
+            return ((Boolean) value) ? 1 : 0;
+        }
+        return value;
+    }
+
+    Date decodeDate(long millis) {
+        return new Date(millis);
+    }
+
+    Date decodeDate(String text) {
+        try {
+            return DateUtil.parse(DateUtil.ISO8601_NO_TIMEZONE, text);
+        } catch (ParseException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns a SQL expression that converts the value of the specified column of an attribute of the specified type
+     * from this encoding to the target encoding. The column is returned unchanged if its values don't depend on the
+     * encoding. Values that can't be converted, e.g. the name of an enum constant that was renamed or removed, are kept
+     * as they are rather than dropped, so that reading them fails instead of silently returning null.
+     */
+    String getConversionExpression(ValueEncoding target, String column, Class<?> type) {
+        if (this == target) {
+            return column;
+        }
+
+        if (Date.class.isAssignableFrom(type)) {
+            // dates are stored in UTC, and the text encoding has no milliseconds
+            if (target == NATIVE) {
+                return "COALESCE(CAST(strftime('%s', " + column + ") AS INTEGER) * 1000, " + column + ")";
+            } else {
+                return "COALESCE(strftime('%Y-%m-%dT%H:%M:%S', " + column + " / 1000, 'unixepoch'), " + column + ")";
+            }
+        } else if (Enum.class.isAssignableFrom(type)) {
+            List<String> cases = new ArrayList<String>();
+            for (Object constant : type.getEnumConstants()) {
+                Enum<?> value = (Enum<?>) constant;
+                cases.add("WHEN " + toSqlLiteral(encodeEnum(value)) + " THEN " + toSqlLiteral(target.encodeEnum(value)));
+            }
+            return cases.isEmpty() ? column : "CASE " + column + " " + StringUtil.join(cases, " ") + " ELSE " + column + " END";
+        }
+        return column;
+    }
+
+    private static String toSqlLiteral(Object value) {
+        if (value instanceof String) {
+            return "'" + ((String) value).replace("'", "''") + "'";
+        }
+        return value.toString();
+    }
+}
@@ -3,7 +3,9 @@ package com.github.dkharrat.nexusdata.utils;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
 
 import android.annotation.SuppressLint;
@@ -17,21 +19,47 @@ public class DateUtil {
     public final static String ISO8601_NO_TIMEZONE  = "yyyy-MM-dd'T'HH:mm:ss";
     public final static String DATE_TO_STRING       = "EEE MMM dd HH:mm:ss zzz yyyy";
 
+    private static final TimeZone UTC_TIME_ZONE = TimeZone.getTimeZone("UTC");
+
     private static float SECONDS_PER_MINUTE = 60.0f;
     private static float SECONDS_PER_HOUR   = 3600.0f;
     private static float SECONDS_PER_DAY    = 86400.0f;
     private static float SECONDS_PER_MONTH  = 2592000.0f;
     private static float SECONDS_PER_YEAR   = 31536000.0f;
 
+    // SimpleDateFormat is expensive to create and not thread-safe, so instances are cached per thread and pattern
+    private static final ThreadLocal<Map<String,SimpleDateFormat>> formatters = new ThreadLocal<Map<String,SimpleDateFormat>>() {
+        @Override
+        protected Map<String,SimpleDateFormat> initialValue() {
+            return new HashMap<String,SimpleDateFormat>();
+        }
+    };
+    private static final ThreadLocal<Map<String,SimpleDateFormat>> parsers = new ThreadLocal<Map<String,SimpleDateFormat>>() {
+        @Override
+        protected Map<String,SimpleDateFormat> initialValue() {
+            return new HashMap<String,SimpleDateFormat>();
+        }
+    };
+
     @SuppressLint("SimpleDateFormat")
-    public static String format(String format, Date date, TimeZone timeZone) {
-        SimpleDateFormat df = new SimpleDateFormat(format);
+    private static SimpleDateFormat getDateFormat(String format, TimeZone timeZone, boolean forParsing) {
+        Map<String,SimpleDateFormat> cache = forParsing ? parsers.get() : formatters.get();
+        SimpleDateFormat df = cache.get(format);
+        if (df == null) {
+            df = forParsing ? new SimpleDateFormat(format, Locale.ENGLISH) : new SimpleDateFormat(format);
+            cache.put(format, df);
+        }
+        // always set, since parsing a date with a time zone overwrites the time zone of the format
         df.setTimeZone(timeZone);
-        return df.format(date);
+        return df;
+    }
+
+    public static String format(String format, Date date, TimeZone timeZone) {
+        return getDateFormat(format, timeZone, false).format(date);
     }
 
     public static String format(String format, Date date) {
-        return format(format, date, TimeZone.getTimeZone("UTC"));
+        return format(format, date, UTC_TIME_ZONE);
     }
 
     public static String formatISO8601(Date date) {
@@ -47,13 +75,11 @@ public class DateUtil {
     }
 
     public static Date parse(String format, String date, TimeZone timeZone) throws ParseException {
-        SimpleDateFormat df = new SimpleDateFormat(format, Locale.ENGLISH);
-        df.setTimeZone(timeZone);
-        return df.parse(date);
+        return getDateFormat(format, timeZone, true).parse(date);
     }
 
     public static Date parse(String format, String date) throws ParseException {
-        return parse(format, date, TimeZone.getTimeZone("UTC"));
+        return parse(format, date, UTC_TIME_ZONE);
     }
 
     public static Date parseISO8601(String date) throws ParseException {
@@ -110,6 +110,18 @@ public class SqlTableBuilder {
     }
 
     public void createTable(SQLiteDatabase db) {
+        String sqlStatement = toSql();
+
+        LOG.trace("Executing SQL Statement: " + sqlStatement);
+        db.execSQL(sqlStatement);
+    }
+
+    /**
+     * Returns the CREATE TABLE statement of the table, for executing it through other database APIs than Android's.
+     *
+     * @return the SQL statement that creates the table
+     */
+    public String toSql() {
         if (tableName == null)
             throw new IllegalStateException("Table name not specified");
 
@@ -128,8 +140,7 @@ public class SqlTableBuilder {
         }
         sqlStatement += StringUtil.join(columnsSqlStatements, ", ") + ")";
 
-        LOG.trace("Executing SQL Statement: " + sqlStatement);
-        db.execSQL(sqlStatement);
+        return sqlStatement;
     }
 
     // Note Sqlite does not support altering existing columns
@@ -0,0 +1,57 @@
+package com.github.dkharrat.nexusdata.utils.android;
+
+import android.os.Handler;
+import android.os.Looper;
+import com.github.dkharrat.nexusdata.core.NotificationScheduler;
+
+/**
+ * A {@link NotificationScheduler} that delivers notifications on the event loop of an Android thread. Listeners are
+ * called on that thread, once the current message of the event loop is handled.
+ */
+public class LooperNotificationScheduler implements NotificationScheduler {
+
+    private final Handler handler;
+
+    /**
+     * Creates a new scheduler that delivers notifications on the specified event loop.
+     *
+     * @param looper    the event loop to deliver notifications on
+     */
+    public LooperNotificationScheduler(Looper looper) {
+        handler = new Handler(looper);
+    }
+
+    /**
+     * Returns a scheduler for the event loop of the current thread. If the current thread has no event loop, the
+     * main thread's event loop is used.
+     *
+     * @return a scheduler for the event loop of the current thread
+     */
+    public static LooperNotificationScheduler forCurrentThread() {
+        Looper looper = Looper.myLooper();
+        if (looper == null) {
+            looper = Looper.getMainLooper();
+        }
+        return new LooperNotificationScheduler(looper);
+    }
+
+    /**
+     * Returns a scheduler for the event loop of the current thread, or null if the current thread has no event loop or
+     * event loops can't be used, e.g. in a local JVM test where the Android classes are only stubs.
+     *
+     * @return a scheduler for the event loop of the current thread, or null if there is none
+     */
+    public static LooperNotificationScheduler forCurrentThreadIfAvailable() {
+        try {
+            Looper looper = Looper.myLooper();
+            return looper == null ? null : new LooperNotificationScheduler(looper);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void schedule(Runnable delivery) {
+        handler.post(delivery);
+    }
+}